@@ -0,0 +1,293 @@
+package org.fujaba.graphengine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+import org.fujaba.graphengine.graph.Node;
+
+/**
+ * The AllDifferent propagator removes the candidates of nodes, that can't be part of any mapping,
+ * which maps all nodes to different candidates (like the nodes of a pattern are mapped to different nodes of a graph).
+ *
+ * The candidates are sets of dense ids (BitSets), and a candidate is kept only if it is part of some maximum matching
+ * of the nodes to their candidates: a maximum matching is searched (if it doesn't cover all nodes, there is no mapping at all),
+ * and a candidate, which isn't matched, is kept if it is on an alternating cycle of the matching (the nodes are in the same
+ * strongly connected component) or on an alternating path from a candidate, that isn't matched by any node.
+ * This removes every candidate, that a Hall set (some nodes, that share as many candidates as they are) needs for itself.
+ *
+ * The propagation is cheap enough to be repeated during a search, with the domains of the mapped nodes reduced to their mapping.
+ */
+public class AllDifferent {
+
+	/**
+	 * removes the candidates, that can't be part of a mapping of all nodes to different candidates.
+	 * the order of the candidates is kept.
+	 *
+	 * @param couldMatch the candidates of the nodes (are changed)
+	 * @return the candidates of the nodes, or null if there is no mapping of all nodes to different candidates
+	 */
+	public static ArrayList<ArrayList<Node>> removeImpossibleCandidates(ArrayList<ArrayList<Node>> couldMatch) {
+		boolean small = false;
+		for (ArrayList<Node> candidates: couldMatch) {
+			small |= candidates.size() < couldMatch.size();
+		}
+		if (!small) {
+			/*
+			 * if every node has at least as many candidates as there are nodes, they can be mapped to different candidates one by one,
+			 * and a set of nodes, which needs all of its candidates for itself, would need to be all nodes (so nothing can be removed)
+			 */
+			return couldMatch;
+		}
+		// give the candidates dense ids:
+		HashMap<Node, Integer> ids = new HashMap<Node, Integer>();
+		ArrayList<Node> nodes = new ArrayList<Node>();
+		BitSet[] domains = new BitSet[couldMatch.size()];
+		for (int i = 0; i < couldMatch.size(); ++i) {
+			domains[i] = new BitSet();
+			for (Node node: couldMatch.get(i)) {
+				Integer id = ids.get(node);
+				if (id == null) {
+					id = nodes.size();
+					ids.put(node, id);
+					nodes.add(node);
+				}
+				domains[i].set(id);
+			}
+		}
+		if (!propagate(domains)) {
+			return null;
+		}
+		for (int i = 0; i < couldMatch.size(); ++i) {
+			ArrayList<Node> candidates = couldMatch.get(i);
+			if (domains[i].cardinality() == candidates.size()) {
+				continue; // nothing removed
+			}
+			ArrayList<Node> remaining = new ArrayList<Node>(domains[i].cardinality());
+			for (Node node: candidates) {
+				if (domains[i].get(ids.get(node))) {
+					remaining.add(node);
+				}
+			}
+			candidates.clear();
+			candidates.addAll(remaining);
+		}
+		return couldMatch;
+	}
+
+	/**
+	 * removes the candidates, that can't be part of a mapping of all nodes to different candidates.
+	 *
+	 * @param domains the candidates of the nodes as sets of dense ids (are changed)
+	 * @return true if there is a mapping of all nodes to different candidates, false if not
+	 * (then the domains aren't changed)
+	 */
+	public static boolean propagate(BitSet[] domains) {
+		int count = domains.length;
+		if (count == 0) {
+			return true;
+		}
+		int values = 0;
+		for (BitSet domain: domains) {
+			values = Math.max(values, domain.length());
+		}
+		// search a maximum matching (every node gets one of its candidates, every candidate at most one node):
+		int[] matched = new int[count];
+		int[] owners = new int[values];
+		Arrays.fill(owners, -1);
+		BitSet taken = new BitSet(values);
+		for (int i = 0; i < count; ++i) {
+			matched[i] = -1;
+			int value = domains[i].nextSetBit(0);
+			while (value >= 0 && taken.get(value)) {
+				value = domains[i].nextSetBit(value + 1);
+			}
+			if (value >= 0) {
+				matched[i] = value;
+				taken.set(value);
+				owners[value] = i;
+			}
+		}
+		int[] path = new int[count];
+		int[] positions = new int[count];
+		int[] chosen = new int[count];
+		for (int i = 0; i < count; ++i) {
+			if (matched[i] < 0 && !augment(i, domains, matched, taken, owners, path, positions, chosen)) {
+				return false; // the nodes can't get different candidates
+			}
+		}
+		// the nodes, that have a candidate, indexed by the candidate (holders[offsets[value]] to holders[offsets[value + 1] - 1]):
+		int[] offsets = new int[values + 1];
+		for (BitSet domain: domains) {
+			for (int value = domain.nextSetBit(0); value >= 0; value = domain.nextSetBit(value + 1)) {
+				++offsets[value + 1];
+			}
+		}
+		for (int value = 0; value < values; ++value) {
+			offsets[value + 1] += offsets[value];
+		}
+		int[] holders = new int[offsets[values]];
+		int[] fill = Arrays.copyOf(offsets, values);
+		for (int j = 0; j < count; ++j) {
+			for (int value = domains[j].nextSetBit(0); value >= 0; value = domains[j].nextSetBit(value + 1)) {
+				holders[fill[value]++] = j;
+			}
+		}
+		/*
+		 * node i points to node j, if j could take the candidate matched by i instead of its own one.
+		 * the nodes, that can be reached from a node with a free candidate, can all switch to another candidate:
+		 */
+		boolean[] reachable = new boolean[count];
+		int[] stack = new int[count];
+		int size = 0;
+		for (int i = 0; i < count; ++i) {
+			for (int value = domains[i].nextSetBit(0); value >= 0; value = domains[i].nextSetBit(value + 1)) {
+				if (!taken.get(value)) {
+					reachable[i] = true;
+					stack[size++] = i;
+					break;
+				}
+			}
+		}
+		while (size > 0) {
+			int i = stack[--size];
+			for (int index = offsets[matched[i]]; index < offsets[matched[i] + 1]; ++index) {
+				int j = holders[index];
+				if (!reachable[j]) {
+					reachable[j] = true;
+					stack[size++] = j;
+				}
+			}
+		}
+		// the nodes on a cycle can exchange their candidates along it:
+		int[] components = new Components(matched, offsets, holders).components;
+		for (int j = 0; j < count; ++j) {
+			for (int value = domains[j].nextSetBit(0); value >= 0; value = domains[j].nextSetBit(value + 1)) {
+				int i = owners[value];
+				if (i >= 0 && i != j && !reachable[i] && components[i] != components[j]) {
+					domains[j].clear(value);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * searches an alternating path from a node to a free candidate (depth first, without recursion),
+	 * and switches the matching along it.
+	 *
+	 * @param start the node to find a candidate for
+	 * @param domains the candidates of the nodes
+	 * @param matched the candidates matched by the nodes (-1 for none)
+	 * @param taken the candidates matched by any node
+	 * @param owners the nodes, that match the candidates (-1 for none)
+	 * @param path the nodes on the path (space for every node)
+	 * @param positions the next candidate to try for each node on the path (space for every node)
+	 * @param chosen the candidate chosen for each node on the path (space for every node)
+	 * @return true if the node got a candidate
+	 */
+	private static boolean augment(int start, BitSet[] domains, int[] matched, BitSet taken, int[] owners, int[] path, int[] positions, int[] chosen) {
+		BitSet visited = new BitSet();
+		int depth = 0;
+		path[0] = start;
+		positions[0] = 0;
+		while (depth >= 0) {
+			BitSet domain = domains[path[depth]];
+			int value = domain.nextSetBit(positions[depth]);
+			while (value >= 0 && visited.get(value)) {
+				value = domain.nextSetBit(value + 1);
+			}
+			if (value < 0) {
+				--depth; // no way from this node
+				continue;
+			}
+			positions[depth] = value + 1;
+			visited.set(value);
+			chosen[depth] = value;
+			int owner = owners[value];
+			if (owner < 0) {
+				// every node on the path takes the candidate it has chosen:
+				for (int d = depth; d >= 0; --d) {
+					matched[path[d]] = chosen[d];
+					owners[chosen[d]] = path[d];
+				}
+				taken.set(value);
+				return true;
+			}
+			++depth;
+			path[depth] = owner;
+			positions[depth] = 0;
+		}
+		return false;
+	}
+
+	/**
+	 * the strongly connected components (Tarjan, without recursion) of the nodes,
+	 * where node i points to node j, if j could take the candidate matched by i.
+	 */
+	private static class Components {
+		private final int[] components;
+
+		Components(int[] matched, int[] offsets, int[] holders) {
+			int count = matched.length;
+			components = new int[count];
+			int[] indexes = new int[count];
+			int[] lowLinks = new int[count];
+			boolean[] onStack = new boolean[count];
+			int[] stack = new int[count];
+			int size = 0;
+			int[] calls = new int[count];
+			int[] positions = new int[count];
+			int index = 0;
+			int component = 0;
+			Arrays.fill(indexes, -1);
+			for (int root = 0; root < count; ++root) {
+				if (indexes[root] >= 0) {
+					continue;
+				}
+				int depth = 0;
+				calls[0] = root;
+				positions[0] = offsets[matched[root]];
+				indexes[root] = lowLinks[root] = index++;
+				stack[size++] = root;
+				onStack[root] = true;
+				while (depth >= 0) {
+					int i = calls[depth];
+					if (positions[depth] < offsets[matched[i] + 1]) {
+						int j = holders[positions[depth]++];
+						if (j == i) {
+							continue;
+						}
+						if (indexes[j] < 0) {
+							// visit j:
+							indexes[j] = lowLinks[j] = index++;
+							stack[size++] = j;
+							onStack[j] = true;
+							calls[++depth] = j;
+							positions[depth] = offsets[matched[j]];
+						} else if (onStack[j]) {
+							lowLinks[i] = Math.min(lowLinks[i], indexes[j]);
+						}
+						continue;
+					}
+					// all successors of i are done:
+					if (lowLinks[i] == indexes[i]) {
+						int j;
+						do {
+							j = stack[--size];
+							onStack[j] = false;
+							components[j] = component;
+						} while (j != i);
+						++component;
+					}
+					if (--depth >= 0) {
+						int caller = calls[depth];
+						lowLinks[caller] = Math.min(lowLinks[caller], lowLinks[i]);
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,350 @@
+package org.fujaba.graphengine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.fujaba.graphengine.graph.FrozenGraph;
+import org.fujaba.graphengine.graph.Node;
+
+/**
+ * The CandidateSeeds of an attribute match expression are the parts of the expression,
+ * that can be looked up with the secondary indexes of a FrozenGraph instead of being evaluated for every node.
+ *
+ * An expression is split into its top-level conjuncts ('&&'):
+ * a comparison of an attribute with a String literal (like "#{type} == 'Bank'") is looked up in the attribute value index
+ * and removed from the expression, a single attribute (like "#{initial}") is looked up in the attribute key index
+ * (but stays part of the expression, because its value needs to be checked, too).
+ * A comparison of an attribute with a number (like "#{count} &gt;= 3") is looked up in the sorted index of the attribute's numbers,
+ * together with the nodes whose value isn't a plain number (it stays part of the expression, too, because they need to be checked).
+ * The sorted index is only used for a snapshot, that is matched against many patterns (see FrozenGraph.isReused),
+ * otherwise only the nodes with the attribute are looked up.
+ * The comparisons of the same attribute are looked up as one range, if a missing attribute (read as 0.0) isn't within it.
+ * The remaining (residual) expression still needs to be evaluated for the seeded candidates.
+ */
+public class CandidateSeeds {
+
+	private static final Pattern EQUALS_LITERAL = Pattern.compile("#\\{([^}]+)\\}\\s*==\\s*'([^'\\\\]*)'");
+	private static final Pattern LITERAL_EQUALS = Pattern.compile("'([^'\\\\]*)'\\s*==\\s*#\\{([^}]+)\\}");
+	private static final Pattern ATTRIBUTE = Pattern.compile("#\\{([^}]+)\\}");
+	private static final Pattern COMPARES_NUMBER = Pattern.compile("#\\{([^}]+)\\}\\s*(==|<=|>=|<|>)\\s*(-?\\d+(?:\\.\\d+)?)");
+	private static final Pattern NUMBER_COMPARES = Pattern.compile("(-?\\d+(?:\\.\\d+)?)\\s*(==|<=|>=|<|>)\\s*#\\{([^}]+)\\}");
+
+	private static ConcurrentHashMap<String, CandidateSeeds> cache = new ConcurrentHashMap<String, CandidateSeeds>();
+
+	/**
+	 * the attributes, that need to have a specific String value
+	 */
+	private ArrayList<String> equalKeys = new ArrayList<String>();
+	private ArrayList<String> equalValues = new ArrayList<String>();
+	/**
+	 * the attributes, that need to exist
+	 */
+	private ArrayList<String> presentKeys = new ArrayList<String>();
+	/**
+	 * the attributes, that need to be numbers within a range
+	 */
+	private ArrayList<String> rangeKeys = new ArrayList<String>();
+	private ArrayList<double[]> ranges = new ArrayList<double[]>();
+	private ArrayList<boolean[]> inclusive = new ArrayList<boolean[]>();
+	/**
+	 * the part of the expression, that isn't covered by the lookups
+	 */
+	private String residualExpression;
+
+	/**
+	 * @param expression an attribute match expression (may be null)
+	 * @return the (cached) seeds of the expression
+	 */
+	public static CandidateSeeds of(String expression) {
+		if (expression == null) {
+			expression = "";
+		}
+		CandidateSeeds seeds = cache.get(expression);
+		if (seeds == null) {
+			seeds = new CandidateSeeds(expression);
+			cache.put(expression, seeds);
+		}
+		return seeds;
+	}
+
+	private CandidateSeeds(String expression) {
+		ArrayList<String> conjuncts = splitConjuncts(expression);
+		if (conjuncts == null) {
+			residualExpression = expression;
+			return;
+		}
+		StringBuilder residual = new StringBuilder();
+		for (String conjunct: conjuncts) {
+			Matcher matcher = EQUALS_LITERAL.matcher(conjunct);
+			if (matcher.matches()) {
+				equalKeys.add(matcher.group(1));
+				equalValues.add(matcher.group(2));
+				continue;
+			}
+			matcher = LITERAL_EQUALS.matcher(conjunct);
+			if (matcher.matches()) {
+				equalKeys.add(matcher.group(2));
+				equalValues.add(matcher.group(1));
+				continue;
+			}
+			matcher = ATTRIBUTE.matcher(conjunct);
+			if (matcher.matches()) {
+				presentKeys.add(matcher.group(1));
+			}
+			matcher = COMPARES_NUMBER.matcher(conjunct);
+			if (matcher.matches()) {
+				addRange(matcher.group(1), matcher.group(2), Double.parseDouble(matcher.group(3)));
+			}
+			matcher = NUMBER_COMPARES.matcher(conjunct);
+			if (matcher.matches()) {
+				addRange(matcher.group(3), mirrored(matcher.group(2)), Double.parseDouble(matcher.group(1)));
+			}
+			if (residual.length() > 0) {
+				residual.append(" && ");
+			}
+			residual.append(conjunct);
+		}
+		residualExpression = residual.toString();
+		// the expression library reads a missing attribute as 0.0 (or as PI or E), so then the nodes without it would be candidates, too:
+		for (int i = rangeKeys.size() - 1; i >= 0; --i) {
+			String key = rangeKeys.get(i);
+			if ("PI".equals(key) || "E".equals(key) || within(0.0, ranges.get(i), inclusive.get(i))) {
+				rangeKeys.remove(i);
+				ranges.remove(i);
+				inclusive.remove(i);
+			}
+		}
+	}
+
+	/**
+	 * narrows the range of numbers of an attribute down to the ones, that fulfill the comparison "#{key} operator number".
+	 *
+	 * @param key the attribute
+	 * @param operator the comparison operator
+	 * @param number the number to compare with
+	 */
+	private void addRange(String key, String operator, double number) {
+		double min = Double.NEGATIVE_INFINITY, max = Double.POSITIVE_INFINITY;
+		boolean minInclusive = true, maxInclusive = true;
+		switch (operator) {
+		case "==":
+			min = number;
+			max = number;
+			break;
+		case "<":
+			max = number;
+			maxInclusive = false;
+			break;
+		case "<=":
+			max = number;
+			break;
+		case ">":
+			min = number;
+			minInclusive = false;
+			break;
+		default:
+			min = number;
+			break;
+		}
+		int index = rangeKeys.indexOf(key);
+		if (index == -1) {
+			rangeKeys.add(key);
+			ranges.add(new double[] {min, max});
+			inclusive.add(new boolean[] {minInclusive, maxInclusive});
+			return;
+		}
+		double[] range = ranges.get(index);
+		boolean[] bounds = inclusive.get(index);
+		if (min > range[0] || (min == range[0] && !minInclusive)) {
+			range[0] = min;
+			bounds[0] = minInclusive;
+		}
+		if (max < range[1] || (max == range[1] && !maxInclusive)) {
+			range[1] = max;
+			bounds[1] = maxInclusive;
+		}
+	}
+
+	/**
+	 * @param operator a comparison operator
+	 * @return the operator with swapped sides ("number operator #{key}" is "#{key} mirrored number")
+	 */
+	private static String mirrored(String operator) {
+		switch (operator) {
+		case "<":
+			return ">";
+		case "<=":
+			return ">=";
+		case ">":
+			return "<";
+		case ">=":
+			return "<=";
+		default:
+			return operator;
+		}
+	}
+
+	private static boolean within(double number, double[] range, boolean[] inclusive) {
+		return (inclusive[0] ? number >= range[0] : number > range[0]) && (inclusive[1] ? number <= range[1] : number < range[1]);
+	}
+
+	/**
+	 * splits an expression into its top-level conjuncts.
+	 *
+	 * @param expression the expression
+	 * @return the trimmed conjuncts, or null if the expression isn't a plain conjunction (e.g. contains a top-level '||')
+	 */
+	private static ArrayList<String> splitConjuncts(String expression) {
+		ArrayList<String> conjuncts = new ArrayList<String>();
+		int depth = 0;
+		boolean quoted = false;
+		int begin = 0;
+		for (int i = 0; i < expression.length(); ++i) {
+			char c = expression.charAt(i);
+			if (c == '\'') {
+				quoted = !quoted;
+			} else if (quoted) {
+				continue;
+			} else if (c == '(') {
+				++depth;
+			} else if (c == ')') {
+				--depth;
+			} else if (depth == 0 && i + 1 < expression.length() && c == expression.charAt(i + 1) && (c == '&' || c == '|')) {
+				if (c == '|') {
+					return null;
+				}
+				conjuncts.add(expression.substring(begin, i).trim());
+				begin = i + 2;
+				++i;
+			}
+		}
+		if (quoted || depth != 0) {
+			return null;
+		}
+		conjuncts.add(expression.substring(begin).trim());
+		return conjuncts;
+	}
+
+	/**
+	 * @return the part of the expression, that still needs to be evaluated for the seeded candidates
+	 */
+	public String getResidualExpression() {
+		return residualExpression;
+	}
+
+	/**
+	 * looks up the candidates for the expression within the indexes of the graph.
+	 *
+	 * @param graph the graph
+	 * @return the ids of the candidates (ascending), or null if there's nothing to look up (all nodes are candidates)
+	 */
+	public int[] seed(FrozenGraph graph) {
+		int[] ids = null;
+		for (int i = 0; i < equalKeys.size(); ++i) {
+			ids = intersect(ids, graph.getNodesWithAttribute(graph.getAttributeKeyId(equalKeys.get(i)), equalValues.get(i)));
+		}
+		for (String key: presentKeys) {
+			ids = intersect(ids, graph.getNodesWithAttribute(graph.getAttributeKeyId(key)));
+		}
+		for (int i = 0; i < rangeKeys.size(); ++i) {
+			int keyId = graph.getAttributeKeyId(rangeKeys.get(i));
+			if (!graph.isReused()) {
+				// sorting the numbers costs more than checking the comparison (it's part of the residual expression) for them once:
+				ids = intersect(ids, graph.getNodesWithAttribute(keyId));
+				continue;
+			}
+			double[] range = ranges.get(i);
+			boolean[] bounds = inclusive.get(i);
+			int[] inRange = graph.getNodesWithAttributeBetween(keyId, range[0], bounds[0], range[1], bounds[1]);
+			ids = intersect(ids, union(inRange, graph.getNodesWithOtherAttribute(keyId)));
+		}
+		return ids;
+	}
+
+	/**
+	 * checks a single node against the lookups (like seed does for all nodes of a graph at once).
+	 *
+	 * @param node a node
+	 * @return true if the node would be looked up as a candidate
+	 */
+	public boolean accepts(Node node) {
+		for (int i = 0; i < equalKeys.size(); ++i) {
+			if (!equalValues.get(i).equals(node.getAttribute(equalKeys.get(i)))) {
+				return false;
+			}
+		}
+		for (String key: presentKeys) {
+			if (node.getAttribute(key) == null) {
+				return false;
+			}
+		}
+		for (int i = 0; i < rangeKeys.size(); ++i) {
+			Object value = node.getAttribute(rangeKeys.get(i));
+			if (value == null) {
+				return false;
+			}
+			Double number = FrozenGraph.numberOf(value);
+			if (number != null && !within(number, ranges.get(i), inclusive.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param one ascending ids (or null for all ids)
+	 * @param other ascending ids
+	 * @return the ids contained in both (ascending)
+	 */
+	public static int[] intersect(int[] one, int[] other) {
+		if (one == null) {
+			return other;
+		}
+		int[] result = new int[Math.min(one.length, other.length)];
+		int count = 0;
+		for (int i = 0, j = 0; i < one.length && j < other.length;) {
+			if (one[i] < other[j]) {
+				++i;
+			} else if (one[i] > other[j]) {
+				++j;
+			} else {
+				result[count++] = one[i];
+				++i;
+				++j;
+			}
+		}
+		return count == result.length ? result : Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * @param one ascending ids
+	 * @param other ascending ids
+	 * @return the ids contained in either (ascending)
+	 */
+	public static int[] union(int[] one, int[] other) {
+		if (other.length == 0) {
+			return one;
+		}
+		if (one.length == 0) {
+			return other;
+		}
+		int[] result = new int[one.length + other.length];
+		int count = 0;
+		int i = 0, j = 0;
+		while (i < one.length || j < other.length) {
+			if (j == other.length || (i < one.length && one[i] < other[j])) {
+				result[count++] = one[i++];
+			} else if (i == one.length || other[j] < one[i]) {
+				result[count++] = other[j++];
+			} else {
+				result[count++] = one[i++];
+				++j;
+			}
+		}
+		return count == result.length ? result : Arrays.copyOf(result, count);
+	}
+
+}
@@ -0,0 +1,554 @@
+package org.fujaba.graphengine;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.fujaba.graphengine.graph.AttributeType;
+import org.fujaba.graphengine.graph.Node;
+
+/**
+ * The CompiledExpression of an attribute match expression is the expression parsed once into a tree of terms,
+ * which is evaluated directly on the attributes of a node (instead of being parsed by the expression library for every node).
+ *
+ * The syntax is the one of the expression library (jeval): numbers, String literals in single quotes, attributes (like "#{count}"),
+ * the operators ||, &amp;&amp;, == and !=, &lt;, &lt;=, &gt; and &gt;=, + and -, *, / and % (in that order of increasing precedence),
+ * the unary operators !, - and + and the functions abs, ceil, floor, round, sqrt, pow, min, max, length and indexOf.
+ * Just like the expression library, all numbers are doubles, booleans are 1.0 and 0.0, missing attributes are 0.0,
+ * an expression is fulfilled, if it yields 1.0, and any error means, the expression isn't fulfilled.
+ *
+ * Expressions beyond that syntax and attribute values, that the expression library would read differently
+ * (like objects or Strings containing quotes), are still evaluated by the expression library.
+ */
+public class CompiledExpression {
+
+	/**
+	 * the result of a term, that the expression library would fail on
+	 */
+	private static final Object ERROR = new Object();
+	/**
+	 * the result of a term, that needs to be evaluated by the expression library
+	 */
+	private static final Object UNSUPPORTED = new Object();
+
+	private static final int OR = 0, AND = 1, EQUAL = 2, NOT_EQUAL = 3, LESS = 4, LESS_EQUAL = 5, GREATER = 6, GREATER_EQUAL = 7,
+			PLUS = 8, MINUS = 9, TIMES = 10, DIVIDE = 11, MODULO = 12;
+	private static final String[][] OPERATORS = {
+			{"||"}, {"&&"}, {"==", "!="}, {"<=", "<", ">=", ">"}, {"+", "-"}, {"*", "/", "%"}
+	};
+	private static final int[][] OPERATOR_CODES = {
+			{OR}, {AND}, {EQUAL, NOT_EQUAL}, {LESS_EQUAL, LESS, GREATER_EQUAL, GREATER}, {PLUS, MINUS}, {TIMES, DIVIDE, MODULO}
+	};
+
+	private static ConcurrentHashMap<String, CompiledExpression> cache = new ConcurrentHashMap<String, CompiledExpression>();
+
+	private String expression;
+	/**
+	 * the parsed expression, or null if it needs to be evaluated by the expression library
+	 */
+	private Term term;
+
+	/**
+	 * @param expression an attribute match expression (may be null)
+	 * @return the (cached) compiled expression
+	 */
+	public static CompiledExpression of(String expression) {
+		if (expression == null) {
+			expression = "";
+		}
+		CompiledExpression compiled = cache.get(expression);
+		if (compiled == null) {
+			compiled = new CompiledExpression(expression);
+			cache.put(expression, compiled);
+		}
+		return compiled;
+	}
+
+	private CompiledExpression(String expression) {
+		this.expression = expression;
+		if ("".equals(expression)) {
+			// 'no condition' is always fulfilled:
+			this.term = new Constant(1.0);
+			return;
+		}
+		try {
+			this.term = new Parser(expression).parse();
+		} catch (IllegalArgumentException e) {
+			this.term = null; // left to the expression library
+		}
+	}
+
+	public String getExpression() {
+		return expression;
+	}
+
+	/**
+	 * @return true if the expression is evaluated without the expression library
+	 */
+	public boolean isCompiled() {
+		return term != null;
+	}
+
+	/**
+	 * @param node the node, whose attributes are used
+	 * @return true if the expression is fulfilled for the node
+	 */
+	public boolean evaluate(Node node) {
+		if (term != null) {
+			Object value = term.evaluate(node);
+			if (value != UNSUPPORTED) {
+				return value instanceof Double && (Double)value == 1.0;
+			}
+		}
+		return PatternEngine.evaluate(PatternEngine.getNodeEvaluator(node), expression);
+	}
+
+	/**
+	 * @param value the value of an attribute
+	 * @return the value, as the expression library would read it
+	 */
+	private static Object valueOf(Object value) {
+		switch (AttributeType.of(value)) {
+		case STRING:
+			String string = (String)value;
+			return string.indexOf('\'') == -1 && string.indexOf('#') == -1 ? string : UNSUPPORTED;
+		case BOOLEAN:
+			return (Boolean)value ? 1.0 : 0.0;
+		case INTEGER:
+		case LONG:
+			return ((Number)value).doubleValue();
+		case DOUBLE:
+			// the expression library can't read every way a double is written:
+			Double number = (Double)value;
+			if (Double.isNaN(number) || Double.isInfinite(number) || number.toString().indexOf('E') != -1 || number.equals(-0.0)) {
+				return UNSUPPORTED;
+			}
+			return number;
+		default:
+			return UNSUPPORTED;
+		}
+	}
+
+	private static abstract class Term {
+		abstract Object evaluate(Node node);
+	}
+
+	private static class Constant extends Term {
+		private final Object value;
+
+		Constant(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		Object evaluate(Node node) {
+			return value;
+		}
+	}
+
+	private static class Attribute extends Term {
+		private final String name;
+		/**
+		 * the value of a missing attribute (the expression library knows PI and E)
+		 */
+		private final Double missing;
+		/**
+		 * true within the arguments of a function, where the expression library inserts the value as text
+		 */
+		private final boolean inserted;
+
+		Attribute(String name, boolean inserted) {
+			this.name = name;
+			this.missing = "PI".equals(name) ? Math.PI : "E".equals(name) ? Math.E : 0.0;
+			this.inserted = inserted;
+		}
+
+		@Override
+		Object evaluate(Node node) {
+			if (!node.hasAttribute(name)) {
+				return missing;
+			}
+			Object value = valueOf(node.getAttribute(name));
+			if (inserted && value instanceof String && !isPlainArgument((String)value)) {
+				return UNSUPPORTED; // the expression library splits the arguments of a function as text
+			}
+			return value;
+		}
+	}
+
+	private static class Unary extends Term {
+		private final char operator;
+		private final Term operand;
+
+		Unary(char operator, Term operand) {
+			this.operator = operator;
+			this.operand = operand;
+		}
+
+		@Override
+		Object evaluate(Node node) {
+			Object value = operand.evaluate(node);
+			if (value == UNSUPPORTED || value == ERROR) {
+				return value;
+			}
+			if (!(value instanceof Double)) {
+				return ERROR;
+			}
+			double number = (Double)value;
+			if (operand instanceof Attribute && ((Attribute)operand).inserted && number < 0) {
+				// a negative value inserted as text makes two consecutive unary operators, that the expression library handles differently:
+				return UNSUPPORTED;
+			}
+			switch (operator) {
+			case '!':
+				return number == 1.0 ? 0.0 : 1.0;
+			case '-':
+				return -number;
+			default:
+				return number;
+			}
+		}
+	}
+
+	private static class Binary extends Term {
+		private final int operator;
+		private final Term left;
+		private final Term right;
+
+		Binary(int operator, Term left, Term right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object evaluate(Node node) {
+			// both sides are always evaluated, because an error on either side fails the whole expression:
+			Object one = left.evaluate(node);
+			Object other = right.evaluate(node);
+			if (one == UNSUPPORTED || other == UNSUPPORTED) {
+				return UNSUPPORTED;
+			}
+			if (one == ERROR || other == ERROR) {
+				return ERROR;
+			}
+			if (one instanceof Double && other instanceof Double) {
+				return evaluate((Double)one, (Double)other);
+			}
+			if (one instanceof String && other instanceof String) {
+				return evaluate((String)one, (String)other);
+			}
+			return ERROR;
+		}
+
+		private Object evaluate(double one, double other) {
+			switch (operator) {
+			case OR:
+				return one == 1.0 || other == 1.0 ? 1.0 : 0.0;
+			case AND:
+				return one == 1.0 && other == 1.0 ? 1.0 : 0.0;
+			case EQUAL:
+				return one == other ? 1.0 : 0.0;
+			case NOT_EQUAL:
+				return one != other ? 1.0 : 0.0;
+			case LESS:
+				return one < other ? 1.0 : 0.0;
+			case LESS_EQUAL:
+				return one <= other ? 1.0 : 0.0;
+			case GREATER:
+				return one > other ? 1.0 : 0.0;
+			case GREATER_EQUAL:
+				return one >= other ? 1.0 : 0.0;
+			case PLUS:
+				return one + other;
+			case MINUS:
+				return one - other;
+			case TIMES:
+				return one * other;
+			case DIVIDE:
+				return one / other;
+			default:
+				return one % other;
+			}
+		}
+
+		private Object evaluate(String one, String other) {
+			switch (operator) {
+			case EQUAL:
+				return one.equals(other) ? 1.0 : 0.0;
+			case NOT_EQUAL:
+				return one.equals(other) ? 0.0 : 1.0;
+			case LESS:
+				return compare(one, other) < 0 ? 1.0 : 0.0;
+			case LESS_EQUAL:
+				return compare(one, other) <= 0 ? 1.0 : 0.0;
+			case GREATER:
+				return compare(one, other) > 0 ? 1.0 : 0.0;
+			case GREATER_EQUAL:
+				return compare(one, other) >= 0 ? 1.0 : 0.0;
+			case PLUS:
+				return one + other;
+			default:
+				return ERROR;
+			}
+		}
+	}
+
+	/**
+	 * compares two Strings like the expression library does: including their closing quotes.
+	 */
+	private static int compare(String one, String other) {
+		int length = Math.min(one.length(), other.length());
+		for (int i = 0; i < length; ++i) {
+			if (one.charAt(i) != other.charAt(i)) {
+				return one.charAt(i) - other.charAt(i);
+			}
+		}
+		if (one.length() == other.length()) {
+			return 0;
+		}
+		return one.length() > length ? one.charAt(length) - '\'' : '\'' - other.charAt(length);
+	}
+
+	private static boolean isPlainArgument(String value) {
+		return value.indexOf(',') == -1 && value.indexOf('(') == -1 && value.indexOf(')') == -1;
+	}
+
+	private static class Function extends Term {
+		private final String name;
+		private final Term[] arguments;
+
+		Function(String name, Term[] arguments) {
+			this.name = name;
+			this.arguments = arguments;
+		}
+
+		@Override
+		Object evaluate(Node node) {
+			Object[] values = new Object[arguments.length];
+			boolean error = false;
+			for (int i = 0; i < arguments.length; ++i) {
+				values[i] = arguments[i].evaluate(node);
+				if (values[i] == UNSUPPORTED) {
+					return UNSUPPORTED;
+				}
+				error |= values[i] == ERROR;
+			}
+			if (error) {
+				return ERROR;
+			}
+			if ("length".equals(name)) {
+				return values[0] instanceof String ? (double)((String)values[0]).length() : ERROR;
+			}
+			if ("indexOf".equals(name)) {
+				if (!(values[0] instanceof String) || !(values[1] instanceof String) || !(values[2] instanceof Double)) {
+					return ERROR;
+				}
+				return (double)((String)values[0]).indexOf((String)values[1], ((Double)values[2]).intValue());
+			}
+			for (Object value: values) {
+				if (!(value instanceof Double)) {
+					return ERROR;
+				}
+			}
+			double one = (Double)values[0];
+			switch (name) {
+			case "abs":
+				return Math.abs(one);
+			case "ceil":
+				return Math.ceil(one);
+			case "floor":
+				return Math.floor(one);
+			case "round":
+				return (double)Math.round(one);
+			case "sqrt":
+				return Math.sqrt(one);
+			case "pow":
+				return Math.pow(one, (Double)values[1]);
+			case "min":
+				return Math.min(one, (Double)values[1]);
+			default:
+				return Math.max(one, (Double)values[1]);
+			}
+		}
+
+		/**
+		 * @param name the name of a function
+		 * @return the number of arguments of the function, or -1 if it isn't supported
+		 */
+		static int argumentCount(String name) {
+			switch (name) {
+			case "abs":
+			case "ceil":
+			case "floor":
+			case "round":
+			case "sqrt":
+			case "length":
+				return 1;
+			case "pow":
+			case "min":
+			case "max":
+				return 2;
+			case "indexOf":
+				return 3;
+			default:
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * parses an expression by recursive descent and fails with an IllegalArgumentException on anything it doesn't support.
+	 */
+	private static class Parser {
+		private final String text;
+		private int position = 0;
+		/**
+		 * the number of functions, whose arguments are parsed
+		 */
+		private int functionDepth = 0;
+
+		Parser(String text) {
+			this.text = text;
+		}
+
+		Term parse() {
+			Term term = parseBinary(0);
+			skipSpaces();
+			if (position != text.length()) {
+				throw fail();
+			}
+			return term;
+		}
+
+		private Term parseBinary(int level) {
+			if (level == OPERATORS.length) {
+				return parseUnary();
+			}
+			Term term = parseBinary(level + 1);
+			operators: while (true) {
+				skipSpaces();
+				for (int i = 0; i < OPERATORS[level].length; ++i) {
+					if (text.startsWith(OPERATORS[level][i], position)) {
+						if (OPERATOR_CODES[level][i] == PLUS || OPERATOR_CODES[level][i] == MINUS) {
+							String before = text.substring(0, position).trim();
+							if (before.endsWith(")") && before.substring(0, before.length() - 1).trim().endsWith(")")) {
+								throw fail(); // the expression library fails on some of these (like "(abs(1)) + 1")
+							}
+						}
+						position += OPERATORS[level][i].length();
+						term = new Binary(OPERATOR_CODES[level][i], term, parseBinary(level + 1));
+						continue operators;
+					}
+				}
+				return term;
+			}
+		}
+
+		private Term parseUnary() {
+			skipSpaces();
+			if (position < text.length() && "!-+".indexOf(text.charAt(position)) != -1) {
+				char operator = text.charAt(position++);
+				return new Unary(operator, parsePrimary());
+			}
+			return parsePrimary();
+		}
+
+		private Term parsePrimary() {
+			skipSpaces();
+			if (position == text.length()) {
+				throw fail();
+			}
+			char c = text.charAt(position);
+			if (c == '(') {
+				++position;
+				Term term = parseBinary(0);
+				expect(')');
+				return term;
+			}
+			if (c == '\'') {
+				int end = text.indexOf('\'', position + 1);
+				if (end == -1) {
+					throw fail();
+				}
+				String value = text.substring(position + 1, end);
+				position = end + 1;
+				if (value.indexOf('#') != -1 || (functionDepth > 0 && !isPlainArgument(value))) {
+					throw fail();
+				}
+				return new Constant(value);
+			}
+			if (text.startsWith("#{", position)) {
+				int end = text.indexOf('}', position);
+				if (end == -1) {
+					throw fail();
+				}
+				String name = text.substring(position + 2, end);
+				if (name.length() == 0 || name.indexOf('{') != -1 || name.indexOf('#') != -1) {
+					throw fail();
+				}
+				position = end + 1;
+				return new Attribute(name, functionDepth > 0);
+			}
+			if (c == '.' || Character.isDigit(c)) {
+				return parseNumber();
+			}
+			if (Character.isLetter(c)) {
+				int begin = position;
+				while (position < text.length() && Character.isLetter(text.charAt(position))) {
+					++position;
+				}
+				String name = text.substring(begin, position);
+				int count = Function.argumentCount(name);
+				if (count == -1) {
+					throw fail();
+				}
+				skipSpaces();
+				expect('(');
+				Term[] arguments = new Term[count];
+				++functionDepth;
+				for (int i = 0; i < count; ++i) {
+					if (i > 0) {
+						expect(',');
+					}
+					arguments[i] = parseBinary(0);
+				}
+				--functionDepth;
+				expect(')');
+				return new Function(name, arguments);
+			}
+			throw fail();
+		}
+
+		private Term parseNumber() {
+			int begin = position;
+			boolean point = false;
+			while (position < text.length() && (Character.isDigit(text.charAt(position)) || (text.charAt(position) == '.' && !point))) {
+				point |= text.charAt(position) == '.';
+				++position;
+			}
+			String number = text.substring(begin, position);
+			if (".".equals(number) || (position < text.length() && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '.'))) {
+				throw fail();
+			}
+			return new Constant(Double.parseDouble(number));
+		}
+
+		private void expect(char c) {
+			skipSpaces();
+			if (position == text.length() || text.charAt(position) != c) {
+				throw fail();
+			}
+			++position;
+		}
+
+		private void skipSpaces() {
+			while (position < text.length() && text.charAt(position) == ' ') {
+				++position;
+			}
+		}
+
+		private IllegalArgumentException fail() {
+			return new IllegalArgumentException("unsupported expression at " + position + ": " + text);
+		}
+	}
+
+}
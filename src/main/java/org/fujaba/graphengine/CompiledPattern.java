@@ -0,0 +1,765 @@
+package org.fujaba.graphengine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.fujaba.graphengine.graph.FrozenGraph;
+import org.fujaba.graphengine.graph.Node;
+import org.fujaba.graphengine.pattern.PatternAttribute;
+import org.fujaba.graphengine.pattern.PatternEdge;
+import org.fujaba.graphengine.pattern.PatternGraph;
+import org.fujaba.graphengine.pattern.PatternNode;
+
+/**
+ * The CompiledPattern is the plan to match (and apply) a PatternGraph,
+ * so it doesn't need to be worked out again for every graph the pattern is matched on.
+ *
+ * It contains the order, in which the pattern nodes are matched (first all positive nodes, then the sets of negative nodes),
+ * the parsed actions and edge variables of the pattern elements and the edge constraints between the pattern nodes,
+ * resolved to the positions of their other pattern nodes within that order.
+ * The plan of a pattern is cached by the pattern itself and compiled again, as soon as the pattern was changed.
+ */
+public class CompiledPattern {
+
+	/**
+	 * the parsed action of a PatternElement
+	 */
+	public enum Action {
+		MATCH, NOT, CREATE, DELETE;
+
+		/**
+		 * @param action an action String ("==", "!=", "+" or "-")
+		 * @return the parsed action, or null if it's unknown
+		 */
+		public static Action of(String action) {
+			if (action == null) {
+				return null;
+			}
+			switch (action) {
+			case "==":
+				return MATCH;
+			case "!=":
+				return NOT;
+			case "+":
+				return CREATE;
+			case "-":
+				return DELETE;
+			default:
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * the plan of a PatternAttribute
+	 */
+	static class AttributePlan {
+		final PatternAttribute patternAttribute;
+		final Action action;
+		/**
+		 * the attribute's expression (if its value is one, a missing value is no condition)
+		 */
+		final CompiledExpression expression;
+		/**
+		 * the lookups of the attribute's expression, if it needs to be fulfilled (or else null)
+		 */
+		final CandidateSeeds seeds;
+
+		AttributePlan(PatternAttribute patternAttribute) {
+			this.patternAttribute = patternAttribute;
+			this.action = Action.of(patternAttribute.getAction());
+			this.expression = patternAttribute.getValue() == null || patternAttribute.getValue() instanceof String ? CompiledExpression.of((String)patternAttribute.getValue()) : null;
+			this.seeds = expression == null || action == Action.NOT ? null : CandidateSeeds.of(expression.getExpression());
+		}
+	}
+
+	/**
+	 * the plan of a PatternEdge
+	 */
+	static class EdgePlan {
+		final PatternEdge patternEdge;
+		final String name;
+		final int symbol;
+		final ArrayList<String> variableNames;
+		final Action action;
+		/**
+		 * the position of the edge's target within the plans of the pattern nodes (-1 if it isn't part of the pattern)
+		 */
+		int target = -1;
+
+		EdgePlan(PatternEdge patternEdge) {
+			this.patternEdge = patternEdge;
+			this.name = patternEdge.getName();
+			this.variableNames = PatternEngine.extractVariableNames(name);
+			this.symbol = variableNames.isEmpty() ? patternEdge.getSymbol() : -1;
+			this.action = Action.of(patternEdge.getAction());
+		}
+
+		/**
+		 * checks if a pair of nodes fulfills this edge (respecting its action).
+		 * for edges with variables, the labels of the matching edges are put into the edge match.
+		 *
+		 * @param source the node matched by the edge's source
+		 * @param target the node matched by the edge's target
+		 * @param edgeMatch the labels matched by the edge variables (may be null)
+		 * @return true if the edge is fulfilled
+		 */
+		boolean isFulfilled(Node source, Node target, HashMap<String, String> edgeMatch) {
+			boolean exists = false;
+			if (variableNames.isEmpty()) {
+				ArrayList<Node> targets = source.getEdges(symbol);
+				exists = targets != null && targets.contains(target);
+			} else {
+				//##### NEW TTC2017 FEATURE:
+				int numberOfEdgesFound = 0;
+				for (String label: source.getEdges().keySet()) {
+					if (source.getEdges(label).contains(target)) {
+						if (edgeMatch != null) {
+							edgeMatch.put(variableNames.get(numberOfEdgesFound), "'" + label + "'");
+						}
+						++numberOfEdgesFound;
+						if (numberOfEdgesFound >= variableNames.size()) {
+							exists = true;
+							break;
+						}
+					}
+				}
+				//#####
+			}
+			return exists != (action == Action.NOT);
+		}
+	}
+
+	/**
+	 * an edge between the pattern node at a position and the pattern node at another (earlier) position
+	 */
+	static class Constraint {
+		final EdgePlan edge;
+		/**
+		 * the position of the other pattern node
+		 */
+		final int other;
+		/**
+		 * true, if the edge goes from the pattern node to the other one, false if it comes from the other one
+		 */
+		final boolean outgoing;
+
+		Constraint(EdgePlan edge, int other, boolean outgoing) {
+			this.edge = edge;
+			this.other = other;
+			this.outgoing = outgoing;
+		}
+
+		/**
+		 * @param node the node matched by the pattern node
+		 * @param otherNode the node matched by the other pattern node
+		 * @param edgeMatch the labels matched by the edge variables (may be null)
+		 * @return true if the edge is fulfilled
+		 */
+		boolean isFulfilled(Node node, Node otherNode, HashMap<String, String> edgeMatch) {
+			return outgoing ? edge.isFulfilled(node, otherNode, edgeMatch) : edge.isFulfilled(otherNode, node, edgeMatch);
+		}
+	}
+
+	/**
+	 * the plan of a PatternNode
+	 */
+	static class NodePlan {
+		final PatternNode patternNode;
+		/**
+		 * the position of this plan within the plans of the pattern nodes
+		 */
+		int position;
+		final Action action;
+		final CandidateSeeds seeds;
+		/**
+		 * the part of the attribute match expression, that isn't covered by the seeds
+		 */
+		final CompiledExpression residualExpression;
+		final EdgePlan[] edges;
+		/**
+		 * the outgoing edges, that need to be checked for every candidate
+		 */
+		final EdgePlan[] checkedEdges;
+		/**
+		 * the attributes, that need to be checked for every candidate
+		 */
+		final AttributePlan[] checkedAttributes;
+		final AttributePlan[] attributes;
+		/**
+		 * the conditions, that only concern a candidate itself (pattern nodes with equal keys have the same candidates in a graph)
+		 */
+		final ArrayList<Object> candidateKey;
+
+		NodePlan(PatternNode patternNode) {
+			this.patternNode = patternNode;
+			this.action = Action.of(patternNode.getAction());
+			this.seeds = CandidateSeeds.of(patternNode.getAttributeMatchExpression());
+			this.residualExpression = CompiledExpression.of(seeds.getResidualExpression());
+			this.edges = new EdgePlan[patternNode.getPatternEdges().size()];
+			ArrayList<EdgePlan> checkedEdges = new ArrayList<EdgePlan>();
+			for (int i = 0; i < edges.length; ++i) {
+				PatternEdge patternEdge = patternNode.getPatternEdges().get(i);
+				edges[i] = new EdgePlan(patternEdge);
+				boolean dontMind = !"!=".equals(patternEdge.getSource().getAction()) && "!=".equals(patternEdge.getTarget().getAction());
+				if (edges[i].action != Action.CREATE && !dontMind) {
+					checkedEdges.add(edges[i]);
+				}
+			}
+			this.checkedEdges = checkedEdges.toArray(new EdgePlan[checkedEdges.size()]);
+			this.attributes = new AttributePlan[patternNode.getPatternAttributes().size()];
+			ArrayList<AttributePlan> checkedAttributes = new ArrayList<AttributePlan>();
+			for (int i = 0; i < attributes.length; ++i) {
+				attributes[i] = new AttributePlan(patternNode.getPatternAttributes().get(i));
+				if (attributes[i].action != Action.CREATE) {
+					checkedAttributes.add(attributes[i]);
+				}
+			}
+			this.checkedAttributes = checkedAttributes.toArray(new AttributePlan[checkedAttributes.size()]);
+			this.candidateKey = new ArrayList<Object>();
+			candidateKey.add(patternNode.getAttributeMatchExpression());
+			for (EdgePlan edgePlan: this.checkedEdges) {
+				candidateKey.add(edgePlan.action);
+				// an edge with variables only needs as many different outgoing labels, as it has variables:
+				candidateKey.add(edgePlan.variableNames.isEmpty() ? edgePlan.name : edgePlan.variableNames.size());
+			}
+			for (AttributePlan attributePlan: this.checkedAttributes) {
+				candidateKey.add(attributePlan.action);
+				candidateKey.add(attributePlan.patternAttribute.getValue());
+			}
+		}
+	}
+
+	/**
+	 * a step of the search: a pattern node at its position within the order to match them
+	 */
+	static class Step {
+		final NodePlan node;
+		/**
+		 * the edges from this pattern node to itself (positive nodes only)
+		 */
+		final Constraint[] selfConstraints;
+		/**
+		 * the edges to and from pattern nodes at earlier positions of the same list (sorted by those positions)
+		 */
+		final Constraint[] constraints;
+		/**
+		 * the edges to and from positive pattern nodes (negative nodes only)
+		 */
+		final Constraint[] positiveConstraints;
+		/**
+		 * the edges to and from pattern nodes at earlier positions, that need to exist,
+		 * so the candidates of this pattern node can be looked up among the neighbours of the nodes matched by those.
+		 * empty if checking the candidates has side effects (binds edge variables), which skipping them would change.
+		 */
+		Constraint[] drivers = new Constraint[0];
+		/**
+		 * the edges to and from positive pattern nodes, that need to exist,
+		 * so the candidates of this pattern node can be looked up among the neighbours of the matched positive nodes (negative nodes only).
+		 */
+		Constraint[] positiveDrivers = new Constraint[0];
+		/**
+		 * the positions of the later pattern nodes with drivers (after the next one), that have edges to or from this pattern node
+		 * and an earlier one,
+		 * so their candidates can be narrowed down, as soon as this one is matched (positive nodes only).
+		 */
+		int[] followers = new int[0];
+
+		Step(NodePlan node, Constraint[] selfConstraints, Constraint[] constraints, Constraint[] positiveConstraints) {
+			this.node = node;
+			this.selfConstraints = selfConstraints;
+			this.constraints = constraints;
+			this.positiveConstraints = positiveConstraints;
+		}
+
+		/**
+		 * @return true if any edge to itself or to an earlier position binds edge variables
+		 */
+		boolean bindsVariables() {
+			for (Constraint constraint: selfConstraints) {
+				if (!constraint.edge.variableNames.isEmpty()) {
+					return true;
+				}
+			}
+			for (Constraint constraint: constraints) {
+				if (!constraint.edge.variableNames.isEmpty()) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private PatternGraph pattern;
+	/**
+	 * the elements and values of the pattern, that this plan was compiled from
+	 */
+	private Object[] elements;
+	/**
+	 * the plans of the pattern nodes (in the order of the pattern)
+	 */
+	private NodePlan[] nodes;
+	/**
+	 * the pattern nodes in the order to match them (level 0: positive nodes, level > 0: sets of negative nodes)
+	 */
+	private ArrayList<ArrayList<PatternNode>> nodeMatchLists;
+	/**
+	 * the steps of the search (level 0: positive nodes, level > 0: sets of negative nodes)
+	 */
+	private Step[][] steps;
+	/**
+	 * the original positions of the positive nodes in the order of this plan (null if it's the original order)
+	 */
+	private int[] order;
+	/**
+	 * the plans with other orders of the positive nodes (only for the plan with the original order)
+	 */
+	private ConcurrentHashMap<String, CompiledPattern> orderings;
+
+	/**
+	 * @param pattern a pattern
+	 * @return the (cached) plan of the pattern
+	 */
+	public static CompiledPattern of(PatternGraph pattern) {
+		// the plan is kept by the pattern itself, so it's collected together with the pattern:
+		CompiledPattern compiled = pattern.getCompiledPattern();
+		if (compiled == null || !compiled.isCompiledFrom(pattern)) {
+			compiled = new CompiledPattern(pattern);
+			pattern.setCompiledPattern(compiled);
+		}
+		return compiled;
+	}
+
+	private CompiledPattern(PatternGraph pattern) {
+		this.pattern = pattern;
+		ArrayList<Object> elements = elementsOf(pattern);
+		this.elements = elements.toArray(new Object[elements.size()]);
+		HashMap<PatternNode, NodePlan> plans = new HashMap<PatternNode, NodePlan>();
+		this.nodes = new NodePlan[pattern.getPatternNodes().size()];
+		for (int i = 0; i < nodes.length; ++i) {
+			nodes[i] = new NodePlan(pattern.getPatternNodes().get(i));
+			nodes[i].position = i;
+			plans.put(nodes[i].patternNode, nodes[i]);
+		}
+		for (NodePlan node: nodes) {
+			for (EdgePlan edge: node.edges) {
+				NodePlan target = plans.get(edge.patternEdge.getTarget());
+				edge.target = target != null ? target.position : -1;
+			}
+		}
+		this.nodeMatchLists = calculateNodeMatchingLists(pattern);
+		NodePlan[][] levels = new NodePlan[nodeMatchLists.size()][];
+		for (int level = 0; level < levels.length; ++level) {
+			levels[level] = new NodePlan[nodeMatchLists.get(level).size()];
+			for (int i = 0; i < levels[level].length; ++i) {
+				levels[level][i] = plans.get(nodeMatchLists.get(level).get(i));
+			}
+		}
+		this.steps = steps(levels);
+		this.orderings = new ConcurrentHashMap<String, CompiledPattern>();
+	}
+
+	/**
+	 * creates a plan with another order of the positive nodes.
+	 *
+	 * @param compiled the plan with the original order
+	 * @param order the original positions of the positive nodes in the new order
+	 */
+	private CompiledPattern(CompiledPattern compiled, int[] order) {
+		this.pattern = compiled.pattern;
+		this.elements = compiled.elements;
+		this.nodes = compiled.nodes;
+		this.order = order;
+		this.nodeMatchLists = new ArrayList<ArrayList<PatternNode>>(compiled.nodeMatchLists);
+		this.nodeMatchLists.set(0, new ArrayList<PatternNode>());
+		NodePlan[][] levels = new NodePlan[compiled.steps.length][];
+		for (int level = 0; level < levels.length; ++level) {
+			levels[level] = new NodePlan[compiled.steps[level].length];
+			for (int i = 0; i < levels[level].length; ++i) {
+				levels[level][i] = compiled.steps[level][level == 0 ? order[i] : i].node;
+			}
+		}
+		for (NodePlan node: levels[0]) {
+			this.nodeMatchLists.get(0).add(node.patternNode);
+		}
+		this.steps = steps(levels);
+	}
+
+	/**
+	 * resolves the edge constraints of the pattern nodes to their positions.
+	 *
+	 * @param levels the plans of the pattern nodes in the order to match them
+	 * @return the steps of the search
+	 */
+	private static Step[][] steps(NodePlan[][] levels) {
+		Step[][] steps = new Step[levels.length][];
+		for (int level = 0; level < levels.length; ++level) {
+			steps[level] = new Step[levels[level].length];
+			for (int i = 0; i < levels[level].length; ++i) {
+				NodePlan node = levels[level][i];
+				ArrayList<Constraint> selfConstraints = new ArrayList<Constraint>();
+				if (level == 0) {
+					selfConstraints = constraints(node, node, i);
+				}
+				ArrayList<Constraint> constraints = new ArrayList<Constraint>();
+				for (int j = 0; j < i; ++j) {
+					constraints.addAll(constraints(node, levels[level][j], j));
+				}
+				ArrayList<Constraint> positiveConstraints = new ArrayList<Constraint>();
+				if (level > 0) {
+					for (int k = 0; k < levels[0].length; ++k) {
+						positiveConstraints.addAll(constraints(node, levels[0][k], k));
+					}
+				}
+				steps[level][i] = new Step(node,
+						selfConstraints.toArray(new Constraint[selfConstraints.size()]),
+						constraints.toArray(new Constraint[constraints.size()]),
+						positiveConstraints.toArray(new Constraint[positiveConstraints.size()]));
+			}
+		}
+		// the edges, that can be followed to look up the candidates of the positive nodes:
+		for (int i = 1; i < steps[0].length; ++i) {
+			// (the edges to itself of the first node are checked together with the second one)
+			if (steps[0][i].bindsVariables() || (i == 1 && steps[0][0].bindsVariables())) {
+				continue;
+			}
+			ArrayList<Constraint> drivers = new ArrayList<Constraint>();
+			for (Constraint constraint: steps[0][i].constraints) {
+				if (constraint.edge.action != Action.NOT) {
+					drivers.add(constraint);
+				}
+			}
+			steps[0][i].drivers = drivers.toArray(new Constraint[drivers.size()]);
+		}
+		// the candidates of the nodes after a matched one can be narrowed down (unless skipping some checks would change the edge variables):
+		boolean bindsVariables = false;
+		for (Step step: steps[0]) {
+			bindsVariables |= step.bindsVariables();
+		}
+		for (int i = 0; i < steps[0].length && !bindsVariables; ++i) {
+			ArrayList<Integer> followers = new ArrayList<Integer>();
+			/*
+			 * (the next node's candidates are checked right after this one is matched anyway,
+			 * and the candidates of a node connected only to this one would just be its neighbours)
+			 */
+			for (int k = i + 2; k < steps[0].length; ++k) {
+				if (steps[0][k].drivers.length == 0) {
+					continue;
+				}
+				boolean before = false, here = false;
+				for (Constraint constraint: steps[0][k].constraints) {
+					before |= constraint.other < i;
+					here |= constraint.other == i;
+				}
+				if (before && here) {
+					followers.add(k);
+				}
+			}
+			steps[0][i].followers = new int[followers.size()];
+			for (int k = 0; k < followers.size(); ++k) {
+				steps[0][i].followers[k] = followers.get(k);
+			}
+		}
+		// the edges, that can be followed to look up the candidates of the negative nodes (they don't bind edge variables):
+		for (int level = 1; level < steps.length; ++level) {
+			for (Step step: steps[level]) {
+				step.drivers = drivers(step.constraints);
+				step.positiveDrivers = drivers(step.positiveConstraints);
+			}
+		}
+		return steps;
+	}
+
+	/**
+	 * @param constraints the edges to and from other pattern nodes
+	 * @return the edges, that need to exist and have a fixed label
+	 */
+	private static Constraint[] drivers(Constraint[] constraints) {
+		ArrayList<Constraint> drivers = new ArrayList<Constraint>();
+		for (Constraint constraint: constraints) {
+			if (constraint.edge.action != Action.NOT && constraint.edge.variableNames.isEmpty()) {
+				drivers.add(constraint);
+			}
+		}
+		return drivers.toArray(new Constraint[drivers.size()]);
+	}
+
+	/**
+	 * @param node a pattern node's plan
+	 * @param other another pattern node's plan (or the same for edges to itself)
+	 * @param position the position of the other pattern node
+	 * @return the edges to be checked from the pattern node to the other one, followed by those from the other one to the pattern node
+	 */
+	private static ArrayList<Constraint> constraints(NodePlan node, NodePlan other, int position) {
+		ArrayList<Constraint> constraints = new ArrayList<Constraint>();
+		for (EdgePlan edge: node.edges) {
+			if (edge.action != Action.CREATE && edge.patternEdge.getTarget() == other.patternNode) {
+				constraints.add(new Constraint(edge, position, true));
+			}
+		}
+		if (other == node) {
+			return constraints;
+		}
+		for (EdgePlan edge: other.edges) {
+			if (edge.action != Action.CREATE && edge.patternEdge.getTarget() == node.patternNode) {
+				constraints.add(new Constraint(edge, position, false));
+			}
+		}
+		return constraints;
+	}
+
+	/**
+	 * lists the elements and values of a pattern, that its plan depends on (always in the same order).
+	 *
+	 * @param pattern the pattern
+	 * @return the elements and values of the pattern
+	 */
+	private static ArrayList<Object> elementsOf(PatternGraph pattern) {
+		ArrayList<Object> elements = new ArrayList<Object>();
+		elements.add(pattern.getPatternNodes());
+		elements.add(pattern.getPatternNodes().size());
+		for (PatternNode patternNode: pattern.getPatternNodes()) {
+			elements.add(patternNode);
+			elements.add(patternNode.getAction());
+			elements.add(patternNode.getAttributeMatchExpression());
+			elements.add(patternNode.getPatternAttributes());
+			elements.add(patternNode.getPatternAttributes().size());
+			for (PatternAttribute patternAttribute: patternNode.getPatternAttributes()) {
+				elements.add(patternAttribute);
+				elements.add(patternAttribute.getAction());
+				elements.add(patternAttribute.getValue());
+			}
+			elements.add(patternNode.getPatternEdges());
+			elements.add(patternNode.getPatternEdges().size());
+			for (PatternEdge patternEdge: patternNode.getPatternEdges()) {
+				elements.add(patternEdge);
+				elements.add(patternEdge.getAction());
+				elements.add(patternEdge.getName());
+				elements.add(patternEdge.getSource());
+				elements.add(patternEdge.getSource() == null ? null : patternEdge.getSource().getAction());
+				elements.add(patternEdge.getTarget());
+				elements.add(patternEdge.getTarget() == null ? null : patternEdge.getTarget().getAction());
+			}
+		}
+		return elements;
+	}
+
+	/**
+	 * @param pattern a pattern
+	 * @return true if this plan was compiled from the pattern in its current state
+	 */
+	private boolean isCompiledFrom(PatternGraph pattern) {
+		if (this.pattern != pattern) {
+			return false;
+		}
+		ArrayList<Object> current = elementsOf(pattern);
+		if (current.size() != elements.length) {
+			return false;
+		}
+		for (int i = 0; i < elements.length; ++i) {
+			Object element = current.get(i);
+			if (element != elements[i] && !(element instanceof Integer && element.equals(elements[i]))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static ArrayList<ArrayList<PatternNode>> doDepthFirstExplore(ArrayList<PatternNode> patternNodes) {
+		ArrayList<ArrayList<PatternNode>> result = new ArrayList<ArrayList<PatternNode>>();
+		ArrayList<PatternNode> unprocessed = new ArrayList<PatternNode>(patternNodes);
+		while (unprocessed.size() > 0) {
+			PatternNode start = unprocessed.remove(0);
+			ArrayList<PatternNode> open = new ArrayList<PatternNode>();
+			ArrayList<PatternNode> closed = new ArrayList<PatternNode>();
+			open.add(start);
+			while (open.size() > 0) {
+				PatternNode current = open.remove(0);
+				closed.add(current);
+				ArrayList<PatternNode> succ = new ArrayList<PatternNode>();
+				for (PatternEdge patternEdge: current.getPatternEdges()) {
+					if (!open.contains(patternEdge.getTarget())
+							&& !closed.contains(patternEdge.getTarget())
+							&& !succ.contains(patternEdge.getTarget())
+							&& unprocessed.contains(patternEdge.getTarget())) {
+						succ.add(patternEdge.getTarget());
+					}
+				}
+				for (PatternNode ingoing: unprocessed) {
+					for (PatternEdge patternEdge: ingoing.getPatternEdges()) {
+						if (patternEdge.getTarget() == current
+								&& !open.contains(ingoing)
+								&& !closed.contains(ingoing)
+								&& !succ.contains(ingoing)) {
+							succ.add(ingoing);
+							break;
+						}
+					}
+				}
+				open.addAll(succ);
+			}
+			unprocessed.removeAll(closed);
+			result.add(closed);
+		}
+		return result;
+	}
+
+	private static ArrayList<ArrayList<PatternNode>> calculateNodeMatchingLists(PatternGraph pattern) {
+		ArrayList<ArrayList<PatternNode>> result = new ArrayList<ArrayList<PatternNode>>();
+		result.add(new ArrayList<PatternNode>()); // positive list
+
+		// first check which nodes are positive and which nodes are negative (don't mind 'neutral' nodes):
+		ArrayList<PatternNode> positiveNodes = new ArrayList<PatternNode>();
+		ArrayList<PatternNode> negativeNodes = new ArrayList<PatternNode>();
+		for (PatternNode node: pattern.getPatternNodes()) {
+			switch (node.getAction()) {
+			case "==":
+			case "-":
+				positiveNodes.add(node);
+				break;
+			case "+":
+				break;
+			case "!=":
+				negativeNodes.add(node);
+				break;
+			default:
+				try {
+					throw new IOException("can't handle PatternNode action '" + node.getAction() + "'!");
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		// now do continuous depth-first 'explore's until all positive nodes are in a 'clever' order for later checks:
+		ArrayList<ArrayList<PatternNode>> positiveLists = doDepthFirstExplore(positiveNodes);
+		for (ArrayList<PatternNode> listPart: positiveLists) {
+			result.get(0).addAll(listPart);
+		}
+
+		// finally do continuous depth-first 'explore's for negative nodes, but this time yielding separate node lists:
+		ArrayList<ArrayList<PatternNode>> negativeLists = doDepthFirstExplore(negativeNodes);
+		result.addAll(negativeLists);
+
+		return result;
+	}
+
+	/**
+	 * plans the order, in which the positive nodes are matched on a graph:
+	 * starting with the pattern node with the fewest candidates, the next pattern node is always one,
+	 * that's connected to the already planned ones (if there's any) and leaves the fewest estimated partial matches.
+	 * the partial matches are estimated with the number of candidates and the frequency of the edge labels between them.
+	 * patterns with edge variables keep their original order, because their variables are bound in that order.
+	 *
+	 * @param graph the graph to match the pattern on
+	 * @param candidates the candidates of the positive nodes (in the original order)
+	 * @param estimates filled with the estimated number of partial matches after each step (may be null)
+	 * @return the plan with the planned order (this plan, if it's the original order)
+	 */
+	CompiledPattern plan(FrozenGraph graph, ArrayList<ArrayList<Node>> candidates, double[] estimates) {
+		Step[] positives = steps[0];
+		int n = positives.length;
+		// the estimated fraction of pairs of candidates, that fulfill the edges between two pattern nodes:
+		double[][] selectivity = new double[n][n];
+		boolean[][] connected = new boolean[n][n];
+		boolean fixed = false;
+		for (int i = 0; i < n; ++i) {
+			Arrays.fill(selectivity[i], 1.0);
+			for (Constraint constraint: positives[i].selfConstraints) {
+				fixed |= !constraint.edge.variableNames.isEmpty();
+			}
+		}
+		for (int i = 0; i < n; ++i) {
+			for (Constraint constraint: positives[i].constraints) {
+				int j = constraint.other;
+				EdgePlan edge = constraint.edge;
+				fixed |= !edge.variableNames.isEmpty();
+				double fulfilling = Math.min(1.0, graph.getEdgeCount(graph.getLabelId(edge.name)) / ((double)candidates.get(i).size() * candidates.get(j).size()));
+				selectivity[i][j] *= edge.action == Action.NOT ? 1.0 - fulfilling : fulfilling;
+				selectivity[j][i] = selectivity[i][j];
+				connected[i][j] = connected[j][i] = true;
+			}
+		}
+		int[] order = new int[n];
+		boolean[] planned = new boolean[n];
+		double partialMatches = 1.0;
+		for (int step = 0; step < n; ++step) {
+			int best = -1;
+			double bestPartialMatches = 0;
+			boolean bestConnected = false;
+			for (int i = 0; i < n; ++i) {
+				if (planned[i]) {
+					continue;
+				}
+				if (fixed) {
+					best = i;
+					bestPartialMatches = partialMatches * candidates.get(i).size();
+					break;
+				}
+				boolean isConnected = false;
+				double estimate = partialMatches * candidates.get(i).size();
+				for (int j = 0; j < n; ++j) {
+					if (planned[j]) {
+						estimate *= selectivity[i][j];
+						isConnected |= connected[i][j];
+					}
+				}
+				if (best < 0 || (isConnected && !bestConnected) || (isConnected == bestConnected && estimate < bestPartialMatches)) {
+					best = i;
+					bestPartialMatches = estimate;
+					bestConnected = isConnected;
+				}
+			}
+			order[step] = best;
+			planned[best] = true;
+			partialMatches = bestPartialMatches;
+			if (estimates != null) {
+				estimates[step] = partialMatches;
+			}
+		}
+		boolean original = true;
+		for (int i = 0; i < n; ++i) {
+			original &= order[i] == i;
+		}
+		if (original) {
+			return this;
+		}
+		String key = Arrays.toString(order);
+		CompiledPattern compiled = orderings.get(key);
+		if (compiled == null) {
+			compiled = new CompiledPattern(this, order);
+			orderings.put(key, compiled);
+		}
+		return compiled;
+	}
+
+	public PatternGraph getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @return the pattern nodes in the order to match them (level 0: positive nodes, level > 0: sets of negative nodes), must not be modified
+	 */
+	public ArrayList<ArrayList<PatternNode>> getNodeMatchLists() {
+		return nodeMatchLists;
+	}
+
+	NodePlan[] getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return the original positions of the positive nodes in the order of this plan (null if it's the original order)
+	 */
+	int[] getOrder() {
+		return order;
+	}
+
+	Step[][] getSteps() {
+		return steps;
+	}
+
+}
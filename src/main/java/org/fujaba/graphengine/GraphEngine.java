@@ -4,11 +4,17 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 
 import org.fujaba.graphengine.algorithm.Algorithm;
 import org.fujaba.graphengine.algorithm.adapter.AlgorithmAdapter;
+import org.fujaba.graphengine.graph.AttributeType;
 import org.fujaba.graphengine.graph.Graph;
+import org.fujaba.graphengine.graph.IndexedGraph;
 import org.fujaba.graphengine.graph.Node;
 import org.fujaba.graphengine.graph.adapter.GraphAdapter;
 import org.fujaba.graphengine.graph.adapter.GraphToSigmaJsAdapter;
@@ -188,10 +194,11 @@ public class GraphEngine {
 		if (!keepGraph) {
 			clone = clone.clone();
 		}
+		HashMap<Node, Integer> positions = positionsOf(clone);
 		while (count < graph.getNodes().size()) {
 			Graph subGraph = new Graph();
-			ArrayList<Node> subGraphNodes = connectedNodes(clone, clone.getNodes().get(0));
-			clone.getNodes().removeAll(subGraphNodes);
+			ArrayList<Node> subGraphNodes = connectedNodes(clone, clone.getNodes().get(0), positions);
+			clone.getNodes().removeAll(new HashSet<Node>(subGraphNodes));
 			subGraph.getNodes().addAll(subGraphNodes);
 			result.add(subGraph);
 			count += subGraphNodes.size();
@@ -214,71 +221,152 @@ public class GraphEngine {
 		return connectedNodes(graph, graph.getNodes().get(0)).size() == graph.getNodes().size();
 	}
 	
+	/**
+	 * Returns the ids of the nodes of all separate graphs (parts of the graph with no edges in between),
+	 * e.g. to turn the parts of a large OffHeapGraph into (heap) graphs one by one.
+	 * @param graph the graph to split
+	 * @return the ids of the nodes of each separate graph (ordered by their lowest id, the ids in the order they were found)
+	 */
+	public static ArrayList<int[]> split(IndexedGraph graph) {
+		ArrayList<int[]> result = new ArrayList<int[]>();
+		boolean[] seen = new boolean[graph.size()];
+		int[] open = new int[graph.size()];
+		for (int id = 0; id < graph.size(); ++id) {
+			if (!seen[id]) {
+				result.add(Arrays.copyOf(open, connectedNodes(graph, id, seen, open)));
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns true if there are no separate graphs (parts of the graph with no edges in between). 
+	 * @return true if there are no separate graphs (parts of the graph with no edges in between), otherwise false.
+	 */
+	public static boolean isConnected(IndexedGraph graph) {
+		if (graph.size() <= 1) {
+			return true;
+		}
+		return connectedNodes(graph, 0, new boolean[graph.size()], new int[graph.size()]) == graph.size();
+	}
+	
+	/**
+	 * This function does a breadth-first search for all nodes connected to the given node (following edges in both directions).
+	 * @param id the id of the node to start with
+	 * @param seen the nodes that were already found (they're skipped, the connected nodes are added)
+	 * @param found the array to store the ids of the connected nodes in
+	 * @return the number of connected nodes
+	 */
+	private static int connectedNodes(IndexedGraph graph, int id, boolean[] seen, int[] found) {
+		int count = 0;
+		found[count++] = id;
+		seen[id] = true;
+		for (int next = 0; next < count; ++next) {
+			int current = found[next];
+			for (int i = graph.getOutBegin(current); i < graph.getOutEnd(current); ++i) {
+				int target = graph.getOutTarget(i);
+				if (!seen[target]) {
+					seen[target] = true;
+					found[count++] = target;
+				}
+			}
+			for (int i = graph.getInBegin(current); i < graph.getInEnd(current); ++i) {
+				int source = graph.getInSource(i);
+				if (!seen[source]) {
+					seen[source] = true;
+					found[count++] = source;
+				}
+			}
+		}
+		return count;
+	}
+	
 	/**
 	 * This function basically does a search for all nodes connected to the given node and returns them in an ArrayList<Node>
 	 * @param node the node to do the check with
 	 * @return all nodes connected to the given node in an ArrayList<Node>
 	 */
 	private static ArrayList<Node> connectedNodes(Graph graph, Node node) {
+		return connectedNodes(graph, node, positionsOf(graph));
+	}
+	/**
+	 * This function basically does a search for all nodes connected to the given node and returns them in an ArrayList<Node>
+	 * @param node the node to do the check with
+	 * @param positions the positions of the graph's nodes (as returned by positionsOf)
+	 * @return all nodes connected to the given node in an ArrayList<Node>
+	 */
+	private static ArrayList<Node> connectedNodes(Graph graph, Node node, HashMap<Node, Integer> positions) {
 		ArrayList<Node> open = new ArrayList<Node>();
 		ArrayList<Node> closed = new ArrayList<Node>();
-		if (!graph.getNodes().contains(node)) {
+		if (!positions.containsKey(node)) {
 			return closed;
 		}
+		HashSet<Node> seen = new HashSet<Node>(); // all nodes that are open or closed
 		open.add(node);
+		seen.add(node);
 		while (open.size() > 0) {
 			Node current = open.remove(0);
 			closed.add(current);
 			ArrayList<Node> succ = new ArrayList<Node>();
 			for (String edgeName: current.getEdges().keySet()) {
 				for (Node outgoing: current.getEdges(edgeName)) {
-					if (!open.contains(outgoing) && !closed.contains(outgoing) && !succ.contains(outgoing)) {
+					if (!seen.contains(outgoing)) {
 						succ.add(outgoing);
+						seen.add(outgoing);
 					}
 				}
 			}
-			for (Node ingoing: graph.getNodes()) {
-				for (String edgeName: ingoing.getEdges().keySet()) {
-					if (ingoing.getEdges(edgeName) != null && ingoing.getEdges(edgeName).contains(current)
-							&& !open.contains(ingoing) && !closed.contains(ingoing) && !succ.contains(ingoing)) {
-						succ.add(ingoing);
-						break;
+			// the incoming edges are looked up in the reverse index (keeping the order of the graph's nodes):
+			ArrayList<Node> ingoingNodes = new ArrayList<Node>();
+			for (String edgeName: current.getIncomingEdges().keySet()) {
+				for (Node ingoing: current.getIncomingEdges(edgeName)) {
+					if (!seen.contains(ingoing) && positions.containsKey(ingoing)) {
+						ingoingNodes.add(ingoing);
+						seen.add(ingoing);
 					}
 				}
 			}
+			sortByPosition(ingoingNodes, positions);
+			succ.addAll(ingoingNodes);
 			open.addAll(succ);
 		}
 		return closed;
 	}
-	public static ArrayList<ArrayList<Node>> removeImpossibleCandidates(ArrayList<ArrayList<Node>> couldMatch) {
-		ArrayList<ArrayList<Node>> cantMatch = new ArrayList<ArrayList<Node>>();
-		for (int i = 0; i < couldMatch.size(); ++i) {
-			cantMatch.add(new ArrayList<Node>());
+	/**
+	 * Returns the position of each node within the given graph's list of nodes.
+	 * @param graph the graph
+	 * @return a mapping from each node of the graph to its index
+	 */
+	public static HashMap<Node, Integer> positionsOf(Graph graph) {
+		HashMap<Node, Integer> positions = new HashMap<Node, Integer>();
+		for (int i = 0; i < graph.getNodes().size(); ++i) {
+			positions.put(graph.getNodes().get(i), i);
 		}
-		// go through all candidates:
-		for (int i = 0; i < couldMatch.size(); ++i) {
-			if (couldMatch.get(i).size() == 1) {
-				// one node has only one candidate, all other nodes can't have this candidate
-				for (int j = 0; j < couldMatch.size(); ++j) {
-					if (i != j) {
-						// 'tell' all other nodes, they can't have this candidate:
-						cantMatch.get(j).add(couldMatch.get(i).get(0));
-					}
-				}
-			}
+		return positions;
+	}
+	/**
+	 * Sorts the given nodes by their position (as returned by positionsOf).
+	 * @param nodes the nodes to sort
+	 * @param positions the positions of the nodes
+	 */
+	public static void sortByPosition(ArrayList<Node> nodes, final HashMap<Node, Integer> positions) {
+		if (nodes.size() < 2) {
+			return;
 		}
-		// go through all candidatzes again:
-		for (int i = 0; i < couldMatch.size(); ++i) {
-			// remove all impossible candidates:
-			for (int j = 0; j < cantMatch.get(i).size(); ++j) {
-				couldMatch.get(i).remove(cantMatch.get(i).get(j));
-			}
-			// if one node has no candidates anymore, return null
-			if (couldMatch.get(i).size() < 1) {
-				return null;
+		Collections.sort(nodes, new Comparator<Node>() {
+			@Override
+			public int compare(Node a, Node b) {
+				return Integer.compare(positions.get(a), positions.get(b));
 			}
-		}
-		return couldMatch;
+		});
+	}
+	/**
+	 * Removes the candidates, that can't be part of a mapping of all nodes to different candidates (see AllDifferent).
+	 * @param couldMatch the candidates of the nodes (are changed)
+	 * @return the candidates of the nodes, or null if there is no mapping of all nodes to different candidates
+	 */
+	public static ArrayList<ArrayList<Node>> removeImpossibleCandidates(ArrayList<ArrayList<Node>> couldMatch) {
+		return AllDifferent.removeImpossibleCandidates(couldMatch);
 	}
 	
 	public static Graph normalized(Graph g) {
@@ -292,19 +380,11 @@ public class GraphEngine {
 				hash += key.hashCode();
 				hash += ((Integer)n.getEdges(key).size()).hashCode();
 			}
-			for (String key: n.getAttributes().keySet()) {
+			for (String key: n.getAttributeKeys()) {
 				hash += key.hashCode();
 				Object value = n.getAttribute(key);
-				if (value instanceof Double) {
-					hash += ((Double)value).hashCode();
-				} else if (value instanceof Long) {
-					hash += ((Long)value).hashCode();
-				} else if (value instanceof Integer) {
-					hash += ((Integer)value).hashCode();
-				} else if (value instanceof Boolean) {
-					hash += ((Boolean)value).hashCode();
-				} else if (value instanceof String) {
-					hash += ((String)value).hashCode();
+				if (AttributeType.of(value) != AttributeType.OBJECT) {
+					hash += value.hashCode();
 				}
 			}
 		}
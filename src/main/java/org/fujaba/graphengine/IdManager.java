@@ -1,21 +1,34 @@
 package org.fujaba.graphengine;
 
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
  * The IdManager can track and create IDs for Objects to identify them later on.
  * 
+ * The objects of small non-negative IDs (the usual case of dense IDs) are kept in an array indexed by ID,
+ * only other IDs need a map with boxed keys.
+ * 
  * @author Philipp Kolodziej
  */
 public class IdManager {
 	
+	/**
+	 * IDs below this bound are always kept in the array, higher IDs only while the array stays dense enough
+	 */
+	private static final int DENSE_SIZE = 1024;
+	
 	private HashMap<Object, Long> idMap;
-	private HashMap<Long, Object> objectMap;
+	private Object[] objects;
+	private HashMap<Long, Object> sparseObjects;
+	private int objectCount = 0;
 	private long nextId = 0;
 	
 	public IdManager resetIds() {
 		idMap = null;
-		objectMap = null;
+		objects = null;
+		sparseObjects = null;
+		objectCount = 0;
 		nextId = 0;
 		return this;
 	}
@@ -24,13 +37,10 @@ public class IdManager {
 		if (idMap == null) {
 			idMap = new HashMap<Object, Long>();
 		}
-		if (objectMap == null) {
-			objectMap = new HashMap<Long, Object>();
-		}
 		idMap.put(o, id);
-		objectMap.put(id, o);
+		putObject(id, o);
 		nextId = id + 1;
-		while (objectMap.containsKey(nextId)) {
+		while (containsId(nextId)) {
 			++nextId;
 		}
 		return this;
@@ -40,24 +50,67 @@ public class IdManager {
 		if (idMap == null) {
 			idMap = new HashMap<Object, Long>();
 		}
-		if (objectMap == null) {
-			objectMap = new HashMap<Long, Object>();
-		}
-		if (!idMap.containsKey(o)) {
-			idMap.put(o, nextId);
-			objectMap.put(nextId, o);
-			while (objectMap.containsKey(nextId)) {
+		Long id = idMap.get(o);
+		if (id == null) {
+			id = nextId;
+			idMap.put(o, id);
+			putObject(id, o);
+			while (containsId(nextId)) {
 				++nextId;
 			}
 		}
-		return idMap.get(o);
+		return id;
 	}
 	
 	public Object getObject(long id) {
-		if (objectMap == null) {
+		if (id >= 0 && objects != null && id < objects.length) {
+			return objects[(int)id];
+		}
+		if (sparseObjects == null) {
 			return null;
 		}
-		return objectMap.get(id);
+		return sparseObjects.get(id);
+	}
+	
+	private boolean containsId(long id) {
+		if (id >= 0 && objects != null && id < objects.length) {
+			return objects[(int)id] != null;
+		}
+		return sparseObjects != null && sparseObjects.containsKey(id);
+	}
+	
+	private void putObject(long id, Object o) {
+		if (id >= 0 && ((objects != null && id < objects.length) || id < Math.max(DENSE_SIZE, 2L * objectCount + 2))) {
+			if (objects == null || id >= objects.length) {
+				objects = Arrays.copyOf(objects == null ? new Object[0] : objects, (int)Math.max(id + 1, objects == null ? 16 : 2L * objects.length));
+				moveSparseObjects();
+			}
+			if (objects[(int)id] == null) {
+				++objectCount;
+			}
+			objects[(int)id] = o;
+			return;
+		}
+		if (sparseObjects == null) {
+			sparseObjects = new HashMap<Long, Object>();
+		}
+		if (sparseObjects.put(id, o) == null) {
+			++objectCount;
+		}
+	}
+	
+	/**
+	 * moves the objects of IDs, that are covered by the (grown) array, into the array.
+	 */
+	private void moveSparseObjects() {
+		if (sparseObjects == null) {
+			return;
+		}
+		for (Long id: sparseObjects.keySet().toArray(new Long[0])) {
+			if (id >= 0 && id < objects.length) {
+				objects[(int)(long)id] = sparseObjects.remove(id);
+			}
+		}
 	}
 
 }
@@ -0,0 +1,667 @@
+package org.fujaba.graphengine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.fujaba.graphengine.graph.Graph;
+import org.fujaba.graphengine.graph.GraphListener;
+import org.fujaba.graphengine.graph.Node;
+import org.fujaba.graphengine.pattern.PatternGraph;
+
+/**
+ * An IncrementalMatcher keeps track of the matches of registered patterns, while its graph changes,
+ * so a current match is mostly taken from memory, instead of searching the whole graph again after every change.
+ *
+ * Like a RETE network, it remembers for every pattern node the nodes, that fulfill its own conditions
+ * (its attribute match expression, attributes and outgoing edges), and for every candidate of a pattern's first positive node
+ * the matches starting with it (in the order matchPattern would find them).
+ * The matcher listens to the changes committed by GraphTransactions (like the ones of PatternEngine.applyMatch(match, true)),
+ * but only handles them, when the matches of a pattern are requested:
+ * then only the changed nodes are checked against the pattern nodes again, and only the candidates of the first node,
+ * whose matches contain a changed node or are near one (not farther than any pattern node from the first one),
+ * need to be searched again - and only until the first match is found.
+ * If the positive nodes of a pattern aren't connected by edges, that need to exist (or a set of negative nodes isn't connected to them),
+ * all its candidates need to be searched again.
+ * Changes made directly at the graph or its nodes (without a GraphTransaction) are noticed by the modification count (see Graph.getModificationCount):
+ * if it grew, the nodes of the graph are checked (a pass over all of them) and the directly changed ones
+ * are handled like the ones of a transaction - but if nodes were added, removed or reordered directly, all patterns are searched from scratch.
+ * Changes of the lists returned by Node.getEdges and Node.getIncomingEdges aren't noticed.
+ *
+ * The registered patterns mustn't change, while they're registered.
+ */
+public class IncrementalMatcher implements GraphListener {
+
+	/**
+	 * a remembered match
+	 */
+	private static class Entry {
+		/**
+		 * the nodes matched by the positive nodes (in the order of the plan)
+		 */
+		final Node[] mapping;
+		final HashMap<String, String> edgeMatch;
+
+		Entry(Node[] mapping, HashMap<String, String> edgeMatch) {
+			this.mapping = mapping;
+			this.edgeMatch = edgeMatch;
+		}
+	}
+
+	/**
+	 * the nodes, that fulfill the conditions of a pattern node, that only concern the node itself
+	 */
+	private static class Candidates {
+		/**
+		 * the candidates (in the order of their positions)
+		 */
+		final ArrayList<Node> nodes = new ArrayList<Node>();
+		/**
+		 * the positions of the candidates (see positions)
+		 */
+		final HashMap<Node, Integer> rank = new HashMap<Node, Integer>();
+
+		/**
+		 * adds or removes a node.
+		 *
+		 * @param node the node
+		 * @param position the current position of the node (null if it's removed)
+		 * @param isCandidate true if the node is a candidate
+		 */
+		void update(Node node, Integer position, boolean isCandidate) {
+			Integer ranked = rank.get(node);
+			if (ranked != null && (!isCandidate || !ranked.equals(position))) {
+				nodes.remove(indexOf(ranked));
+				rank.remove(node);
+				ranked = null;
+			}
+			if (ranked == null && isCandidate) {
+				nodes.add(-indexOf(position) - 1, node);
+				rank.put(node, position);
+			}
+		}
+
+		/**
+		 * @param position a position
+		 * @return the index of the candidate with that position (like Collections.binarySearch)
+		 */
+		private int indexOf(int position) {
+			int low = 0, high = nodes.size() - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				int difference = Integer.compare(rank.get(nodes.get(middle)), position);
+				if (difference < 0) {
+					low = middle + 1;
+				} else if (difference > 0) {
+					high = middle - 1;
+				} else {
+					return middle;
+				}
+			}
+			return -(low + 1);
+		}
+	}
+
+	/**
+	 * the state of a registered pattern
+	 */
+	private class Memory {
+		final CompiledPattern compiled;
+		/**
+		 * the largest distance of a pattern node from the first positive node (-1 if they aren't connected)
+		 */
+		final int radius;
+		/**
+		 * the candidates of the pattern nodes (level == 0: positive nodes, level > 0: negative node sets),
+		 * null until the matches are requested the first time
+		 */
+		Candidates[][] candidates = null;
+		/**
+		 * the candidates of the first positive node, whose matches need to be searched (by their positions)
+		 */
+		final TreeMap<Integer, Node> unsearched = new TreeMap<Integer, Node>();
+		/**
+		 * the matches of the searched candidates of the first positive node
+		 * (only the first one, if the candidate isn't searched completely)
+		 */
+		final HashMap<Node, ArrayList<Entry>> searched = new HashMap<Node, ArrayList<Entry>>();
+		/**
+		 * the searched candidates of the first positive node, that have matches (by their positions)
+		 */
+		final TreeMap<Integer, Node> matched = new TreeMap<Integer, Node>();
+		/**
+		 * the searched candidates of the first positive node, whose matches are all known
+		 */
+		final HashSet<Node> complete = new HashSet<Node>();
+		/**
+		 * the remembered matches containing a node
+		 */
+		final HashMap<Node, ArrayList<Entry>> entries = new HashMap<Node, ArrayList<Entry>>();
+		/**
+		 * the nodes, that changed since the last update
+		 */
+		final HashSet<Node> changed = new HashSet<Node>();
+
+		Memory(PatternGraph pattern) {
+			this.compiled = CompiledPattern.of(pattern);
+			this.radius = radiusOf(compiled);
+		}
+
+		/**
+		 * handles the changes since the last update.
+		 */
+		void update() {
+			CompiledPattern.Step[][] steps = compiled.getSteps();
+			if (candidates == null) {
+				// the first update: find the candidates within the whole graph
+				candidates = new Candidates[steps.length][];
+				for (int level = 0; level < steps.length; ++level) {
+					candidates[level] = new Candidates[steps[level].length];
+					for (int i = 0; i < steps[level].length; ++i) {
+						candidates[level][i] = new Candidates();
+					}
+				}
+				for (Node node: graph.getNodes()) {
+					updateCandidates(node);
+				}
+				changed.clear();
+				return;
+			}
+			if (changed.isEmpty() || steps[0].length == 0) {
+				for (Node node: changed) {
+					updateCandidates(node);
+				}
+				changed.clear();
+				return;
+			}
+			Node first = first();
+			// the matches containing a changed node need to be searched again:
+			for (Node node: changed) {
+				ArrayList<Entry> containing = entries.get(node);
+				if (containing != null) {
+					for (Entry entry: new ArrayList<Entry>(containing)) {
+						invalidate(entry.mapping[0]);
+					}
+				}
+			}
+			for (Node node: changed) {
+				updateCandidates(node);
+			}
+			if (radius < 0) {
+				// the matches can depend on any node:
+				for (Node node: candidates[0][0].nodes) {
+					invalidate(node);
+				}
+			} else {
+				// the matches near a change need to be searched again:
+				for (Node node: neighbourhood(changed, radius)) {
+					invalidate(node);
+				}
+			}
+			changed.clear();
+			/*
+			 * the search doesn't check the first candidate of the first node against the edges to itself, if there's only one positive node:
+			 * if the first candidate changed, the old one and the new one need to be searched again
+			 */
+			if (first != first()) {
+				if (first != null) {
+					invalidate(first);
+				}
+				if (first() != null) {
+					invalidate(first());
+				}
+			}
+		}
+
+		/**
+		 * @return the first candidate of the first positive node (null if there's none)
+		 */
+		Node first() {
+			if (candidates[0].length == 0 || candidates[0][0].nodes.isEmpty()) {
+				return null;
+			}
+			return candidates[0][0].nodes.get(0);
+		}
+
+		private void updateCandidates(Node node) {
+			Integer position = positions.get(node);
+			CompiledPattern.Step[][] steps = compiled.getSteps();
+			for (int level = 0; level < steps.length; ++level) {
+				for (int i = 0; i < steps[level].length; ++i) {
+					Candidates nodeCandidates = candidates[level][i];
+					Integer before = nodeCandidates.rank.get(node);
+					nodeCandidates.update(node, position, position != null && PatternEngine.isCandidate(node, steps[level][i].node));
+					Integer after = nodeCandidates.rank.get(node);
+					if (level == 0 && i == 0 && (before == null ? after != null : !before.equals(after))) {
+						// a candidate of the first node was removed or added:
+						if (before != null) {
+							forget(node, before);
+						}
+						if (after != null) {
+							unsearched.put(after, node);
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * lets a candidate of the first positive node be searched again.
+		 *
+		 * @param node the node
+		 */
+		private void invalidate(Node node) {
+			Integer position = candidates[0][0].rank.get(node);
+			if (position != null) {
+				forget(node, position);
+				unsearched.put(position, node);
+			}
+		}
+
+		/**
+		 * forgets the matches of a candidate of the first positive node.
+		 *
+		 * @param node the node
+		 * @param position the position of the node
+		 */
+		private void forget(Node node, int position) {
+			ArrayList<Entry> found = searched.remove(node);
+			if (found != null) {
+				for (Entry entry: found) {
+					for (Node other: entry.mapping) {
+						ArrayList<Entry> containing = entries.get(other);
+						if (containing != null) {
+							containing.remove(entry);
+							if (containing.isEmpty()) {
+								entries.remove(other);
+							}
+						}
+					}
+				}
+			}
+			matched.remove(position);
+			complete.remove(node);
+			unsearched.remove(position);
+		}
+
+		/**
+		 * searches the matches starting with a candidate of the first positive node.
+		 *
+		 * @param node the node
+		 * @param single true if only the first match is needed
+		 */
+		void search(Node node, boolean single) {
+			int position = candidates[0][0].rank.get(node);
+			forget(node, position);
+			// the candidate is searched like a search through all candidates would continue there (see first()):
+			ArrayList<Node> firstCandidates = new ArrayList<Node>();
+			if (node != first()) {
+				firstCandidates.add(first());
+			}
+			firstCandidates.add(node);
+			ArrayList<Entry> found = find(firstCandidates, firstCandidates.size() - 1, single);
+			for (Entry entry: found) {
+				for (Node other: entry.mapping) {
+					if (entries.get(other) == null) {
+						entries.put(other, new ArrayList<Entry>());
+					}
+					entries.get(other).add(entry);
+				}
+			}
+			searched.put(node, found);
+			if (!found.isEmpty()) {
+				matched.put(position, node);
+			}
+			if (!single || found.isEmpty()) {
+				complete.add(node);
+			}
+		}
+
+		/**
+		 * searches the matches, whose first node is one of the given candidates of the first positive node.
+		 *
+		 * @param firstCandidates the candidates of the first positive node (in the order of their positions)
+		 * @param from the index of the first one to try
+		 * @param single true if only the first match is needed
+		 * @return the matches
+		 */
+		ArrayList<Entry> find(ArrayList<Node> firstCandidates, int from, boolean single) {
+			CompiledPattern.Step[][] steps = compiled.getSteps();
+			ArrayList<ArrayList<ArrayList<Node>>> couldMatch = new ArrayList<ArrayList<ArrayList<Node>>>();
+			for (int level = 0; level < steps.length; ++level) {
+				couldMatch.add(new ArrayList<ArrayList<Node>>());
+				for (int i = 0; i < steps[level].length; ++i) {
+					couldMatch.get(level).add(level == 0 && i == 0 ? firstCandidates : candidates[level][i].nodes);
+				}
+			}
+			ArrayList<HashMap<Node, Integer>> ranks = new ArrayList<HashMap<Node, Integer>>();
+			for (int i = 0; i < steps[0].length; ++i) {
+				ranks.add(candidates[0][i].rank);
+			}
+			ArrayList<ArrayList<Set<Node>>> members = new ArrayList<ArrayList<Set<Node>>>();
+			for (int level = 0; level < steps.length; ++level) {
+				members.add(new ArrayList<Set<Node>>());
+				for (int i = 0; level > 0 && i < steps[level].length; ++i) {
+					members.get(level).add(candidates[level][i].rank.keySet());
+				}
+			}
+			HashMap<String, String> edgeMatch = new HashMap<String, String>();
+			PatternEngine.MappingSearch search = new PatternEngine.MappingSearch(compiled, couldMatch, from, firstCandidates.size(),
+					edgeMatch, null, null, ranks, members);
+			ArrayList<Entry> found = new ArrayList<Entry>();
+			Node[] mapping;
+			while ((mapping = search.next()) != null) {
+				found.add(new Entry(mapping.clone(), new HashMap<String, String>(edgeMatch)));
+				if (single) {
+					break;
+				}
+			}
+			return found;
+		}
+	}
+
+	private Graph graph;
+	/**
+	 * the positions of the nodes of the graph, which are in the order of the graph's list of nodes
+	 * (new nodes get higher positions than all others, the others keep theirs)
+	 */
+	private HashMap<Node, Integer> positions = new HashMap<Node, Integer>();
+	private int nextPosition = 0;
+	private HashMap<PatternGraph, Memory> memories = new HashMap<PatternGraph, Memory>();
+	/**
+	 * the modification count (see Graph.getModificationCount), up to which all changes of the graph are known
+	 */
+	private long known;
+
+	/**
+	 * creates a matcher, that listens to the changes of a graph (until it's closed).
+	 *
+	 * @param graph the graph to match the patterns on
+	 */
+	public IncrementalMatcher(Graph graph) {
+		this.graph = graph;
+		for (Node node: graph.getNodes()) {
+			positions.put(node, nextPosition++);
+		}
+		graph.addListener(this);
+		known = graph.getModificationCount();
+	}
+
+	public Graph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * registers patterns, so the changes of the graph are tracked for them
+	 * (patterns are also registered, when their matches are requested the first time).
+	 *
+	 * @param patterns the patterns
+	 * @return this matcher
+	 */
+	public IncrementalMatcher register(PatternGraph... patterns) {
+		for (PatternGraph pattern: patterns) {
+			if (memories.get(pattern) == null) {
+				memories.put(pattern, new Memory(pattern));
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * returns the first current match of a pattern: it's taken from memory, if it's still known,
+	 * otherwise the candidates of the first positive node, that need to be searched again, are searched in their order until a match is found
+	 * (so after changes near the first candidates or for a pattern with unconnected nodes, it can take as long as matchPattern).
+	 *
+	 * @param pattern a pattern
+	 * @return the first current match of the pattern (the one matchPattern(graph, pattern, true) would find), or null if there's none
+	 */
+	public Match getMatch(PatternGraph pattern) {
+		Memory memory = updated(pattern);
+		if (memory.compiled.getSteps()[0].length == 0) {
+			ArrayList<Entry> found = memory.find(new ArrayList<Node>(), 0, true);
+			return found.isEmpty() ? null : toMatch(memory, found.get(0));
+		}
+		while (true) {
+			Map.Entry<Integer, Node> unsearched = memory.unsearched.firstEntry();
+			Map.Entry<Integer, Node> matched = memory.matched.firstEntry();
+			if (matched != null && (unsearched == null || matched.getKey() < unsearched.getKey())) {
+				return toMatch(memory, memory.searched.get(matched.getValue()).get(0));
+			}
+			if (unsearched == null) {
+				return null;
+			}
+			memory.search(unsearched.getValue(), true);
+		}
+	}
+
+	/**
+	 * @param pattern a pattern
+	 * @return all current matches of the pattern (in the order matchPattern(graph, pattern, false) would find them)
+	 */
+	public ArrayList<Match> getMatches(PatternGraph pattern) {
+		Memory memory = updated(pattern);
+		ArrayList<Match> matches = new ArrayList<Match>();
+		if (memory.compiled.getSteps()[0].length == 0) {
+			for (Entry entry: memory.find(new ArrayList<Node>(), 0, false)) {
+				matches.add(toMatch(memory, entry));
+			}
+			return matches;
+		}
+		for (Node node: memory.candidates[0][0].nodes) {
+			if (!memory.complete.contains(node)) {
+				memory.search(node, false);
+			}
+			for (Entry entry: memory.searched.get(node)) {
+				matches.add(toMatch(memory, entry));
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * stops listening to the changes of the graph.
+	 */
+	public void close() {
+		graph.removeListener(this);
+	}
+
+	@Override
+	public void graphChanging(Graph graph) {
+		// the changes made directly before the transaction can't be told apart from the transaction's ones afterwards:
+		noticeDirectChanges();
+	}
+
+	@Override
+	public void graphChanged(Graph graph, Collection<Node> addedNodes, Collection<Node> removedNodes, Collection<Node> changedNodes) {
+		for (Node node: removedNodes) {
+			positions.remove(node);
+		}
+		for (Node node: addedNodes) {
+			positions.put(node, nextPosition++);
+		}
+		for (Memory memory: memories.values()) {
+			if (memory.candidates != null) {
+				memory.changed.addAll(changedNodes);
+			}
+		}
+		known = graph.getModificationCount();
+	}
+
+	/**
+	 * notices the changes, that were made directly at the graph or its nodes since the known ones.
+	 */
+	private void noticeDirectChanges() {
+		long count = graph.getModificationCount();
+		if (count == known) {
+			return; // nothing changed
+		}
+		boolean sameNodes = graph.getNodes().size() == positions.size();
+		ArrayList<Node> changedNodes = new ArrayList<Node>();
+		int previous = -1;
+		for (int i = 0; sameNodes && i < graph.getNodes().size(); ++i) {
+			Node node = graph.getNodes().get(i);
+			Integer position = positions.get(node);
+			// the nodes need to keep their order (that's the order of their positions):
+			if (position == null || position < previous) {
+				sameNodes = false;
+			} else if (node.getLastModification() > known) {
+				changedNodes.add(node);
+			}
+			previous = position == null ? previous : position;
+		}
+		known = count;
+		if (sameNodes) {
+			for (Memory memory: memories.values()) {
+				if (memory.candidates != null) {
+					memory.changed.addAll(changedNodes);
+				}
+			}
+			return;
+		}
+		// the nodes were added, removed or reordered directly, so everything is searched again:
+		positions.clear();
+		nextPosition = 0;
+		for (Node node: graph.getNodes()) {
+			positions.put(node, nextPosition++);
+		}
+		for (PatternGraph pattern: new ArrayList<PatternGraph>(memories.keySet())) {
+			memories.put(pattern, new Memory(pattern));
+		}
+	}
+
+	private Memory updated(PatternGraph pattern) {
+		noticeDirectChanges();
+		register(pattern);
+		Memory memory = memories.get(pattern);
+		memory.update();
+		return memory;
+	}
+
+	/**
+	 * @param memory the state of a pattern
+	 * @param entry a remembered match
+	 * @return a new match for the entry (applying a match changes it, e.g. by adding the created nodes, so it's never handed out twice)
+	 */
+	private Match toMatch(Memory memory, Entry entry) {
+		return PatternEngine.toMatch(graph, memory.compiled, entry.mapping, new HashMap<String, String>(entry.edgeMatch));
+	}
+
+	/**
+	 * @param nodes some nodes (the ones, that aren't part of the graph anymore, are skipped)
+	 * @param radius the largest distance
+	 * @return the nodes of the graph, that aren't farther from any of the nodes than the radius (following edges in both directions)
+	 */
+	private HashSet<Node> neighbourhood(Collection<Node> nodes, int radius) {
+		HashSet<Node> near = new HashSet<Node>();
+		ArrayList<Node> layer = new ArrayList<Node>();
+		for (Node node: nodes) {
+			if (positions.containsKey(node) && near.add(node)) {
+				layer.add(node);
+			}
+		}
+		for (int distance = 0; distance < radius && !layer.isEmpty(); ++distance) {
+			ArrayList<Node> nextLayer = new ArrayList<Node>();
+			for (Node node: layer) {
+				for (ArrayList<Node> targets: node.getEdges().values()) {
+					for (Node target: targets) {
+						if (near.add(target)) {
+							nextLayer.add(target);
+						}
+					}
+				}
+				for (ArrayList<Node> sources: node.getIncomingEdges().values()) {
+					for (Node source: sources) {
+						if (near.add(source)) {
+							nextLayer.add(source);
+						}
+					}
+				}
+			}
+			layer = nextLayer;
+		}
+		return near;
+	}
+
+	/**
+	 * @param compiled the plan of a pattern
+	 * @return the largest distance of a pattern node from the first positive node,
+	 * following the edges, that need to exist, in both directions (-1 if some pattern node can't be reached).
+	 * the positive nodes need to be connected by themselves (because a match doesn't contain negative nodes),
+	 * each set of negative nodes needs to be connected to them.
+	 */
+	private static int radiusOf(CompiledPattern compiled) {
+		CompiledPattern.Step[][] steps = compiled.getSteps();
+		if (steps[0].length == 0) {
+			return -1;
+		}
+		int radius = 0;
+		for (int level = 0; level < steps.length; ++level) {
+			// number the positive nodes and the nodes of this level, and connect them by their edges:
+			int offset = level == 0 ? 0 : steps[0].length;
+			int count = offset + steps[level].length;
+			ArrayList<ArrayList<Integer>> adjacent = new ArrayList<ArrayList<Integer>>();
+			for (int k = 0; k < count; ++k) {
+				adjacent.add(new ArrayList<Integer>());
+			}
+			connect(adjacent, steps[0], 0, false);
+			if (level > 0) {
+				connect(adjacent, steps[level], offset, true);
+			}
+			int[] distances = new int[count];
+			Arrays.fill(distances, -1);
+			distances[0] = 0;
+			ArrayList<Integer> queue = new ArrayList<Integer>();
+			queue.add(0);
+			for (int q = 0; q < queue.size(); ++q) {
+				int k = queue.get(q);
+				radius = Math.max(radius, distances[k]);
+				for (int other: adjacent.get(k)) {
+					if (distances[other] < 0) {
+						distances[other] = distances[k] + 1;
+						queue.add(other);
+					}
+				}
+			}
+			if (queue.size() < count) {
+				return -1;
+			}
+		}
+		return radius;
+	}
+
+	/**
+	 * @param adjacent the numbered pattern nodes, that are connected to each numbered pattern node
+	 * @param steps the steps of a level
+	 * @param offset the number of the first step of the level
+	 * @param negative true if it's a level of negative nodes (connected to the positive ones, too)
+	 */
+	private static void connect(ArrayList<ArrayList<Integer>> adjacent, CompiledPattern.Step[] steps, int offset, boolean negative) {
+		for (int i = 0; i < steps.length; ++i) {
+			int k = offset + i;
+			for (CompiledPattern.Constraint constraint: steps[i].constraints) {
+				if (isRequired(constraint)) {
+					adjacent.get(k).add(offset + constraint.other);
+					adjacent.get(offset + constraint.other).add(k);
+				}
+			}
+			if (negative) {
+				for (CompiledPattern.Constraint constraint: steps[i].positiveConstraints) {
+					if (isRequired(constraint)) {
+						adjacent.get(k).add(constraint.other);
+						adjacent.get(constraint.other).add(k);
+					}
+				}
+			}
+		}
+	}
+
+	private static boolean isRequired(CompiledPattern.Constraint constraint) {
+		return constraint.edge.action == CompiledPattern.Action.MATCH || constraint.edge.action == CompiledPattern.Action.DELETE;
+	}
+
+}
@@ -27,14 +27,22 @@ public class Match {
 	 */
 	private PatternGraph pattern;
 	/**
-	 * the mapping from pattern nodes to graph nodes
+	 * the plan of the pattern, the nodes are mapped for (null if the match was created with a map)
+	 */
+	private CompiledPattern compiled;
+	/**
+	 * the graph nodes mapped by the pattern nodes (indexed by their positions within the plan, null if the map is used)
+	 */
+	private Node[] nodes;
+	/**
+	 * the mapping from pattern nodes to graph nodes (built when it's needed first, then it replaces the nodes)
 	 */
 	private HashMap<PatternNode, Node> nodeMatch;
 	
 	private HashMap<String, String> edgeMatch;
 
 	/**
-	 * the evaluator that's used for wildcard labels within the GTR
+	 * the evaluator that's used for wildcard labels within the GTR (built when it's needed first)
 	 */
 	private Evaluator edgeEvaluator;
 
@@ -56,7 +64,21 @@ public class Match {
 		this.graph = graph;
 		this.pattern = pattern;
 		this.nodeMatch = nodeMatch;
-		this.edgeEvaluator = buildEdgeEvaluator(edgeMatch);
+		this.edgeMatch = edgeMatch;
+	}
+
+	/**
+	 * the constructor for a Match found by the PatternEngine.
+	 * @param graph the graph, this match did match on
+	 * @param compiled the plan of the pattern that was matched
+	 * @param nodes the graph nodes mapped by the pattern nodes (indexed by their positions within the plan)
+	 * @param edgeMatch the labels matched by the edge variables
+	 */
+	Match(Graph graph, CompiledPattern compiled, Node[] nodes, HashMap<String, String> edgeMatch) {
+		this.graph = graph;
+		this.pattern = compiled.getPattern();
+		this.compiled = compiled;
+		this.nodes = nodes;
 		this.edgeMatch = edgeMatch;
 	}
 	
@@ -73,12 +95,60 @@ public class Match {
 		this.pattern = pattern;
 	}
 	public HashMap<PatternNode, Node> getNodeMatch() {
+		if (nodeMatch == null) {
+			// the positive nodes, then the created ones (the map has no order, the created ones just don't replace a positive one):
+			nodeMatch = new HashMap<PatternNode, Node>();
+			for (CompiledPattern.Step step: compiled.getSteps()[0]) {
+				nodeMatch.put(step.node.patternNode, nodes[step.node.position]);
+			}
+			for (CompiledPattern.NodePlan node: compiled.getNodes()) {
+				if (nodes[node.position] != null && !nodeMatch.containsKey(node.patternNode)) {
+					nodeMatch.put(node.patternNode, nodes[node.position]);
+				}
+			}
+			nodes = null; // the map can be changed from now on
+		}
 		return nodeMatch;
 	}
 	public void setNodeMatch(HashMap<PatternNode, Node> nodeMatch) {
 		this.nodeMatch = nodeMatch;
+		this.nodes = null;
 	}
+
+	/**
+	 * @param compiled the plan of the pattern
+	 * @return the graph nodes mapped by the pattern nodes (indexed by their positions within the plan, a new array)
+	 */
+	Node[] getNodes(CompiledPattern compiled) {
+		if (nodes != null && this.compiled.getNodes() == compiled.getNodes()) {
+			return nodes.clone();
+		}
+		HashMap<PatternNode, Node> nodeMatch = getNodeMatch();
+		Node[] nodes = new Node[compiled.getNodes().length];
+		for (CompiledPattern.NodePlan node: compiled.getNodes()) {
+			nodes[node.position] = nodeMatch.get(node.patternNode);
+		}
+		return nodes;
+	}
+
+	/**
+	 * maps a pattern node to another graph node (like a created one).
+	 * @param node the plan of the pattern node
+	 * @param matchedNode the graph node
+	 */
+	void setNode(CompiledPattern.NodePlan node, Node matchedNode) {
+		CompiledPattern.NodePlan[] plans = compiled != null ? compiled.getNodes() : null;
+		if (nodes != null && node.position < plans.length && plans[node.position] == node) {
+			nodes[node.position] = matchedNode;
+		} else {
+			getNodeMatch().put(node.patternNode, matchedNode);
+		}
+	}
+
 	public Evaluator getEdgeEvaluator() {
+		if (edgeEvaluator == null) {
+			edgeEvaluator = buildEdgeEvaluator(edgeMatch);
+		}
 		return edgeEvaluator;
 	}
 	public void setEdgeEvaluator(Evaluator labelEvaluator) {
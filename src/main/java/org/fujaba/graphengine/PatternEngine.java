@@ -1,15 +1,34 @@
 package org.fujaba.graphengine;
 
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import org.fujaba.graphengine.graph.AttributeType;
+import org.fujaba.graphengine.graph.FrozenGraph;
 import org.fujaba.graphengine.graph.Graph;
+import org.fujaba.graphengine.graph.GraphTransaction;
+import org.fujaba.graphengine.graph.IndexedGraph;
 import org.fujaba.graphengine.graph.Node;
 import org.fujaba.graphengine.isomorphismtools.IsomorphismHandlerSorting;
-import org.fujaba.graphengine.pattern.PatternAttribute;
-import org.fujaba.graphengine.pattern.PatternEdge;
 import org.fujaba.graphengine.pattern.PatternGraph;
 import org.fujaba.graphengine.pattern.PatternNode;
 
@@ -19,6 +38,8 @@ import com.google.common.cache.LoadingCache;
 
 import net.sourceforge.jeval.EvaluationException;
 import net.sourceforge.jeval.Evaluator;
+import net.sourceforge.jeval.VariableResolver;
+import net.sourceforge.jeval.function.FunctionException;
 
 /**
  * The PatternEngine contains all logic concerning PatternGraphs.
@@ -27,23 +48,65 @@ import net.sourceforge.jeval.Evaluator;
  */
 public class PatternEngine {
 	
-	private static LoadingCache<Node, Evaluator> evaluatorCache = null;
+	private static final Pattern VARIABLE = Pattern.compile("#\\{([^}]+)\\}");
 	
-	public static Evaluator getNodeEvaluator(Node node) {
-		if (evaluatorCache == null) {
-			CacheLoader<Node, Evaluator> evaluatorCacheLoader = new CacheLoader<Node, Evaluator>() {
+	private static LoadingCache<Node, Evaluator> evaluatorCache = CacheBuilder.newBuilder()
+			.maximumSize(5000)
+			.expireAfterWrite(10, TimeUnit.MINUTES)
+			.build(new CacheLoader<Node, Evaluator>() {
                 public Evaluator load(Node node) {
                     return buildNodeEvaluator(node);
                 }
-            };
-			evaluatorCache = CacheBuilder.newBuilder()
-					.maximumSize(5000)
-					.expireAfterWrite(10, TimeUnit.MINUTES)
-					.build(evaluatorCacheLoader);
-		}
+            });
+	
+	/**
+	 * the names of the variables referenced by an expression
+	 */
+	private static ConcurrentHashMap<String, String[]> variableNames = new ConcurrentHashMap<String, String[]>();
+	
+	/**
+	 * the pool to search the matches of a pattern with (null: sequentially)
+	 */
+	private static ForkJoinPool matchingPool = null;
+	
+	/**
+	 * lets the matches of a pattern be searched in parallel (split by the candidates of the first positive node)
+	 * or sequentially again. either way, the matches are found in the same order.
+	 * 
+	 * @param pool the pool to search with, e.g. ForkJoinPool.commonPool(), or null to search sequentially
+	 */
+	public static void setMatchingPool(ForkJoinPool pool) {
+		matchingPool = pool;
+	}
+	
+	public static ForkJoinPool getMatchingPool() {
+		return matchingPool;
+	}
+	
+	public static Evaluator getNodeEvaluator(Node node) {
 		return evaluatorCache.getUnchecked(node);
 	}
 	
+	/**
+	 * @param expression an expression (not null)
+	 * @return the (cached) names of the variables referenced by the expression
+	 */
+	public static String[] getVariableNames(String expression) {
+		String[] names = variableNames.get(expression);
+		if (names == null) {
+			ArrayList<String> found = new ArrayList<String>();
+			Matcher matcher = VARIABLE.matcher(expression);
+			while (matcher.find()) {
+				if (!found.contains(matcher.group(1))) {
+					found.add(matcher.group(1));
+				}
+			}
+			names = found.toArray(new String[found.size()]);
+			variableNames.put(expression, names);
+		}
+		return names;
+	}
+	
 	/**
 	 * Calculates a reachability graph based on a graph of the initial situation
 	 * and a prioritized list of patterns to match and apply on the graph and resulting graphs.
@@ -142,6 +205,20 @@ public class PatternEngine {
 	 * @return returns the reachability graph, that was calculated
 	 */
 	public static Graph calculateReachabilityGraph(Graph graph, ArrayList<ArrayList<PatternGraph>> patterns) {
+		return calculateReachabilityGraph(graph, patterns, null);
+	}
+	
+	/**
+	 * Calculates a reachability graph based on a graph of the initial situation
+	 * and a prioritized list of patterns to match and apply on the graph and resulting graphs.
+	 * If states are given, the graphs are stored there (as deltas) and the reachability graph's nodes only refer to them,
+	 * otherwise the reachability graph's nodes contain the serialized graphs.
+	 * @param graph the initial graph
+	 * @param patterns a prioritized list of patterns. the first list is the highest priority-level and so on.
+	 * @param states the (empty) states to store the graphs in, or null
+	 * @return returns the reachability graph, that was calculated
+	 */
+	public static Graph calculateReachabilityGraph(Graph graph, ArrayList<ArrayList<PatternGraph>> patterns, ReachabilityStates states) {
 		/*
 		 * ok right now i think im going for this priority concept, where i have an arraylist of 'priority-levels'
 		 * inside each priority-level, there's a list of patterns to match.
@@ -173,16 +250,20 @@ public class PatternEngine {
 		 * of unprocessed nodes. just as simple as that...
 		 */
 		
-		if (GraphEngine.getMainIsomorphismHandler() instanceof IsomorphismHandlerSorting) {
+		if (states == null && GraphEngine.getMainIsomorphismHandler() instanceof IsomorphismHandlerSorting) {
 			return calculateReachabilityGraphWithNormalForm(graph, patterns);
 		}
 		
 		// the first rg-node is the base-graph:
-		Graph rg = new Graph().addNode(new Node().setAttribute("graph", graph.toString()));
-		ArrayList<Graph> added = new ArrayList<Graph>(); // a list with graphs that were added
-		ArrayList<Graph> unprocessed = new ArrayList<Graph>(); // a list with currently unprocessed graphs
-		added.add(graph);
-		unprocessed.add(graph);
+		Graph rg = new Graph().addNode(states == null ? new Node().setAttribute("graph", graph.toString()) : new Node().setAttribute(ReachabilityStates.STATE_ATTRIBUTE, states.add(graph)));
+		ArrayList<Graph> added = new ArrayList<Graph>(); // a list with graphs that were added (only without states)
+		ArrayList<Graph> unprocessed = new ArrayList<Graph>(); // a list with currently unprocessed graphs (only without states)
+		ArrayList<Node> unprocessedNodes = new ArrayList<Node>(); // the rg-nodes of the currently unprocessed graphs
+		if (states == null) {
+			added.add(graph);
+			unprocessed.add(graph);
+		}
+		unprocessedNodes.add(rg.getNodes().get(0));
 		
 		HashMap<Integer, ArrayList<Integer>> hashMap = new HashMap<Integer, ArrayList<Integer>>(); // map hash-code of serialization to node-index within the RG
 		int rgNodeCount = 0;
@@ -191,23 +272,25 @@ public class PatternEngine {
 		hashMap.put(GraphEngine.generateHash(graph), firstList); // add first hash mapped to index
 		
 		// as long as a single graph wasn't checked for successors, the search continues:
-		while (unprocessed.size() > 0) {
+		while (unprocessedNodes.size() > 0) {
+			// the rg-node, that represents the unprocessed graph:
+			Node source = unprocessedNodes.remove(0);
+			// with states, only the rg-nodes are queued and their graphs are reconstructed when they're processed:
+			Graph current = states == null ? unprocessed.remove(0) : states.getGraph(source);
 			// looking for matches:
-			ArrayList<Match> matches = calculateReachabilityNodeMatches(unprocessed.get(0), patterns);
-			// look up the rg-node, that represents the unprocessed graph:
-			Node source = findGraphInReachabilityGraph(rg, unprocessed.get(0));
-			unprocessed.remove(0);
+			ArrayList<Match> matches = calculateReachabilityNodeMatches(current, patterns);
 			// now handle matches:
 			for (Match match: matches) {
 				// construct the graph, that's the result of this match:
-				Graph successor = applyMatch(match);
+				HashMap<Node, Node> clones = new HashMap<Node, Node>();
+				Graph successor = applyMatch(match, clones);
 				// check if the graph was previously added:
 				int index = -1;
 				int newHash = GraphEngine.generateHash(successor);
 				if (hashMap.containsKey(newHash)) {
 					for (Integer indexToTest: hashMap.get(newHash)) {
 						//Graph graphToTest = GraphEngine.getGson().fromJson((String)rg.getNodes().get(indexToTest).getAttribute("graph"), Graph.class);
-						Graph graphToTest = added.get(indexToTest);
+						Graph graphToTest = states == null ? added.get(indexToTest) : states.getGraph(indexToTest);
 						if (GraphEngine.isIsomorphTo(successor, graphToTest)) {
 							index = indexToTest;
 							break;
@@ -228,11 +311,20 @@ public class PatternEngine {
 						newList.add(rgNodeCount++);
 						hashMap.put(newHash, newList);
 					}
-					Node target = new Node().setAttribute("graph", successor.toString()); // new node
+					Node target; // new node
+					if (states == null) {
+						target = new Node().setAttribute("graph", successor.toString());
+						added.add(successor);
+					} else {
+						int parentIndex = (Integer)source.getAttribute(ReachabilityStates.STATE_ATTRIBUTE);
+						target = new Node().setAttribute(ReachabilityStates.STATE_ATTRIBUTE, states.add(successor, parentIndex, current, clones));
+					}
 					rg.addNode(target);
 					source.addEdge(match.getPattern().toString(), target); // edge to new node
-					added.add(successor);
-					unprocessed.add(successor);
+					if (states == null) {
+						unprocessed.add(successor);
+					}
+					unprocessedNodes.add(target);
 				}
 			}
 		}
@@ -326,11 +418,13 @@ public class PatternEngine {
 	 */
 	private static ArrayList<Match> calculateReachabilityNodeMatches(Graph graph, ArrayList<ArrayList<PatternGraph>> patterns) {
 		ArrayList<Match> result = new ArrayList<Match>();
+		// the graph doesn't change while matching, so one snapshot is shared by all patterns:
+		FrozenGraph frozenGraph = new FrozenGraph(graph).setReused(patterns.size() > 1 || (patterns.size() == 1 && patterns.get(0).size() > 1));
+		// and the candidates of pattern nodes with the same conditions are only looked up once for all levels:
+		HashMap<ArrayList<Object>, ArrayList<Node>> sharedCandidates = new HashMap<ArrayList<Object>, ArrayList<Node>>();
 		for (int i = 0; i < patterns.size(); ++i) {
-			ArrayList<PatternGraph> priorityLevel = patterns.get(i);
-			for (int j = 0; j < priorityLevel.size(); ++j) {
-				PatternGraph pattern = priorityLevel.get(j);
-				result.addAll(matchPattern(graph, pattern, false));
+			for (ArrayList<Match> matches: matchPatterns(frozenGraph, patterns.get(i), false, sharedCandidates)) {
+				result.addAll(matches);
 			}
 			if (result.size() > 0) {
 				return result;
@@ -371,572 +465,898 @@ public class PatternEngine {
 		return -1;
 	}
 	
-	private static ArrayList<ArrayList<PatternNode>> doDepthFirstExplore(ArrayList<PatternNode> patternNodes) {
-		ArrayList<ArrayList<PatternNode>> result = new ArrayList<ArrayList<PatternNode>>();
-		ArrayList<PatternNode> unprocessed = new ArrayList<PatternNode>(patternNodes);
-		while (unprocessed.size() > 0) {
-			PatternNode start = unprocessed.remove(0);
-			ArrayList<PatternNode> open = new ArrayList<PatternNode>();
-			ArrayList<PatternNode> closed = new ArrayList<PatternNode>();
-			open.add(start);
-			while (open.size() > 0) {
-				PatternNode current = open.remove(0);
-				closed.add(current);
-				ArrayList<PatternNode> succ = new ArrayList<PatternNode>();
-				for (PatternEdge patternEdge: current.getPatternEdges()) {
-					if (!open.contains(patternEdge.getTarget())
-							&& !closed.contains(patternEdge.getTarget())
-							&& !succ.contains(patternEdge.getTarget())
-							&& unprocessed.contains(patternEdge.getTarget())) {
-						succ.add(patternEdge.getTarget());
-					}
-				}
-				for (PatternNode ingoing: unprocessed) {
-					for (PatternEdge patternEdge: ingoing.getPatternEdges()) {
-						if (patternEdge.getTarget() == current
-								&& !open.contains(ingoing)
-								&& !closed.contains(ingoing)
-								&& !succ.contains(ingoing)) {
-							succ.add(ingoing);
-							break;
-						}
-					}
-				}
-				open.addAll(succ);
-			}
-			unprocessed.removeAll(closed);
-			result.add(closed);
-		}
-		return result;
-	}
-	
-	private static ArrayList<ArrayList<PatternNode>> calculateNodeMatchingLists(PatternGraph pattern) {
-		ArrayList<ArrayList<PatternNode>> result = new ArrayList<ArrayList<PatternNode>>();
-		result.add(new ArrayList<PatternNode>()); // positive list
-		
-		// first check which nodes are positive and which nodes are negative (don't mind 'neutral' nodes):
-		ArrayList<PatternNode> positiveNodes = new ArrayList<PatternNode>();
-		ArrayList<PatternNode> negativeNodes = new ArrayList<PatternNode>();
-		for (PatternNode node: pattern.getPatternNodes()) {
-			switch (node.getAction()) {
-			case "==":
-			case "-":
-				positiveNodes.add(node);
-				break;
-			case "+":
-				break;
-			case "!=":
-				negativeNodes.add(node);
-				break;
-			default:
-				try {
-					throw new IOException("can't handle PatternNode action '" + node.getAction() + "'!");
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			}
-		}
-		
-		// now do continuous depth-first 'explore's until all positive nodes are in a 'clever' order for later checks:
-		ArrayList<ArrayList<PatternNode>> positiveLists = doDepthFirstExplore(positiveNodes);
-		for (ArrayList<PatternNode> listPart: positiveLists) {
-			result.get(0).addAll(listPart);
-		}
-		
-		// finally do continuous depth-first 'explore's for negative nodes, but this time yielding separate node lists:
-		ArrayList<ArrayList<PatternNode>> negativeLists = doDepthFirstExplore(negativeNodes);
-		result.addAll(negativeLists);
-		
-		return result;
-	}
-	
-	private static ArrayList<ArrayList<ArrayList<Node>>> findPossibleMatchesForPositiveAndNegativeNodes(Graph graph, ArrayList<ArrayList<PatternNode>> nodeMatchLists) {
+	private static ArrayList<ArrayList<ArrayList<Node>>> findPossibleMatchesForPositiveAndNegativeNodes(FrozenGraph frozenGraph, CompiledPattern compiled,
+			HashMap<ArrayList<Object>, ArrayList<Node>> sharedCandidates) {
 		// now check for 'loosely matched candidates' of nodes to match (level == 0: positive nodes, level > 0: negative node sets):
 		ArrayList<ArrayList<ArrayList<Node>>> couldMatch = new ArrayList<ArrayList<ArrayList<Node>>>();
-		for (int level = 0; level < nodeMatchLists.size(); ++level) {
+		for (int level = 0; level < compiled.getSteps().length; ++level) {
 			couldMatch.add(new ArrayList<ArrayList<Node>>());
-			for (int i = 0; i < nodeMatchLists.get(level).size(); ++i) {
-				PatternNode patternNode = nodeMatchLists.get(level).get(i);
-				couldMatch.get(level).add(new ArrayList<Node>());
-	nodeMatch:	for (int j = 0; j < graph.getNodes().size(); ++j) {
-					Node node = graph.getNodes().get(j);
-					// check node attribute expression:
-					if (!PatternEngine.evaluate(node, patternNode.getAttributeMatchExpression())) {
+			for (CompiledPattern.Step step: compiled.getSteps()[level]) {
+				CompiledPattern.NodePlan nodePlan = step.node;
+				ArrayList<Node> shared = sharedCandidates == null ? null : sharedCandidates.get(nodePlan.candidateKey);
+				if (shared != null) {
+					// the candidates were already found for a pattern node with the same conditions (they're changed later on, so they're copied):
+					couldMatch.get(level).add(new ArrayList<Node>(shared));
+					if (level == 0 && shared.size() == 0) {
+						return null;
+					}
+					continue;
+				}
+				ArrayList<Node> candidates = new ArrayList<Node>();
+				couldMatch.get(level).add(candidates);
+				// look up the candidates within the graph's indexes, so only they need to be checked:
+				int[] seeded = seedCandidates(frozenGraph, nodePlan);
+				int candidateCount = seeded == null ? frozenGraph.size() : seeded.length;
+	nodeMatch:	for (int k = 0; k < candidateCount; ++k) {
+					int j = seeded == null ? k : seeded[k];
+					Node node = frozenGraph.getNode(j);
+					// check the rest of the node attribute expression:
+					if (!nodePlan.residualExpression.evaluate(node)) {
 						continue nodeMatch;
 					}
 					// check existence of outgoing edges:
-					for (PatternEdge patternEdge: patternNode.getPatternEdges()) {
-						if ("+".equals(patternEdge.getAction())) {
-							continue;
-						}
-						boolean dontMind = !"!=".equals(patternEdge.getSource().getAction()) && "!=".equals(patternEdge.getTarget().getAction());
-						if (!dontMind) {
-							
-							boolean exists = !(node.getEdges(patternEdge.getName()) == null || node.getEdges(patternEdge.getName()).size() == 0);
-							
+					for (CompiledPattern.EdgePlan edgePlan: nodePlan.checkedEdges) {
+						boolean exists;
+						if (edgePlan.variableNames.isEmpty()) {
+							int labelId = frozenGraph.getLabelIdOfSymbol(edgePlan.symbol);
+							exists = labelId >= 0 && frozenGraph.getOutDegree(j, labelId) > 0;
+						} else {
 							//##### NEW TTC2017 FEATURE:
-							ArrayList<String> extractedVariableNames = extractVariableNames(patternEdge.getName());
-							if (extractedVariableNames.size() > 0) {
-								exists = node.getEdges().keySet().size() >= extractedVariableNames.size();
-							}
+							exists = frozenGraph.getOutLabelCount(j) >= edgePlan.variableNames.size();
 							//#####
-							
-							if (("!=".equals(patternEdge.getAction()) && exists) || !"!=".equals(patternEdge.getAction()) && !exists) {
-								continue nodeMatch;
-							}
+						}
+						if (exists == (edgePlan.action == CompiledPattern.Action.NOT)) {
+							continue nodeMatch;
 						}
 					}
 					// check every attribute's expression:
-					for (PatternAttribute patternAttribute: patternNode.getPatternAttributes()) {
-						if ("+".equals(patternAttribute.getAction())) {
-							continue;
-						}
-						boolean isSame = PatternEngine.evaluate(node, (String)patternAttribute.getValue());
-						if (("!=".equals(patternAttribute.getAction()) && isSame) || (!"!=".equals(patternAttribute.getAction()) && !isSame)) {
+					for (CompiledPattern.AttributePlan attributePlan: nodePlan.checkedAttributes) {
+						boolean isSame = attributePlan.expression.evaluate(node);
+						if (isSame == (attributePlan.action == CompiledPattern.Action.NOT)) {
 							continue nodeMatch;
 						}
 					}
-					couldMatch.get(level).get(couldMatch.get(level).size() - 1).add(node);
+					candidates.add(node);
+				}
+				if (sharedCandidates != null) {
+					sharedCandidates.put(nodePlan.candidateKey, new ArrayList<Node>(candidates));
 				}
-				if (level == 0 && couldMatch.get(level).get(couldMatch.get(level).size() - 1).size() == 0) {
+				if (level == 0 && candidates.size() == 0) {
 					return null; // no mapping for this node => fail (only in level == 0)
 				}
 			}
 		}
 		return couldMatch;
 	}
-	
-	public static boolean doesntMatchNegativeNodes(HashMap<PatternNode, Node> map, Graph graph, ArrayList<ArrayList<PatternNode>> nodeMatchLists, ArrayList<ArrayList<ArrayList<Node>>> couldMatch) {
-level:	for (int level = 1; level < nodeMatchLists.size(); ++level) {
+
+	/**
+	 * checks if a node fulfills the conditions of a pattern node, that only concern the node itself
+	 * (like findPossibleMatchesForPositiveAndNegativeNodes does for the nodes of a whole graph).
+	 *
+	 * @param node the node
+	 * @param nodePlan the plan of the pattern node
+	 * @return true if the node is a candidate of the pattern node
+	 */
+	static boolean isCandidate(Node node, CompiledPattern.NodePlan nodePlan) {
+		if (!fitsAttributes(node, nodePlan)) {
+			return false;
+		}
+		// check existence of outgoing edges:
+		for (CompiledPattern.EdgePlan edgePlan: nodePlan.checkedEdges) {
+			boolean exists;
+			if (edgePlan.variableNames.isEmpty()) {
+				ArrayList<Node> targets = node.getEdges(edgePlan.symbol);
+				exists = targets != null && !targets.isEmpty();
+			} else {
+				//##### NEW TTC2017 FEATURE:
+				int labelCount = 0;
+				for (ArrayList<Node> targets: node.getEdges().values()) {
+					if (!targets.isEmpty()) {
+						++labelCount;
+					}
+				}
+				exists = labelCount >= edgePlan.variableNames.size();
+				//#####
+			}
+			if (exists == (edgePlan.action == CompiledPattern.Action.NOT)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * checks if the attributes of a node fulfill the attribute match expression and the attributes of a pattern node.
+	 *
+	 * @param node the node
+	 * @param nodePlan the plan of the pattern node
+	 * @return true if the attributes fit
+	 */
+	private static boolean fitsAttributes(Node node, CompiledPattern.NodePlan nodePlan) {
+		if (!nodePlan.seeds.accepts(node) || !nodePlan.residualExpression.evaluate(node)) {
+			return false;
+		}
+		// check every attribute's expression:
+		for (CompiledPattern.AttributePlan attributePlan: nodePlan.checkedAttributes) {
+			boolean isSame = attributePlan.expression.evaluate(node);
+			if (isSame == (attributePlan.action == CompiledPattern.Action.NOT)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * looks up the candidates of a pattern node within the indexes of the graph
+	 * (by the seeds of its attribute match expression and of its attributes, that need to be fulfilled,
+	 * and by the labels of its required outgoing edges).
+	 *
+	 * @param frozenGraph the graph
+	 * @param nodePlan the plan of the pattern node
+	 * @return the ids of the candidates (ascending), or null if all nodes are candidates
+	 */
+	private static int[] seedCandidates(FrozenGraph frozenGraph, CompiledPattern.NodePlan nodePlan) {
+		int[] seeded = nodePlan.seeds.seed(frozenGraph);
+		for (CompiledPattern.AttributePlan attributePlan: nodePlan.checkedAttributes) {
+			// the attribute's expression is still evaluated as a whole, so its lookups only narrow the candidates down:
+			int[] attributeSeeded = attributePlan.seeds == null ? null : attributePlan.seeds.seed(frozenGraph);
+			if (attributeSeeded != null) {
+				seeded = CandidateSeeds.intersect(seeded, attributeSeeded);
+			}
+		}
+		for (CompiledPattern.EdgePlan edgePlan: nodePlan.checkedEdges) {
+			if (edgePlan.action == CompiledPattern.Action.NOT || !edgePlan.variableNames.isEmpty()) {
+				continue;
+			}
+			seeded = CandidateSeeds.intersect(seeded, frozenGraph.getNodesWithOutLabel(frozenGraph.getLabelIdOfSymbol(edgePlan.symbol)));
+		}
+		return seeded;
+	}
+
+	/**
+	 * checks if the negative nodes of a pattern can't be matched together with a match of its positive nodes.
+	 *
+	 * @param positives the nodes matched by the positive nodes (in the order of the plan)
+	 * @param compiled the plan of the pattern
+	 * @param couldMatch the candidates of the pattern nodes (level == 0: positive nodes, level > 0: negative node sets)
+	 * @return true if no set of negative nodes can be matched
+	 */
+	public static boolean doesntMatchNegativeNodes(Node[] positives, CompiledPattern compiled, ArrayList<ArrayList<ArrayList<Node>>> couldMatch) {
+		return doesntMatchNegativeNodes(positives, compiled, couldMatch, membersOf(compiled, couldMatch, false));
+	}
+
+	/**
+	 * checks if the negative nodes of a pattern can't be matched together with a match of its positive nodes.
+	 * the candidates of a negative node, that is connected to a matched node by an edge, that needs to exist,
+	 * are looked up among the neighbours of that node (if they're fewer), and the search stops at the first match of a set of negative nodes.
+	 *
+	 * @param positives the nodes matched by the positive nodes (in the order of the plan)
+	 * @param compiled the plan of the pattern
+	 * @param couldMatch the candidates of the pattern nodes (level == 0: positive nodes, level > 0: negative node sets)
+	 * @param members the candidates of the negative nodes as sets (see membersOf)
+	 * @return true if no set of negative nodes can be matched
+	 */
+	static boolean doesntMatchNegativeNodes(Node[] positives, CompiledPattern compiled, ArrayList<ArrayList<ArrayList<Node>>> couldMatch,
+			ArrayList<ArrayList<Set<Node>>> members) {
+level:	for (int level = 1; level < compiled.getSteps().length; ++level) {
 			if (couldMatch.get(level) == null) {
 				continue;
 			}
 			/*
-			 * now we check for each set of negative nodes (here: nodeMatchLists.get(level)),
+			 * now we check for each set of negative nodes (here: compiled.getSteps()[level]),
 			 * if there is a possible match within the mapping of the positive match,
 			 * until a match for these negative nodes is found => return false!
 			 * or all level were completed without matching negative nodes => return true!
 			 */
-			@SuppressWarnings("unchecked")
-			HashMap<PatternNode, Node> mapping = (HashMap<PatternNode, Node>)map.clone();
-			ArrayList<Integer> currentTry = new ArrayList<Integer>();
-			for (int i = 0; i < couldMatch.get(level).size(); ++i) {
-				if (couldMatch.get(level).get(i) != null && couldMatch.get(level).get(i).size() > 0) {
-					currentTry.add(0);
-					mapping.put(nodeMatchLists.get(level).get(i), couldMatch.get(level).get(i).get(0));
-				} else {
+			CompiledPattern.Step[] steps = compiled.getSteps()[level];
+			ArrayList<ArrayList<Node>> candidates = couldMatch.get(level);
+			for (int i = 0; i < candidates.size(); ++i) {
+				if (candidates.get(i) == null || candidates.get(i).size() == 0) {
 					continue level;
 				}
 			}
+			Node[] mapping = new Node[steps.length];
+			int[] currentTry = new int[steps.length];
+			/*
+			 * the candidates, that are tried for each negative node:
+			 * they are looked up, when the nodes before are matched (null until then)
+			 */
+			@SuppressWarnings({"unchecked", "rawtypes"})
+			ArrayList<Node>[] tries = new ArrayList[steps.length];
+			int i = 0;
+			while (i >= 0) {
+				if (i == steps.length) {
+					return false; // all negative nodes of this set are matched
+				}
+				if (tries[i] == null) {
+					tries[i] = negativeCandidatesToTry(level, i, steps, candidates, members, mapping, positives);
+					currentTry[i] = -1;
+				}
+				/*
+				 * try the next candidate of the negative node at index i:
+				 * check it only against all previous nodes (and the positive nodes),
+				 * if it is duplicate, or any edge (outgoing or incoming) is missing.
+				 * if a candidate fits, continue with the next negative node,
+				 * if none is left, go one level back (i-1) and try the next candidate there
+				 */
+				boolean fits = false;
+				while (!fits && ++currentTry[i] < tries[i].size()) {
+					mapping[i] = tries[i].get(currentTry[i]);
+					fits = fitsNegative(i, steps, mapping, positives);
+				}
+				if (fits) {
+					++i;
+				} else {
+					tries[i] = null;
+					--i;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param i the index of a negative node within its set
+	 * @param steps the steps of the search for the set of negative nodes
+	 * @param mapping the nodes matched by the negative nodes (up to the one at index i)
+	 * @param positives the nodes matched by the positive nodes
+	 * @return true if the candidate of the negative node at index i fits to the previous negative nodes and the positive nodes
+	 */
+	private static boolean fitsNegative(int i, CompiledPattern.Step[] steps, Node[] mapping, Node[] positives) {
+		for (int j = 0; j < i; ++j) {
+			// check if the negative node has a duplicate mapping to another negative node of this set
+			if (mapping[i] == mapping[j]) {
+				return false; // found duplicate!
+			}
+		}
+		// check the edges to and from previous negative nodes:
+		for (CompiledPattern.Constraint constraint: steps[i].constraints) {
+			if (!constraint.isFulfilled(mapping[i], mapping[constraint.other], null)) {
+				return false; // failure at outgoing or incoming edge
+			}
+		}
+		// check if the negative node has a duplicate mapping to a positive node
+		for (int k = 0; k < positives.length; ++k) {
+			if (mapping[i] == positives[k]) {
+				return false; // found duplicate!
+			}
+		}
+		// check the edges to and from positive nodes:
+		for (CompiledPattern.Constraint constraint: steps[i].positiveConstraints) {
+			if (!constraint.isFulfilled(mapping[i], positives[constraint.other], null)) {
+				return false; // failure at outgoing or incoming edge
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * looks up the candidates to try for a negative node, after the positive nodes and the negative nodes before it are matched:
+	 * if it's connected to one of them by an edge, that needs to exist, only the neighbours over that edge
+	 * (the fewest ones, if there are multiple such edges) are tried, otherwise all of its candidates.
+	 *
+	 * @param level the level of the set of negative nodes
+	 * @param i the index of the negative node within its set
+	 * @param steps the steps of the search for the set of negative nodes
+	 * @param candidates the candidates of the set of negative nodes
+	 * @param members the candidates of the negative nodes as sets (built when they're needed first)
+	 * @param mapping the nodes matched by the negative nodes before
+	 * @param positives the nodes matched by the positive nodes
+	 * @return the candidates to try
+	 */
+	private static ArrayList<Node> negativeCandidatesToTry(int level, int i, CompiledPattern.Step[] steps, ArrayList<ArrayList<Node>> candidates,
+			ArrayList<ArrayList<Set<Node>>> members, Node[] mapping, Node[] positives) {
+		ArrayList<Node> neighbours = null;
+		for (int k = 0; k < steps[i].positiveDrivers.length + steps[i].drivers.length; ++k) {
+			boolean positive = k < steps[i].positiveDrivers.length;
+			CompiledPattern.Constraint driver = positive ? steps[i].positiveDrivers[k] : steps[i].drivers[k - steps[i].positiveDrivers.length];
+			Node other = positive ? positives[driver.other] : mapping[driver.other];
+			ArrayList<Node> adjacent = driver.outgoing ? other.getIncomingEdges(driver.edge.name) : other.getEdges(driver.edge.symbol);
+			if (adjacent == null) {
+				return new ArrayList<Node>(); // the edge is missing for all candidates
+			}
+			if (neighbours == null || adjacent.size() < neighbours.size()) {
+				neighbours = adjacent;
+			}
+		}
+		if (neighbours == null || neighbours.size() >= candidates.get(i).size()) {
+			return candidates.get(i);
+		}
+		if (members.get(level).get(i) == null) {
+			members.get(level).set(i, new HashSet<Node>(candidates.get(i)));
+		}
+		Set<Node> member = members.get(level).get(i);
+		ArrayList<Node> result = new ArrayList<Node>();
+		for (Node neighbour: neighbours) {
+			if (member.contains(neighbour)) {
+				result.add(neighbour);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param compiled the plan of a pattern
+	 * @param couldMatch the candidates of the pattern nodes (level == 0: positive nodes, level > 0: negative node sets)
+	 * @param shared true to build the sets of all candidates, that might be needed, at once (so multiple threads can read them),
+	 * false to leave them to be built when they're needed first
+	 * @return the candidates of the negative nodes as sets (null if not built, nothing for the positive nodes)
+	 */
+	static ArrayList<ArrayList<Set<Node>>> membersOf(CompiledPattern compiled, ArrayList<ArrayList<ArrayList<Node>>> couldMatch, boolean shared) {
+		ArrayList<ArrayList<Set<Node>>> members = new ArrayList<ArrayList<Set<Node>>>();
+		members.add(new ArrayList<Set<Node>>());
+		for (int level = 1; level < compiled.getSteps().length; ++level) {
+			ArrayList<Set<Node>> sets = new ArrayList<Set<Node>>();
+			for (int i = 0; i < compiled.getSteps()[level].length; ++i) {
+				CompiledPattern.Step step = compiled.getSteps()[level][i];
+				boolean needed = shared && couldMatch.get(level) != null && step.drivers.length + step.positiveDrivers.length > 0;
+				sets.add(needed ? new HashSet<Node>(couldMatch.get(level).get(i)) : null);
+			}
+			members.add(sets);
+		}
+		return members;
+	}
+
+	/**
+	 * finds the matches of a pattern within the candidates of its nodes.
+	 *
+	 * @param graph the graph to match the pattern on
+	 * @param compiled the plan of the pattern
+	 * @param single true if only one match is needed
+	 * @param couldMatch the candidates of the pattern nodes (level == 0: positive nodes, level > 0: negative node sets)
+	 * @return a list of matches for the pattern in the graph
+	 */
+	public static ArrayList<Match> matchPattern(Graph graph, CompiledPattern compiled, boolean single, ArrayList<ArrayList<ArrayList<Node>>> couldMatch) {
+		return matchPattern(graph, compiled, single, couldMatch, null);
+	}
+
+	/**
+	 * finds the matches of a pattern within the candidates of its nodes.
+	 *
+	 * @param graph the graph to match the pattern on
+	 * @param compiled the plan of the pattern
+	 * @param single true if only one match is needed
+	 * @param couldMatch the candidates of the pattern nodes (level == 0: positive nodes, level > 0: negative node sets)
+	 * @param passed counts how often a candidate of each positive node passed its checks (may be null)
+	 * @return a list of matches for the pattern in the graph
+	 */
+	private static ArrayList<Match> matchPattern(Graph graph, CompiledPattern compiled, boolean single, ArrayList<ArrayList<ArrayList<Node>>> couldMatch, long[] passed) {
+		HashMap<String, String> edgeMatch = new HashMap<String, String>();
+
+		ArrayList<Match> matches = new ArrayList<Match>();
+
+		CompiledPattern.Step[] steps = compiled.getSteps()[0];
+		int candidateCount = steps.length > 0 ? couldMatch.get(0).get(0).size() : 0;
+		ArrayList<Node[]> mappings;
+		ForkJoinPool pool = matchingPool;
+		if (pool != null && passed == null && candidateCount > 1) {
+			// search the ranges of the first node's candidates in parallel, and collect their results in the order of the ranges:
+			MatchingTask task = new MatchingTask(compiled, couldMatch, single, 0, candidateCount,
+					Math.max(1, candidateCount / (pool.getParallelism() * 8)), new AtomicInteger(candidateCount), ranksOf(steps, couldMatch.get(0), true),
+					membersOf(compiled, couldMatch, true));
+			pool.invoke(task);
+			mappings = new ArrayList<Node[]>();
+			task.collect(mappings, edgeMatch);
+		} else {
+			mappings = findMappings(compiled, couldMatch, single, 0, candidateCount, edgeMatch, passed, null, null, null);
+		}
+		// nothing left to check => return results (in the order the original order of the pattern nodes would have found them)
+		final int[] order = compiled.getOrder();
+		if (order != null && mappings.size() > 1) {
+			final int[] positions = new int[order.length];
+			for (int i = 0; i < order.length; ++i) {
+				positions[order[i]] = i;
+			}
+			final Graph matchedGraph = graph;
+			Collections.sort(mappings, new Comparator<Node[]>() {
+				@Override
+				public int compare(Node[] one, Node[] other) {
+					for (int position: positions) {
+						int difference = Integer.compare(matchedGraph.indexOf(one[position]), matchedGraph.indexOf(other[position]));
+						if (difference != 0) {
+							return difference;
+						}
+					}
+					return 0;
+				}
+			});
+		}
+		for (Node[] successfulMapping: mappings) {
+			matches.add(toMatch(graph, compiled, successfulMapping, edgeMatch));
+		}
+		return matches;
+	}
+
+	/**
+	 * @param graph the matched graph
+	 * @param compiled the plan of the pattern
+	 * @param mapping the nodes matched by the positive nodes (in the order of the plan)
+	 * @param edgeMatch the labels matched by the edge variables
+	 * @return the match of the mapping
+	 */
+	static Match toMatch(Graph graph, CompiledPattern compiled, Node[] mapping, HashMap<String, String> edgeMatch) {
+		CompiledPattern.Step[] steps = compiled.getSteps()[0];
+		Node[] nodes = new Node[compiled.getNodes().length];
+		for (int i = 0; i < steps.length; ++i) {
+			nodes[steps[i].node.position] = mapping[i];
+		}
+		return new Match(graph, compiled, nodes, edgeMatch);
+	}
+
+	/**
+	 * searches the mappings of the positive nodes of a pattern, whose first node is mapped to one of a range of its candidates.
+	 *
+	 * @param compiled the plan of the pattern
+	 * @param couldMatch the candidates of the pattern nodes (level == 0: positive nodes, level > 0: negative node sets)
+	 * @param single true if only one match is needed
+	 * @param from the index of the first candidate of the first node to try
+	 * @param to the index after the last candidate of the first node to try
+	 * @param edgeMatch the labels matched by the edge variables
+	 * @param passed counts how often a candidate of each positive node passed its checks (may be null)
+	 * @param found the lowest index of a range, where a single match was found (may be null)
+	 * @param ranks the positions of the candidates within their lists (see ranksOf, may be null)
+	 * @param members the candidates of the negative nodes as sets (see membersOf, may be null)
+	 * @return the mappings of the positive nodes (in the order of the plan)
+	 */
+	private static ArrayList<Node[]> findMappings(CompiledPattern compiled, ArrayList<ArrayList<ArrayList<Node>>> couldMatch, boolean single,
+			int from, int to, HashMap<String, String> edgeMatch, long[] passed, AtomicInteger found, ArrayList<HashMap<Node, Integer>> ranks,
+			ArrayList<ArrayList<Set<Node>>> members) {
+		ArrayList<Node[]> mappings = new ArrayList<Node[]>();
+		MappingSearch search = new MappingSearch(compiled, couldMatch, from, to, edgeMatch, passed, found, ranks, members);
+		Node[] mapping;
+		while ((mapping = search.next()) != null) {
+			mappings.add(mapping.clone());
+			if (single) {
+				if (found != null) {
+					// let the ranges after this one stop:
+					int first = found.get();
+					while (from < first && !found.compareAndSet(first, from)) {
+						first = found.get();
+					}
+				}
+				break;
+			}
+		}
+		return mappings;
+	}
+
+	/**
+	 * the search for the mappings of the positive nodes of a pattern within a range of the first node's candidates,
+	 * which only continues, when the next mapping is needed.
+	 */
+	static class MappingSearch {
+		private final CompiledPattern compiled;
+		private final ArrayList<ArrayList<ArrayList<Node>>> couldMatch;
+		private final CompiledPattern.Step[] steps;
+		private final ArrayList<ArrayList<Node>> candidates;
+		private final ArrayList<HashMap<Node, Integer>> ranks;
+		private final ArrayList<ArrayList<Set<Node>>> members;
+		private final int from;
+		private final int to;
+		private final HashMap<String, String> edgeMatch;
+		private final long[] passed;
+		private final AtomicInteger found;
+		/**
+		 * the current mapping (the same array for all mappings)
+		 */
+		private final Node[] mapping;
+		private final int[] currentTry;
+		/*
+		 * the candidates, that are tried for each node:
+		 * they are looked up, when the nodes before are matched (null until then),
+		 * so they can be the neighbours of those nodes, instead of all candidates
+		 */
+		private final ArrayList<Node>[] tries;
+		/*
+		 * the trail of the narrowed down candidates (forward checking):
+		 * narrowed[i][k] are the candidates of the node at index k > i, that fit to the nodes matched up to index i
+		 * (null if they weren't narrowed down by the node at index i, then the last ones before are valid),
+		 * valid[i] tells if they were narrowed down for the current mapping.
+		 * going back to an index just makes the entries after it invalid, the ones before it are still those of the current mapping.
+		 */
+		private final ArrayList<Node>[][] narrowed;
+		private final boolean[] valid;
+		private int checkIndex;
+		/**
+		 * true if the current mapping was returned, so the search has to count up before it continues
+		 */
+		private boolean returned = false;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		MappingSearch(CompiledPattern compiled, ArrayList<ArrayList<ArrayList<Node>>> couldMatch, int from, int to,
+				HashMap<String, String> edgeMatch, long[] passed, AtomicInteger found, ArrayList<HashMap<Node, Integer>> ranks,
+				ArrayList<ArrayList<Set<Node>>> members) {
+			this.compiled = compiled;
+			this.couldMatch = couldMatch;
+			this.steps = compiled.getSteps()[0];
+			this.candidates = couldMatch.get(0);
+			this.ranks = ranks != null ? ranks : ranksOf(steps, candidates, false);
+			this.members = members != null ? members : membersOf(compiled, couldMatch, false);
+			this.from = from;
+			this.to = to;
+			this.edgeMatch = edgeMatch;
+			this.passed = passed;
+			this.found = found;
+			// now going through all valid combinations (that make sense) of those loosely fitted candidates to find a match:
+			this.mapping = new Node[steps.length];
+			this.currentTry = new int[steps.length];
+			this.tries = new ArrayList[steps.length];
+			this.narrowed = new ArrayList[steps.length][steps.length];
+			this.valid = new boolean[steps.length];
+			if (steps.length > 0) {
+				tries[0] = candidates.get(0);
+				currentTry[0] = from;
+				mapping[0] = tries[0].get(from);
+			}
 			/*
 			 * only check this index against previous ones,
-			 * if ok, increment and check only that one, and so on
+			 * if okay, increment and check only that one, and so on
+			 * (a range after the first one starts like the search would continue there: by checking its first node)
 			 */
-			int checkIndex = 0;
-	loop:	while (checkIndex > -1) {
-				for (int i = checkIndex; i < nodeMatchLists.get(level).size(); ++i) {
+			this.checkIndex = from == 0 ? 1 : 0;
+			if (passed != null && steps.length > 0) {
+				++passed[0];
+			}
+		}
+
+		/**
+		 * continues the search until the next mapping is found.
+		 *
+		 * @return the next mapping (only valid until this method is called again) or null, if there is none left
+		 */
+		Node[] next() {
+			if (returned) {
+				// even if a match was found: count up, to find the next match:
+				returned = false;
+				countUp(steps.length - 1);
+			}
+search:		while (checkIndex > -1) {
+				if (found != null && found.get() < from) {
+					return null; // a match was found within an earlier range
+				}
+				for (int i = checkIndex; i < steps.length; ++i) {
+
 					/*
-					 * check nodeMatchLists.get(0).get(i) only against all previous nodes,
+					 * check the node at index i only against all previous nodes,
 					 * if it is duplicate, or any edge (outgoing or incoming) is missing.
-					 * if it fails: count this nodes candidate up (++currentTry.get(i)) if possible,
+					 * if it fails: count this nodes candidate up (++currentTry[i]) if possible,
 					 * if it can't be counted up, go one level back (i-1) and try increment there and so on.
-					 * if nothing can't be counted up, return null (or set checkIndex to -1 and break);
+					 * if nothing can't be counted up, set checkIndex to -1 and stop;
 					 * after incrementing a candidate, reset all currentTry-elements after it to 0,
-					 * and set the checkIndex to the index of the increment currentTry-element, finally break
+					 * and set the checkIndex to the index of the increment currentTry-element
 					 */
-					PatternNode currentSubNode = nodeMatchLists.get(level).get(i);
 					boolean fail = false;
-	match:			for (int j = 0; j < i; ++j) {
-						PatternNode otherSubNode = nodeMatchLists.get(level).get(j);
-						// check if the negative node has a duplicate mapping to another negative node of this set
-						if (mapping.get(currentSubNode) == mapping.get(otherSubNode)) {
-							fail = true; // found duplicate!
-							break match;
-						}
-						// check outgoing edges to previous negative nodes
-						for (PatternEdge patternEdge: currentSubNode.getPatternEdges()) {
-							if ("+".equals(patternEdge.getAction())) {
-								continue;
-							}
-							if (patternEdge.getTarget() == otherSubNode) {
-								
-								boolean exists = false;
-								
-								if (mapping.get(currentSubNode).getEdges(patternEdge.getName()) != null) {
-									exists = mapping.get(currentSubNode).getEdges(patternEdge.getName()) != null && mapping.get(currentSubNode).getEdges(patternEdge.getName()).contains(mapping.get(otherSubNode));
-								}
-								
-								//##### NEW TTC2017 FEATURE:
-								ArrayList<String> extractedVariableNames = extractVariableNames(patternEdge.getName());
-								if (extractedVariableNames.size() > 0) {
-									exists = false;
-									int numberOfEdgesFound = 0;
-									for (String ttcTestString: mapping.get(currentSubNode).getEdges().keySet()) {
-										if (mapping.get(currentSubNode).getEdges(ttcTestString).contains(mapping.get(otherSubNode))) {
-											++numberOfEdgesFound;
-											if (numberOfEdgesFound >= extractedVariableNames.size()) {
-												exists = true;
-												break;
-											}
-										}
-									}
-								}
-								//#####
-								
-								if (("!=".equals(patternEdge.getAction()) && exists) || (!"!=".equals(patternEdge.getAction()) && !exists)) {
-									fail = true; // failure at outgoing edge
-									break match;
-								}
-							}
-						}
-						// check incoming edges from previous negative nodes
-						for (PatternEdge patternEdge: otherSubNode.getPatternEdges()) {
-							if ("+".equals(patternEdge.getAction())) {
-								continue;
-							}
-							if (patternEdge.getTarget() == currentSubNode) {
-
-								boolean exists = false;
-								
-								if (mapping.get(otherSubNode).getEdges(patternEdge.getName()) != null) {
-									exists = mapping.get(otherSubNode).getEdges(patternEdge.getName()) != null && mapping.get(otherSubNode).getEdges(patternEdge.getName()).contains(mapping.get(currentSubNode));
-								}
-								
-								//##### NEW TTC2017 FEATURE:
-								ArrayList<String> extractedVariableNames = extractVariableNames(patternEdge.getName());
-								if (extractedVariableNames.size() > 0) {
-									exists = false;
-									int numberOfEdgesFound = 0;
-									for (String ttcTestString: mapping.get(otherSubNode).getEdges().keySet()) {
-										if (mapping.get(otherSubNode).getEdges(ttcTestString).contains(mapping.get(currentSubNode))) {
-											++numberOfEdgesFound;
-											if (numberOfEdgesFound >= extractedVariableNames.size()) {
-												exists = true;
-												break;
-											}
-										}
-									}
-								}
-								//#####
-								
-								if (("!=".equals(patternEdge.getAction()) && exists) || (!"!=".equals(patternEdge.getAction()) && !exists)) {
-									fail = true; // failure at incoming edge
-									break match;
-								}
-							}
+
+					if (i > 0 && !valid[i - 1]) {
+						// the node before is matched now, so the candidates of the nodes after it can be narrowed down:
+						if (!narrow(i - 1)) {
+							countUp(i - 1); // some node after it has no candidate left
+							continue search;
 						}
 					}
-					// check if the negative node has a duplicate mapping to a positive node
-					for (int k = 0; k < nodeMatchLists.get(0).size(); ++k) {
-						if (mapping.get(currentSubNode) == mapping.get(nodeMatchLists.get(0).get(k))) {
-							fail = true; // found duplicate!
-							break;
+					if (tries[i] == null) {
+						// the nodes before are matched now, so the candidates to try can be looked up:
+						ArrayList<Node> domain = narrowed(i - 1, i);
+						tries[i] = domain != null ? domain : candidatesToTry(i, steps, candidates, ranks, mapping);
+						currentTry[i] = 0;
+						mapping[i] = tries[i].isEmpty() ? null : tries[i].get(0);
+						if (mapping[i] == null) {
+							fail = true; // no candidate left
 						}
 					}
-					// check outgoing edges to positive nodes
-					for (int k = 0; k < nodeMatchLists.get(0).size(); ++k) {
-						for (PatternEdge patternEdge: currentSubNode.getPatternEdges()) {
-							if ("+".equals(patternEdge.getAction())) {
-								continue;
-							}
-							if (patternEdge.getTarget() == nodeMatchLists.get(0).get(k)) {
-
-								boolean exists = false;
-								
-								if (mapping.get(currentSubNode).getEdges(patternEdge.getName()) != null) {
-									exists = mapping.get(currentSubNode).getEdges(patternEdge.getName()) != null && mapping.get(currentSubNode).getEdges(patternEdge.getName()).contains(mapping.get(nodeMatchLists.get(0).get(k)));
-								}
-								
-								//##### NEW TTC2017 FEATURE:
-								ArrayList<String> extractedVariableNames = extractVariableNames(patternEdge.getName());
-								if (extractedVariableNames.size() > 0) {
-									exists = false;
-									int numberOfEdgesFound = 0;
-									for (String ttcTestString: mapping.get(currentSubNode).getEdges().keySet()) {
-										if (mapping.get(currentSubNode).getEdges(ttcTestString).contains(mapping.get(nodeMatchLists.get(0).get(k)))) {
-											++numberOfEdgesFound;
-											if (numberOfEdgesFound >= extractedVariableNames.size()) {
-												exists = true;
-												break;
-											}
-										}
-									}
-								}
-								//#####
-								
-								if (("!=".equals(patternEdge.getAction()) && exists) || (!"!=".equals(patternEdge.getAction()) && !exists)) {
-									fail = true; // failure at outgoing edge
-									break;
-								}
+
+					for (int j = i == 1 ? i - 1 : i; mapping[i] != null && j <= i; ++j) {
+						/* ##### also check for edges to self */
+						for (CompiledPattern.Constraint constraint: steps[j].selfConstraints) {
+							if (!constraint.isFulfilled(mapping[j], mapping[j], edgeMatch)) {
+								fail = true; // failure at edge to self
+								break;
 							}
 						}
+						/* ##### */
 					}
-					// check incoming edges from positive nodes
-					for (int k = 0; k < nodeMatchLists.get(0).size(); ++k) {
-						for (PatternEdge patternEdge: nodeMatchLists.get(0).get(k).getPatternEdges()) {
-							if ("+".equals(patternEdge.getAction())) {
-								continue;
-							}
-							if (patternEdge.getTarget() == currentSubNode) {
-
-								boolean exists = false;
-								
-								if (mapping.get(nodeMatchLists.get(0).get(k)).getEdges(patternEdge.getName()) != null) {
-									exists = mapping.get(nodeMatchLists.get(0).get(k)).getEdges(patternEdge.getName()) != null && mapping.get(nodeMatchLists.get(0).get(k)).getEdges(patternEdge.getName()).contains(mapping.get(currentSubNode));
-								}
-								
-								//##### NEW TTC2017 FEATURE:
-								ArrayList<String> extractedVariableNames = extractVariableNames(patternEdge.getName());
-								if (extractedVariableNames.size() > 0) {
-									exists = false;
-									int numberOfEdgesFound = 0;
-									for (String ttcTestString: mapping.get(nodeMatchLists.get(0).get(k)).getEdges().keySet()) {
-										if (mapping.get(nodeMatchLists.get(0).get(k)).getEdges(ttcTestString).contains(mapping.get(currentSubNode))) {
-											++numberOfEdgesFound;
-											if (numberOfEdgesFound >= extractedVariableNames.size()) {
-												exists = true;
-												break;
-											}
-										}
-									}
-								}
-								//#####
-								
-								if (("!=".equals(patternEdge.getAction()) && exists) || (!"!=".equals(patternEdge.getAction()) && !exists)) {
-									fail = true; // failure at incoming edge
-									break;
-								}
+
+					int c = 0;
+					CompiledPattern.Constraint[] constraints = steps[i].constraints;
+match:				for (int j = 0; j < i; ++j) {
+						if (fail == true) {
+							break match;
+						}
+						if (mapping[i] == mapping[j]) {
+							fail = true; // found duplicate!
+							break match;
+						}
+						// check the edges to and from the node at index j (the constraints are sorted by that index):
+						for (; c < constraints.length && constraints[c].other == j; ++c) {
+							if (!constraints[c].isFulfilled(mapping[i], mapping[j], edgeMatch)) {
+								fail = true; // failure at outgoing or incoming edge
+								break match;
 							}
 						}
 					}
 					if (fail) {
 						// found an error with the 'new' candidate at index i
 						/*
-						 * change candidate of node[i] or if not possible, the next possible earlier one,
-						 * reset the ones after it (also update the mapping)
-						 * and set checkIndex to the new index to check (the one that got incremented)
+						 * change candidate of node[i] or if not possible, the next possible earlier one
 						 */
-						checkIndex = i;
-						while (checkIndex >= 0 && currentTry.get(checkIndex) == couldMatch.get(level).get(checkIndex).size() - 1) {
-							--checkIndex;
-						}
-						if (checkIndex >= 0) {
-							currentTry.set(checkIndex, currentTry.get(checkIndex) + 1);
-							mapping.put(nodeMatchLists.get(level).get(checkIndex), couldMatch.get(level).get(checkIndex).get(currentTry.get(checkIndex)));
-							for (int j = checkIndex + 1; j < nodeMatchLists.get(level).size(); ++j) {
-								currentTry.set(j, 0);
-								mapping.put(nodeMatchLists.get(level).get(j), couldMatch.get(level).get(j).get(0));
-							}
-						}
-						continue loop;
+						countUp(i);
+						continue search;
+					}
+					if (passed != null) {
+						++passed[i];
 					}
 				}
-				return false;
+				if (doesntMatchNegativeNodes(mapping, compiled, couldMatch, members)) {
+					returned = true;
+					return mapping; // it ran through with no errors => success
+				}
+				countUp(steps.length - 1);
 			}
+			return null;
 		}
-		return true;
-	}
-	
-	@SuppressWarnings("unchecked")
-	public static ArrayList<Match> matchPattern(Graph graph, PatternGraph pattern, boolean single, ArrayList<ArrayList<PatternNode>> nodeMatchLists, ArrayList<ArrayList<ArrayList<Node>>> couldMatch) {
-		HashMap<String, String> edgeMatch = new HashMap<String, String>();
-		
-		ArrayList<Match> matches = new ArrayList<Match>();
-		
-		HashMap<PatternNode, Node> mapping = new HashMap<PatternNode, Node>();
-		// now going through all valid combinations (that make sense) of those loosely fitted candidates to find a match:
-		ArrayList<Integer> currentTry = new ArrayList<Integer>();
-		for (int i = 0; i < couldMatch.get(0).size(); ++i) {
-			currentTry.add(0);
-			mapping.put(nodeMatchLists.get(0).get(i), couldMatch.get(0).get(i).get(0));
+
+		/**
+		 * changes the candidate of the node at an index or if not possible, the next possible earlier one,
+		 * resets the ones after it (also updates the mapping)
+		 * and sets checkIndex to the new index to check (the one that got incremented, -1 if there is none).
+		 *
+		 * @param index the index of the node, whose candidate is changed
+		 */
+		private void countUp(int index) {
+			checkIndex = index;
+			while (checkIndex >= 0 && currentTry[checkIndex] >= (checkIndex == 0 ? to : tries[checkIndex].size()) - 1) {
+				--checkIndex;
+			}
+			if (checkIndex >= 0) {
+				++currentTry[checkIndex];
+				mapping[checkIndex] = tries[checkIndex].get(currentTry[checkIndex]);
+				for (int j = checkIndex + 1; j < steps.length; ++j) {
+					tries[j] = null;
+				}
+				for (int j = checkIndex; j < steps.length; ++j) {
+					valid[j] = false;
+				}
+			}
 		}
-		/*
-		 * only check this index against previous ones,
-		 * if okay, increment and check only that one, and so on
+
+		/**
+		 * narrows down the candidates of the nodes after an index, that have edges to or from it, to those fitting to its current mapping
+		 * (they are checked against all edges to and from it, and they can't be mapped by it or the nodes before it).
+		 * if they weren't narrowed down before, they're looked up among the neighbours of the nodes up to it, and checked against all of them.
+		 *
+		 * @param i the index of the matched node
+		 * @return false if some node after it has no candidate left
 		 */
-		ArrayList<HashMap<PatternNode, Node>> mappings = new ArrayList<HashMap<PatternNode, Node>>();
-		int checkIndex = 1;
-loop:	while (checkIndex > -1) {
-			for (int i = checkIndex; i < nodeMatchLists.get(0).size(); ++i) {
-				
-				/*
-				 * check nodeMatchLists.get(0).get(i) only against all previous nodes,
-				 * if it is duplicate, or any edge (outgoing or incoming) is missing.
-				 * if it fails: count this nodes candidate up (++currentTry.get(i)) if possible,
-				 * if it can't be counted up, go one level back (i-1) and try increment there and so on.
-				 * if nothing can't be counted up, return null (or set checkIndex to -1 and break);
-				 * after incrementing a candidate, reset all currentTry-elements after it to 0,
-				 * and set the checkIndex to the index of the increment currentTry-element, finally break
-				 */
-				PatternNode currentSubNode = nodeMatchLists.get(0).get(i);
-				boolean fail = false;
-
-				for (int j = i == 1 ? i - 1 : i; j <= i; ++j) {
-					/* ##### also check for edges to self */
-					for (PatternEdge p: nodeMatchLists.get(0).get(j).getPatternEdges()) {
-						if (p.getAction() == "+" || p.getTarget() != nodeMatchLists.get(0).get(j)) {
-							continue;
-						}
-						boolean exists = false;
-						if (mapping.get(nodeMatchLists.get(0).get(j)).getEdges(p.getName()) != null) {
-							exists = mapping.get(nodeMatchLists.get(0).get(j)).getEdges(p.getName()).contains(mapping.get(nodeMatchLists.get(0).get(j)));
-						}
-						//##### NEW TTC2017 FEATURE:
-						ArrayList<String> extractedVariableNames = extractVariableNames(p.getName());
-						if (extractedVariableNames.size() > 0) {
-							exists = false;
-							int numberOfEdgesFound = 0;
-							for (String ttcTestString: mapping.get(nodeMatchLists.get(0).get(j)).getEdges().keySet()) {
-								if (mapping.get(nodeMatchLists.get(0).get(j)).getEdges(ttcTestString).contains(mapping.get(nodeMatchLists.get(0).get(j)))) {
-									edgeMatch.put(extractedVariableNames.get(numberOfEdgesFound), "'" + ttcTestString + "'");
-									++numberOfEdgesFound;
-									if (numberOfEdgesFound >= extractedVariableNames.size()) {
-										exists = true;
-										break;
-									}
-								}
-							}
-						}
-						//#####
-						if (("!=".equals(p.getAction()) && exists) || (!"!=".equals(p.getAction()) && !exists)) {
-							fail = true; // failure at incoming edge
-							break;
-						}
+		private boolean narrow(int i) {
+			valid[i] = true;
+			for (int k: steps[i].followers) {
+				narrowed[i][k] = null;
+				ArrayList<Node> domain = narrowed(i - 1, k);
+				int first = i;
+				if (domain == null) {
+					// only the neighbours along an edge can fit
+					domain = neighboursToTry(k, i, steps, candidates, ranks, mapping);
+					if (domain == null) {
+						continue; // it's only connected by edges, that mustn't exist
 					}
-					/* ##### */
+					first = 0;
 				}
-				
-match:			for (int j = 0; j < i; ++j) {
-					if (fail == true) {
-						break match;
-					}
-					PatternNode otherSubNode = nodeMatchLists.get(0).get(j);
-					if (mapping.get(currentSubNode) == mapping.get(otherSubNode)) {
-						fail = true; // found duplicate!
-						break match;
-					}
-					for (PatternEdge patternEdge: currentSubNode.getPatternEdges()) {
-						if ("+".equals(patternEdge.getAction())) {
-							continue;
-						}
-						if (patternEdge.getTarget() == otherSubNode) {
-							
-							boolean exists = false;
-							
-							if (mapping.get(currentSubNode).getEdges(patternEdge.getName()) != null) {
-								exists = mapping.get(currentSubNode).getEdges(patternEdge.getName()).contains(mapping.get(otherSubNode));
-							}
-							
-							//##### NEW TTC2017 FEATURE:
-							ArrayList<String> extractedVariableNames = extractVariableNames(patternEdge.getName());
-							if (extractedVariableNames.size() > 0) {
-								exists = false;
-								int numberOfEdgesFound = 0;
-								for (String ttcTestString: mapping.get(currentSubNode).getEdges().keySet()) {
-									if (mapping.get(currentSubNode).getEdges(ttcTestString).contains(mapping.get(otherSubNode))) {
-										edgeMatch.put(extractedVariableNames.get(numberOfEdgesFound), "'" + ttcTestString + "'");
-										++numberOfEdgesFound;
-										if (numberOfEdgesFound >= extractedVariableNames.size()) {
-											exists = true;
-											break;
-										}
-									}
-								}
-							}
-							//#####
-							
-							if (("!=".equals(patternEdge.getAction()) && exists) || (!"!=".equals(patternEdge.getAction()) && !exists)) {
-								fail = true; // failure at outgoing edge
-								break match;
-							}
+				ArrayList<Node> remaining = new ArrayList<Node>();
+candidate:		for (Node candidate: domain) {
+					for (int j = 0; j <= i; ++j) {
+						if (candidate == mapping[j]) {
+							continue candidate; // would be duplicate
 						}
 					}
-					for (PatternEdge patternEdge: otherSubNode.getPatternEdges()) {
-						if ("+".equals(patternEdge.getAction())) {
-							continue;
-						}
-						if (patternEdge.getTarget() == currentSubNode) {
-							
-							boolean exists = false;
-							
-							if (mapping.get(otherSubNode).getEdges(patternEdge.getName()) != null) {
-								exists = mapping.get(otherSubNode).getEdges(patternEdge.getName()).contains(mapping.get(currentSubNode));
-							}
-							
-							//##### NEW TTC2017 FEATURE:
-							ArrayList<String> extractedVariableNames = extractVariableNames(patternEdge.getName());
-							if (extractedVariableNames.size() > 0) {
-								exists = false;
-								int numberOfEdgesFound = 0;
-								for (String ttcTestString: mapping.get(otherSubNode).getEdges().keySet()) {
-									if (mapping.get(otherSubNode).getEdges(ttcTestString).contains(mapping.get(currentSubNode))) {
-										edgeMatch.put(extractedVariableNames.get(numberOfEdgesFound), "'" + ttcTestString + "'");
-										++numberOfEdgesFound;
-										if (numberOfEdgesFound >= extractedVariableNames.size()) {
-											exists = true;
-											break;
-										}
-									}
-								}
-							}
-							//#####
-							
-							if (("!=".equals(patternEdge.getAction()) && exists) || (!"!=".equals(patternEdge.getAction()) && !exists)) {
-								fail = true; // failure at incoming edge
-								break match;
-							}
+					for (CompiledPattern.Constraint constraint: steps[k].constraints) {
+						if (constraint.other >= first && constraint.other <= i && !constraint.isFulfilled(candidate, mapping[constraint.other], null)) {
+							continue candidate; // failure at outgoing or incoming edge
 						}
 					}
+					remaining.add(candidate);
 				}
-				if (fail) {
-					// found an error with the 'new' candidate at index i
-					/*
-					 * change candidate of node[i] or if not possible, the next possible earlier one,
-					 * reset the ones after it (also update the mapping)
-					 * and set checkIndex to the new index to check (the one that got incremented)
-					 */
-					checkIndex = i;
-					while (checkIndex >= 0 && currentTry.get(checkIndex) == couldMatch.get(0).get(checkIndex).size() - 1) {
-						--checkIndex;
-					}
-					if (checkIndex >= 0) {
-						currentTry.set(checkIndex, currentTry.get(checkIndex) + 1);
-						mapping.put(nodeMatchLists.get(0).get(checkIndex), couldMatch.get(0).get(checkIndex).get(currentTry.get(checkIndex)));
-						for (int j = checkIndex + 1; j < nodeMatchLists.get(0).size(); ++j) {
-							currentTry.set(j, 0);
-							mapping.put(nodeMatchLists.get(0).get(j), couldMatch.get(0).get(j).get(0));
-						}
-					}
-					continue loop;
+				if (remaining.isEmpty()) {
+					return false;
+				}
+				narrowed[i][k] = remaining.size() < domain.size() ? remaining : domain;
+			}
+			return true;
+		}
+
+		/**
+		 * @param i the index of the last matched node (-1 for none)
+		 * @param k the index of a later node
+		 * @return the candidates of the later node, that fit to the nodes matched up to index i (null if they weren't narrowed down)
+		 */
+		private ArrayList<Node> narrowed(int i, int k) {
+			for (int j = i; j >= 0; --j) {
+				if (narrowed[j][k] != null) {
+					return narrowed[j][k];
 				}
 			}
-			if (doesntMatchNegativeNodes(mapping, graph, nodeMatchLists, couldMatch)) {
-				mappings.add((HashMap<PatternNode, Node>)mapping.clone()); // it ran through with no errors => success
-				if (single) {
-					break loop;
-				}
+			return null;
+		}
+	}
+
+
+	/**
+	 * searches the matches for a range of the first positive node's candidates:
+	 * ranges larger than the grain are split in halves, which can be stolen by other threads of the pool.
+	 */
+	@SuppressWarnings("serial")
+	private static class MatchingTask extends RecursiveAction {
+		private final CompiledPattern compiled;
+		private final ArrayList<ArrayList<ArrayList<Node>>> couldMatch;
+		private final boolean single;
+		private final int from;
+		private final int to;
+		private final int grain;
+		private final AtomicInteger found;
+		private final ArrayList<HashMap<Node, Integer>> ranks;
+		private final ArrayList<ArrayList<Set<Node>>> members;
+		private MatchingTask left;
+		private MatchingTask right;
+		private ArrayList<Node[]> mappings;
+		private HashMap<String, String> edgeMatch;
+
+		MatchingTask(CompiledPattern compiled, ArrayList<ArrayList<ArrayList<Node>>> couldMatch, boolean single, int from, int to, int grain, AtomicInteger found,
+				ArrayList<HashMap<Node, Integer>> ranks, ArrayList<ArrayList<Set<Node>>> members) {
+			this.compiled = compiled;
+			this.couldMatch = couldMatch;
+			this.single = single;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+			this.found = found;
+			this.ranks = ranks;
+			this.members = members;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > grain) {
+				int middle = (from + to) >>> 1;
+				left = new MatchingTask(compiled, couldMatch, single, from, middle, grain, found, ranks, members);
+				right = new MatchingTask(compiled, couldMatch, single, middle, to, grain, found, ranks, members);
+				invokeAll(left, right);
+			} else {
+				edgeMatch = new HashMap<String, String>();
+				mappings = findMappings(compiled, couldMatch, single, from, to, edgeMatch, null, single ? found : null, ranks, members);
+			}
+		}
+
+		/**
+		 * collects the results of the ranges in their order (so they're the same, as if they were searched sequentially).
+		 *
+		 * @param allMappings the list to add the mappings to
+		 * @param allEdgeMatch the map to put the labels matched by the edge variables in
+		 * @return true if a single match was found, so the ranges after this one don't count
+		 */
+		boolean collect(ArrayList<Node[]> allMappings, HashMap<String, String> allEdgeMatch) {
+			if (left != null) {
+				return left.collect(allMappings, allEdgeMatch) || right.collect(allMappings, allEdgeMatch);
+			}
+			allEdgeMatch.putAll(edgeMatch);
+			allMappings.addAll(mappings);
+			return single && !mappings.isEmpty();
+		}
+	}
+
+	/**
+	 * looks up the candidates to try for a positive node, after the nodes before it are matched:
+	 * if it's connected to one of them by an edge, that needs to exist, only the neighbours over that edge
+	 * (the fewest ones, if there are multiple such edges) are tried, otherwise all of its candidates.
+	 * the neighbours are tried in the order of the candidates, so the matches are found in the same order.
+	 * 
+	 * @param i the index of the positive node
+	 * @param steps the steps of the search for the positive nodes
+	 * @param candidates the candidates of the positive nodes
+	 * @param ranks the positions of the candidates within their lists (built when they're needed first)
+	 * @param mapping the nodes matched by the positive nodes before
+	 * @return the candidates to try
+	 */
+	private static ArrayList<Node> candidatesToTry(int i, CompiledPattern.Step[] steps, ArrayList<ArrayList<Node>> candidates, ArrayList<HashMap<Node, Integer>> ranks, Node[] mapping) {
+		ArrayList<Node> neighbours = null;
+		for (CompiledPattern.Constraint driver: steps[i].drivers) {
+			Node other = mapping[driver.other];
+			ArrayList<Node> adjacent = driver.outgoing ? other.getIncomingEdges(driver.edge.name) : other.getEdges(driver.edge.symbol);
+			if (adjacent == null) {
+				return new ArrayList<Node>(); // the edge is missing for all candidates
+			}
+			if (neighbours == null || adjacent.size() < neighbours.size()) {
+				neighbours = adjacent;
 			}
-			// even if a match was found: count up, to find the next match:
-			checkIndex = nodeMatchLists.get(0).size() - 1;
-			while (checkIndex >= 0 && currentTry.get(checkIndex) == couldMatch.get(0).get(checkIndex).size() - 1) {
-				--checkIndex;
+		}
+		if (neighbours == null || neighbours.size() >= candidates.get(i).size()) {
+			return candidates.get(i);
+		}
+		return inCandidateOrder(neighbours, i, candidates, ranks);
+	}
+
+	/**
+	 * looks up the neighbours of the matched positive nodes up to an index, that can be candidates of a later positive node connected to them
+	 * (along the edge with the fewest neighbours, if there are multiple ones, that need to exist).
+	 *
+	 * @param k the index of the later positive node
+	 * @param i the index of the last matched positive node
+	 * @param steps the steps of the search for the positive nodes
+	 * @param candidates the candidates of the positive nodes
+	 * @param ranks the positions of the candidates within their lists (built when they're needed first)
+	 * @param mapping the nodes matched by the positive nodes (up to the one at index i)
+	 * @return the neighbours, that are candidates of the later node (in the order of its candidates),
+	 * or null if there is no edge to or from the matched nodes, that needs to exist
+	 */
+	private static ArrayList<Node> neighboursToTry(int k, int i, CompiledPattern.Step[] steps, ArrayList<ArrayList<Node>> candidates,
+			ArrayList<HashMap<Node, Integer>> ranks, Node[] mapping) {
+		ArrayList<Node> neighbours = null;
+		for (CompiledPattern.Constraint driver: steps[k].drivers) {
+			if (driver.other > i) {
+				continue;
 			}
-			if (checkIndex >= 0) {
-				currentTry.set(checkIndex, currentTry.get(checkIndex) + 1);
-				mapping.put(nodeMatchLists.get(0).get(checkIndex), couldMatch.get(0).get(checkIndex).get(currentTry.get(checkIndex)));
-				for (int j = checkIndex + 1; j < nodeMatchLists.get(0).size(); ++j) {
-					currentTry.set(j, 0);
-					mapping.put(nodeMatchLists.get(0).get(j), couldMatch.get(0).get(j).get(0));
-				}
+			Node other = mapping[driver.other];
+			ArrayList<Node> adjacent = driver.outgoing ? other.getIncomingEdges(driver.edge.name) : other.getEdges(driver.edge.symbol);
+			if (adjacent == null) {
+				return new ArrayList<Node>(); // the edge is missing for all candidates
+			}
+			if (neighbours == null || adjacent.size() < neighbours.size()) {
+				neighbours = adjacent;
+			}
+		}
+		return neighbours == null ? null : inCandidateOrder(neighbours, k, candidates, ranks);
+	}
+
+	/**
+	 * @param neighbours some nodes
+	 * @param i the index of a positive node
+	 * @param candidates the candidates of the positive nodes
+	 * @param ranks the positions of the candidates within their lists (built when they're needed first)
+	 * @return the nodes, that are candidates of the positive node (in the order of its candidates)
+	 */
+	private static ArrayList<Node> inCandidateOrder(ArrayList<Node> neighbours, int i, ArrayList<ArrayList<Node>> candidates, ArrayList<HashMap<Node, Integer>> ranks) {
+		if (ranks.get(i) == null) {
+			ranks.set(i, rankOf(candidates.get(i)));
+		}
+		final HashMap<Node, Integer> rank = ranks.get(i);
+		ArrayList<Node> result = new ArrayList<Node>();
+		for (Node neighbour: neighbours) {
+			if (rank.containsKey(neighbour)) {
+				result.add(neighbour);
 			}
 		}
-		// nothing left to check => return results
-		for (HashMap<PatternNode, Node> successfulMapping: mappings) {
-			matches.add(new Match(graph, pattern, successfulMapping, edgeMatch));
+		if (result.size() > 1) {
+			Collections.sort(result, new Comparator<Node>() {
+				@Override
+				public int compare(Node one, Node other) {
+					return Integer.compare(rank.get(one), rank.get(other));
+				}
+			});
 		}
-		return matches;
+		return result;
 	}
-	
+
+	/**
+	 * @param steps the steps of the search for the positive nodes
+	 * @param candidates the candidates of the positive nodes
+	 * @param shared true to build the positions of all candidates, that might be needed, at once (so multiple threads can read them),
+	 * false to leave them to be built when they're needed first
+	 * @return the positions of the candidates within their lists (null if not built)
+	 */
+	private static ArrayList<HashMap<Node, Integer>> ranksOf(CompiledPattern.Step[] steps, ArrayList<ArrayList<Node>> candidates, boolean shared) {
+		ArrayList<HashMap<Node, Integer>> ranks = new ArrayList<HashMap<Node, Integer>>();
+		for (int i = 0; i < steps.length; ++i) {
+			ranks.add(shared && steps[i].drivers.length > 0 ? rankOf(candidates.get(i)) : null);
+		}
+		return ranks;
+	}
+
+	private static HashMap<Node, Integer> rankOf(ArrayList<Node> candidates) {
+		HashMap<Node, Integer> rank = new HashMap<Node, Integer>();
+		for (int k = 0; k < candidates.size(); ++k) {
+			rank.put(candidates.get(k), k);
+		}
+		return rank;
+	}
+
 	public static ArrayList<String> extractVariableNames(String s) {
 		ArrayList<String> result = new ArrayList<String>();
 		if (s == null) {
@@ -967,30 +1387,558 @@ match:			for (int j = 0; j < i; ++j) {
 	 * @return a list of matches for the pattern in the graph
 	 */
 	public static ArrayList<Match> matchPattern(Graph graph, PatternGraph pattern, boolean single) {
-		// first get a 'smart' list of first all positive nodes and then multiple lists of negative nodes that belong together:
-		ArrayList<ArrayList<PatternNode>> nodeMatchLists = calculateNodeMatchingLists(pattern);
-		
-		if (nodeMatchLists.get(0).size() > graph.getNodes().size()) {
-			return new ArrayList<Match>(); // more positive nodes to match, than existing -> fail
+		return matchPattern(new FrozenGraph(graph), pattern, single);
+	}
+
+	/**
+	 * finds matches for a pattern in a frozen snapshot of a graph.
+	 * the snapshot can be shared by multiple calls, as long as its graph doesn't change in between.
+	 * 
+	 * @param frozenGraph the snapshot of the graph to match the pattern on
+	 * @param pattern the pattern to match
+	 * @return a list of matches for the pattern in the snapshot's graph
+	 */
+	public static ArrayList<Match> matchPattern(FrozenGraph frozenGraph, PatternGraph pattern, boolean single) {
+		return matchPattern(frozenGraph, CompiledPattern.of(pattern), single);
+	}
+
+	/**
+	 * finds matches for a compiled pattern in a graph.
+	 *
+	 * @param graph the graph to match the pattern on
+	 * @param compiled the plan of the pattern to match (see CompiledPattern.of)
+	 * @return a list of matches for the pattern in the graph
+	 */
+	public static ArrayList<Match> matchPattern(Graph graph, CompiledPattern compiled, boolean single) {
+		return matchPattern(new FrozenGraph(graph), compiled, single);
+	}
+
+	/**
+	 * finds matches for a compiled pattern in a frozen snapshot of a graph.
+	 *
+	 * @param frozenGraph the snapshot of the graph to match the pattern on
+	 * @param compiled the plan of the pattern to match (see CompiledPattern.of)
+	 * @return a list of matches for the pattern in the snapshot's graph
+	 */
+	public static ArrayList<Match> matchPattern(FrozenGraph frozenGraph, CompiledPattern compiled, boolean single) {
+		return matchPattern(frozenGraph, compiled, single, (HashMap<ArrayList<Object>, ArrayList<Node>>)null);
+	}
+
+	/**
+	 * finds matches for multiple patterns (like the patterns of a priority level) in a frozen snapshot of a graph.
+	 * the candidates of pattern nodes with the same conditions on the node itself (attribute match expression,
+	 * outgoing edges and attributes) are only looked up once in the graph and shared by all patterns.
+	 *
+	 * @param frozenGraph the snapshot of the graph to match the patterns on
+	 * @param patterns the patterns to match
+	 * @return a list of matches for each pattern (in the order of the patterns)
+	 */
+	public static ArrayList<ArrayList<Match>> matchPatterns(FrozenGraph frozenGraph, ArrayList<PatternGraph> patterns, boolean single) {
+		return matchPatterns(frozenGraph, patterns, single, new HashMap<ArrayList<Object>, ArrayList<Node>>());
+	}
+
+	private static ArrayList<ArrayList<Match>> matchPatterns(FrozenGraph frozenGraph, ArrayList<PatternGraph> patterns, boolean single,
+			HashMap<ArrayList<Object>, ArrayList<Node>> sharedCandidates) {
+		ArrayList<ArrayList<Match>> result = new ArrayList<ArrayList<Match>>();
+		if (patterns.size() > 1) {
+			frozenGraph.setReused(true);
+		}
+		for (PatternGraph pattern: patterns) {
+			result.add(matchPattern(frozenGraph, CompiledPattern.of(pattern), single, sharedCandidates));
+		}
+		return result;
+	}
+
+	private static ArrayList<Match> matchPattern(FrozenGraph frozenGraph, CompiledPattern compiled, boolean single,
+			HashMap<ArrayList<Object>, ArrayList<Node>> sharedCandidates) {
+		Graph graph = frozenGraph.getGraph();
+		ArrayList<ArrayList<ArrayList<Node>>> couldMatch = findCandidates(frozenGraph, compiled, sharedCandidates);
+		if (couldMatch == null) {
+			return new ArrayList<Match>();
+		}
+
+		// plan the cheapest order of the positive nodes for this graph
+		// (only when looking for all matches, because a single match should be the first one of the pattern's order):
+		if (!single && compiled.getOrder() == null) {
+			CompiledPattern planned = compiled.plan(frozenGraph, couldMatch.get(0), null);
+			if (planned != compiled) {
+				couldMatch.set(0, reorder(couldMatch.get(0), planned.getOrder()));
+				compiled = planned;
+			}
 		}
 		
+		// finally find those matches:
+		return matchPattern(graph, compiled, single, couldMatch);
+	}
+	
+	/**
+	 * finds the 'loosely matched candidates' of the nodes of a compiled pattern, without the 'impossible' ones.
+	 *
+	 * @param frozenGraph the snapshot of the graph to match the pattern on
+	 * @param compiled the plan of the pattern to match
+	 * @param sharedCandidates the candidates already found for the conditions of pattern nodes (may be null)
+	 * @return the candidates of the pattern nodes (level == 0: positive nodes, level > 0: negative node sets)
+	 * or null, if some positive node has no candidate
+	 */
+	private static ArrayList<ArrayList<ArrayList<Node>>> findCandidates(FrozenGraph frozenGraph, CompiledPattern compiled,
+			HashMap<ArrayList<Object>, ArrayList<Node>> sharedCandidates) {
+		// the plan contains a 'smart' list of first all positive nodes and then multiple lists of negative nodes that belong together:
+		if (compiled.getSteps()[0].length > frozenGraph.size()) {
+			return null; // more positive nodes to match, than existing -> fail
+		}
+
 		// now check for 'loosely matched candidates' of nodes to match (level == 0: positive nodes, level > 0: negative node sets):
-		ArrayList<ArrayList<ArrayList<Node>>> couldMatch = findPossibleMatchesForPositiveAndNegativeNodes(graph, nodeMatchLists);
-		
+		ArrayList<ArrayList<ArrayList<Node>>> couldMatch = findPossibleMatchesForPositiveAndNegativeNodes(frozenGraph, compiled, sharedCandidates);
+
 		if (couldMatch == null) {
-			return new ArrayList<Match>(); // some positive node has no match -> fail
+			return null; // some positive node has no match -> fail
 		}
-		
+
 		// remove 'impossible' matches:
 		for (int i = 0; i < couldMatch.size(); ++i) {
 			couldMatch.set(i, GraphEngine.removeImpossibleCandidates(couldMatch.get(i)));
 			if (i == 0 && couldMatch.get(i) == null) {
-				return new ArrayList<Match>(); // some positive node has no match -> fail
+				return null; // some positive node has no match -> fail
 			}
 		}
-		
-		// finally find those matches:
-		return matchPattern(graph, pattern, single, nodeMatchLists, couldMatch);
+		return couldMatch;
+	}
+
+	/**
+	 * iterates over the matches of a pattern in a graph, which are only searched, when they are needed:
+	 * the search stops, when no more matches are requested, so the first matches are found as fast as a single one.
+	 * the matches are found in the same order as by matchPattern.
+	 *
+	 * @param graph the graph to match the pattern on (mustn't change while iterating)
+	 * @param pattern the pattern to match
+	 * @return an iterator over the matches for the pattern in the graph
+	 */
+	public static Iterator<Match> iterateMatches(Graph graph, PatternGraph pattern) {
+		return iterateMatches(new FrozenGraph(graph), CompiledPattern.of(pattern));
+	}
+
+	/**
+	 * iterates over the matches of a compiled pattern in a frozen snapshot of a graph (see iterateMatches(Graph, PatternGraph)).
+	 *
+	 * @param frozenGraph the snapshot of the graph to match the pattern on
+	 * @param compiled the plan of the pattern to match (see CompiledPattern.of)
+	 * @return an iterator over the matches for the pattern in the snapshot's graph
+	 */
+	public static Iterator<Match> iterateMatches(FrozenGraph frozenGraph, CompiledPattern compiled) {
+		return new MatchIterator(frozenGraph.getGraph(), compiled, findCandidates(frozenGraph, compiled, null));
+	}
+
+	/**
+	 * streams the matches of a pattern in a graph, which are only searched, when they are needed (see iterateMatches),
+	 * so e.g. limit(k) stops the search after the first k matches.
+	 *
+	 * @param graph the graph to match the pattern on (mustn't change while streaming)
+	 * @param pattern the pattern to match
+	 * @return a sequential stream of the matches for the pattern in the graph
+	 */
+	public static Stream<Match> streamMatches(Graph graph, PatternGraph pattern) {
+		return streamMatches(new FrozenGraph(graph), CompiledPattern.of(pattern));
+	}
+
+	/**
+	 * streams the matches of a compiled pattern in a frozen snapshot of a graph (see streamMatches(Graph, PatternGraph)).
+	 *
+	 * @param frozenGraph the snapshot of the graph to match the pattern on
+	 * @param compiled the plan of the pattern to match (see CompiledPattern.of)
+	 * @return a sequential stream of the matches for the pattern in the snapshot's graph
+	 */
+	public static Stream<Match> streamMatches(FrozenGraph frozenGraph, CompiledPattern compiled) {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterateMatches(frozenGraph, compiled),
+				Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * an iterator, that continues the search for the mappings of the positive nodes only when the next match is needed:
+	 * the mapping is searched in one array, which is only copied, when it becomes a match.
+	 */
+	private static class MatchIterator implements Iterator<Match> {
+		private final Graph graph;
+		private final CompiledPattern compiled;
+		private final MappingSearch search;
+		private final HashMap<String, String> edgeMatch = new HashMap<String, String>();
+		/**
+		 * the next mapping (null if it isn't searched yet)
+		 */
+		private Node[] mapping = null;
+		private boolean done;
+
+		MatchIterator(Graph graph, CompiledPattern compiled, ArrayList<ArrayList<ArrayList<Node>>> couldMatch) {
+			this.graph = graph;
+			this.compiled = compiled;
+			int candidateCount = couldMatch == null || compiled.getSteps()[0].length == 0 ? 0 : couldMatch.get(0).get(0).size();
+			this.done = couldMatch == null || (compiled.getSteps()[0].length > 0 && candidateCount == 0);
+			this.search = done ? null : new MappingSearch(compiled, couldMatch, 0, candidateCount, edgeMatch, null, null, null, null);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (mapping == null && !done) {
+				mapping = search.next();
+				done = mapping == null;
+			}
+			return mapping != null;
+		}
+
+		@Override
+		public Match next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Match match = toMatch(graph, compiled, mapping, new HashMap<String, String>(edgeMatch));
+			mapping = null;
+			return match;
+		}
+	}
+
+	/**
+	 * finds matches for a pattern in a graph, whose nodes are identified by ids (like an OffHeapGraph), without building a (heap) graph of it:
+	 * the edges between the pattern nodes are followed and checked within the graph's edge indices,
+	 * and only the attributes of a candidate are put into a node, while it's checked.
+	 * it finds the same matches as matchPattern (in the same order), but the pattern mustn't have edge variables.
+	 *
+	 * @param graph the graph to match the pattern on
+	 * @param pattern the pattern to match
+	 * @param single true if only one match is needed
+	 * @return the matches, each as the ids of the nodes matched by the pattern nodes (in the order of the pattern, -1 for pattern nodes, that aren't positive)
+	 */
+	public static ArrayList<int[]> matchPattern(IndexedGraph graph, PatternGraph pattern, boolean single) {
+		return new IndexedSearch(graph, CompiledPattern.of(pattern)).find(single);
+	}
+
+	/**
+	 * the search for the matches of a pattern in a graph, whose nodes are identified by ids (see matchPattern(IndexedGraph, PatternGraph, boolean)):
+	 * the pattern nodes are matched in the original order of the plan, each one's candidates are looked up
+	 * among the neighbours of the nodes matched before (if they're connected by an edge, that needs to exist).
+	 */
+	private static class IndexedSearch {
+		private final IndexedGraph graph;
+		private final CompiledPattern compiled;
+		private final CompiledPattern.Step[][] steps;
+		/**
+		 * the candidates of the pattern nodes (level == 0: positive nodes, level > 0: negative node sets)
+		 */
+		private final BitSet[][] candidates;
+		/**
+		 * the ids of the candidates (ascending)
+		 */
+		private final int[][][] candidateIds;
+		/**
+		 * the nodes matched by the positive nodes (in the order of the plan)
+		 */
+		private final int[] positives;
+
+		IndexedSearch(IndexedGraph graph, CompiledPattern compiled) {
+			this.graph = graph;
+			this.compiled = compiled;
+			this.steps = compiled.getSteps();
+			for (CompiledPattern.NodePlan nodePlan: compiled.getNodes()) {
+				for (CompiledPattern.EdgePlan edgePlan: nodePlan.edges) {
+					if (edgePlan.action != CompiledPattern.Action.CREATE && !edgePlan.variableNames.isEmpty()) {
+						throw new UnsupportedOperationException("can't match the edge variables of '" + edgePlan.name + "' by ids");
+					}
+				}
+			}
+			this.candidates = new BitSet[steps.length][];
+			this.candidateIds = new int[steps.length][][];
+			for (int level = 0; level < steps.length; ++level) {
+				candidates[level] = new BitSet[steps[level].length];
+				candidateIds[level] = new int[steps[level].length][];
+				for (int i = 0; i < steps[level].length; ++i) {
+					candidates[level][i] = candidatesOf(steps[level][i].node);
+					candidateIds[level][i] = candidates[level][i].stream().toArray();
+				}
+			}
+			this.positives = new int[steps[0].length];
+		}
+
+		/**
+		 * @param nodePlan the plan of a pattern node
+		 * @return the nodes, that fulfill the conditions of the pattern node, that only concern a node itself
+		 */
+		private BitSet candidatesOf(CompiledPattern.NodePlan nodePlan) {
+			BitSet result = new BitSet(graph.size());
+			int[] labelIds = new int[nodePlan.checkedEdges.length];
+			for (int k = 0; k < labelIds.length; ++k) {
+				labelIds[k] = graph.getLabelId(nodePlan.checkedEdges[k].name);
+			}
+nodeMatch:	for (int id = 0; id < graph.size(); ++id) {
+				// check existence of outgoing edges:
+				for (int k = 0; k < labelIds.length; ++k) {
+					boolean exists = labelIds[k] >= 0 && graph.getOutDegree(id, labelIds[k]) > 0;
+					if (exists == (nodePlan.checkedEdges[k].action == CompiledPattern.Action.NOT)) {
+						continue nodeMatch;
+					}
+				}
+				// the attributes are checked on a node, that only holds them while they're checked:
+				Node node = new Node();
+				for (int i = graph.getAttributeBegin(id); i < graph.getAttributeEnd(id); ++i) {
+					int keyId = graph.getAttributeKeyAt(i);
+					node.setAttribute(graph.getAttributeKey(keyId), graph.getAttribute(id, keyId));
+				}
+				if (fitsAttributes(node, nodePlan)) {
+					result.set(id);
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * @param single true if only one match is needed
+		 * @return the matches (see matchPattern(IndexedGraph, PatternGraph, boolean))
+		 */
+		ArrayList<int[]> find(boolean single) {
+			ArrayList<int[]> matches = new ArrayList<int[]>();
+			for (BitSet positiveCandidates: candidates[0]) {
+				if (positiveCandidates.isEmpty()) {
+					return matches; // no mapping for this node => fail
+				}
+			}
+			findMappings(0, single, matches);
+			return matches;
+		}
+
+		/**
+		 * tries each candidate of the positive node at index i, and continues with the next positive node, if it fits.
+		 *
+		 * @param i the index of a positive node
+		 * @param single true if only one match is needed
+		 * @param matches the matches found so far
+		 * @return true if no more matches are needed
+		 */
+		private boolean findMappings(int i, boolean single, ArrayList<int[]> matches) {
+			if (i == positives.length) {
+				if (matchesNegativeNodes()) {
+					return false;
+				}
+				int[] match = new int[compiled.getNodes().length];
+				Arrays.fill(match, -1);
+				for (int j = 0; j < positives.length; ++j) {
+					match[steps[0][j].node.position] = positives[j];
+				}
+				matches.add(match);
+				return single;
+			}
+			for (int id: candidatesToTry(0, i, positives)) {
+				positives[i] = id;
+				if (fits(0, i, positives) && findMappings(i + 1, single, matches)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return true if any set of negative nodes can be matched together with the current mapping of the positive nodes
+		 */
+		private boolean matchesNegativeNodes() {
+			for (int level = 1; level < steps.length; ++level) {
+				if (matchesNegativeNodes(level, 0, new int[steps[level].length])) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @param level the level of a set of negative nodes
+		 * @param i the index of a negative node within its set
+		 * @param mapping the nodes matched by the negative nodes before
+		 * @return true if the negative nodes from index i on can be matched, too
+		 */
+		private boolean matchesNegativeNodes(int level, int i, int[] mapping) {
+			if (i == mapping.length) {
+				return true; // all negative nodes of this set are matched
+			}
+			for (int id: candidatesToTry(level, i, mapping)) {
+				mapping[i] = id;
+				if (fits(level, i, mapping) && matchesNegativeNodes(level, i + 1, mapping)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * looks up the candidates to try for a pattern node, after the nodes before it are matched:
+		 * if it's connected to one of them by an edge, that needs to exist, only the neighbours over that edge
+		 * (the fewest ones, if there are multiple such edges) are tried, otherwise all of its candidates.
+		 *
+		 * @param level the level of the pattern node
+		 * @param i the index of the pattern node within its level
+		 * @param mapping the nodes matched by the pattern nodes of the level before it
+		 * @return the ids of the candidates to try (ascending)
+		 */
+		private int[] candidatesToTry(int level, int i, int[] mapping) {
+			CompiledPattern.Step step = steps[level][i];
+			int begin = 0, end = -1;
+			boolean sources = false;
+			for (int k = 0; k < step.positiveDrivers.length + step.drivers.length; ++k) {
+				boolean positive = k < step.positiveDrivers.length;
+				CompiledPattern.Constraint driver = positive ? step.positiveDrivers[k] : step.drivers[k - step.positiveDrivers.length];
+				int other = positive ? positives[driver.other] : mapping[driver.other];
+				int labelId = graph.getLabelId(driver.edge.name);
+				if (labelId < 0) {
+					return new int[0]; // the edge is missing for all candidates
+				}
+				// an edge from this pattern node to the other one leads to the other node's sources, otherwise to its targets:
+				int driverBegin = driver.outgoing ? graph.getInBegin(other, labelId) : graph.getOutBegin(other, labelId);
+				int driverEnd = driver.outgoing ? graph.getInEnd(other, labelId) : graph.getOutEnd(other, labelId);
+				if (end < 0 || driverEnd - driverBegin < end - begin) {
+					begin = driverBegin;
+					end = driverEnd;
+					sources = driver.outgoing;
+				}
+			}
+			if (end < 0 || end - begin >= candidateIds[level][i].length) {
+				return candidateIds[level][i];
+			}
+			int[] neighbours = new int[end - begin];
+			int count = 0;
+			for (int index = begin; index < end; ++index) {
+				int id = sources ? graph.getInSource(index) : graph.getOutTarget(index);
+				if (candidates[level][i].get(id)) {
+					neighbours[count++] = id;
+				}
+			}
+			return Arrays.copyOf(neighbours, count);
+		}
+
+		/**
+		 * @param level the level of a pattern node
+		 * @param i the index of the pattern node within its level
+		 * @param mapping the nodes matched by the pattern nodes of the level (up to the one at index i)
+		 * @return true if the candidate of the pattern node at index i fits to the previous pattern nodes (and to the positive nodes)
+		 */
+		private boolean fits(int level, int i, int[] mapping) {
+			CompiledPattern.Step step = steps[level][i];
+			for (int j = 0; j < i; ++j) {
+				if (mapping[i] == mapping[j]) {
+					return false; // found duplicate!
+				}
+			}
+			for (CompiledPattern.Constraint constraint: step.selfConstraints) {
+				if (!isFulfilled(constraint, mapping[i], mapping[i])) {
+					return false; // failure at edge to self
+				}
+			}
+			for (CompiledPattern.Constraint constraint: step.constraints) {
+				if (!isFulfilled(constraint, mapping[i], mapping[constraint.other])) {
+					return false; // failure at outgoing or incoming edge
+				}
+			}
+			if (level > 0) {
+				for (int positive: positives) {
+					if (mapping[i] == positive) {
+						return false; // found duplicate!
+					}
+				}
+				for (CompiledPattern.Constraint constraint: step.positiveConstraints) {
+					if (!isFulfilled(constraint, mapping[i], positives[constraint.other])) {
+						return false; // failure at outgoing or incoming edge
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @param constraint an edge between a pattern node and another one
+		 * @param id the node matched by the pattern node
+		 * @param other the node matched by the other pattern node
+		 * @return true if the edge is fulfilled (respecting its action)
+		 */
+		private boolean isFulfilled(CompiledPattern.Constraint constraint, int id, int other) {
+			int labelId = graph.getLabelId(constraint.edge.name);
+			boolean exists = constraint.outgoing ? graph.hasEdge(id, labelId, other) : graph.hasEdge(other, labelId, id);
+			return exists != (constraint.edge.action == CompiledPattern.Action.NOT);
+		}
+	}
+
+	/**
+	 * @param candidates the candidates of the positive nodes (in the original order)
+	 * @param order the original positions of the positive nodes in the new order
+	 * @return the candidates of the positive nodes in the new order
+	 */
+	private static ArrayList<ArrayList<Node>> reorder(ArrayList<ArrayList<Node>> candidates, int[] order) {
+		ArrayList<ArrayList<Node>> reordered = new ArrayList<ArrayList<Node>>();
+		for (int position: order) {
+			reordered.add(candidates.get(position));
+		}
+		return reordered;
+	}
+	
+	/**
+	 * explains how a pattern is matched on a graph (see planSearch and SearchPlan).
+	 * 
+	 * @param graph the graph to match the pattern on
+	 * @param pattern the pattern to match
+	 * @return a textual description of the plan
+	 */
+	public static String explain(Graph graph, PatternGraph pattern) {
+		return planSearch(graph, pattern).toString();
+	}
+	
+	/**
+	 * plans how a pattern is matched on a graph and matches it: for each step of the planned search,
+	 * which pattern node is matched, how many candidates were looked up with the graph's indexes,
+	 * how many of them passed the checks of the pattern node,
+	 * and the estimated versus actual number of partial matches after that step.
+	 * 
+	 * @param graph the graph to match the pattern on
+	 * @param pattern the pattern to match
+	 * @return the plan and the numbers of its steps
+	 */
+	public static SearchPlan planSearch(Graph graph, PatternGraph pattern) {
+		FrozenGraph frozenGraph = new FrozenGraph(graph);
+		CompiledPattern compiled = CompiledPattern.of(pattern);
+		CompiledPattern.Step[][] steps = compiled.getSteps();
+		ArrayList<ArrayList<PatternNode>> negativeNodeSets = new ArrayList<ArrayList<PatternNode>>();
+		for (int level = 1; level < steps.length; ++level) {
+			negativeNodeSets.add(new ArrayList<PatternNode>(compiled.getNodeMatchLists().get(level)));
+		}
+		int[] seeded = new int[steps[0].length];
+		for (int i = 0; i < steps[0].length; ++i) {
+			int[] ids = seedCandidates(frozenGraph, steps[0][i].node);
+			seeded[i] = ids == null ? frozenGraph.size() : ids.length;
+		}
+		ArrayList<ArrayList<ArrayList<Node>>> couldMatch = findPossibleMatchesForPositiveAndNegativeNodes(frozenGraph, compiled, null);
+		for (int i = 0; couldMatch != null && i < couldMatch.size(); ++i) {
+			couldMatch.set(i, GraphEngine.removeImpossibleCandidates(couldMatch.get(i)));
+			if (i == 0 && couldMatch.get(i) == null) {
+				couldMatch = null;
+			}
+		}
+		if (couldMatch == null) {
+			return new SearchPlan(pattern, frozenGraph.size(), frozenGraph.getEdgeCount(), null, null, null, null, null, negativeNodeSets, null, 0);
+		}
+		double[] estimates = new double[steps[0].length];
+		CompiledPattern planned = compiled.plan(frozenGraph, couldMatch.get(0), estimates);
+		int[] order = planned.getOrder();
+		if (order != null) {
+			couldMatch.set(0, reorder(couldMatch.get(0), order));
+		}
+		long[] passed = new long[steps[0].length];
+		int matches = matchPattern(graph, planned, false, couldMatch, passed).size();
+		int[] seededInOrder = new int[steps[0].length];
+		int[] candidates = new int[steps[0].length];
+		for (int i = 0; i < steps[0].length; ++i) {
+			seededInOrder[i] = seeded[order == null ? i : order[i]];
+			candidates[i] = couldMatch.get(0).get(i).size();
+		}
+		int[][] negativeCandidates = new int[steps.length - 1][];
+		for (int level = 1; level < steps.length; ++level) {
+			negativeCandidates[level - 1] = new int[steps[level].length];
+			for (int i = 0; i < steps[level].length; ++i) {
+				negativeCandidates[level - 1][i] = couldMatch.get(level) == null ? 0 : couldMatch.get(level).get(i).size();
+			}
+		}
+		return new SearchPlan(pattern, frozenGraph.size(), frozenGraph.getEdgeCount(), new ArrayList<PatternNode>(planned.getNodeMatchLists().get(0)),
+				seededInOrder, candidates, estimates, passed, negativeNodeSets, negativeCandidates, matches);
 	}
 	
 //	public static ArrayList<Match> matchPatternOld(Graph graph, PatternGraph pattern, boolean single) {
@@ -1292,71 +2240,94 @@ match:			for (int j = 0; j < i; ++j) {
 	 * @return the resulting graph
 	 */
 	public static Graph applyMatch(Match match, boolean keepGraph) {
-
-		Graph clonedGraph;
-		HashMap<PatternNode, Node> clonedNodeMatch;
-		
 		if (!keepGraph) {
-			clonedGraph = match.getGraph().clone();
-			clonedNodeMatch = new HashMap<PatternNode, Node>();
-			for (PatternNode patternNode: match.getNodeMatch().keySet()) {
-				clonedNodeMatch.put(patternNode, clonedGraph.getNodes().get(match.getGraph().getNodes().indexOf(match.getNodeMatch().get(patternNode))));
+			return applyMatch(match, new HashMap<Node, Node>());
+		}
+		CompiledPattern compiled = CompiledPattern.of(match.getPattern());
+		Node[] matchedNodes = match.getNodes(compiled);
+		Graph graph = applyMatch(match, compiled, match.getGraph(), matchedNodes);
+		// the created nodes are part of the match now:
+		for (CompiledPattern.NodePlan nodePlan: compiled.getNodes()) {
+			if (nodePlan.action == CompiledPattern.Action.CREATE) {
+				match.setNode(nodePlan, matchedNodes[nodePlan.position]);
+			}
+		}
+		return graph;
+	}
+	
+	/**
+	 * applies a pattern to a match on a clone of the match's graph.
+	 * 
+	 * @param match the match that was previously found
+	 * @param clones a map that is filled with the clone of each node of the match's graph
+	 * @return the resulting graph
+	 */
+	public static Graph applyMatch(Match match, HashMap<Node, Node> clones) {
+		Graph clonedGraph = match.getGraph().clone(clones);
+		CompiledPattern compiled = CompiledPattern.of(match.getPattern());
+		Node[] clonedNodes = match.getNodes(compiled);
+		for (int i = 0; i < clonedNodes.length; ++i) {
+			if (clonedNodes[i] != null) {
+				clonedNodes[i] = clones.get(clonedNodes[i]);
 			}
-		} else {
-			clonedGraph = match.getGraph();
-			clonedNodeMatch = match.getNodeMatch();
 		}
+		return applyMatch(match, compiled, clonedGraph, clonedNodes);
+	}
+	
+	/**
+	 * @param match the match that was previously found
+	 * @param compiled the plan of the match's pattern
+	 * @param clonedGraph the graph to change
+	 * @param clonedNodes the nodes of that graph mapped by the pattern nodes (indexed by their positions within the plan, the created ones are added)
+	 * @return the changed graph
+	 */
+	private static Graph applyMatch(Match match, CompiledPattern compiled, Graph clonedGraph, Node[] clonedNodes) {
+		// all changes are collected and committed at once:
+		GraphTransaction transaction = new GraphTransaction(clonedGraph);
 		
 		// first create new nodes, so it can be used for targets of new edges from other nodes and so on:
-		for (PatternNode patternNode: match.getPattern().getPatternNodes()) {
-			Node matchedNode;
-			switch (patternNode.getAction()) {
-			case "+": // create
-				matchedNode = new Node();
-				clonedGraph.addNode(matchedNode);
-				clonedNodeMatch.put(patternNode, matchedNode);
+		for (CompiledPattern.NodePlan nodePlan: compiled.getNodes()) {
+			if (nodePlan.action == CompiledPattern.Action.CREATE) {
+				Node matchedNode = new Node();
+				transaction.addNode(matchedNode);
+				clonedNodes[nodePlan.position] = matchedNode;
 			}
 		}
 		
 		// then do the rest, except for creating new attributes, because they could also be removed (could remove a new attribute):
-		for (PatternNode patternNode: match.getPattern().getPatternNodes()) {
-			Node matchedNode;
-			switch (patternNode.getAction()) {
-			case "-": // remove
-				clonedGraph.removeNode(clonedNodeMatch.get(patternNode));
+		for (CompiledPattern.NodePlan nodePlan: compiled.getNodes()) {
+			if (nodePlan.action == CompiledPattern.Action.DELETE) {
+				transaction.removeNode(clonedNodes[nodePlan.position]);
 				continue;
-			default: // match or create
-				matchedNode = clonedNodeMatch.get(patternNode);
 			}
-			for (PatternAttribute patternAttribute: patternNode.getPatternAttributes()) {
-				switch (patternAttribute.getAction()) {
-				case "-": // remove
-					matchedNode.removeAttribute(patternAttribute.getName());
+			// match or create
+			Node matchedNode = clonedNodes[nodePlan.position];
+			for (CompiledPattern.AttributePlan attributePlan: nodePlan.attributes) {
+				if (attributePlan.action == CompiledPattern.Action.DELETE) {
+					transaction.removeAttribute(matchedNode, attributePlan.patternAttribute.getName());
 				}
 			}
-			for (PatternEdge patternEdge: patternNode.getPatternEdges()) {
-				ArrayList<String> extractedVariableNames = extractVariableNames(patternEdge.getName());
-				switch (patternEdge.getAction()) {
-				case "-": // remove
-					if (extractedVariableNames.size() > 0) {
+			for (CompiledPattern.EdgePlan edgePlan: nodePlan.edges) {
+				Node target = edgePlan.target >= 0 ? clonedNodes[edgePlan.target] : null;
+				if (edgePlan.action == CompiledPattern.Action.DELETE) {
+					if (edgePlan.variableNames.size() > 0) {
 
 						//##### NEW TTC2017 FEATURE:
 						
-						for (String s: extractedVariableNames) {
+						for (String s: edgePlan.variableNames) {
 							String edgeName = match.getEdgeMatch().get(s);
 							edgeName = edgeName.substring(1, edgeName.length() - 1);
-							matchedNode.removeEdge(edgeName, clonedNodeMatch.get(patternEdge.getTarget()));
+							transaction.removeEdge(matchedNode, edgeName, target);
 						}
 						
 						//#####
 						
 					} else {
-						matchedNode.removeEdge(patternEdge.getName(), clonedNodeMatch.get(patternEdge.getTarget()));
+						transaction.removeEdge(matchedNode, edgePlan.name, target);
 					}
-					break;
-				case "+": // create
-					String label = patternEdge.getName();
-					if (extractedVariableNames.size() > 0) {
+				} else if (edgePlan.action == CompiledPattern.Action.CREATE) {
+					String label = edgePlan.name;
+					if (edgePlan.variableNames.size() > 0) {
 						try {
 							label = match.getEdgeEvaluator().evaluate(("'' + (" + label + ")")); // convert to String to be sure
 							label = label.substring(1, label.length() - 1); // now remove those single quote-characters ("'result'")
@@ -1364,48 +2335,46 @@ match:			for (int j = 0; j < i; ++j) {
 							t.printStackTrace();
 						}
 					}
-					matchedNode.addEdge(label, clonedNodeMatch.get(patternEdge.getTarget()));
+					transaction.addEdge(matchedNode, label, target);
 				}
 			}
 		}
 
 		// then create new attributes:
-		for (PatternNode patternNode: match.getPattern().getPatternNodes()) {
-			Node matchedNode;
-			switch (patternNode.getAction()) {
-			case "+":
-			case "==":
-				matchedNode = clonedNodeMatch.get(patternNode);
-				break;
-			default:
+		for (CompiledPattern.NodePlan nodePlan: compiled.getNodes()) {
+			if (nodePlan.action != CompiledPattern.Action.CREATE && nodePlan.action != CompiledPattern.Action.MATCH) {
 				continue;
 			}
-			for (PatternAttribute patternAttribute: patternNode.getPatternAttributes()) {
-				switch (patternAttribute.getAction()) {
-				case "+": // create
-					matchedNode.setAttribute(patternAttribute.getName(), patternAttribute.getValue());
+			Node matchedNode = clonedNodes[nodePlan.position];
+			for (CompiledPattern.AttributePlan attributePlan: nodePlan.attributes) {
+				if (attributePlan.action == CompiledPattern.Action.CREATE) {
+					transaction.setAttribute(matchedNode, attributePlan.patternAttribute.getName(), attributePlan.patternAttribute.getValue());
 				}
 			}
 		}
-		return clonedGraph;
+		return transaction.commit();
 	}	
 	
 	public static boolean evaluate(Node node, String expression) {
-		//return evaluate(buildNodeEvaluator(node), expression); // uncached
-		return evaluate(getNodeEvaluator(node), expression); // cached
+		//return evaluate(getNodeEvaluator(node), expression); // by the expression library
+		return CompiledExpression.of(expression).evaluate(node); // compiled (falls back to the expression library)
 	}
 	public static Evaluator buildNodeEvaluator(Node node) {
 		Evaluator evaluator = new Evaluator();
-		for (String key: node.getAttributes().keySet()) {
-			if (node.getAttribute(key) instanceof String) {
+		for (String key: node.getAttributeKeys()) {
+			Object value = node.getAttribute(key);
+			switch (AttributeType.of(value)) {
+			case STRING:
 				// Strings are contained in single quotes:
-				evaluator.putVariable(key, "'" + node.getAttribute(key) + "'");
-			} else if (node.getAttribute(key) instanceof Boolean) {
+				evaluator.putVariable(key, "'" + value + "'");
+				break;
+			case BOOLEAN:
 				// Booleans are handled as 1 (or 1.0) respectively 0 (or 0.0):
-				evaluator.putVariable(key, "" + ((boolean)node.getAttribute(key) ? "1.0" : "0.0"));
-			} else {
+				evaluator.putVariable(key, (Boolean)value ? "1.0" : "0.0");
+				break;
+			default:
 				// other values like numbers are just written as is:
-				evaluator.putVariable(key, "" + node.getAttribute(key));
+				evaluator.putVariable(key, "" + value);
 			}
 		}
 		return evaluator;
@@ -1415,26 +2384,34 @@ match:			for (int j = 0; j < i; ++j) {
 		if (expression == null || "".equals(expression)) {
 			return true;
 		}
-		boolean matched = false;
-		boolean catched = false;
-		do {
-			try {
-				catched = false;
+		// variables, that the evaluator can't resolve, are 0 (they aren't added to the evaluator, because it's shared by the cache):
+		String resolved = expression;
+		for (String name: getVariableNames(expression)) {
+			if (!canResolve(evaluator, name)) {
+				resolved = resolved.replace("#{" + name + "}", "0");
+			}
+		}
+		try {
+			// the evaluator keeps the state of its last evaluation, so it can't be used by multiple threads at once:
+			synchronized (evaluator) {
 				// the expression must yield a boolean value, so "1.0" means true, "0.0" means false:
-				matched = "1.0".equals(evaluator.evaluate(expression)); // calls the expression library
-			} catch (EvaluationException e) {
-				// error means, the condition isn't fulfilled:
-				String toParse = e.toString();
-				String searchFor = "Can not resolve variable with name equal to \"";
-				if (toParse.indexOf(searchFor) != -1) {
-					catched = true;
-				}
-				toParse = toParse.substring(toParse.indexOf(searchFor) + searchFor.length());
-				toParse = toParse.substring(0, toParse.length() - 2);
-				evaluator.putVariable(toParse, "0");
+				return "1.0".equals(evaluator.evaluate(resolved)); // calls the expression library
 			}
-		} while (catched == true);
-		return matched;
+		} catch (EvaluationException e) {
+			// error means, the condition isn't fulfilled:
+			return false;
+		}
+	}
+	private static boolean canResolve(Evaluator evaluator, String name) {
+		if (evaluator.getVariables().containsKey(name)) {
+			return true;
+		}
+		VariableResolver resolver = evaluator.getVariableResolver();
+		try {
+			return resolver != null && resolver.resolveVariable(name) != null;
+		} catch (FunctionException e) {
+			return false;
+		}
 	}
 	
 }
@@ -0,0 +1,332 @@
+package org.fujaba.graphengine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.fujaba.graphengine.graph.Graph;
+import org.fujaba.graphengine.graph.Node;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * The ReachabilityStates store the graphs (states) of a reachability graph in a compact way.
+ *
+ * Every state is stored as a delta against its parent state (removed and added nodes, changed attributes and changed edge lists),
+ * and every few states a full snapshot is stored, so a state is reconstructed on demand from the nearest snapshot.
+ * The nodes of a reachability graph, that was calculated with ReachabilityStates,
+ * refer to their state with the attribute STATE_ATTRIBUTE (instead of containing the serialized graph).
+ */
+public class ReachabilityStates {
+
+	/**
+	 * the attribute of a reachability graph's node, that contains the index of its state
+	 */
+	public static final String STATE_ATTRIBUTE = "state";
+
+	/**
+	 * marks a removed attribute within a delta
+	 */
+	private static final Object REMOVED = new Object();
+
+	/**
+	 * A state, that's either a full snapshot or a delta against its parent state.
+	 */
+	private static class State {
+		/**
+		 * the index of the parent state (-1 for snapshots)
+		 */
+		int parent = -1;
+		/**
+		 * the number of deltas that need to be applied to the nearest snapshot to reconstruct this state
+		 */
+		int chain = 0;
+		/**
+		 * the full graph of this state (only for snapshots)
+		 */
+		Graph snapshot;
+		/**
+		 * the indices of the parent's nodes, that were removed (ascending)
+		 */
+		int[] removedNodes;
+		/**
+		 * the number of nodes, that were added (at the end of the node list)
+		 */
+		int addedNodes;
+		/**
+		 * the changed attributes: the node's index, the attribute's name and its new value (or REMOVED)
+		 */
+		int[] attributeNodes;
+		String[] attributeNames;
+		Object[] attributeValues;
+		/**
+		 * the changed edge lists: the node's index, the edges' label and the indices of their targets (empty if removed)
+		 */
+		int[] edgeNodes;
+		String[] edgeLabels;
+		int[][] edgeTargets;
+	}
+
+	private int snapshotInterval;
+	private ArrayList<State> states = new ArrayList<State>();
+	private LoadingCache<Integer, Graph> graphCache;
+
+	/**
+	 * creates ReachabilityStates with a full snapshot every 16 states (along each path).
+	 */
+	public ReachabilityStates() {
+		this(16);
+	}
+
+	/**
+	 * @param snapshotInterval a full snapshot is stored, if a state would need more deltas to be reconstructed
+	 */
+	public ReachabilityStates(int snapshotInterval) {
+		this.snapshotInterval = Math.max(1, snapshotInterval);
+		graphCache = CacheBuilder.newBuilder()
+				.maximumSize(64)
+				.build(new CacheLoader<Integer, Graph>() {
+					public Graph load(Integer index) {
+						return reconstruct(index);
+					}
+				});
+	}
+
+	/**
+	 * @return the number of stored states
+	 */
+	public int size() {
+		return states.size();
+	}
+
+	/**
+	 * @return the number of states, that are stored as full snapshots
+	 */
+	public int getSnapshotCount() {
+		int count = 0;
+		for (State state: states) {
+			if (state.snapshot != null) {
+				++count;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * stores a state as a full snapshot.
+	 *
+	 * @param graph the state's graph (which must not be changed afterwards)
+	 * @return the index of the state
+	 */
+	public int add(Graph graph) {
+		State state = new State();
+		state.snapshot = graph;
+		states.add(state);
+		return states.size() - 1;
+	}
+
+	/**
+	 * stores a state as a delta against its parent state (or as a full snapshot, if that's due).
+	 *
+	 * @param graph the state's graph (which must not be changed afterwards)
+	 * @param parentIndex the index of the parent state
+	 * @param parent the parent state's graph
+	 * @param clones the clones of the parent's nodes within the state's graph (removed nodes may be contained, too)
+	 * @return the index of the state
+	 */
+	public int add(Graph graph, int parentIndex, Graph parent, HashMap<Node, Node> clones) {
+		State parentState = states.get(parentIndex);
+		if (parentState.chain + 1 >= snapshotInterval) {
+			return add(graph);
+		}
+		State state = delta(graph, parent, clones);
+		if (state == null) {
+			// the nodes were reordered or edges lead out of the graph, that's not covered by deltas:
+			return add(graph);
+		}
+		state.parent = parentIndex;
+		state.chain = parentState.chain + 1;
+		states.add(state);
+		return states.size() - 1;
+	}
+
+	/**
+	 * returns the graph of a state (reconstructing it from the nearest snapshot, if it's not cached).
+	 *
+	 * @param index the index of the state
+	 * @return the state's graph (which must not be changed)
+	 */
+	public Graph getGraph(int index) {
+		State state = states.get(index);
+		if (state.snapshot != null) {
+			return state.snapshot;
+		}
+		return graphCache.getUnchecked(index);
+	}
+
+	/**
+	 * returns the graph of a reachability graph's node.
+	 *
+	 * @param rgNode the node of the reachability graph
+	 * @return the state's graph (which must not be changed)
+	 */
+	public Graph getGraph(Node rgNode) {
+		return getGraph((Integer)rgNode.getAttribute(STATE_ATTRIBUTE));
+	}
+
+	/**
+	 * @param graph the state's graph
+	 * @param parent the parent state's graph
+	 * @param clones the clones of the parent's nodes within the state's graph
+	 * @return the delta of the state, or null if it can't be stored as a delta
+	 * (if the parent's nodes were reordered, or an edge leads to a node, that isn't part of the state's graph)
+	 */
+	private State delta(Graph graph, Graph parent, HashMap<Node, Node> clones) {
+		// the parent's nodes need to keep their order, new nodes need to be at the end:
+		Node[] origins = new Node[graph.getNodes().size()];
+		ArrayList<Integer> removedNodes = new ArrayList<Integer>();
+		int next = 0;
+		for (int i = 0; i < parent.getNodes().size(); ++i) {
+			Node clone = clones.get(parent.getNodes().get(i));
+			int position = clone == null ? -1 : graph.indexOf(clone);
+			if (position < 0) {
+				removedNodes.add(i);
+			} else if (position != next) {
+				return null;
+			} else {
+				origins[next++] = parent.getNodes().get(i);
+			}
+		}
+		State state = new State();
+		state.removedNodes = new int[removedNodes.size()];
+		for (int i = 0; i < removedNodes.size(); ++i) {
+			state.removedNodes[i] = removedNodes.get(i);
+		}
+		state.addedNodes = graph.getNodes().size() - next;
+		ArrayList<Integer> attributeNodes = new ArrayList<Integer>();
+		ArrayList<String> attributeNames = new ArrayList<String>();
+		ArrayList<Object> attributeValues = new ArrayList<Object>();
+		ArrayList<Integer> edgeNodes = new ArrayList<Integer>();
+		ArrayList<String> edgeLabels = new ArrayList<String>();
+		ArrayList<int[]> edgeTargets = new ArrayList<int[]>();
+		for (int i = 0; i < origins.length; ++i) {
+			Node node = graph.getNodes().get(i);
+			Node origin = origins[i];
+			// check attributes (shared attributes didn't change):
+			if (origin == null || !origin.sharesAttributesWith(node)) {
+				for (String key: node.getAttributeKeys()) {
+					Object value = node.getAttribute(key);
+					if (origin == null || !origin.hasAttribute(key) || !equal(value, origin.getAttribute(key))) {
+						attributeNodes.add(i);
+						attributeNames.add(key);
+						attributeValues.add(value);
+					}
+				}
+				if (origin != null) {
+					for (String key: origin.getAttributeKeys()) {
+						if (!node.hasAttribute(key)) {
+							attributeNodes.add(i);
+							attributeNames.add(key);
+							attributeValues.add(REMOVED);
+						}
+					}
+				}
+			}
+			// check edges (each changed list is stored as a whole, so the order of its targets is kept):
+			for (String key: node.getEdges().keySet()) {
+				ArrayList<Node> targets = node.getEdges(key);
+				for (Node target: targets) {
+					if (graph.indexOf(target) < 0) {
+						// the edge can't be stored by the target's index, and the clone of a graph doesn't keep it either:
+						return null;
+					}
+				}
+				if (origin != null && sameTargets(origin.getEdges(key), targets, clones)) {
+					continue;
+				}
+				int[] targetIndices = new int[targets.size()];
+				for (int j = 0; j < targets.size(); ++j) {
+					targetIndices[j] = graph.indexOf(targets.get(j));
+				}
+				edgeNodes.add(i);
+				edgeLabels.add(key);
+				edgeTargets.add(targetIndices);
+			}
+			if (origin != null) {
+				for (String key: origin.getEdges().keySet()) {
+					if (node.getEdges(key) == null) {
+						edgeNodes.add(i);
+						edgeLabels.add(key);
+						edgeTargets.add(new int[0]);
+					}
+				}
+			}
+		}
+		state.attributeNodes = new int[attributeNodes.size()];
+		state.attributeNames = attributeNames.toArray(new String[attributeNames.size()]);
+		state.attributeValues = attributeValues.toArray();
+		for (int i = 0; i < attributeNodes.size(); ++i) {
+			state.attributeNodes[i] = attributeNodes.get(i);
+		}
+		state.edgeNodes = new int[edgeNodes.size()];
+		state.edgeLabels = edgeLabels.toArray(new String[edgeLabels.size()]);
+		state.edgeTargets = edgeTargets.toArray(new int[edgeTargets.size()][]);
+		for (int i = 0; i < edgeNodes.size(); ++i) {
+			state.edgeNodes[i] = edgeNodes.get(i);
+		}
+		return state;
+	}
+
+	private static boolean equal(Object one, Object other) {
+		return one == null ? other == null : one.equals(other);
+	}
+
+	private static boolean sameTargets(ArrayList<Node> originTargets, ArrayList<Node> targets, HashMap<Node, Node> clones) {
+		if (originTargets == null || originTargets.size() != targets.size()) {
+			return false;
+		}
+		for (int i = 0; i < targets.size(); ++i) {
+			if (clones.get(originTargets.get(i)) != targets.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Graph reconstruct(int index) {
+		State state = states.get(index);
+		Graph graph = getGraph(state.parent).clone();
+		ArrayList<Node> removedNodes = new ArrayList<Node>();
+		for (int removed: state.removedNodes) {
+			removedNodes.add(graph.getNodes().get(removed));
+		}
+		for (Node removed: removedNodes) {
+			graph.removeNode(removed);
+		}
+		for (int i = 0; i < state.addedNodes; ++i) {
+			graph.addNode(new Node());
+		}
+		ArrayList<Node> nodes = graph.getNodes();
+		for (int i = 0; i < state.attributeNodes.length; ++i) {
+			if (state.attributeValues[i] == REMOVED) {
+				nodes.get(state.attributeNodes[i]).removeAttribute(state.attributeNames[i]);
+			} else {
+				nodes.get(state.attributeNodes[i]).setAttribute(state.attributeNames[i], state.attributeValues[i]);
+			}
+		}
+		for (int i = 0; i < state.edgeNodes.length; ++i) {
+			Node node = nodes.get(state.edgeNodes[i]);
+			if (node.getEdges(state.edgeLabels[i]) != null) {
+				node.removeEdge(state.edgeLabels[i], node.getEdges(state.edgeLabels[i]).toArray(new Node[0]));
+			}
+			ArrayList<Node> targets = new ArrayList<Node>(state.edgeTargets[i].length);
+			for (int target: state.edgeTargets[i]) {
+				targets.add(nodes.get(target));
+			}
+			node.addEdges(state.edgeLabels[i], targets);
+		}
+		return graph;
+	}
+
+}
@@ -0,0 +1,151 @@
+package org.fujaba.graphengine;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+import org.fujaba.graphengine.pattern.PatternGraph;
+import org.fujaba.graphengine.pattern.PatternNode;
+
+/**
+ * A SearchPlan tells how a pattern was matched on a graph (see PatternEngine.planSearch):
+ * for each step of the planned search, which pattern node is matched, how many candidates were looked up with the graph's indexes,
+ * how many of them passed the checks of the pattern node,
+ * and the estimated versus actual number of partial matches after that step.
+ */
+public class SearchPlan {
+
+	private PatternGraph pattern;
+	private int nodeCount;
+	private int edgeCount;
+	/**
+	 * the positive nodes in the order they're matched (null if some positive node has no candidates)
+	 */
+	private ArrayList<PatternNode> order;
+	/**
+	 * the number of candidates looked up with the graph's indexes (for each step)
+	 */
+	private int[] seeded;
+	/**
+	 * the number of candidates, that passed the checks of the pattern node (for each step)
+	 */
+	private int[] candidates;
+	/**
+	 * the estimated number of partial matches after each step
+	 */
+	private double[] estimates;
+	/**
+	 * the actual number of partial matches after each step
+	 */
+	private long[] actual;
+	/**
+	 * the sets of negative nodes
+	 */
+	private ArrayList<ArrayList<PatternNode>> negativeNodeSets;
+	/**
+	 * the number of candidates of the negative nodes (for each set)
+	 */
+	private int[][] negativeCandidates;
+	private int matchCount;
+
+	SearchPlan(PatternGraph pattern, int nodeCount, int edgeCount, ArrayList<PatternNode> order, int[] seeded, int[] candidates,
+			double[] estimates, long[] actual, ArrayList<ArrayList<PatternNode>> negativeNodeSets, int[][] negativeCandidates, int matchCount) {
+		this.pattern = pattern;
+		this.nodeCount = nodeCount;
+		this.edgeCount = edgeCount;
+		this.order = order;
+		this.seeded = seeded;
+		this.candidates = candidates;
+		this.estimates = estimates;
+		this.actual = actual;
+		this.negativeNodeSets = negativeNodeSets;
+		this.negativeCandidates = negativeCandidates;
+		this.matchCount = matchCount;
+	}
+
+	public PatternGraph getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @return the positive nodes in the order they're matched (null if some positive node has no candidates, so nothing was searched)
+	 */
+	public ArrayList<PatternNode> getOrder() {
+		return order;
+	}
+
+	/**
+	 * @return the number of candidates looked up with the graph's indexes (for each step)
+	 */
+	public int[] getSeeded() {
+		return seeded;
+	}
+
+	/**
+	 * @return the number of candidates, that passed the checks of the pattern node (for each step)
+	 */
+	public int[] getCandidates() {
+		return candidates;
+	}
+
+	/**
+	 * @return the estimated number of partial matches after each step
+	 */
+	public double[] getEstimates() {
+		return estimates;
+	}
+
+	/**
+	 * @return the actual number of partial matches after each step
+	 */
+	public long[] getActual() {
+		return actual;
+	}
+
+	/**
+	 * @return the sets of negative nodes
+	 */
+	public ArrayList<ArrayList<PatternNode>> getNegativeNodeSets() {
+		return negativeNodeSets;
+	}
+
+	/**
+	 * @return the number of candidates of the negative nodes (for each set)
+	 */
+	public int[][] getNegativeCandidates() {
+		return negativeCandidates;
+	}
+
+	/**
+	 * @return the number of matches
+	 */
+	public int getMatchCount() {
+		return matchCount;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder explanation = new StringBuilder();
+		explanation.append("pattern '" + pattern.getName() + "' on " + nodeCount + " nodes and " + edgeCount + " edges:\n");
+		if (order == null) {
+			explanation.append("some positive node has no candidates => no matches\n");
+			return explanation.toString();
+		}
+		explanation.append(String.format("%-6s%-6s%-10s%-12s%-12s%-10s%s\n", "step", "node", "seeded", "candidates", "estimated", "actual", "attribute match expression"));
+		for (int i = 0; i < order.size(); ++i) {
+			PatternNode patternNode = order.get(i);
+			explanation.append(String.format(Locale.ENGLISH, "%-6d%-6d%-10d%-12d%-12.1f%-10d%s\n", i, pattern.getPatternNodes().indexOf(patternNode), seeded[i],
+					candidates[i], estimates[i], actual[i], patternNode.getAttributeMatchExpression()));
+		}
+		for (int set = 0; set < negativeNodeSets.size(); ++set) {
+			explanation.append("negative node set " + (set + 1) + ":");
+			for (int i = 0; i < negativeNodeSets.get(set).size(); ++i) {
+				explanation.append(" node " + pattern.getPatternNodes().indexOf(negativeNodeSets.get(set).get(i)) + " ("
+						+ negativeCandidates[set][i] + " candidates)");
+			}
+			explanation.append("\n");
+		}
+		explanation.append("matches: " + matchCount + "\n");
+		return explanation.toString();
+	}
+
+}
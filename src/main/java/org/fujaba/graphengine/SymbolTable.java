@@ -0,0 +1,82 @@
+package org.fujaba.graphengine;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The SymbolTable maps edge labels and attribute keys to dense int ids (symbols) and canonical String instances.
+ *
+ * It is global, so the ids are the same for all graphs and patterns and never change.
+ * Comparing symbols is an int compare, and looking up canonical Strings in HashMaps only needs an identity check.
+ * Looking up known symbols doesn't lock: only new symbols are added one at a time,
+ * and the array of names is replaced by a larger copy when it's full (so readers always see a complete array).
+ */
+public class SymbolTable {
+
+	private static ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	/**
+	 * the names of the symbols (indexed by their ids, only the first ids.size() are used)
+	 */
+	private static volatile String[] names = new String[64];
+	private static final Object lock = new Object();
+
+	/**
+	 * @param name an edge label or attribute key
+	 * @return the symbol id of the name (a new one, if it wasn't known before)
+	 */
+	public static int getId(String name) {
+		Integer id = ids.get(name);
+		if (id != null) {
+			return id;
+		}
+		synchronized (lock) {
+			id = ids.get(name);
+			if (id == null) {
+				id = ids.size();
+				if (id == names.length) {
+					names = Arrays.copyOf(names, id * 2);
+				}
+				// the name is stored before its id is published, so whoever knows the id finds the name:
+				names[id] = name;
+				ids.put(name, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * @param name an edge label or attribute key
+	 * @return the symbol id of the name, or -1 if it isn't known
+	 */
+	public static int findId(String name) {
+		Integer id = ids.get(name);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * @param id a symbol id
+	 * @return the canonical String of the symbol
+	 */
+	public static String getName(int id) {
+		return names[id];
+	}
+
+	/**
+	 * @param name an edge label or attribute key
+	 * @return the canonical instance of the name
+	 */
+	public static String intern(String name) {
+		if (name == null) {
+			return null;
+		}
+		return getName(getId(name));
+	}
+
+	/**
+	 * @return the number of known symbols
+	 */
+	public static int size() {
+		return ids.size();
+	}
+
+}
@@ -6,7 +6,9 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 
+import org.fujaba.graphengine.CompiledPattern;
 import org.fujaba.graphengine.GraphEngine;
+import org.fujaba.graphengine.IncrementalMatcher;
 import org.fujaba.graphengine.Match;
 import org.fujaba.graphengine.PatternEngine;
 import org.fujaba.graphengine.graph.Graph;
@@ -44,8 +46,9 @@ public class Algorithm {
 	public Application process(Graph input) {
 		Graph output = input;
 		if (atomicAlgorithm != null) {
+			CompiledPattern compiled = CompiledPattern.of(atomicAlgorithm);
 			while (true) {
-				ArrayList<Match> matches = PatternEngine.matchPattern(output, atomicAlgorithm, true);
+				ArrayList<Match> matches = PatternEngine.matchPattern(output, compiled, true);
 				if (matches.size() > 0) {
 					output = PatternEngine.applyMatch(matches.get(0));
 					if (!repeating) {
@@ -74,6 +77,62 @@ public class Algorithm {
 		return new Application(this, input, output);
 	}
 	
+	/**
+	 * processes this algorithm like process(input), but on a copy of the input, that is changed in place,
+	 * while an IncrementalMatcher keeps the matches of the patterns up to date
+	 * (instead of searching the whole graph again after every applied match).
+	 * 
+	 * @param input the graph to process
+	 * @return the application (with the input as output, if no match was applied)
+	 */
+	public Application processIncrementally(Graph input) {
+		Graph output = input.clone();
+		IncrementalMatcher matcher = new IncrementalMatcher(output);
+		boolean changed;
+		try {
+			changed = processIncrementally(matcher);
+		} finally {
+			matcher.close();
+		}
+		return new Application(this, input, changed ? output : input);
+	}
+	
+	/**
+	 * @param matcher the matcher of the graph to change
+	 * @return true if any match was applied
+	 */
+	private boolean processIncrementally(IncrementalMatcher matcher) {
+		boolean changed = false;
+		if (atomicAlgorithm != null) {
+			while (true) {
+				Match match = matcher.getMatch(atomicAlgorithm);
+				if (match != null) {
+					PatternEngine.applyMatch(match, true);
+					changed = true;
+					if (!repeating) {
+						break;
+					}
+				} else {
+					break;
+				}
+			}
+		} else {
+			for (Algorithm algo: algorithmSteps) {
+				while (true) {
+					if (algo.processIncrementally(matcher)) {
+						changed = true;
+						if (!algo.isRepeating()) {
+							break;
+						}
+					} else {
+						break;
+					}
+				}
+			}
+		}
+		return changed;
+	}
+	
 	public String getName() {
 		return name;
 	}
@@ -0,0 +1,238 @@
+package org.fujaba.graphengine.graph;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * This is a list of nodes (the targets or sources of edges with one label),
+ * that keeps the insertion order like an ArrayList, but checks membership in O(1).
+ *
+ * All modifications keep track of how often each node is contained,
+ * so the list stays consistent even while it's being reordered (e.g. while it's shuffled or sorted).
+ * Short lists (most of them) are just scanned, their counts are only kept once they grow longer.
+ */
+public class AdjacencyList extends ArrayList<Node> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * lists up to this size are scanned instead of keeping counts
+	 */
+	private static final int SCAN_SIZE = 8;
+
+	/**
+	 * how often each node is contained in this list (null while the list is short)
+	 */
+	private HashMap<Node, Integer> counts = null;
+
+	public AdjacencyList() {
+		super();
+	}
+
+	public AdjacencyList(int initialCapacity) {
+		super(initialCapacity);
+	}
+
+	/**
+	 * starts keeping counts, once this list got too long to be scanned.
+	 */
+	private void countIfLong() {
+		if (counts != null || size() <= SCAN_SIZE) {
+			return;
+		}
+		counts = new HashMap<Node, Integer>();
+		for (int i = 0; i < size(); ++i) {
+			count(get(i));
+		}
+	}
+
+	private void count(Node node) {
+		if (counts == null) {
+			return;
+		}
+		Integer count = counts.get(node);
+		counts.put(node, count == null ? 1 : count + 1);
+	}
+
+	private void uncount(Object node) {
+		if (counts == null) {
+			return;
+		}
+		Integer count = counts.get(node);
+		if (count == null) {
+			return;
+		}
+		if (count == 1) {
+			counts.remove(node);
+		} else {
+			counts.put((Node)node, count - 1);
+		}
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (counts == null) {
+			return super.indexOf(o) >= 0;
+		}
+		return counts.containsKey(o);
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		return counts == null || counts.containsKey(o) ? super.indexOf(o) : -1;
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		return counts == null || counts.containsKey(o) ? super.lastIndexOf(o) : -1;
+	}
+
+	@Override
+	public boolean add(Node node) {
+		count(node);
+		super.add(node);
+		countIfLong();
+		return true;
+	}
+
+	@Override
+	public void add(int index, Node node) {
+		super.add(index, node);
+		count(node);
+		countIfLong();
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Node> nodes) {
+		for (Node node: nodes) {
+			count(node);
+		}
+		boolean changed = super.addAll(nodes);
+		countIfLong();
+		return changed;
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends Node> nodes) {
+		boolean changed = super.addAll(index, nodes);
+		for (Node node: nodes) {
+			count(node);
+		}
+		countIfLong();
+		return changed;
+	}
+
+	@Override
+	public Node set(int index, Node node) {
+		Node old = super.set(index, node);
+		uncount(old);
+		count(node);
+		return old;
+	}
+
+	@Override
+	public Node remove(int index) {
+		Node old = super.remove(index);
+		uncount(old);
+		return old;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!contains(o)) {
+			return false;
+		}
+		super.remove(o);
+		uncount(o);
+		return true;
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		for (int i = fromIndex; i < toIndex; ++i) {
+			uncount(get(i));
+		}
+		super.removeRange(fromIndex, toIndex);
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		return batchRemove(c, true);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		return batchRemove(c, false);
+	}
+
+	private boolean batchRemove(Collection<?> c, boolean contained) {
+		BitSet removed = new BitSet(size());
+		for (int i = 0; i < size(); ++i) {
+			if (c.contains(get(i)) == contained) {
+				removed.set(i);
+			}
+		}
+		return compact(removed);
+	}
+
+	@Override
+	public boolean removeIf(Predicate<? super Node> filter) {
+		// the filter is tested for all nodes first, so the list is unchanged, if it throws:
+		BitSet removed = new BitSet(size());
+		for (int i = 0; i < size(); ++i) {
+			if (filter.test(get(i))) {
+				removed.set(i);
+			}
+		}
+		return compact(removed);
+	}
+
+	/**
+	 * removes the nodes at the given indices in one pass (moving the remaining ones to the front),
+	 * and counts the remaining nodes again.
+	 *
+	 * @param removed the indices of the nodes to remove
+	 * @return true if any node was removed
+	 */
+	private boolean compact(BitSet removed) {
+		if (removed.isEmpty()) {
+			return false;
+		}
+		int size = size();
+		int kept = removed.nextSetBit(0);
+		for (int i = kept; i < size; ++i) {
+			if (!removed.get(i)) {
+				super.set(kept++, get(i));
+			}
+		}
+		super.removeRange(kept, size);
+		counts = null;
+		countIfLong();
+		return true;
+	}
+
+	@Override
+	public void replaceAll(UnaryOperator<Node> operator) {
+		for (int i = 0; i < size(); ++i) {
+			set(i, operator.apply(get(i)));
+		}
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		counts = null;
+	}
+
+	@Override
+	public AdjacencyList clone() {
+		AdjacencyList clone = new AdjacencyList(size());
+		clone.addAll(this);
+		return clone;
+	}
+
+}
@@ -0,0 +1,210 @@
+package org.fujaba.graphengine.graph;
+
+import java.util.BitSet;
+
+/**
+ * This is a typed column of attribute values with one key (indexed by node id).
+ *
+ * As long as all values of the column have the same type, they're stored in a primitive array (or a String array),
+ * so they can be compared without boxing. Once values of different types are set, the column falls back to an Object array.
+ * null values are not stored (a node with a null value has no value within the column).
+ */
+public class AttributeColumn {
+
+	/**
+	 * the type of all values of this column (null while there's no value)
+	 */
+	private AttributeType type = null;
+	/**
+	 * the nodes, that have a value within this column
+	 */
+	private BitSet present = new BitSet();
+	private int size;
+	private int[] ints;
+	private long[] longs;
+	private double[] doubles;
+	private boolean[] booleans;
+	private String[] strings;
+	private Object[] objects;
+
+	/**
+	 * @param size the number of nodes
+	 */
+	public AttributeColumn(int size) {
+		this.size = size;
+	}
+
+	/**
+	 * @return the type of all values of this column (OBJECT if they've got different types, null if there's no value)
+	 */
+	public AttributeType getType() {
+		return type;
+	}
+
+	public boolean has(int id) {
+		return present.get(id);
+	}
+
+	public int getInt(int id) {
+		return ints[id];
+	}
+
+	public long getLong(int id) {
+		return longs[id];
+	}
+
+	public double getDouble(int id) {
+		return doubles[id];
+	}
+
+	public boolean getBoolean(int id) {
+		return booleans[id];
+	}
+
+	public String getString(int id) {
+		return strings[id];
+	}
+
+	/**
+	 * @param id a node id
+	 * @return the (boxed) value of the node, or null if it has no value
+	 */
+	public Object get(int id) {
+		if (!present.get(id)) {
+			return null;
+		}
+		switch (type) {
+		case INTEGER:
+			return ints[id];
+		case LONG:
+			return longs[id];
+		case DOUBLE:
+			return doubles[id];
+		case BOOLEAN:
+			return booleans[id];
+		case STRING:
+			return strings[id];
+		default:
+			return objects[id];
+		}
+	}
+
+	/**
+	 * sets the value of a node (changing the column to OBJECT, if the value's type doesn't fit).
+	 *
+	 * @param id a node id
+	 * @param value the value (null removes the node's value)
+	 */
+	public void set(int id, Object value) {
+		if (value == null) {
+			present.clear(id);
+			if (objects != null) {
+				objects[id] = null;
+			} else if (strings != null) {
+				strings[id] = null;
+			}
+			return;
+		}
+		AttributeType valueType = AttributeType.of(value);
+		if (type == null) {
+			type = valueType;
+			allocate();
+		} else if (type != valueType && type != AttributeType.OBJECT) {
+			generalize();
+		}
+		present.set(id);
+		switch (type) {
+		case INTEGER:
+			ints[id] = (Integer)value;
+			break;
+		case LONG:
+			longs[id] = (Long)value;
+			break;
+		case DOUBLE:
+			doubles[id] = (Double)value;
+			break;
+		case BOOLEAN:
+			booleans[id] = (Boolean)value;
+			break;
+		case STRING:
+			strings[id] = (String)value;
+			break;
+		default:
+			objects[id] = value;
+		}
+	}
+
+	/**
+	 * checks if a node's value within this column equals a node's value within another column (like Objects.equals on the boxed values).
+	 *
+	 * @param id the node's id within this column
+	 * @param other the other column
+	 * @param otherId the node's id within the other column
+	 * @return true if the values are equal (or both nodes have no value)
+	 */
+	public boolean valueEquals(int id, AttributeColumn other, int otherId) {
+		boolean has = present.get(id);
+		if (other == null || !other.present.get(otherId)) {
+			return !has;
+		}
+		if (!has) {
+			return false;
+		}
+		if (type != other.type || type == AttributeType.OBJECT) {
+			return get(id).equals(other.get(otherId));
+		}
+		switch (type) {
+		case INTEGER:
+			return ints[id] == other.ints[otherId];
+		case LONG:
+			return longs[id] == other.longs[otherId];
+		case DOUBLE:
+			// like Double.equals:
+			return Double.doubleToLongBits(doubles[id]) == Double.doubleToLongBits(other.doubles[otherId]);
+		case BOOLEAN:
+			return booleans[id] == other.booleans[otherId];
+		default:
+			return strings[id].equals(other.strings[otherId]);
+		}
+	}
+
+	private void allocate() {
+		switch (type) {
+		case INTEGER:
+			ints = new int[size];
+			break;
+		case LONG:
+			longs = new long[size];
+			break;
+		case DOUBLE:
+			doubles = new double[size];
+			break;
+		case BOOLEAN:
+			booleans = new boolean[size];
+			break;
+		case STRING:
+			strings = new String[size];
+			break;
+		default:
+			objects = new Object[size];
+		}
+	}
+
+	/**
+	 * changes the column to OBJECT, keeping its values.
+	 */
+	private void generalize() {
+		Object[] values = new Object[size];
+		for (int id = present.nextSetBit(0); id >= 0; id = present.nextSetBit(id + 1)) {
+			values[id] = get(id);
+		}
+		ints = null;
+		longs = null;
+		doubles = null;
+		booleans = null;
+		strings = null;
+		objects = values;
+		type = AttributeType.OBJECT;
+	}
+
+}
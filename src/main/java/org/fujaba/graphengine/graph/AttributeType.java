@@ -0,0 +1,29 @@
+package org.fujaba.graphengine.graph;
+
+/**
+ * The types of attribute values, that are supported by graphs (and their serialization).
+ */
+public enum AttributeType {
+
+	INTEGER, LONG, DOUBLE, BOOLEAN, STRING, OBJECT;
+
+	/**
+	 * @param value an attribute value
+	 * @return the type of the value (OBJECT for null and unsupported values)
+	 */
+	public static AttributeType of(Object value) {
+		if (value instanceof Integer) {
+			return INTEGER;
+		} else if (value instanceof Long) {
+			return LONG;
+		} else if (value instanceof Double) {
+			return DOUBLE;
+		} else if (value instanceof Boolean) {
+			return BOOLEAN;
+		} else if (value instanceof String) {
+			return STRING;
+		}
+		return OBJECT;
+	}
+
+}
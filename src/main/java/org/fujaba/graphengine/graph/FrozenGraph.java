@@ -0,0 +1,716 @@
+package org.fujaba.graphengine.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.fujaba.graphengine.SymbolTable;
+
+/**
+ * This is an immutable, compact snapshot of a graph for read-heavy workloads (like matching and isomorphism checks).
+ *
+ * The nodes are identified by int ids (their index within the graph's list of nodes),
+ * edge labels and attribute keys by int ids, too (the labels are numbered in the order of their symbol ids, see SymbolTable).
+ * Edges are stored in compressed sparse row format (one offset array and primitive arrays for labels and targets),
+ * grouped by label id and sorted by target id within each label.
+ * Attributes are stored in typed columns (one column per attribute key, indexed by node id),
+ * so their values can be compared without boxing (see AttributeColumn).
+ * Secondary indexes (the nodes with an attribute key, with an attribute value, e.g. of Node.TYPE_ATTRIBUTE,
+ * with a number value within a range, or with outgoing edges of a label) are built on first use,
+ * so candidates can be looked up instead of scanning all nodes.
+ *
+ * A FrozenGraph doesn't reflect changes that are made to its graph after it was built.
+ */
+public class FrozenGraph implements IndexedGraph {
+
+	/**
+	 * the graph this snapshot was built from
+	 */
+	private Graph graph;
+	/**
+	 * the nodes of this graph (indexed by node id)
+	 */
+	private Node[] nodes;
+	/**
+	 * the ids of the nodes of this graph
+	 */
+	private HashMap<Node, Integer> ids;
+	/**
+	 * the edge labels of this graph (indexed by label id)
+	 */
+	private String[] labels;
+	/**
+	 * the ids of the edge labels of this graph, indexed by their symbol ids (see SymbolTable, -1 if there's no such edge)
+	 */
+	private int[] labelIds;
+	/**
+	 * the outgoing edges of node i are stored at the indices outOffsets[i] to outOffsets[i + 1] - 1
+	 */
+	private int[] outOffsets;
+	private int[] outLabels;
+	private int[] outTargets;
+	/**
+	 * the incoming edges of node i are stored at the indices inOffsets[i] to inOffsets[i + 1] - 1
+	 */
+	private int[] inOffsets;
+	private int[] inLabels;
+	private int[] inSources;
+	/**
+	 * the number of different labels of outgoing edges of each node
+	 */
+	private int[] outLabelCounts;
+	/**
+	 * the attribute keys of this graph (indexed by key id)
+	 */
+	private String[] attributeKeys;
+	/**
+	 * the ids of the attribute keys of this graph
+	 */
+	private HashMap<String, Integer> attributeKeyIds;
+	/**
+	 * the attribute values of this graph, one column per attribute key (indexed by node id)
+	 */
+	private AttributeColumn[] attributeColumns;
+	/**
+	 * the attribute keys of node i are stored at the indices attributeOffsets[i] to attributeOffsets[i + 1] - 1
+	 */
+	private int[] attributeOffsets;
+	private int[] attributeKeysOfNodes;
+	/**
+	 * the secondary indexes (built on first use): the ids of the nodes (ascending)
+	 * with an attribute key, with a value of an attribute key and with an outgoing edge of a label
+	 */
+	private int[][] nodesWithAttribute;
+	private ArrayList<HashMap<Object, int[]>> nodesWithAttributeValue;
+	private int[][] nodesWithOutLabel;
+	/**
+	 * the sorted indexes of attribute keys (built on first use): the plain numbers of an attribute key (ascending)
+	 * with the ids of their nodes, and the ids of the nodes with other values of that key (ascending)
+	 */
+	private double[][] sortedNumbers;
+	private int[][] nodesOfSortedNumbers;
+	private int[][] nodesWithOtherValue;
+	/**
+	 * true if the snapshot is matched against many patterns, so that the sorted indexes pay off (see isReused)
+	 */
+	private boolean reused = false;
+	/**
+	 * the number of edges of each label (counted on first use)
+	 */
+	private int[] edgeCounts;
+
+	/**
+	 * builds a snapshot of the given graph in one pass over its nodes and edges.
+	 *
+	 * @param graph the graph to build the snapshot of
+	 */
+	public FrozenGraph(Graph graph) {
+		this.graph = graph;
+		int n = graph.getNodes().size();
+		nodes = graph.getNodes().toArray(new Node[n]);
+		ids = new HashMap<Node, Integer>(n * 2);
+		for (int i = 0; i < n; ++i) {
+			ids.put(nodes[i], i);
+		}
+		// the symbols of the labels are known by the nodes, so the labels don't need to be hashed:
+		boolean[] hasLabel = new boolean[SymbolTable.size()];
+		attributeKeyIds = new HashMap<String, Integer>();
+		ArrayList<String> attributeKeyList = new ArrayList<String>();
+		// first pass: count everything and assign label ids and attribute key ids
+		outOffsets = new int[n + 1];
+		inOffsets = new int[n + 1];
+		attributeOffsets = new int[n + 1];
+		outLabelCounts = new int[n];
+		for (int i = 0; i < n; ++i) {
+			Node node = nodes[i];
+			for (int symbol: node.getEdgeSymbols()) {
+				if (symbol >= hasLabel.length) {
+					hasLabel = Arrays.copyOf(hasLabel, Math.max(symbol + 1, hasLabel.length * 2));
+				}
+				hasLabel[symbol] = true;
+				boolean any = false;
+				for (Node target: node.getEdges(symbol)) {
+					Integer targetId = ids.get(target);
+					if (targetId != null) {
+						++outOffsets[i + 1];
+						++inOffsets[targetId + 1];
+						any = true;
+					}
+				}
+				if (any) {
+					++outLabelCounts[i];
+				}
+			}
+			for (String key: node.getAttributeKeys()) {
+				if (!attributeKeyIds.containsKey(key)) {
+					attributeKeyIds.put(key, attributeKeyList.size());
+					attributeKeyList.add(key);
+				}
+				++attributeOffsets[i + 1];
+			}
+		}
+		for (int i = 0; i < n; ++i) {
+			outOffsets[i + 1] += outOffsets[i];
+			inOffsets[i + 1] += inOffsets[i];
+			attributeOffsets[i + 1] += attributeOffsets[i];
+		}
+		labelIds = new int[hasLabel.length];
+		ArrayList<String> labelList = new ArrayList<String>();
+		for (int symbol = 0; symbol < hasLabel.length; ++symbol) {
+			labelIds[symbol] = hasLabel[symbol] ? labelList.size() : -1;
+			if (hasLabel[symbol]) {
+				labelList.add(SymbolTable.getName(symbol));
+			}
+		}
+		labels = labelList.toArray(new String[labelList.size()]);
+		attributeKeys = attributeKeyList.toArray(new String[attributeKeyList.size()]);
+		// second pass: fill the arrays
+		outLabels = new int[outOffsets[n]];
+		outTargets = new int[outOffsets[n]];
+		inLabels = new int[inOffsets[n]];
+		inSources = new int[inOffsets[n]];
+		attributeKeysOfNodes = new int[attributeOffsets[n]];
+		attributeColumns = new AttributeColumn[attributeKeys.length];
+		for (int i = 0; i < attributeColumns.length; ++i) {
+			attributeColumns[i] = new AttributeColumn(n);
+		}
+		int[] inFill = Arrays.copyOf(inOffsets, n);
+		for (int i = 0; i < n; ++i) {
+			Node node = nodes[i];
+			int fill = outOffsets[i];
+			for (int symbol: node.getEdgeSymbols()) {
+				int labelId = labelIds[symbol];
+				for (Node target: node.getEdges(symbol)) {
+					Integer targetId = ids.get(target);
+					if (targetId != null) {
+						outLabels[fill] = labelId;
+						outTargets[fill] = targetId;
+						++fill;
+						inLabels[inFill[targetId]] = labelId;
+						inSources[inFill[targetId]] = i;
+						++inFill[targetId];
+					}
+				}
+			}
+			sortRange(outLabels, outTargets, outOffsets[i], outOffsets[i + 1]);
+			fill = attributeOffsets[i];
+			for (String key: node.getAttributeKeys()) {
+				int keyId = attributeKeyIds.get(key);
+				attributeKeysOfNodes[fill++] = keyId;
+				attributeColumns[keyId].set(i, node.getAttribute(key));
+			}
+			Arrays.sort(attributeKeysOfNodes, attributeOffsets[i], attributeOffsets[i + 1]);
+		}
+		for (int i = 0; i < n; ++i) {
+			sortRange(inLabels, inSources, inOffsets[i], inOffsets[i + 1]);
+		}
+	}
+
+	/**
+	 * sorts the entries of the range by label id first and by node id second (insertion sort, the ranges are small).
+	 */
+	private static void sortRange(int[] labels, int[] others, int begin, int end) {
+		for (int i = begin + 1; i < end; ++i) {
+			int label = labels[i];
+			int other = others[i];
+			int j = i - 1;
+			while (j >= begin && (labels[j] > label || (labels[j] == label && others[j] > other))) {
+				labels[j + 1] = labels[j];
+				others[j + 1] = others[j];
+				--j;
+			}
+			labels[j + 1] = label;
+			others[j + 1] = other;
+		}
+	}
+
+	/**
+	 * finds the first index within the range, whose label id is not lower than the given label id.
+	 */
+	private static int lowerBound(int[] labels, int begin, int end, int labelId) {
+		while (begin < end) {
+			int middle = (begin + end) >>> 1;
+			if (labels[middle] < labelId) {
+				begin = middle + 1;
+			} else {
+				end = middle;
+			}
+		}
+		return begin;
+	}
+
+	public Graph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @return true if the snapshot is matched against many patterns:
+	 * then the sorted indexes of numbers are used to look up candidates, otherwise a single scan is cheaper than sorting
+	 */
+	public boolean isReused() {
+		return reused;
+	}
+
+	/**
+	 * @param reused true if the snapshot is matched against many patterns (see isReused)
+	 * @return this snapshot
+	 */
+	public FrozenGraph setReused(boolean reused) {
+		this.reused = reused;
+		return this;
+	}
+
+	/**
+	 * @return the number of nodes of this graph
+	 */
+	public int size() {
+		return nodes.length;
+	}
+
+	public Node getNode(int id) {
+		return nodes[id];
+	}
+
+	/**
+	 * @param node a node
+	 * @return the id of the node, or -1 if it isn't part of this graph
+	 */
+	public int getId(Node node) {
+		Integer id = ids.get(node);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * @return the number of different edge labels of this graph
+	 */
+	public int getLabelCount() {
+		return labels.length;
+	}
+
+	public String getLabel(int labelId) {
+		return labels[labelId];
+	}
+
+	/**
+	 * @param label an edge label
+	 * @return the id of the edge label, or -1 if there's no such edge within this graph
+	 */
+	public int getLabelId(String label) {
+		return getLabelIdOfSymbol(SymbolTable.findId(label));
+	}
+
+	/**
+	 * @param symbol the symbol id of an edge label (see SymbolTable)
+	 * @return the id of the edge label, or -1 if there's no such edge within this graph
+	 */
+	public int getLabelIdOfSymbol(int symbol) {
+		return symbol < 0 || symbol >= labelIds.length ? -1 : labelIds[symbol];
+	}
+
+	public int getOutDegree(int id) {
+		return outOffsets[id + 1] - outOffsets[id];
+	}
+
+	public int getOutDegree(int id, int labelId) {
+		return getOutEnd(id, labelId) - getOutBegin(id, labelId);
+	}
+
+	/**
+	 * @param id a node id
+	 * @return the number of different labels of the node's outgoing edges
+	 */
+	public int getOutLabelCount(int id) {
+		return outLabelCounts[id];
+	}
+
+	public int getInDegree(int id) {
+		return inOffsets[id + 1] - inOffsets[id];
+	}
+
+	public int getInDegree(int id, int labelId) {
+		return getInEnd(id, labelId) - getInBegin(id, labelId);
+	}
+
+	/*
+	 * the outgoing edges of a node (with a specific label) are found at the indices from begin (inclusive) to end (exclusive):
+	 */
+
+	public int getOutBegin(int id) {
+		return outOffsets[id];
+	}
+
+	public int getOutEnd(int id) {
+		return outOffsets[id + 1];
+	}
+
+	public int getOutBegin(int id, int labelId) {
+		return lowerBound(outLabels, outOffsets[id], outOffsets[id + 1], labelId);
+	}
+
+	public int getOutEnd(int id, int labelId) {
+		return lowerBound(outLabels, outOffsets[id], outOffsets[id + 1], labelId + 1);
+	}
+
+	public int getOutLabel(int index) {
+		return outLabels[index];
+	}
+
+	public int getOutTarget(int index) {
+		return outTargets[index];
+	}
+
+	/*
+	 * the incoming edges of a node (with a specific label) are found at the indices from begin (inclusive) to end (exclusive):
+	 */
+
+	public int getInBegin(int id) {
+		return inOffsets[id];
+	}
+
+	public int getInEnd(int id) {
+		return inOffsets[id + 1];
+	}
+
+	public int getInBegin(int id, int labelId) {
+		return lowerBound(inLabels, inOffsets[id], inOffsets[id + 1], labelId);
+	}
+
+	public int getInEnd(int id, int labelId) {
+		return lowerBound(inLabels, inOffsets[id], inOffsets[id + 1], labelId + 1);
+	}
+
+	public int getInLabel(int index) {
+		return inLabels[index];
+	}
+
+	public int getInSource(int index) {
+		return inSources[index];
+	}
+
+	/**
+	 * checks if there's an edge with the given label from the source to the target.
+	 *
+	 * @param source the source's id
+	 * @param labelId the label's id
+	 * @param target the target's id
+	 * @return true if the edge exists
+	 */
+	public boolean hasEdge(int source, int labelId, int target) {
+		if (labelId < 0) {
+			return false;
+		}
+		int begin = getOutBegin(source, labelId);
+		int end = getOutEnd(source, labelId);
+		return Arrays.binarySearch(outTargets, begin, end, target) >= 0;
+	}
+
+	/**
+	 * counts the different labels of edges from the source to the target.
+	 *
+	 * @param source the source's id
+	 * @param target the target's id
+	 * @return the number of different labels of edges from the source to the target
+	 */
+	public int countLabelsBetween(int source, int target) {
+		int count = 0;
+		for (int i = outOffsets[source]; i < outOffsets[source + 1]; ++i) {
+			if (outTargets[i] == target) {
+				++count;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of different attribute keys of this graph
+	 */
+	public int getAttributeKeyCount() {
+		return attributeKeys.length;
+	}
+
+	public String getAttributeKey(int keyId) {
+		return attributeKeys[keyId];
+	}
+
+	/**
+	 * @param key an attribute key
+	 * @return the id of the attribute key, or -1 if no node of this graph has such an attribute
+	 */
+	public int getAttributeKeyId(String key) {
+		Integer keyId = attributeKeyIds.get(key);
+		return keyId == null ? -1 : keyId;
+	}
+
+	public Object getAttribute(int id, int keyId) {
+		if (keyId < 0) {
+			return null;
+		}
+		return attributeColumns[keyId].get(id);
+	}
+
+	public Object getAttribute(int id, String key) {
+		return getAttribute(id, getAttributeKeyId(key));
+	}
+
+	/**
+	 * @param keyId the id of an attribute key
+	 * @return the typed column of the attribute values with that key, or null if the key id is -1
+	 */
+	public AttributeColumn getAttributeColumn(int keyId) {
+		return keyId < 0 ? null : attributeColumns[keyId];
+	}
+
+	/*
+	 * the attribute keys of a node are found at the indices from begin (inclusive) to end (exclusive):
+	 */
+
+	public int getAttributeBegin(int id) {
+		return attributeOffsets[id];
+	}
+
+	public int getAttributeEnd(int id) {
+		return attributeOffsets[id + 1];
+	}
+
+	public int getAttributeKeyAt(int index) {
+		return attributeKeysOfNodes[index];
+	}
+
+	/**
+	 * @param keyId the id of an attribute key
+	 * @return the ids of the nodes with a value for that key (ascending, must not be modified)
+	 */
+	public synchronized int[] getNodesWithAttribute(int keyId) {
+		if (keyId < 0) {
+			return new int[0];
+		}
+		if (nodesWithAttribute == null) {
+			nodesWithAttribute = new int[attributeKeys.length][];
+		}
+		if (nodesWithAttribute[keyId] == null) {
+			int[] ids = new int[nodes.length];
+			int count = 0;
+			for (int id = 0; id < nodes.length; ++id) {
+				if (attributeColumns[keyId].has(id)) {
+					ids[count++] = id;
+				}
+			}
+			nodesWithAttribute[keyId] = Arrays.copyOf(ids, count);
+		}
+		return nodesWithAttribute[keyId];
+	}
+
+	/**
+	 * @param keyId the id of an attribute key
+	 * @param value an attribute value
+	 * @return the ids of the nodes with that value for that key (ascending, must not be modified)
+	 */
+	public synchronized int[] getNodesWithAttribute(int keyId, Object value) {
+		if (keyId < 0 || value == null) {
+			return new int[0];
+		}
+		if (nodesWithAttributeValue == null) {
+			nodesWithAttributeValue = new ArrayList<HashMap<Object, int[]>>();
+			for (int i = 0; i < attributeKeys.length; ++i) {
+				nodesWithAttributeValue.add(null);
+			}
+		}
+		HashMap<Object, int[]> index = nodesWithAttributeValue.get(keyId);
+		if (index == null) {
+			HashMap<Object, ArrayList<Integer>> lists = new HashMap<Object, ArrayList<Integer>>();
+			for (int id: getNodesWithAttribute(keyId)) {
+				Object nodeValue = attributeColumns[keyId].get(id);
+				if (lists.get(nodeValue) == null) {
+					lists.put(nodeValue, new ArrayList<Integer>());
+				}
+				lists.get(nodeValue).add(id);
+			}
+			index = new HashMap<Object, int[]>(lists.size() * 2);
+			for (Object nodeValue: lists.keySet()) {
+				ArrayList<Integer> list = lists.get(nodeValue);
+				int[] ids = new int[list.size()];
+				for (int i = 0; i < ids.length; ++i) {
+					ids[i] = list.get(i);
+				}
+				index.put(nodeValue, ids);
+			}
+			nodesWithAttributeValue.set(keyId, index);
+		}
+		int[] ids = index.get(value);
+		return ids == null ? new int[0] : ids;
+	}
+
+	/**
+	 * @param keyId the id of an attribute key
+	 * @param min the lower bound of the range
+	 * @param minInclusive true if the lower bound is part of the range
+	 * @param max the upper bound of the range
+	 * @param maxInclusive true if the upper bound is part of the range
+	 * @return the ids of the nodes with a plain number within the range as value for that key (ascending, see numberOf)
+	 */
+	public int[] getNodesWithAttributeBetween(int keyId, double min, boolean minInclusive, double max, boolean maxInclusive) {
+		if (keyId < 0) {
+			return new int[0];
+		}
+		buildSortedIndex(keyId);
+		double[] numbers = sortedNumbers[keyId];
+		// the first number within the range and the first one beyond it:
+		int begin = minInclusive ? firstNotBelow(numbers, min) : firstAbove(numbers, min);
+		int end = maxInclusive ? firstAbove(numbers, max) : firstNotBelow(numbers, max);
+		if (begin >= end) {
+			return new int[0];
+		}
+		int[] ids = Arrays.copyOfRange(nodesOfSortedNumbers[keyId], begin, end);
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	/**
+	 * @param keyId the id of an attribute key
+	 * @return the ids of the nodes with a value for that key, that isn't a plain number (ascending, must not be modified, see numberOf)
+	 */
+	public int[] getNodesWithOtherAttribute(int keyId) {
+		if (keyId < 0) {
+			return new int[0];
+		}
+		buildSortedIndex(keyId);
+		return nodesWithOtherValue[keyId];
+	}
+
+	/**
+	 * @param value an attribute value
+	 * @return the value as a plain number (an Integer, a Long or a Double written as plain decimal, like the expression library reads it),
+	 * or null if it is something else (like a String, a Boolean, NaN or 1.0E10)
+	 */
+	public static Double numberOf(Object value) {
+		if (value instanceof Integer || value instanceof Long) {
+			return ((Number)value).doubleValue();
+		}
+		if (value instanceof Double) {
+			Double number = (Double)value;
+			if (Double.isNaN(number) || Double.isInfinite(number) || number.toString().indexOf('E') != -1 || number.equals(-0.0)) {
+				return null;
+			}
+			return number;
+		}
+		return null;
+	}
+
+	private synchronized void buildSortedIndex(int keyId) {
+		if (sortedNumbers == null) {
+			sortedNumbers = new double[attributeKeys.length][];
+			nodesOfSortedNumbers = new int[attributeKeys.length][];
+			nodesWithOtherValue = new int[attributeKeys.length][];
+		}
+		if (sortedNumbers[keyId] != null) {
+			return;
+		}
+		int[] candidates = getNodesWithAttribute(keyId);
+		double[] values = new double[candidates.length];
+		int[] numbered = new int[candidates.length];
+		int[] others = new int[candidates.length];
+		int numberCount = 0, otherCount = 0;
+		for (int id: candidates) {
+			Double number = numberOf(attributeColumns[keyId].get(id));
+			if (number == null) {
+				others[otherCount++] = id;
+			} else {
+				values[numberCount] = number;
+				numbered[numberCount++] = id;
+			}
+		}
+		double[] numbers = Arrays.copyOf(values, numberCount);
+		Arrays.sort(numbers);
+		// each node goes behind the nodes with a lower number and the nodes with the same number, but a lower id:
+		int[] ids = new int[numberCount];
+		int[] equalBefore = new int[numberCount];
+		for (int i = 0; i < numberCount; ++i) {
+			int position = firstNotBelow(numbers, values[i]);
+			ids[position + equalBefore[position]++] = numbered[i];
+		}
+		nodesOfSortedNumbers[keyId] = ids;
+		nodesWithOtherValue[keyId] = Arrays.copyOf(others, otherCount);
+		sortedNumbers[keyId] = numbers;
+	}
+
+	/**
+	 * @return the index of the first number, that isn't below the bound
+	 */
+	private static int firstNotBelow(double[] numbers, double bound) {
+		int low = 0, high = numbers.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (numbers[middle] < bound) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the index of the first number, that is above the bound
+	 */
+	private static int firstAbove(double[] numbers, double bound) {
+		int low = 0, high = numbers.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (numbers[middle] <= bound) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @param labelId the id of an edge label
+	 * @return the ids of the nodes with at least one outgoing edge with that label (ascending, must not be modified)
+	 */
+	public synchronized int[] getNodesWithOutLabel(int labelId) {
+		if (labelId < 0) {
+			return new int[0];
+		}
+		if (nodesWithOutLabel == null) {
+			nodesWithOutLabel = new int[labels.length][];
+		}
+		if (nodesWithOutLabel[labelId] == null) {
+			int[] ids = new int[nodes.length];
+			int count = 0;
+			for (int id = 0; id < nodes.length; ++id) {
+				if (getOutDegree(id, labelId) > 0) {
+					ids[count++] = id;
+				}
+			}
+			nodesWithOutLabel[labelId] = Arrays.copyOf(ids, count);
+		}
+		return nodesWithOutLabel[labelId];
+	}
+
+	/**
+	 * @return the number of edges of this graph
+	 */
+	public int getEdgeCount() {
+		return outTargets.length;
+	}
+
+	/**
+	 * @param labelId the id of an edge label
+	 * @return the number of edges with that label
+	 */
+	public synchronized int getEdgeCount(int labelId) {
+		if (labelId < 0) {
+			return 0;
+		}
+		if (edgeCounts == null) {
+			edgeCounts = new int[labels.length];
+			for (int label: outLabels) {
+				++edgeCounts[label];
+			}
+		}
+		return edgeCounts[labelId];
+	}
+
+}
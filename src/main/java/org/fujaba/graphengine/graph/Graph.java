@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 
 import org.fujaba.graphengine.GraphEngine;
-import org.fujaba.graphengine.IdManager;
 
 /**
  * This is a graph for use in graph transformation systems.
@@ -16,7 +15,12 @@ public class Graph implements Cloneable {
     /**
      * the nodes of this graph (in an ArrayList)
      */
-    private ArrayList<Node> nodes = new ArrayList<Node>();
+    private NodeList nodes = new NodeList();
+
+    /**
+     * the listeners, that are notified about the changes committed by a GraphTransaction (null if there are none)
+     */
+    private transient ArrayList<GraphListener> listeners = null;
 
     /**
      * A constructor to create an empty graph
@@ -38,9 +42,21 @@ public class Graph implements Cloneable {
         return this.nodes;
     }
 
+    /**
+     * returns the index of a node within this graph's list of nodes, which is used as its dense graph-local id.
+     * the indices are kept by the list of nodes, so it's found without searching;
+     * only after the list of nodes was changed, the indices of all nodes are updated (once, see NodeList.getIndex).
+     * 
+     * @param node a node
+     * @return the index of the node, or -1 if it isn't part of this graph
+     */
+    public int indexOf(Node node) {
+        return nodes.getIndex(node);
+    }
+
     public Graph addNode(Node... nodes) {
         if (this.nodes == null) {
-            this.nodes = new ArrayList<Node>();
+            this.nodes = new NodeList();
         }
         for (Node node : nodes) {
             this.nodes.add(node);
@@ -54,13 +70,58 @@ public class Graph implements Cloneable {
                 return this;
             }
             this.nodes.remove(node);
-            for (Node otherNode : this.nodes) {
-                otherNode.removeEdgesTo(node);
-            }
+            // the incoming edges are known to the node itself, so there's no need to check all other nodes:
+            node.removeAllEdges();
     	}
         return this;
     }
 
+    /**
+     * returns the number of changes of this graph so far: of its list of nodes and, while it has listeners, of its nodes (their attributes and edges).
+     * it grows with every such change, whether it's made by a GraphTransaction or directly,
+     * so a listener can notice the changes, that weren't reported to it (see Node.getLastModification).
+     * changes of other graphs aren't counted (unless they share nodes with this one),
+     * and neither are changes of the lists returned by Node.getEdges and Node.getIncomingEdges.
+     * 
+     * @return the number of changes so far
+     */
+    public long getModificationCount() {
+        return this.nodes.getModificationCount();
+    }
+
+    /**
+     * adds a listener. while a graph has listeners, its nodes count their changes at the graph, too (see getModificationCount).
+     * 
+     * @param listener the listener
+     * @return this graph
+     */
+    public Graph addListener(GraphListener listener) {
+        if (this.listeners == null) {
+            this.listeners = new ArrayList<GraphListener>();
+            this.nodes.setWatched(true);
+        }
+        this.listeners.add(listener);
+        return this;
+    }
+
+    public Graph removeListener(GraphListener listener) {
+        if (this.listeners != null) {
+            this.listeners.remove(listener);
+            if (this.listeners.isEmpty()) {
+                this.listeners = null;
+                this.nodes.setWatched(false);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return the listeners of this graph (null if there are none)
+     */
+    ArrayList<GraphListener> getListeners() {
+        return this.listeners;
+    }
+
     @Override
     public String toString() {
         return GraphEngine.getGson().toJson(this);
@@ -68,29 +129,27 @@ public class Graph implements Cloneable {
 
     @Override
     public Graph clone() {
+        return clone(new HashMap<Node, Node>());
+    }
+
+    /**
+     * clones this graph. the cloned nodes share their attributes with the original nodes (copy-on-write),
+     * their edges are copied list by list.
+     * 
+     * @param clones a map that is filled with the clone of each node of this graph
+     * @return the clone of this graph
+     */
+    public Graph clone(HashMap<Node, Node> clones) {
         Graph clone = new Graph();
-        ArrayList<Node> clonedNodes = new ArrayList<Node>();
-        HashMap<Long, HashMap<String, ArrayList<Long>>> edgesToAdd = new HashMap<Long, HashMap<String, ArrayList<Long>>>();
-        HashMap<Node, Node> newNodes = new HashMap<Node, Node>();
-        IdManager idManager = new IdManager();
-        for (int i = 0; i < nodes.size(); ++i) {
-            Node node = nodes.get(i);
-            edgesToAdd.put(idManager.getId(node), new HashMap<String, ArrayList<Long>>());
-            newNodes.put(node, node.clone());
-            for (String key : node.getEdges().keySet()) {
-            	edgesToAdd.get(idManager.getId(node)).put(key, new ArrayList<Long>());
-            	for (Node target : node.getEdges().get(key)) {
-            		edgesToAdd.get(idManager.getId(node)).get(key).add(idManager.getId(target));
-            	}
-            }
-            clonedNodes.add(newNodes.get(node));
+        NodeList clonedNodes = new NodeList(nodes.size());
+        for (Node node : nodes) {
+            Node nodeClone = node.clone();
+            clones.put(node, nodeClone);
+            clonedNodes.add(nodeClone);
         }
-        for (Long sourceKey : edgesToAdd.keySet()) {
-        	for (String edgeName : edgesToAdd.get(sourceKey).keySet()) {
-        		for (Long targetKey : edgesToAdd.get(sourceKey).get(edgeName)) {
-        			newNodes.get(idManager.getObject(sourceKey)).addEdge(edgeName, newNodes.get(idManager.getObject(targetKey)));
-        		}
-        	}
+        // the clones have the same indices as the original nodes, so the edges are translated by index:
+        for (int i = 0; i < nodes.size(); ++i) {
+            clonedNodes.get(i).copyEdges(nodes.get(i), this, clonedNodes);
         }
         clone.nodes = clonedNodes;
         return clone;
@@ -0,0 +1,29 @@
+package org.fujaba.graphengine.graph;
+
+import java.util.Collection;
+
+/**
+ * A GraphListener is notified about the changes of a graph, that are committed by a GraphTransaction
+ * (changes made directly at the graph or its nodes aren't reported, but they can be noticed with Graph.getModificationCount).
+ */
+public interface GraphListener {
+
+	/**
+	 * is called before a transaction changes the graph (even if the transaction fails then).
+	 *
+	 * @param graph the graph, that is going to change
+	 */
+	void graphChanging(Graph graph);
+
+	/**
+	 * is called after a transaction changed the graph.
+	 *
+	 * @param graph the changed graph
+	 * @param addedNodes the nodes, that were added to the graph (in the order they were appended to its list of nodes)
+	 * @param removedNodes the nodes, that were removed from the graph
+	 * @param changedNodes all nodes, that could have changed: the added and removed ones,
+	 * the ones with changed attributes or edges, and the former neighbours of the removed ones
+	 */
+	void graphChanged(Graph graph, Collection<Node> addedNodes, Collection<Node> removedNodes, Collection<Node> changedNodes);
+
+}
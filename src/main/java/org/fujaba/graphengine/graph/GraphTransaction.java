@@ -0,0 +1,255 @@
+package org.fujaba.graphengine.graph;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.function.Predicate;
+
+/**
+ * A GraphTransaction collects changes of a graph (nodes, edges and attributes) and commits them at once.
+ *
+ * The changes are applied in the order they were collected, so the result is the same as if they were applied one by one,
+ * but the graph's list of nodes is only updated once (instead of searching it for every removed node).
+ * If a change fails, all changes of the transaction are rolled back and the graph (and its nodes) are left as before:
+ * the inverse of every applied change is logged (with the positions of removed edges), and undone in reverse order,
+ * so a commit only costs as much as its changes.
+ * After a successful commit, the graph's listeners (see GraphListener) are notified about the changed nodes.
+ */
+public class GraphTransaction {
+
+	private static final int ADD_NODE = 0;
+	private static final int REMOVE_NODE = 1;
+	private static final int ADD_EDGE = 2;
+	private static final int REMOVE_EDGE = 3;
+	private static final int SET_ATTRIBUTE = 4;
+	private static final int REMOVE_ATTRIBUTE = 5;
+
+	/**
+	 * a collected change
+	 */
+	private static class Change {
+		int type;
+		Node node;
+		String name;
+		Node target;
+		Object value;
+		/**
+		 * the position of a removed edge, if this change puts it back (see Node.removeEdgeAt)
+		 */
+		int[] position;
+
+		Change(int type, Node node, String name, Node target, Object value) {
+			this.type = type;
+			this.node = node;
+			this.name = name;
+			this.target = target;
+			this.value = value;
+		}
+	}
+
+	private Graph graph;
+	private ArrayList<Change> changes = new ArrayList<Change>();
+
+	/**
+	 * @param graph the graph to change
+	 */
+	public GraphTransaction(Graph graph) {
+		this.graph = graph;
+	}
+
+	public Graph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @return the number of collected changes, that aren't committed yet
+	 */
+	public int size() {
+		return changes.size();
+	}
+
+	public GraphTransaction addNode(Node... nodes) {
+		for (Node node: nodes) {
+			changes.add(new Change(ADD_NODE, node, null, null, null));
+		}
+		return this;
+	}
+
+	public GraphTransaction removeNode(Node... nodes) {
+		for (Node node: nodes) {
+			changes.add(new Change(REMOVE_NODE, node, null, null, null));
+		}
+		return this;
+	}
+
+	public GraphTransaction addEdge(Node source, String name, Node... targets) {
+		for (Node target: targets) {
+			changes.add(new Change(ADD_EDGE, source, name, target, null));
+		}
+		return this;
+	}
+
+	public GraphTransaction removeEdge(Node source, String name, Node... targets) {
+		for (Node target: targets) {
+			changes.add(new Change(REMOVE_EDGE, source, name, target, null));
+		}
+		return this;
+	}
+
+	public GraphTransaction setAttribute(Node node, String name, Object value) {
+		changes.add(new Change(SET_ATTRIBUTE, node, name, null, value));
+		return this;
+	}
+
+	public GraphTransaction removeAttribute(Node node, String... names) {
+		for (String name: names) {
+			changes.add(new Change(REMOVE_ATTRIBUTE, node, name, null, null));
+		}
+		return this;
+	}
+
+	/**
+	 * discards all collected changes, that aren't committed yet.
+	 *
+	 * @return this transaction
+	 */
+	public GraphTransaction rollback() {
+		changes.clear();
+		return this;
+	}
+
+	/**
+	 * applies all collected changes to the graph (in the order they were collected).
+	 * if a change fails, the graph and its nodes are restored and the exception is rethrown.
+	 *
+	 * @return the graph
+	 */
+	public Graph commit() {
+		if (changes.isEmpty()) {
+			return graph;
+		}
+		// the nodes, that can be affected (including the neighbours of removed nodes):
+		HashSet<Node> changedNodes = new HashSet<Node>();
+		final HashSet<Node> removedNodes = new HashSet<Node>();
+		ArrayList<Node> addedNodes = new ArrayList<Node>();
+		// the inverse of the applied changes (undone in reverse order, if a change fails):
+		ArrayList<Change> undo = new ArrayList<Change>();
+		if (graph.getListeners() != null) {
+			for (GraphListener listener: new ArrayList<GraphListener>(graph.getListeners())) {
+				listener.graphChanging(graph);
+			}
+		}
+		try {
+			for (Change change: changes) {
+				changedNodes.add(change.node);
+				switch (change.type) {
+				case ADD_NODE:
+					addedNodes.add(change.node);
+					break;
+				case REMOVE_NODE:
+					removedNodes.add(change.node);
+					addedNodes.remove(change.node);
+					removeAllEdges(change.node, changedNodes, undo);
+					break;
+				case ADD_EDGE:
+					if (change.node == null || change.target == null) {
+						throw new NullPointerException("an edge needs a source and a target");
+					}
+					changedNodes.add(change.target);
+					ArrayList<Node> targets = change.node.getEdges(change.name);
+					if (targets == null || !targets.contains(change.target)) {
+						change.node.addEdge(change.name, change.target);
+						undo.add(new Change(REMOVE_EDGE, change.node, change.name, change.target, null));
+					}
+					break;
+				case REMOVE_EDGE:
+					changedNodes.add(change.target);
+					removeEdge(change.node, change.name, change.target, undo);
+					break;
+				case SET_ATTRIBUTE:
+				case REMOVE_ATTRIBUTE:
+					if (change.node.hasAttribute(change.name)) {
+						undo.add(new Change(SET_ATTRIBUTE, change.node, change.name, null, change.node.getAttribute(change.name)));
+					} else {
+						undo.add(new Change(REMOVE_ATTRIBUTE, change.node, change.name, null, null));
+					}
+					if (change.type == SET_ATTRIBUTE) {
+						change.node.setAttribute(change.name, change.value);
+					} else {
+						change.node.removeAttribute(change.name);
+					}
+					break;
+				}
+			}
+		} catch (RuntimeException e) {
+			for (int i = undo.size() - 1; i >= 0; --i) {
+				Change change = undo.get(i);
+				switch (change.type) {
+				case ADD_EDGE:
+					change.node.restoreEdge(change.name, change.target, change.position);
+					break;
+				case REMOVE_EDGE:
+					change.node.removeEdge(change.name, change.target);
+					break;
+				case SET_ATTRIBUTE:
+					change.node.setAttribute(change.name, change.value);
+					break;
+				case REMOVE_ATTRIBUTE:
+					change.node.removeAttribute(change.name);
+					break;
+				}
+			}
+			throw e;
+		} finally {
+			changes.clear();
+		}
+		// update the list of nodes once (after all changes succeeded, so it never needs to be restored):
+		if (!removedNodes.isEmpty()) {
+			graph.getNodes().removeIf(new Predicate<Node>() {
+				@Override
+				public boolean test(Node node) {
+					return removedNodes.contains(node);
+				}
+			});
+		}
+		graph.getNodes().addAll(addedNodes);
+		changedNodes.remove(null);
+		// notify the listeners (with a copy of the list, so they can remove themselves):
+		if (graph.getListeners() != null) {
+			for (GraphListener listener: new ArrayList<GraphListener>(graph.getListeners())) {
+				listener.graphChanged(graph, addedNodes, removedNodes, changedNodes);
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * removes an edge and logs how to put it back.
+	 */
+	private static void removeEdge(Node source, String name, Node target, ArrayList<Change> undo) {
+		int[] position = source.removeEdgeAt(name, target);
+		if (position != null) {
+			Change change = new Change(ADD_EDGE, source, name, target, null);
+			change.position = position;
+			undo.add(change);
+		}
+	}
+
+	/**
+	 * removes all edges of a node (like Node.removeAllEdges) and logs how to put them back.
+	 */
+	private static void removeAllEdges(Node node, HashSet<Node> changedNodes, ArrayList<Change> undo) {
+		for (String key: new ArrayList<String>(node.getIncomingEdges().keySet())) {
+			for (Node source: new ArrayList<Node>(node.getIncomingEdges(key))) {
+				changedNodes.add(source);
+				removeEdge(source, key, node, undo);
+			}
+		}
+		for (String key: new ArrayList<String>(node.getEdges().keySet())) {
+			for (Node target: new ArrayList<Node>(node.getEdges(key))) {
+				changedNodes.add(target);
+				removeEdge(node, key, target, undo);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+package org.fujaba.graphengine.graph;
+
+/**
+ * The read API of graphs, whose nodes, edge labels and attribute keys are identified by int ids
+ * (the node ids are 0 to size() - 1).
+ *
+ * The outgoing (and incoming) edges of a node are found at a range of edge indices,
+ * grouped by label id and sorted by target (respectively source) id within each label.
+ * The attribute keys of a node are found at a range of attribute indices, sorted by key id.
+ */
+public interface IndexedGraph {
+
+	/**
+	 * @return the number of nodes of this graph
+	 */
+	int size();
+
+	/**
+	 * @return the number of edges of this graph
+	 */
+	int getEdgeCount();
+
+	/**
+	 * @return the number of different edge labels of this graph
+	 */
+	int getLabelCount();
+
+	String getLabel(int labelId);
+
+	/**
+	 * @param label an edge label
+	 * @return the id of the edge label, or -1 if there's no such edge within this graph
+	 */
+	int getLabelId(String label);
+
+	int getOutDegree(int id);
+
+	int getOutDegree(int id, int labelId);
+
+	/**
+	 * @param id a node id
+	 * @return the number of different labels of the node's outgoing edges
+	 */
+	int getOutLabelCount(int id);
+
+	int getInDegree(int id);
+
+	int getInDegree(int id, int labelId);
+
+	int getOutBegin(int id);
+
+	int getOutEnd(int id);
+
+	int getOutBegin(int id, int labelId);
+
+	int getOutEnd(int id, int labelId);
+
+	int getOutLabel(int index);
+
+	int getOutTarget(int index);
+
+	int getInBegin(int id);
+
+	int getInEnd(int id);
+
+	int getInBegin(int id, int labelId);
+
+	int getInEnd(int id, int labelId);
+
+	int getInLabel(int index);
+
+	int getInSource(int index);
+
+	/**
+	 * @param source the source's id
+	 * @param labelId the label's id (-1 for a label, that isn't part of this graph)
+	 * @param target the target's id
+	 * @return true if there's an edge with the given label from the source to the target
+	 */
+	boolean hasEdge(int source, int labelId, int target);
+
+	/**
+	 * @return the number of different attribute keys of this graph
+	 */
+	int getAttributeKeyCount();
+
+	String getAttributeKey(int keyId);
+
+	/**
+	 * @param key an attribute key
+	 * @return the id of the attribute key, or -1 if no node of this graph has such an attribute
+	 */
+	int getAttributeKeyId(String key);
+
+	Object getAttribute(int id, int keyId);
+
+	Object getAttribute(int id, String key);
+
+	int getAttributeBegin(int id);
+
+	int getAttributeEnd(int id);
+
+	int getAttributeKeyAt(int index);
+
+}
@@ -1,9 +1,14 @@
 package org.fujaba.graphengine.graph;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Set;
 
 import org.fujaba.graphengine.GraphEngine;
+import org.fujaba.graphengine.SymbolTable;
 
 /**
  * This is a Node for use in graph transformation systems.
@@ -16,14 +21,51 @@ public class Node implements Cloneable
 
     /**
      * the attributes of this node
+     * (they must only be changed with setAttribute and removeAttribute, because they can be shared with clones)
      */
     private HashMap<String, Object> attributes = new HashMap<String, Object>();
 
+    /**
+     * if true, the attributes are shared with a clone of this node (or the node this one was cloned from),
+     * so they need to be copied before they're changed (copy-on-write)
+     */
+    private boolean attributesShared = false;
+
     /**
      * the nodes, that are connected with an outgoing edge that has a specific label
      */
     private HashMap<String, ArrayList<Node>> edges = new HashMap<String, ArrayList<Node>>();
 
+    /**
+     * the nodes, that are connected with an incoming edge that has a specific label
+     * (the reverse index of the edges, kept consistent by addEdge and removeEdge)
+     */
+    private HashMap<String, ArrayList<Node>> incomingEdges = new HashMap<String, ArrayList<Node>>();
+
+    /**
+     * the symbol ids of the labels of the outgoing edges (sorted ascending)
+     * and the lists of targets for those labels (the same lists as in edges),
+     * so edges can be looked up by symbol without hashing the label
+     */
+    private int[] edgeSymbols = NO_SYMBOLS;
+    private Object[] edgeSymbolTargets = NO_TARGETS;
+
+    private static final int[] NO_SYMBOLS = new int[0];
+    private static final Object[] NO_TARGETS = new Object[0];
+
+    /**
+     * the lists of nodes of the graphs with listeners, that contain this node (once for each time it's contained),
+     * which count the changes of this node, too (see NodeList.setWatched)
+     */
+    private transient NodeList[] watchers = NO_WATCHERS;
+
+    private static final NodeList[] NO_WATCHERS = new NodeList[0];
+
+    /**
+     * the modification count (see Graph.getModificationCount) of the last change of this node
+     */
+    private transient long lastModification = 0;
+
     public Node() {
     }
 
@@ -31,13 +73,49 @@ public class Node implements Cloneable
        this.setAttributes(attributes);
     }
 
+    /**
+     * returns the attributes of this node, which may be changed directly.
+     * if they're shared with clones, this node gets its own copy first,
+     * so just reading them is cheaper with getAttributeKeys, hasAttribute and getAttribute.
+     * 
+     * @return the attributes of this node (only this node's)
+     */
     public HashMap<String, Object> getAttributes() {
         if (this.attributes == null) {
            this.attributes = new HashMap<String, Object>();
         }
+        unshareAttributes();
+        // the attributes may be changed by the caller:
+        modified();
         return this.attributes;
     }
 
+    /**
+     * @return the names of the attributes of this node (a read-only view, that may be shared with clones)
+     */
+    public Set<String> getAttributeKeys() {
+        if (this.attributes == null) {
+           this.attributes = new HashMap<String, Object>();
+        }
+        return Collections.unmodifiableSet(this.attributes.keySet());
+    }
+
+    /**
+     * @param name the name of an attribute
+     * @return true if this node has a value for the attribute (even if it's null)
+     */
+    public boolean hasAttribute(String name) {
+        return this.attributes != null && this.attributes.containsKey(name);
+    }
+
+    /**
+     * @param other another node
+     * @return true if the nodes share their attributes (copy-on-write), so they're the same
+     */
+    public boolean sharesAttributesWith(Node other) {
+        return this.attributes != null && this.attributes == other.attributes;
+    }
+
     public Object getAttribute(String name) {
         if (this.attributes == null) {
             this.attributes = new HashMap<String, Object>();
@@ -45,8 +123,18 @@ public class Node implements Cloneable
         return this.attributes.get(name);
     }
 
+    /**
+     * @param symbol the symbol id of the attribute's name (see SymbolTable)
+     * @return the value of the attribute
+     */
+    public Object getAttribute(int symbol) {
+        return getAttribute(SymbolTable.getName(symbol));
+    }
+
     public Node setAttributes(HashMap<String, Object> attributes) {
         this.attributes = attributes;
+        this.attributesShared = false;
+        modified();
         return this;
     }
 
@@ -54,7 +142,9 @@ public class Node implements Cloneable
         if (this.attributes == null) {
             this.attributes = new HashMap<String, Object>();
         }
-        this.attributes.put(name, value);
+        unshareAttributes();
+        this.attributes.put(SymbolTable.intern(name), value);
+        modified();
         return this;
     }
 
@@ -63,7 +153,9 @@ public class Node implements Cloneable
             if (this.attributes == null) {
                 continue;
             }
+            unshareAttributes();
             this.attributes.remove(name);
+            modified();
     	}
         return this;
     }
@@ -82,21 +174,88 @@ public class Node implements Cloneable
         return this.edges.get(name);
     }
 
+    /**
+     * @param symbol the symbol id of the label (see SymbolTable)
+     * @return the targets of the outgoing edges with that label, or null if there are none
+     */
+    @SuppressWarnings("unchecked")
+    public ArrayList<Node> getEdges(int symbol) {
+        int index = Arrays.binarySearch(this.edgeSymbols, symbol);
+        return index < 0 ? null : (ArrayList<Node>)this.edgeSymbolTargets[index];
+    }
+
+    /**
+     * @return the symbol ids of the labels of the outgoing edges (sorted ascending, must not be modified)
+     */
+    public int[] getEdgeSymbols() {
+        return this.edgeSymbols;
+    }
+
+    public HashMap<String, ArrayList<Node>> getIncomingEdges() {
+        if (this.incomingEdges == null) {
+            this.incomingEdges = new HashMap<String, ArrayList<Node>>();
+        }
+        return this.incomingEdges;
+    }
+
+    public ArrayList<Node> getIncomingEdges(String name) {
+        if (this.incomingEdges == null) {
+            this.incomingEdges = new HashMap<String, ArrayList<Node>>();
+        }
+        return this.incomingEdges.get(name);
+    }
+
     public Node addEdge(String name, Node... targets) {
+        name = SymbolTable.intern(name);
     	for (Node target: targets) {
             if (this.edges == null) {
                 this.edges = new HashMap<String, ArrayList<Node>>();
             }
             if (this.edges.get(name) == null) {
-                this.edges.put(name, new ArrayList<Node>());
+                ArrayList<Node> list = new AdjacencyList();
+                this.edges.put(name, list);
+                addEdgeSymbol(SymbolTable.getId(name), list);
             }
             if (!this.edges.get(name).contains(target)) {
                 this.edges.get(name).add(target);
+                target.addIncomingEdge(name, this);
             }
     	}
         return this;
     }
 
+    /**
+     * adds edges with the same label to all the given targets (in their order, skipping existing edges).
+     * 
+     * @param name the label of the edges
+     * @param targets the targets of the edges
+     * @return this node
+     */
+    public Node addEdges(String name, Collection<Node> targets) {
+        if (targets.isEmpty()) {
+            return this;
+        }
+        name = SymbolTable.intern(name);
+        if (this.edges == null) {
+            this.edges = new HashMap<String, ArrayList<Node>>();
+        }
+        ArrayList<Node> list = this.edges.get(name);
+        if (list == null) {
+            list = new AdjacencyList(targets.size());
+            this.edges.put(name, list);
+            addEdgeSymbol(SymbolTable.getId(name), list);
+        } else {
+            list.ensureCapacity(list.size() + targets.size());
+        }
+        for (Node target: targets) {
+            if (!list.contains(target)) {
+                list.add(target);
+                target.addIncomingEdge(name, this);
+            }
+        }
+        return this;
+    }
+
     public Node removeEdge(String name, Node... targets) {
 	    for (Node target: targets) {
 	        if (target == null) {
@@ -108,9 +267,12 @@ public class Node implements Cloneable
 	        if (this.edges.get(name) == null) {
 	            continue;
 	        }
-	        this.edges.get(name).remove(target);
+	        if (this.edges.get(name).remove(target)) {
+	            target.removeIncomingEdge(name, this);
+	        }
 	        if (this.edges.get(name).size() == 0) {
 	            this.edges.remove(name);
+	            removeEdgeSymbol(SymbolTable.getId(name));
 	        }
 	    }
         return this;
@@ -118,34 +280,271 @@ public class Node implements Cloneable
 
     public Node removeEdgesTo(Node... targets) {
 	    for (Node target: targets) {
+	        if (target == null) {
+	            continue;
+	        }
+	        // only the labels of the target's incoming edges can contain edges from this node:
 	        ArrayList<String> toRemove = new ArrayList<String>();
-	        for (String key : this.edges.keySet()) {
-	            if (this.edges.get(key).contains(target)) {
+	        for (String key : target.getIncomingEdges().keySet()) {
+	            if (target.getIncomingEdges(key).contains(this)) {
 	                toRemove.add(key);
 	            }
 	        }
 	        for (String key : toRemove) {
-	            while (this.edges.get(key).contains(target)) {
-	                this.edges.get(key).remove(target);
-	            }
-	            if (this.edges.get(key).size() == 0) {
-	                this.edges.remove(key);
-	            }
+	            removeEdge(key, target);
 	        }
 	    }
         return this;
     }
 
+    /**
+     * removes all outgoing and incoming edges of this node.
+     * 
+     * @return this node
+     */
+    public Node removeAllEdges() {
+        for (String key : new ArrayList<String>(getIncomingEdges().keySet())) {
+            for (Node source : new ArrayList<Node>(getIncomingEdges(key))) {
+                source.removeEdge(key, this);
+            }
+        }
+        for (String key : new ArrayList<String>(getEdges().keySet())) {
+            for (Node target : new ArrayList<Node>(getEdges(key))) {
+                removeEdge(key, target);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return the modification count (see Graph.getModificationCount) of the graphs with listeners, that contain this node,
+     * at the last change of this node's attributes or edges (in both directions), or 0 if it didn't change while it was part of such a graph
+     */
+    public long getLastModification() {
+        return this.lastModification;
+    }
 
+    private void modified() {
+        if (this.watchers == null || this.watchers.length == 0) {
+            return;
+        }
+        // all graphs, that contain this node, count the change with the same number, that's higher than all of their previous ones:
+        long count = 0;
+        for (NodeList watcher: this.watchers) {
+            count = Math.max(count, watcher.modifications);
+        }
+        ++count;
+        for (NodeList watcher: this.watchers) {
+            watcher.modifications = count;
+        }
+        this.lastModification = count;
+    }
+
+    /**
+     * lets a list of nodes count the changes of this node (once more, if it already does).
+     * 
+     * @param watcher the list of nodes
+     */
+    void watch(NodeList watcher) {
+        if (this.watchers == null) {
+            this.watchers = NO_WATCHERS;
+        }
+        this.watchers = Arrays.copyOf(this.watchers, this.watchers.length + 1);
+        this.watchers[this.watchers.length - 1] = watcher;
+    }
+
+    /**
+     * lets a list of nodes count the changes of this node once less (see watch).
+     * 
+     * @param watcher the list of nodes
+     */
+    void unwatch(NodeList watcher) {
+        for (int i = 0; this.watchers != null && i < this.watchers.length; ++i) {
+            if (this.watchers[i] == watcher) {
+                NodeList[] watchers = new NodeList[this.watchers.length - 1];
+                System.arraycopy(this.watchers, 0, watchers, 0, i);
+                System.arraycopy(this.watchers, i + 1, watchers, i, watchers.length - i);
+                this.watchers = watchers;
+                return;
+            }
+        }
+    }
+
+    private void unshareAttributes() {
+        if (this.attributesShared) {
+            this.attributes = new HashMap<String, Object>(this.attributes);
+            this.attributesShared = false;
+        }
+    }
+
+    /**
+     * copies the edges of the original node (in both directions) to this node, translating their nodes to the clones with the same index.
+     * this is used when a whole graph is cloned at once, so the lists can be copied directly (edges to nodes outside of the graph are skipped).
+     * 
+     * @param original the node this node is a clone of
+     * @param graph the graph of the original node
+     * @param clones the clones of the graph's nodes (in the same order)
+     */
+    void copyEdges(Node original, Graph graph, ArrayList<Node> clones) {
+        this.edges = new HashMap<String, ArrayList<Node>>();
+        this.edgeSymbols = NO_SYMBOLS;
+        this.edgeSymbolTargets = NO_TARGETS;
+        int[] symbols = new int[original.edgeSymbols.length];
+        Object[] targets = new Object[symbols.length];
+        int count = 0;
+        for (int i = 0; i < original.edgeSymbols.length; ++i) {
+            ArrayList<Node> list = translated((ArrayList<?>)original.edgeSymbolTargets[i], graph, clones);
+            if (list != null) {
+                symbols[count] = original.edgeSymbols[i];
+                targets[count] = list;
+                this.edges.put(SymbolTable.getName(symbols[count]), list);
+                ++count;
+            }
+        }
+        if (count > 0) {
+            this.edgeSymbols = Arrays.copyOf(symbols, count);
+            this.edgeSymbolTargets = Arrays.copyOf(targets, count);
+        }
+        this.incomingEdges = new HashMap<String, ArrayList<Node>>();
+        for (String key : original.getIncomingEdges().keySet()) {
+            ArrayList<Node> list = translated(original.getIncomingEdges(key), graph, clones);
+            if (list != null) {
+                this.incomingEdges.put(key, list);
+            }
+        }
+    }
+
+    /**
+     * removes an edge and tells where it was, so it can be put back at the same place (see restoreEdge).
+     * 
+     * @param name the label of the edge
+     * @param target the target of the edge
+     * @return the index of the target within the targets of the label and the index of this node within the target's sources of the label,
+     * or null if there was no such edge
+     */
+    int[] removeEdgeAt(String name, Node target) {
+        ArrayList<Node> targets = this.edges == null ? null : this.edges.get(name);
+        int index = targets == null ? -1 : targets.indexOf(target);
+        if (index < 0) {
+            return null;
+        }
+        int[] position = new int[] {index, target.getIncomingEdges(name).indexOf(this)};
+        removeEdge(name, target);
+        return position;
+    }
+
+    /**
+     * puts a removed edge back at the place it was removed from.
+     * 
+     * @param name the label of the edge
+     * @param target the target of the edge
+     * @param position the position returned by removeEdgeAt
+     */
+    void restoreEdge(String name, Node target, int[] position) {
+        name = SymbolTable.intern(name);
+        if (this.edges == null) {
+            this.edges = new HashMap<String, ArrayList<Node>>();
+        }
+        ArrayList<Node> targets = this.edges.get(name);
+        if (targets == null) {
+            targets = new AdjacencyList();
+            this.edges.put(name, targets);
+            addEdgeSymbol(SymbolTable.getId(name), targets);
+        }
+        targets.add(position[0], target);
+        if (target.incomingEdges == null) {
+            target.incomingEdges = new HashMap<String, ArrayList<Node>>();
+        }
+        ArrayList<Node> sources = target.incomingEdges.get(name);
+        if (sources == null) {
+            sources = new AdjacencyList();
+            target.incomingEdges.put(name, sources);
+        }
+        sources.add(position[1], this);
+        modified();
+        target.modified();
+    }
+
+    private static ArrayList<Node> translated(ArrayList<?> nodes, Graph graph, ArrayList<Node> clones) {
+        AdjacencyList list = new AdjacencyList(nodes.size());
+        for (Object node : nodes) {
+            int index = graph.indexOf((Node)node);
+            if (index >= 0) {
+                list.add(clones.get(index));
+            }
+        }
+        return list.isEmpty() ? null : list;
+    }
+
+    private void addEdgeSymbol(int symbol, ArrayList<Node> list) {
+        int index = -Arrays.binarySearch(this.edgeSymbols, symbol) - 1;
+        int[] symbols = new int[this.edgeSymbols.length + 1];
+        Object[] targets = new Object[symbols.length];
+        System.arraycopy(this.edgeSymbols, 0, symbols, 0, index);
+        System.arraycopy(this.edgeSymbolTargets, 0, targets, 0, index);
+        symbols[index] = symbol;
+        targets[index] = list;
+        System.arraycopy(this.edgeSymbols, index, symbols, index + 1, this.edgeSymbols.length - index);
+        System.arraycopy(this.edgeSymbolTargets, index, targets, index + 1, this.edgeSymbols.length - index);
+        this.edgeSymbols = symbols;
+        this.edgeSymbolTargets = targets;
+    }
+
+    private void removeEdgeSymbol(int symbol) {
+        int index = Arrays.binarySearch(this.edgeSymbols, symbol);
+        if (index < 0) {
+            return;
+        }
+        int[] symbols = new int[this.edgeSymbols.length - 1];
+        Object[] targets = new Object[symbols.length];
+        System.arraycopy(this.edgeSymbols, 0, symbols, 0, index);
+        System.arraycopy(this.edgeSymbolTargets, 0, targets, 0, index);
+        System.arraycopy(this.edgeSymbols, index + 1, symbols, index, symbols.length - index);
+        System.arraycopy(this.edgeSymbolTargets, index + 1, targets, index, symbols.length - index);
+        this.edgeSymbols = symbols;
+        this.edgeSymbolTargets = targets;
+    }
+
+    private void addIncomingEdge(String name, Node source) {
+        if (this.incomingEdges == null) {
+            this.incomingEdges = new HashMap<String, ArrayList<Node>>();
+        }
+        if (this.incomingEdges.get(name) == null) {
+            this.incomingEdges.put(name, new AdjacencyList());
+        }
+        this.incomingEdges.get(name).add(source);
+        modified();
+        source.modified();
+    }
+
+    private void removeIncomingEdge(String name, Node source) {
+        modified();
+        source.modified();
+        if (this.incomingEdges == null || this.incomingEdges.get(name) == null) {
+            return;
+        }
+        this.incomingEdges.get(name).remove(source);
+        if (this.incomingEdges.get(name).size() == 0) {
+            this.incomingEdges.remove(name);
+        }
+    }
+
+
+    /**
+     * clones this node with its attributes, but without its edges.
+     * the clone shares the attributes with this node, until one of them changes them.
+     * 
+     * @return the clone
+     */
     @Override
    public Node clone()
    {
-        HashMap<String, Object> clonedAttributes = new HashMap<String, Object>();
-      for (String key : attributes.keySet())
-      {
-            clonedAttributes.put(key, attributes.get(key)); // attribute value won't be duplicated
+        if (this.attributes == null) {
+           this.attributes = new HashMap<String, Object>();
         }
-        Node clone = new Node(clonedAttributes);
+        Node clone = new Node(this.attributes);
+        clone.attributesShared = true;
+        this.attributesShared = true;
         return clone;
     }
 
@@ -0,0 +1,316 @@
+package org.fujaba.graphengine.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * This is the list of nodes of a graph.
+ *
+ * It's an ArrayList, that counts its modifications (including reorderings)
+ * and knows the index of each of its nodes (see getIndex), which is updated once after the list was modified.
+ * The indices belong to the list, so a node can be part of multiple lists (and graphs) with different indices.
+ * While the list is watched (see setWatched), its nodes count their changes at it, too (see Graph.getModificationCount).
+ */
+public class NodeList extends ArrayList<Node> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * the number of modifications of this list
+	 */
+	private int version = 0;
+
+	/**
+	 * the number of modifications of this list and, while it's watched, of its nodes (see Node.modified)
+	 */
+	transient long modifications = 0;
+
+	/**
+	 * true if the nodes count their changes here, too
+	 */
+	private transient boolean watched = false;
+
+	/**
+	 * the indices of the nodes (built when they're needed first after a modification, null before)
+	 */
+	private transient volatile Indices indices = null;
+
+	/**
+	 * the indices of the nodes of a version of the list (an open addressing table by identity, that isn't changed after it was built,
+	 * so it can be read by multiple threads at once)
+	 */
+	private static class Indices {
+		final int version;
+		final Node[] nodes;
+		final int[] indices;
+
+		Indices(NodeList list) {
+			version = list.version;
+			int capacity = Integer.highestOneBit(Math.max(2, list.size() * 2) - 1) << 1;
+			nodes = new Node[capacity];
+			indices = new int[capacity];
+			for (int i = 0; i < list.size(); ++i) {
+				Node node = list.get(i);
+				if (node == null) {
+					continue;
+				}
+				int slot = slotOf(node);
+				while (nodes[slot] != null && nodes[slot] != node) {
+					slot = (slot + 1) & (nodes.length - 1);
+				}
+				if (nodes[slot] == null) {
+					// the first occurrence of a node counts (like with indexOf):
+					nodes[slot] = node;
+					indices[slot] = i;
+				}
+			}
+		}
+
+		int get(Node node) {
+			for (int slot = slotOf(node); nodes[slot] != null; slot = (slot + 1) & (nodes.length - 1)) {
+				if (nodes[slot] == node) {
+					return indices[slot];
+				}
+			}
+			return -1;
+		}
+
+		private int slotOf(Node node) {
+			int hash = System.identityHashCode(node) * 0x9E3779B9;
+			return (hash ^ (hash >>> 16)) & (nodes.length - 1);
+		}
+	}
+
+	public NodeList() {
+		super();
+	}
+
+	public NodeList(int initialCapacity) {
+		super(initialCapacity);
+	}
+
+	/**
+	 * @return the number of modifications of this list (it changes with every modification)
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * returns the index of a node within this list without searching it:
+	 * the indices of all nodes are updated once after the list was modified.
+	 *
+	 * @param node a node
+	 * @return the index of the first occurrence of the node, or -1 if it isn't part of this list
+	 */
+	public int getIndex(Node node) {
+		Indices current = indices;
+		if (current == null || current.version != version) {
+			current = new Indices(this);
+			indices = current;
+		}
+		return current.get(node);
+	}
+
+	/**
+	 * @return the number of modifications of this list and, while it's watched, of its nodes (see Graph.getModificationCount)
+	 */
+	long getModificationCount() {
+		return modifications;
+	}
+
+	/**
+	 * lets the nodes of this list count their changes here, too (see Node.getLastModification), or stops it.
+	 * the nodes only know the lists, that watch them, so a list, that isn't watched, isn't kept alive by its nodes.
+	 *
+	 * @param watched true if the changes of the nodes are counted
+	 */
+	void setWatched(boolean watched) {
+		if (this.watched == watched) {
+			return;
+		}
+		this.watched = watched;
+		for (Node node: this) {
+			if (watched) {
+				watch(node);
+			} else {
+				unwatch(node);
+			}
+		}
+	}
+
+	/**
+	 * counts a modification of this list.
+	 */
+	private void changed() {
+		++version;
+		++modifications;
+	}
+
+	private void watch(Node node) {
+		if (watched && node != null) {
+			node.watch(this);
+		}
+	}
+
+	private void unwatch(Object node) {
+		if (watched && node != null) {
+			((Node)node).unwatch(this);
+		}
+	}
+
+	@Override
+	public boolean add(Node node) {
+		changed();
+		super.add(node);
+		watch(node);
+		return true;
+	}
+
+	@Override
+	public void add(int index, Node node) {
+		changed();
+		super.add(index, node);
+		watch(node);
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Node> nodes) {
+		changed();
+		if (!watched) {
+			return super.addAll(nodes);
+		}
+		Object[] added = nodes.toArray();
+		boolean result = super.addAll(nodes);
+		for (Object node: added) {
+			watch((Node)node);
+		}
+		return result;
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends Node> nodes) {
+		changed();
+		if (!watched) {
+			return super.addAll(index, nodes);
+		}
+		Object[] added = nodes.toArray();
+		boolean result = super.addAll(index, nodes);
+		for (Object node: added) {
+			watch((Node)node);
+		}
+		return result;
+	}
+
+	@Override
+	public Node set(int index, Node node) {
+		changed();
+		Node replaced = super.set(index, node);
+		watch(node);
+		unwatch(replaced);
+		return replaced;
+	}
+
+	@Override
+	public Node remove(int index) {
+		changed();
+		Node removed = super.remove(index);
+		unwatch(removed);
+		return removed;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		changed();
+		boolean removed = super.remove(o);
+		if (removed) {
+			unwatch(o);
+		}
+		return removed;
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		changed();
+		for (int i = fromIndex; i < toIndex; ++i) {
+			unwatch(get(i));
+		}
+		super.removeRange(fromIndex, toIndex);
+	}
+
+	@Override
+	public boolean removeAll(final Collection<?> c) {
+		if (!watched) {
+			changed();
+			return super.removeAll(c);
+		}
+		return removeIf(new Predicate<Node>() {
+			@Override
+			public boolean test(Node node) {
+				return c.contains(node);
+			}
+		});
+	}
+
+	@Override
+	public boolean retainAll(final Collection<?> c) {
+		if (!watched) {
+			changed();
+			return super.retainAll(c);
+		}
+		return removeIf(new Predicate<Node>() {
+			@Override
+			public boolean test(Node node) {
+				return !c.contains(node);
+			}
+		});
+	}
+
+	@Override
+	public boolean removeIf(final Predicate<? super Node> filter) {
+		changed();
+		if (!watched) {
+			return super.removeIf(filter);
+		}
+		// the removed nodes aren't watched anymore (once the nodes were removed, so nothing changes if the filter fails):
+		final ArrayList<Node> removed = new ArrayList<Node>();
+		boolean result = super.removeIf(new Predicate<Node>() {
+			@Override
+			public boolean test(Node node) {
+				return filter.test(node) && removed.add(node);
+			}
+		});
+		for (Node node: removed) {
+			unwatch(node);
+		}
+		return result;
+	}
+
+	@Override
+	public void replaceAll(UnaryOperator<Node> operator) {
+		changed();
+		boolean watching = watched;
+		setWatched(false);
+		super.replaceAll(operator);
+		setWatched(watching);
+	}
+
+	@Override
+	public void sort(Comparator<? super Node> c) {
+		changed();
+		super.sort(c);
+	}
+
+	@Override
+	public void clear() {
+		changed();
+		for (Node node: this) {
+			unwatch(node);
+		}
+		super.clear();
+	}
+
+}
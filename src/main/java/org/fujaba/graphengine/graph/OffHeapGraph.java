@@ -0,0 +1,833 @@
+package org.fujaba.graphengine.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This is an immutable graph, that's stored outside of the heap (in a direct ByteBuffer or a memory-mapped file),
+ * so graphs with millions of nodes don't need millions of objects on the heap.
+ *
+ * It's got the same layout as a FrozenGraph (compressed sparse rows of edges in both directions,
+ * attribute keys sorted per node), but all arrays are stored in one buffer, and the attribute values are encoded
+ * in a heap of bytes (a type tag and the value). Only the edge labels and attribute keys are kept on the heap.
+ * Patterns are matched on it by ids (see PatternEngine.matchPattern(IndexedGraph, PatternGraph, boolean)),
+ * and parts of the graph can be turned into (heap) graphs with toGraph, e.g. its connected components (see GraphEngine.split).
+ * A graph, that is too large to be loaded as a Graph, is streamed into the buffer with a Builder
+ * (e.g. by TTCStateCaseGraphLoader.loadOffHeap), without a Graph or FrozenGraph in between.
+ */
+public class OffHeapGraph implements IndexedGraph {
+
+	private static final int MAGIC = 0x47454F48; // "GEOH"
+	private static final int HEADER_INTS = 7;
+
+	private ByteBuffer buffer;
+	private IntBuffer ints;
+	private int size;
+	private int edgeCount;
+	private int attributeCount;
+	/**
+	 * the positions (within the ints) of the arrays
+	 */
+	private int outOffsets;
+	private int outLabels;
+	private int outTargets;
+	private int inOffsets;
+	private int inLabels;
+	private int inSources;
+	private int outLabelCounts;
+	private int attributeOffsets;
+	private int attributeKeysOfNodes;
+	private int attributeValues;
+	/**
+	 * the position (within the buffer) of the encoded attribute values
+	 */
+	private int valueHeap;
+	private String[] labels;
+	private HashMap<String, Integer> labelIds = new HashMap<String, Integer>();
+	private String[] attributeKeys;
+	private HashMap<String, Integer> attributeKeyIds = new HashMap<String, Integer>();
+
+	/**
+	 * opens a graph within a buffer, that was filled by this class before.
+	 *
+	 * @param buffer the buffer
+	 */
+	public OffHeapGraph(ByteBuffer buffer) {
+		this.buffer = buffer;
+		if (buffer.getInt(0) != MAGIC) {
+			throw new IllegalArgumentException("the buffer doesn't contain a graph");
+		}
+		size = buffer.getInt(4);
+		edgeCount = buffer.getInt(8);
+		attributeCount = buffer.getInt(12);
+		labels = new String[buffer.getInt(16)];
+		attributeKeys = new String[buffer.getInt(20)];
+		int valueHeapSize = buffer.getInt(24);
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position(HEADER_INTS * 4);
+		ints = duplicate.slice().asIntBuffer();
+		outOffsets = 0;
+		outLabels = outOffsets + size + 1;
+		outTargets = outLabels + edgeCount;
+		inOffsets = outTargets + edgeCount;
+		inLabels = inOffsets + size + 1;
+		inSources = inLabels + edgeCount;
+		outLabelCounts = inSources + edgeCount;
+		attributeOffsets = outLabelCounts + size;
+		attributeKeysOfNodes = attributeOffsets + size + 1;
+		attributeValues = attributeKeysOfNodes + attributeCount;
+		valueHeap = (HEADER_INTS + attributeValues + attributeCount) * 4;
+		int position = valueHeap + valueHeapSize;
+		for (int i = 0; i < labels.length; ++i) {
+			labels[i] = readString(position);
+			labelIds.put(labels[i], i);
+			position += 4 + buffer.getInt(position);
+		}
+		for (int i = 0; i < attributeKeys.length; ++i) {
+			attributeKeys[i] = readString(position);
+			attributeKeyIds.put(attributeKeys[i], i);
+			position += 4 + buffer.getInt(position);
+		}
+	}
+
+	/**
+	 * stores a graph in a direct buffer (outside of the heap).
+	 *
+	 * @param graph the graph to store (e.g. a FrozenGraph)
+	 * @return the stored graph
+	 */
+	public static OffHeapGraph of(IndexedGraph graph) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(sizeOf(graph));
+		fill(buffer, graph);
+		return new OffHeapGraph(buffer);
+	}
+
+	/**
+	 * stores a graph in a file and maps it into memory.
+	 *
+	 * @param graph the graph to store (e.g. a FrozenGraph)
+	 * @param file the file (that's overwritten)
+	 * @return the stored graph
+	 * @throws IOException if the file can't be written
+	 */
+	public static OffHeapGraph write(IndexedGraph graph, File file) throws IOException {
+		MappedByteBuffer buffer = map(file, sizeOf(graph));
+		fill(buffer, graph);
+		buffer.force();
+		return new OffHeapGraph(buffer);
+	}
+
+	private static MappedByteBuffer map(File file, int size) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.setLength(size);
+			return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+	}
+
+	/**
+	 * maps a file into memory, that was written with write before.
+	 *
+	 * @param file the file
+	 * @return the stored graph
+	 * @throws IOException if the file can't be read
+	 */
+	public static OffHeapGraph open(File file) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			return new OffHeapGraph(randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length()));
+		}
+	}
+
+	private static int sizeOf(IndexedGraph graph) {
+		long size = 4L * (HEADER_INTS + 3L * (graph.size() + 1) + graph.size() + 4L * graph.getEdgeCount());
+		for (int id = 0; id < graph.size(); ++id) {
+			for (int i = graph.getAttributeBegin(id); i < graph.getAttributeEnd(id); ++i) {
+				size += 8 + sizeOf(graph.getAttribute(id, graph.getAttributeKeyAt(i)));
+			}
+		}
+		for (int i = 0; i < graph.getLabelCount(); ++i) {
+			size += 4 + graph.getLabel(i).getBytes(StandardCharsets.UTF_8).length;
+		}
+		for (int i = 0; i < graph.getAttributeKeyCount(); ++i) {
+			size += 4 + graph.getAttributeKey(i).getBytes(StandardCharsets.UTF_8).length;
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("the graph is too large for a single buffer: " + size + " bytes");
+		}
+		return (int)size;
+	}
+
+	private static int sizeOf(Object value) {
+		switch (AttributeType.of(value)) {
+		case INTEGER:
+			return 1 + 4;
+		case LONG:
+		case DOUBLE:
+			return 1 + 8;
+		case BOOLEAN:
+			return 1 + 1;
+		case STRING:
+			return 1 + 4 + ((String)value).getBytes(StandardCharsets.UTF_8).length;
+		default:
+			throw new IllegalArgumentException("invalid type of attribute value: " + value);
+		}
+	}
+
+	private static void fill(ByteBuffer buffer, IndexedGraph graph) {
+		int n = graph.size();
+		int attributeCount = 0;
+		int valueHeapSize = 0;
+		for (int id = 0; id < n; ++id) {
+			attributeCount += graph.getAttributeEnd(id) - graph.getAttributeBegin(id);
+			for (int i = graph.getAttributeBegin(id); i < graph.getAttributeEnd(id); ++i) {
+				valueHeapSize += sizeOf(graph.getAttribute(id, graph.getAttributeKeyAt(i)));
+			}
+		}
+		buffer.putInt(MAGIC).putInt(n).putInt(graph.getEdgeCount()).putInt(attributeCount)
+				.putInt(graph.getLabelCount()).putInt(graph.getAttributeKeyCount()).putInt(valueHeapSize);
+		// the edges (the offsets are relative to the first edge, like in a FrozenGraph):
+		for (int id = 0; id <= n; ++id) {
+			buffer.putInt(id < n ? graph.getOutBegin(id) - graph.getOutBegin(0) : graph.getEdgeCount());
+		}
+		for (int id = 0; id < n; ++id) {
+			for (int i = graph.getOutBegin(id); i < graph.getOutEnd(id); ++i) {
+				buffer.putInt(graph.getOutLabel(i));
+			}
+		}
+		for (int id = 0; id < n; ++id) {
+			for (int i = graph.getOutBegin(id); i < graph.getOutEnd(id); ++i) {
+				buffer.putInt(graph.getOutTarget(i));
+			}
+		}
+		for (int id = 0; id <= n; ++id) {
+			buffer.putInt(id < n ? graph.getInBegin(id) - graph.getInBegin(0) : graph.getEdgeCount());
+		}
+		for (int id = 0; id < n; ++id) {
+			for (int i = graph.getInBegin(id); i < graph.getInEnd(id); ++i) {
+				buffer.putInt(graph.getInLabel(i));
+			}
+		}
+		for (int id = 0; id < n; ++id) {
+			for (int i = graph.getInBegin(id); i < graph.getInEnd(id); ++i) {
+				buffer.putInt(graph.getInSource(i));
+			}
+		}
+		for (int id = 0; id < n; ++id) {
+			buffer.putInt(graph.getOutLabelCount(id));
+		}
+		// the attributes:
+		int count = 0;
+		for (int id = 0; id <= n; ++id) {
+			buffer.putInt(count);
+			if (id < n) {
+				count += graph.getAttributeEnd(id) - graph.getAttributeBegin(id);
+			}
+		}
+		for (int id = 0; id < n; ++id) {
+			for (int i = graph.getAttributeBegin(id); i < graph.getAttributeEnd(id); ++i) {
+				buffer.putInt(graph.getAttributeKeyAt(i));
+			}
+		}
+		int position = 0;
+		for (int id = 0; id < n; ++id) {
+			for (int i = graph.getAttributeBegin(id); i < graph.getAttributeEnd(id); ++i) {
+				buffer.putInt(position);
+				position += sizeOf(graph.getAttribute(id, graph.getAttributeKeyAt(i)));
+			}
+		}
+		for (int id = 0; id < n; ++id) {
+			for (int i = graph.getAttributeBegin(id); i < graph.getAttributeEnd(id); ++i) {
+				putValue(buffer, graph.getAttribute(id, graph.getAttributeKeyAt(i)));
+			}
+		}
+		// the edge labels and attribute keys:
+		for (int i = 0; i < graph.getLabelCount(); ++i) {
+			putString(buffer, graph.getLabel(i));
+		}
+		for (int i = 0; i < graph.getAttributeKeyCount(); ++i) {
+			putString(buffer, graph.getAttributeKey(i));
+		}
+	}
+
+	private static void putValue(ByteBuffer buffer, Object value) {
+		AttributeType type = AttributeType.of(value);
+		buffer.put((byte)type.ordinal());
+		switch (type) {
+		case INTEGER:
+			buffer.putInt((Integer)value);
+			break;
+		case LONG:
+			buffer.putLong((Long)value);
+			break;
+		case DOUBLE:
+			buffer.putDouble((Double)value);
+			break;
+		case BOOLEAN:
+			buffer.put((byte)((Boolean)value ? 1 : 0));
+			break;
+		default:
+			putString(buffer, (String)value);
+		}
+	}
+
+	private static void putString(ByteBuffer buffer, String s) {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+	}
+
+	private String readString(int position) {
+		byte[] bytes = new byte[buffer.getInt(position)];
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position(position + 4);
+		duplicate.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * finds the first index within the range, whose label id is not lower than the given label id.
+	 */
+	private int lowerBound(int labels, int begin, int end, int labelId) {
+		while (begin < end) {
+			int middle = (begin + end) >>> 1;
+			if (ints.get(labels + middle) < labelId) {
+				begin = middle + 1;
+			} else {
+				end = middle;
+			}
+		}
+		return begin;
+	}
+
+	/**
+	 * builds a (heap) graph of some of the nodes of this graph, with the edges in between them.
+	 *
+	 * @param ids the ids of the nodes
+	 * @return the graph (its nodes are in the order of the ids)
+	 */
+	public Graph toGraph(int[] ids) {
+		Graph graph = new Graph();
+		Node[] nodes = new Node[size];
+		for (int id: ids) {
+			Node node = new Node();
+			for (int i = getAttributeBegin(id); i < getAttributeEnd(id); ++i) {
+				node.setAttribute(attributeKeys[getAttributeKeyAt(i)], getAttributeValueAt(i));
+			}
+			nodes[id] = node;
+			graph.addNode(node);
+		}
+		for (int id: ids) {
+			for (int i = getOutBegin(id); i < getOutEnd(id); ++i) {
+				Node target = nodes[getOutTarget(i)];
+				if (target != null) {
+					nodes[id].addEdge(labels[getOutLabel(i)], target);
+				}
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * @return a (heap) graph of all nodes of this graph
+	 */
+	public Graph toGraph() {
+		int[] ids = new int[size];
+		for (int i = 0; i < size; ++i) {
+			ids[i] = i;
+		}
+		return toGraph(ids);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int getEdgeCount() {
+		return edgeCount;
+	}
+
+	@Override
+	public int getLabelCount() {
+		return labels.length;
+	}
+
+	@Override
+	public String getLabel(int labelId) {
+		return labels[labelId];
+	}
+
+	@Override
+	public int getLabelId(String label) {
+		Integer labelId = labelIds.get(label);
+		return labelId == null ? -1 : labelId;
+	}
+
+	@Override
+	public int getOutDegree(int id) {
+		return getOutEnd(id) - getOutBegin(id);
+	}
+
+	@Override
+	public int getOutDegree(int id, int labelId) {
+		return getOutEnd(id, labelId) - getOutBegin(id, labelId);
+	}
+
+	@Override
+	public int getOutLabelCount(int id) {
+		return ints.get(outLabelCounts + id);
+	}
+
+	@Override
+	public int getInDegree(int id) {
+		return getInEnd(id) - getInBegin(id);
+	}
+
+	@Override
+	public int getInDegree(int id, int labelId) {
+		return getInEnd(id, labelId) - getInBegin(id, labelId);
+	}
+
+	@Override
+	public int getOutBegin(int id) {
+		return ints.get(outOffsets + id);
+	}
+
+	@Override
+	public int getOutEnd(int id) {
+		return ints.get(outOffsets + id + 1);
+	}
+
+	@Override
+	public int getOutBegin(int id, int labelId) {
+		return lowerBound(outLabels, getOutBegin(id), getOutEnd(id), labelId);
+	}
+
+	@Override
+	public int getOutEnd(int id, int labelId) {
+		return lowerBound(outLabels, getOutBegin(id), getOutEnd(id), labelId + 1);
+	}
+
+	@Override
+	public int getOutLabel(int index) {
+		return ints.get(outLabels + index);
+	}
+
+	@Override
+	public int getOutTarget(int index) {
+		return ints.get(outTargets + index);
+	}
+
+	@Override
+	public int getInBegin(int id) {
+		return ints.get(inOffsets + id);
+	}
+
+	@Override
+	public int getInEnd(int id) {
+		return ints.get(inOffsets + id + 1);
+	}
+
+	@Override
+	public int getInBegin(int id, int labelId) {
+		return lowerBound(inLabels, getInBegin(id), getInEnd(id), labelId);
+	}
+
+	@Override
+	public int getInEnd(int id, int labelId) {
+		return lowerBound(inLabels, getInBegin(id), getInEnd(id), labelId + 1);
+	}
+
+	@Override
+	public int getInLabel(int index) {
+		return ints.get(inLabels + index);
+	}
+
+	@Override
+	public int getInSource(int index) {
+		return ints.get(inSources + index);
+	}
+
+	@Override
+	public boolean hasEdge(int source, int labelId, int target) {
+		if (labelId < 0) {
+			return false;
+		}
+		int begin = getOutBegin(source, labelId);
+		int end = getOutEnd(source, labelId);
+		while (begin < end) {
+			int middle = (begin + end) >>> 1;
+			int current = getOutTarget(middle);
+			if (current == target) {
+				return true;
+			} else if (current < target) {
+				begin = middle + 1;
+			} else {
+				end = middle;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int getAttributeKeyCount() {
+		return attributeKeys.length;
+	}
+
+	@Override
+	public String getAttributeKey(int keyId) {
+		return attributeKeys[keyId];
+	}
+
+	@Override
+	public int getAttributeKeyId(String key) {
+		Integer keyId = attributeKeyIds.get(key);
+		return keyId == null ? -1 : keyId;
+	}
+
+	@Override
+	public Object getAttribute(int id, int keyId) {
+		if (keyId < 0) {
+			return null;
+		}
+		// the keys of each node are sorted:
+		int begin = getAttributeBegin(id);
+		int end = getAttributeEnd(id);
+		while (begin < end) {
+			int middle = (begin + end) >>> 1;
+			int current = getAttributeKeyAt(middle);
+			if (current == keyId) {
+				return getAttributeValueAt(middle);
+			} else if (current < keyId) {
+				begin = middle + 1;
+			} else {
+				end = middle;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Object getAttribute(int id, String key) {
+		return getAttribute(id, getAttributeKeyId(key));
+	}
+
+	@Override
+	public int getAttributeBegin(int id) {
+		return ints.get(attributeOffsets + id);
+	}
+
+	@Override
+	public int getAttributeEnd(int id) {
+		return ints.get(attributeOffsets + id + 1);
+	}
+
+	@Override
+	public int getAttributeKeyAt(int index) {
+		return ints.get(attributeKeysOfNodes + index);
+	}
+
+	/**
+	 * decodes the value of an attribute.
+	 *
+	 * @param index the attribute's index (see getAttributeBegin and getAttributeEnd)
+	 * @return the value
+	 */
+	public Object getAttributeValueAt(int index) {
+		int position = valueHeap + ints.get(attributeValues + index);
+		switch (AttributeType.values()[buffer.get(position)]) {
+		case INTEGER:
+			return buffer.getInt(position + 1);
+		case LONG:
+			return buffer.getLong(position + 1);
+		case DOUBLE:
+			return buffer.getDouble(position + 1);
+		case BOOLEAN:
+			return buffer.get(position + 1) != 0;
+		default:
+			return readString(position + 1);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "OffHeapGraph with " + size + " nodes, " + edgeCount + " edges and " + attributeCount + " attributes";
+	}
+
+
+	/**
+	 * A Builder streams nodes, edges and attributes into an OffHeapGraph:
+	 * they're collected in primitive arrays on the heap (and the attribute values already encoded), without any Node objects,
+	 * and sorted into the layout of the buffer by build or write.
+	 * So while it's building, it needs about 40 bytes of heap per edge and attribute (for the arrays and sorting them),
+	 * which are released once the graph is built.
+	 * Like in a Graph, an edge is only added once, and setting an attribute again replaces its value.
+	 */
+	public static class Builder {
+		private int size = 0;
+		private int edgeCount = 0;
+		private int[] edgeSources = new int[16];
+		private int[] edgeLabels = new int[16];
+		private int[] edgeTargets = new int[16];
+		private int attributeCount = 0;
+		private int[] attributeNodes = new int[16];
+		private int[] attributeKeys = new int[16];
+		private int[] attributePositions = new int[16];
+		private ByteBuffer valueHeap = ByteBuffer.allocate(64);
+		private ArrayList<String> labels = new ArrayList<String>();
+		private HashMap<String, Integer> labelIds = new HashMap<String, Integer>();
+		private ArrayList<String> keys = new ArrayList<String>();
+		private HashMap<String, Integer> keyIds = new HashMap<String, Integer>();
+
+		/**
+		 * @return the id of the new node (the nodes are numbered in the order they're added)
+		 */
+		public int addNode() {
+			return size++;
+		}
+
+		/**
+		 * @return the number of nodes added so far
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @param source the id of the edge's source
+		 * @param label the label of the edge
+		 * @param target the id of the edge's target
+		 * @return this builder
+		 */
+		public Builder addEdge(int source, String label, int target) {
+			checkId(source);
+			checkId(target);
+			if (edgeCount == edgeSources.length) {
+				edgeSources = Arrays.copyOf(edgeSources, edgeCount * 2);
+				edgeLabels = Arrays.copyOf(edgeLabels, edgeCount * 2);
+				edgeTargets = Arrays.copyOf(edgeTargets, edgeCount * 2);
+			}
+			edgeSources[edgeCount] = source;
+			edgeLabels[edgeCount] = idOf(label, labels, labelIds);
+			edgeTargets[edgeCount] = target;
+			++edgeCount;
+			return this;
+		}
+
+		/**
+		 * @param id the id of the node
+		 * @param key the attribute's key
+		 * @param value the attribute's value (an Integer, a Long, a Double, a Boolean or a String)
+		 * @return this builder
+		 */
+		public Builder setAttribute(int id, String key, Object value) {
+			checkId(id);
+			int valueSize = sizeOf(value);
+			if (attributeCount == attributeNodes.length) {
+				attributeNodes = Arrays.copyOf(attributeNodes, attributeCount * 2);
+				attributeKeys = Arrays.copyOf(attributeKeys, attributeCount * 2);
+				attributePositions = Arrays.copyOf(attributePositions, attributeCount * 2);
+			}
+			if (valueHeap.remaining() < valueSize) {
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(valueHeap.capacity() * 2, valueHeap.position() + valueSize));
+				valueHeap.flip();
+				larger.put(valueHeap);
+				valueHeap = larger;
+			}
+			attributeNodes[attributeCount] = id;
+			attributeKeys[attributeCount] = idOf(key, keys, keyIds);
+			attributePositions[attributeCount] = valueHeap.position();
+			++attributeCount;
+			putValue(valueHeap, value);
+			return this;
+		}
+
+		/**
+		 * @return the graph, stored in a direct buffer (outside of the heap)
+		 */
+		public OffHeapGraph build() {
+			Layout layout = new Layout();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(layout.byteSize());
+			layout.fill(buffer);
+			return new OffHeapGraph(buffer);
+		}
+
+		/**
+		 * @param file the file (that's overwritten)
+		 * @return the graph, stored in the file and mapped into memory
+		 * @throws IOException if the file can't be written
+		 */
+		public OffHeapGraph write(File file) throws IOException {
+			Layout layout = new Layout();
+			MappedByteBuffer buffer = map(file, layout.byteSize());
+			layout.fill(buffer);
+			buffer.force();
+			return new OffHeapGraph(buffer);
+		}
+
+		private void checkId(int id) {
+			if (id < 0 || id >= size) {
+				throw new IllegalArgumentException("there's no node with id " + id);
+			}
+		}
+
+		private static int idOf(String name, ArrayList<String> names, HashMap<String, Integer> ids) {
+			Integer id = ids.get(name);
+			if (id == null) {
+				id = names.size();
+				ids.put(name, id);
+				names.add(name);
+			}
+			return id;
+		}
+
+		/**
+		 * groups the entries by their node (counting sort) and sorts each group by the packed values.
+		 *
+		 * @return the offsets of the groups
+		 */
+		private int[] group(int[] nodes, long[] packed, int count) {
+			int[] offsets = new int[size + 1];
+			for (int i = 0; i < count; ++i) {
+				++offsets[nodes[i] + 1];
+			}
+			for (int id = 0; id < size; ++id) {
+				offsets[id + 1] += offsets[id];
+			}
+			long[] values = Arrays.copyOf(packed, count);
+			int[] fill = Arrays.copyOf(offsets, size);
+			for (int i = 0; i < count; ++i) {
+				packed[fill[nodes[i]]++] = values[i];
+			}
+			for (int id = 0; id < size; ++id) {
+				Arrays.sort(packed, offsets[id], offsets[id + 1]);
+			}
+			return offsets;
+		}
+
+		/**
+		 * removes the duplicates (by the upper 32 bits, the last one is kept) from each group of packed values.
+		 */
+		private void removeDuplicates(long[] packed, int[] offsets, boolean wholeValue) {
+			int kept = 0;
+			for (int id = 0; id < size; ++id) {
+				int begin = offsets[id], end = offsets[id + 1];
+				offsets[id] = kept;
+				for (int i = begin; i < end; ++i) {
+					long current = wholeValue ? packed[i] : packed[i] >>> 32;
+					long next = i + 1 == end ? -1 : wholeValue ? packed[i + 1] : packed[i + 1] >>> 32;
+					if (current != next) {
+						packed[kept++] = packed[i];
+					}
+				}
+			}
+			offsets[size] = kept;
+		}
+
+		/**
+		 * the collected nodes, edges and attributes, sorted into the layout of the buffer.
+		 */
+		private class Layout {
+			private long[] out = new long[edgeCount]; // label and target
+			private long[] in = new long[edgeCount]; // label and source
+			private long[] attributes = new long[attributeCount]; // key and entry
+			private int[] outOffsets;
+			private int[] inOffsets;
+			private int[] attributeOffsets;
+
+			Layout() {
+				for (int i = 0; i < edgeCount; ++i) {
+					out[i] = ((long)edgeLabels[i] << 32) | edgeTargets[i];
+					in[i] = ((long)edgeLabels[i] << 32) | edgeSources[i];
+				}
+				outOffsets = group(edgeSources, out, edgeCount);
+				removeDuplicates(out, outOffsets, true);
+				inOffsets = group(edgeTargets, in, edgeCount);
+				removeDuplicates(in, inOffsets, true);
+				for (int i = 0; i < attributeCount; ++i) {
+					attributes[i] = ((long)attributeKeys[i] << 32) | i;
+				}
+				attributeOffsets = group(attributeNodes, attributes, attributeCount);
+				removeDuplicates(attributes, attributeOffsets, false);
+			}
+
+			int byteSize() {
+				long size = 4L * (HEADER_INTS + 3L * (Builder.this.size + 1) + Builder.this.size + 4L * outOffsets[Builder.this.size]
+						+ 2L * attributeOffsets[Builder.this.size]) + valueHeap.position();
+				for (String label: labels) {
+					size += 4 + label.getBytes(StandardCharsets.UTF_8).length;
+				}
+				for (String key: keys) {
+					size += 4 + key.getBytes(StandardCharsets.UTF_8).length;
+				}
+				if (size > Integer.MAX_VALUE) {
+					throw new IllegalArgumentException("the graph is too large for a single buffer: " + size + " bytes");
+				}
+				return (int)size;
+			}
+
+			void fill(ByteBuffer buffer) {
+				int n = Builder.this.size;
+				int edges = outOffsets[n];
+				buffer.putInt(MAGIC).putInt(n).putInt(edges).putInt(attributeOffsets[n])
+						.putInt(labels.size()).putInt(keys.size()).putInt(valueHeap.position());
+				for (int id = 0; id <= n; ++id) {
+					buffer.putInt(outOffsets[id]);
+				}
+				for (int i = 0; i < edges; ++i) {
+					buffer.putInt((int)(out[i] >>> 32));
+				}
+				for (int i = 0; i < edges; ++i) {
+					buffer.putInt((int)out[i]);
+				}
+				for (int id = 0; id <= n; ++id) {
+					buffer.putInt(inOffsets[id]);
+				}
+				for (int i = 0; i < edges; ++i) {
+					buffer.putInt((int)(in[i] >>> 32));
+				}
+				for (int i = 0; i < edges; ++i) {
+					buffer.putInt((int)in[i]);
+				}
+				for (int id = 0; id < n; ++id) {
+					int labelCount = 0;
+					for (int i = outOffsets[id]; i < outOffsets[id + 1]; ++i) {
+						if (i == outOffsets[id] || (out[i] >>> 32) != (out[i - 1] >>> 32)) {
+							++labelCount;
+						}
+					}
+					buffer.putInt(labelCount);
+				}
+				for (int id = 0; id <= n; ++id) {
+					buffer.putInt(attributeOffsets[id]);
+				}
+				for (int i = 0; i < attributeOffsets[n]; ++i) {
+					buffer.putInt((int)(attributes[i] >>> 32));
+				}
+				for (int i = 0; i < attributeOffsets[n]; ++i) {
+					buffer.putInt(attributePositions[(int)attributes[i]]);
+				}
+				// the value heap is taken as it is (the replaced values are just not referred to):
+				ByteBuffer values = valueHeap.duplicate();
+				values.flip();
+				buffer.put(values);
+				for (String label: labels) {
+					putString(buffer, label);
+				}
+				for (String key: keys) {
+					putString(buffer, key);
+				}
+			}
+		}
+	}
+
+}
@@ -2,10 +2,12 @@ package org.fujaba.graphengine.graph.adapter;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 
 import org.fujaba.graphengine.IdManager;
+import org.fujaba.graphengine.graph.AttributeType;
 import org.fujaba.graphengine.graph.Graph;
 import org.fujaba.graphengine.graph.Node;
 
@@ -20,9 +22,46 @@ import com.google.gson.stream.JsonWriter;
  */
 public class GraphAdapter extends TypeAdapter<Graph> {
 
+	/**
+	 * assigns ids to the nodes in the order they're written (like an IdManager would do),
+	 * but looks up the nodes of the graph by their index instead of hashing them.
+	 */
+	private static class WrittenIds {
+		private Graph graph;
+		private long[] ids;
+		private HashMap<Node, Long> otherIds;
+		private long nextId = 0;
+
+		WrittenIds(Graph graph) {
+			this.graph = graph;
+			ids = new long[graph.getNodes().size()];
+			Arrays.fill(ids, -1);
+		}
+
+		long getId(Node node) {
+			int index = graph.indexOf(node);
+			if (index >= 0) {
+				if (ids[index] < 0) {
+					ids[index] = nextId++;
+				}
+				return ids[index];
+			}
+			// a node outside of the graph:
+			if (otherIds == null) {
+				otherIds = new HashMap<Node, Long>();
+			}
+			Long id = otherIds.get(node);
+			if (id == null) {
+				id = nextId++;
+				otherIds.put(node, id);
+			}
+			return id;
+		}
+	}
+
 	@Override
 	public void write(JsonWriter out, Graph graph) throws IOException {
-		IdManager idManager = new IdManager();
+		WrittenIds idManager = new WrittenIds(graph);
 		out.beginObject();
 		out.name("nodes");
 		out.beginArray();
@@ -32,23 +71,27 @@ public class GraphAdapter extends TypeAdapter<Graph> {
 		    out.name("id").value(idManager.getId(node));
 		    out.name("attributes");
 		    out.beginObject();
-		    ArrayList<String> keys = new ArrayList<String>(node.getAttributes().keySet());
+		    ArrayList<String> keys = new ArrayList<String>(node.getAttributeKeys());
 		    Collections.sort(keys);
 		    for (String key: keys) {
 		    	Object value = node.getAttribute(key);
-		    	if (value instanceof Integer) {
-			    	out.name(key).value((Integer)node.getAttribute(key));
-		    	} else if (value instanceof Long) {
-			    	out.name(key).value((Long)node.getAttribute(key));
-		    	} else if (value instanceof Double) {
-			    	out.name(key).value((Double)node.getAttribute(key));
-		    	} else if (value instanceof Boolean) {
-			    	out.name(key).value((Boolean)node.getAttribute(key));
-		    	} else if (value instanceof String) {
-			    	out.name(key).value((String)node.getAttribute(key));
-//		    	} else if (value == null) {
-//			    	out.name(key).value((Integer)null);
-		    	} else {
+		    	switch (AttributeType.of(value)) {
+		    	case INTEGER:
+			    	out.name(key).value((Integer)value);
+			    	break;
+		    	case LONG:
+			    	out.name(key).value((Long)value);
+			    	break;
+		    	case DOUBLE:
+			    	out.name(key).value((Double)value);
+			    	break;
+		    	case BOOLEAN:
+			    	out.name(key).value((Boolean)value);
+			    	break;
+		    	case STRING:
+			    	out.name(key).value((String)value);
+			    	break;
+		    	default:
 		    		throw new IOException("invalid type of attribute value for key " + key + " in Node " + node + ": " + value);
 		    	}
 		    }
@@ -152,12 +195,11 @@ public class GraphAdapter extends TypeAdapter<Graph> {
 	    }
 	    for (Long sourceKey: edgesToBuild.keySet()) {
 	    	for (String edgeName: edgesToBuild.get(sourceKey).keySet()) {
+	    		ArrayList<Node> targets = new ArrayList<Node>();
 	    		for (Long targetKey: edgesToBuild.get(sourceKey).get(edgeName)) {
-	    			((Node)idManager.getObject(sourceKey)).addEdge(
-	    				edgeName,
-	    				((Node)idManager.getObject(targetKey))
-	    			);
+	    			targets.add((Node)idManager.getObject(targetKey));
 	    		}
+	    		((Node)idManager.getObject(sourceKey)).addEdges(edgeName, targets);
 	    	}
 	    }
 	    in.endObject();
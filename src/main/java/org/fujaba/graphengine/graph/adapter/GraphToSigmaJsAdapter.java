@@ -18,7 +18,15 @@ import com.google.gson.stream.JsonWriter;
 public class GraphToSigmaJsAdapter extends TypeAdapter<Graph> {
 
 	private String getNodeLabel(Node node) {
-		return node.getAttributes().toString();
+		// the attributes are only read, so they're not copied (like getAttributes would, if they're shared with clones):
+		StringBuilder label = new StringBuilder("{");
+		for (String key: node.getAttributeKeys()) {
+			if (label.length() > 1) {
+				label.append(", ");
+			}
+			label.append(key).append('=').append(node.getAttribute(key));
+		}
+		return label.append('}').toString();
 	}
 
 	private double getX(int index, int total) {
@@ -28,7 +28,7 @@ public class NodeAdapter extends TypeAdapter<Node>
       out.name("id").value(idManager.getId(node));
       out.name("attributes");
       out.beginObject();
-      ArrayList<String> keys = new ArrayList<String>(node.getAttributes().keySet());
+      ArrayList<String> keys = new ArrayList<String>(node.getAttributeKeys());
       Collections.sort(keys);
       for (String key : keys)
       {
@@ -1,7 +1,9 @@
 package org.fujaba.graphengine.isomorphismtools;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
+import org.fujaba.graphengine.graph.FrozenGraph;
 import org.fujaba.graphengine.graph.Graph;
 import org.fujaba.graphengine.graph.Node;
 
@@ -27,6 +29,63 @@ abstract public class IsomorphismHandler {
 		}
 	}
 	
+	/**
+	 * This function finds the 'loosely matched candidates' of the base-graph for each node of the sub-graph,
+	 * by comparing outgoing edge counts (per label) and attributes on the frozen snapshots of both graphs.
+	 * 
+	 * @param subGraph the snapshot of the sub-graph (the candidates are listed in the order of its nodes)
+	 * @param baseGraph the snapshot of the base-graph (the candidates keep the order of its nodes)
+	 * @param exact if true, edge counts and attributes need to be equal (isomorphism),
+	 * otherwise the base-graph's nodes may have more edges and attributes (sub-graph isomorphism)
+	 * @return the candidates for each node of the sub-graph, or null if there's a node without candidates
+	 */
+	protected static ArrayList<ArrayList<Node>> findCandidates(FrozenGraph subGraph, FrozenGraph baseGraph, boolean exact) {
+		// translate the sub-graph's label ids and attribute key ids into those of the base-graph:
+		int[] labelIds = new int[subGraph.getLabelCount()];
+		for (int i = 0; i < labelIds.length; ++i) {
+			labelIds[i] = baseGraph.getLabelId(subGraph.getLabel(i));
+		}
+		int[] keyIds = new int[subGraph.getAttributeKeyCount()];
+		for (int i = 0; i < keyIds.length; ++i) {
+			keyIds[i] = baseGraph.getAttributeKeyId(subGraph.getAttributeKey(i));
+		}
+		ArrayList<ArrayList<Node>> couldMatch = new ArrayList<ArrayList<Node>>();
+		for (int sub = 0; sub < subGraph.size(); ++sub) {
+			ArrayList<Node> candidates = new ArrayList<Node>();
+nodeMatch:	for (int base = 0; base < baseGraph.size(); ++base) {
+				if (exact && (subGraph.getOutDegree(sub) != baseGraph.getOutDegree(base)
+						|| subGraph.getOutLabelCount(sub) != baseGraph.getOutLabelCount(base)
+						|| subGraph.getAttributeEnd(sub) - subGraph.getAttributeBegin(sub) != baseGraph.getAttributeEnd(base) - baseGraph.getAttributeBegin(base))) {
+					continue nodeMatch;
+				}
+				// check existence of outgoing edges and their count (the edges are grouped by label):
+				int index = subGraph.getOutBegin(sub);
+				while (index < subGraph.getOutEnd(sub)) {
+					int label = subGraph.getOutLabel(index);
+					int end = subGraph.getOutEnd(sub, label);
+					int baseCount = labelIds[label] < 0 ? 0 : baseGraph.getOutDegree(base, labelIds[label]);
+					if (exact ? baseCount != end - index : baseCount < end - index) {
+						continue nodeMatch;
+					}
+					index = end;
+				}
+				// check attributes (on their typed columns, without boxing):
+				for (int i = subGraph.getAttributeBegin(sub); i < subGraph.getAttributeEnd(sub); ++i) {
+					int key = subGraph.getAttributeKeyAt(i);
+					if (!subGraph.getAttributeColumn(key).valueEquals(sub, baseGraph.getAttributeColumn(keyIds[key]), base)) {
+						continue nodeMatch;
+					}
+				}
+				candidates.add(baseGraph.getNode(base));
+			}
+			if (candidates.size() == 0) {
+				return null; // no mapping for this node => fail
+			}
+			couldMatch.add(candidates);
+		}
+		return couldMatch;
+	}
+	
 	private boolean mappingIsReversable(HashMap<Node, Node> mapping) {
 		HashMap<Node, Node> reverseMapping = new HashMap<Node, Node>();
 		// reverse the mapping
@@ -35,7 +94,7 @@ abstract public class IsomorphismHandler {
 		}
 		for (Node newSubNode: reverseMapping.keySet()) {
 			// check attributes
-			for (String attributeName: newSubNode.getAttributes().keySet()) {
+			for (String attributeName: newSubNode.getAttributeKeys()) {
 				Object attr1 = reverseMapping.get(newSubNode).getAttribute(attributeName);
 				Object attr2 = newSubNode.getAttribute(attributeName);
 				if ((attr1 == null && attr2 != null) || (attr1 != null && attr2 == null) || !attr1.equals(attr2)) {
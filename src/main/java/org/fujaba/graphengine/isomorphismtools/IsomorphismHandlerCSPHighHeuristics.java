@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 
 import org.fujaba.graphengine.GraphEngine;
+import org.fujaba.graphengine.graph.FrozenGraph;
 import org.fujaba.graphengine.graph.Graph;
 import org.fujaba.graphengine.graph.Node;
 
@@ -20,45 +21,9 @@ public class IsomorphismHandlerCSPHighHeuristics extends IsomorphismHandler {
 			return true;
 		}
 		// now I'm trying to find 'loosely matched candidates':
-		ArrayList<ArrayList<Node>> couldMatch = new ArrayList<ArrayList<Node>>();
-		for (int i = 0; i < a.getNodes().size(); ++i) {
-			Node nodeFromA = a.getNodes().get(i);
-			couldMatch.add(new ArrayList<Node>());
-nodeMatch:	for (int j = 0; j < b.getNodes().size(); ++j) {
-				Node nodeFromB = b.getNodes().get(j);
-				// check existence of outgoing edges and their count:
-				for (String key: nodeFromA.getEdges().keySet()) {
-					int currentSubNodeEdgeCount = nodeFromA.getEdges(key).size();
-					int currentNodeEdgeCount = (nodeFromB.getEdges(key) == null ? 0 : nodeFromB.getEdges(key).size());
-					if (currentNodeEdgeCount != currentSubNodeEdgeCount) {
-						continue nodeMatch;
-					}
-				}
-				// the other way around:
-				for (String key: nodeFromB.getEdges().keySet()) {
-					int currentSubNodeEdgeCount = nodeFromB.getEdges(key).size();
-					int currentNodeEdgeCount = (nodeFromA.getEdges(key) == null ? 0 : nodeFromA.getEdges(key).size());
-					if (currentNodeEdgeCount != currentSubNodeEdgeCount) {
-						continue nodeMatch;
-					}
-				}
-				// check attributes:
-				for (String key: nodeFromA.getAttributes().keySet()) {
-					if (!nodeFromA.getAttribute(key).equals(nodeFromB.getAttribute(key))) {
-						continue nodeMatch;
-					}
-				}
-				// the other way around:
-				for (String key: nodeFromB.getAttributes().keySet()) {
-					if (!nodeFromB.getAttribute(key).equals(nodeFromA.getAttribute(key))) {
-						continue nodeMatch;
-					}
-				}
-				couldMatch.get(couldMatch.size() - 1).add(nodeFromB);
-			}
-			if (couldMatch.get(couldMatch.size() - 1).size() == 0) {
-				return false; // no mapping for this node => fail
-			}
+		ArrayList<ArrayList<Node>> couldMatch = findCandidates(new FrozenGraph(a), new FrozenGraph(b), true);
+		if (couldMatch == null) {
+			return false; // no mapping for a node => fail
 		}
 		couldMatch = GraphEngine.removeImpossibleCandidates(couldMatch);
 		if (couldMatch == null) {
@@ -95,7 +60,7 @@ match:			for (int j = 0; j < i; ++j) {
 						fail = true; // found duplicate!
 						break match;
 					}
-					for (String key: currentSubNode.getEdges().keySet()) {
+					for (int key: currentSubNode.getEdgeSymbols()) {
 						if (currentSubNode.getEdges(key).contains(otherSubNode)) {
 							if (!mapping.get(currentSubNode).getEdges(key).contains(mapping.get(otherSubNode))) {
 								fail = true; // missing outgoing edge
@@ -103,7 +68,7 @@ match:			for (int j = 0; j < i; ++j) {
 							}
 						}
 					}
-					for (String key: mapping.get(currentSubNode).getEdges().keySet()) { // other way
+					for (int key: mapping.get(currentSubNode).getEdgeSymbols()) { // other way
 						if (mapping.get(currentSubNode).getEdges(key).contains(mapping.get(otherSubNode))) {
 							if (currentSubNode.getEdges(key) == null || !currentSubNode.getEdges(key).contains(otherSubNode)) {
 								fail = true; // missing outgoing edge
@@ -111,7 +76,7 @@ match:			for (int j = 0; j < i; ++j) {
 							}
 						}
 					}
-					for (String key: otherSubNode.getEdges().keySet()) {
+					for (int key: otherSubNode.getEdgeSymbols()) {
 						if (otherSubNode.getEdges(key).contains(currentSubNode)) {
 							if (!mapping.get(otherSubNode).getEdges(key).contains(mapping.get(currentSubNode))) {
 								fail = true; // missing incoming edge
@@ -119,7 +84,7 @@ match:			for (int j = 0; j < i; ++j) {
 							}
 						}
 					}
-					for (String key: mapping.get(otherSubNode).getEdges().keySet()) { // other way
+					for (int key: mapping.get(otherSubNode).getEdgeSymbols()) { // other way
 						if (mapping.get(otherSubNode).getEdges(key).contains(mapping.get(currentSubNode))) {
 							if (otherSubNode.getEdges(key) == null || !otherSubNode.getEdges(key).contains(currentSubNode)) {
 								fail = true; // missing incoming edge
@@ -168,31 +133,9 @@ match:			for (int j = 0; j < i; ++j) {
 			return null;
 		}
 		// now I'm trying to find 'loosely matched candidates':
-		ArrayList<ArrayList<Node>> couldMatch = new ArrayList<ArrayList<Node>>();
-		for (int i = 0; i < subGraph.getNodes().size(); ++i) {
-			Node subNode = subGraph.getNodes().get(i);
-			couldMatch.add(new ArrayList<Node>());
-nodeMatch:	for (int j = 0; j < baseGraph.getNodes().size(); ++j) {
-				Node node = baseGraph.getNodes().get(j);
-				// check existence of outgoing edges and their count:
-				for (String key: subNode.getEdges().keySet()) {
-					int currentSubNodeEdgeCount = subNode.getEdges(key).size();
-					int currentNodeEdgeCount = (node.getEdges(key) == null ? 0 : node.getEdges(key).size());
-					if (currentNodeEdgeCount < currentSubNodeEdgeCount) {
-						continue nodeMatch;
-					}
-				}
-				// check attributes:
-				for (String key: subNode.getAttributes().keySet()) {
-					if (!subNode.getAttribute(key).equals(node.getAttribute(key))) {
-						continue nodeMatch;
-					}
-				}
-				couldMatch.get(couldMatch.size() - 1).add(node);
-			}
-			if (couldMatch.get(couldMatch.size() - 1).size() == 0) {
-				return null; // no mapping for this node => fail
-			}
+		ArrayList<ArrayList<Node>> couldMatch = findCandidates(new FrozenGraph(subGraph), new FrozenGraph(baseGraph), false);
+		if (couldMatch == null) {
+			return null; // no mapping for a node => fail
 		}
 		couldMatch = GraphEngine.removeImpossibleCandidates(couldMatch);
 		if (couldMatch == null) {
@@ -230,7 +173,7 @@ match:			for (int j = 0; j < i; ++j) {
 						fail = true; // found duplicate!
 						break match;
 					}
-					for (String key: currentSubNode.getEdges().keySet()) {
+					for (int key: currentSubNode.getEdgeSymbols()) {
 						if (currentSubNode.getEdges(key).contains(otherSubNode)) {
 							if (!mapping.get(currentSubNode).getEdges(key).contains(mapping.get(otherSubNode))) {
 								fail = true; // missing outgoing edge
@@ -238,7 +181,7 @@ match:			for (int j = 0; j < i; ++j) {
 							}
 						}
 					}
-					for (String key: otherSubNode.getEdges().keySet()) {
+					for (int key: otherSubNode.getEdgeSymbols()) {
 						if (otherSubNode.getEdges(key).contains(currentSubNode)) {
 							if (!mapping.get(otherSubNode).getEdges(key).contains(mapping.get(currentSubNode))) {
 								fail = true; // missing incoming edge
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 
 import org.fujaba.graphengine.GraphEngine;
+import org.fujaba.graphengine.graph.FrozenGraph;
 import org.fujaba.graphengine.graph.Graph;
 import org.fujaba.graphengine.graph.Node;
 
@@ -32,47 +33,11 @@ public class IsomorphismHandlerCSPLowHeuristics extends IsomorphismHandler {
 		}
 		// now I'm trying to find 'loosely matched candidates':
 		Graph a = aInitial.clone();
-		ArrayList<ArrayList<Node>> couldMatch2 = new ArrayList<ArrayList<Node>>();
-		for (int i = 0; i < a.getNodes().size(); ++i) {
-			Node aNode = a.getNodes().get(i);
-			couldMatch2.add(new ArrayList<Node>());
-nodeMatch:	for (int j = 0; j < b.getNodes().size(); ++j) {
-				Node bNode = b.getNodes().get(j);
-				// check existence of outgoing edges and their count:
-				for (String key: aNode.getEdges().keySet()) {
-					int currentSubNodeEdgeCount = aNode.getEdges(key).size();
-					int currentNodeEdgeCount = (bNode.getEdges(key) == null ? 0 : bNode.getEdges(key).size());
-					if (currentNodeEdgeCount != currentSubNodeEdgeCount) {
-						continue nodeMatch;
-					}
-				}
-				// check existence of outgoing edges and their count (other side):
-				for (String key: bNode.getEdges().keySet()) {
-					int currentSubNodeEdgeCount = bNode.getEdges(key).size();
-					int currentNodeEdgeCount = (aNode.getEdges(key) == null ? 0 : aNode.getEdges(key).size());
-					if (currentNodeEdgeCount != currentSubNodeEdgeCount) {
-						continue nodeMatch;
-					}
-				}
-				// check attributes:
-				for (String key: aNode.getAttributes().keySet()) {
-					if (!aNode.getAttribute(key).equals(bNode.getAttribute(key))) {
-						continue nodeMatch;
-					}
-				}
-				// check attributes (other side):
-				for (String key: bNode.getAttributes().keySet()) {
-					if (!bNode.getAttribute(key).equals(aNode.getAttribute(key))) {
-						continue nodeMatch;
-					}
-				}
-				couldMatch2.get(couldMatch2.size() - 1).add(bNode);
-			}
-			if (couldMatch2.get(couldMatch2.size() - 1).size() == 0) {
-				return false; // no mapping for this node => fail
-			}
+		ArrayList<ArrayList<Node>> couldMatch2 = findCandidates(new FrozenGraph(a), new FrozenGraph(b), true);
+		if (couldMatch2 == null) {
+			return false; // no mapping for a node => fail
 		}
-		couldMatch2 = removeImpossibleCandidates(couldMatch2);
+		couldMatch2 = GraphEngine.removeImpossibleCandidates(couldMatch2);
 		if (couldMatch2 == null) {
 			// after removing 'impossible' candidates, there's no match anymore => fail
 			return false;
@@ -159,7 +124,7 @@ match:			for (int j = 0; j < i; ++j) {
 						fail = true; // found duplicate!
 						break match;
 					}
-					for (String key: currentSubNode.getEdges().keySet()) {
+					for (int key: currentSubNode.getEdgeSymbols()) {
 						if (currentSubNode.getEdges(key).contains(otherSubNode)) {
 							if (!mapping.get(currentSubNode).getEdges(key).contains(mapping.get(otherSubNode))) {
 								fail = true; // missing outgoing edge
@@ -167,7 +132,7 @@ match:			for (int j = 0; j < i; ++j) {
 							}
 						}
 					}
-					for (String key: mapping.get(currentSubNode).getEdges().keySet()) { // now other side
+					for (int key: mapping.get(currentSubNode).getEdgeSymbols()) { // now other side
 						if (mapping.get(currentSubNode).getEdges(key).contains(otherSubNode)) {
 							if (currentSubNode.getEdges(key) == null || !currentSubNode.getEdges(key).contains(mapping.get(otherSubNode))) {
 								fail = true; // missing outgoing edge
@@ -175,7 +140,7 @@ match:			for (int j = 0; j < i; ++j) {
 							}
 						}
 					}
-					for (String key: otherSubNode.getEdges().keySet()) {
+					for (int key: otherSubNode.getEdgeSymbols()) {
 						if (otherSubNode.getEdges(key).contains(currentSubNode)) {
 							if (!mapping.get(otherSubNode).getEdges(key).contains(mapping.get(currentSubNode))) {
 								fail = true; // missing incoming edge
@@ -183,7 +148,7 @@ match:			for (int j = 0; j < i; ++j) {
 							}
 						}
 					}
-					for (String key: mapping.get(otherSubNode).getEdges().keySet()) { // now other side
+					for (int key: mapping.get(otherSubNode).getEdgeSymbols()) { // now other side
 						if (mapping.get(otherSubNode).getEdges(key).contains(currentSubNode)) {
 							if (otherSubNode.getEdges(key) == null || !otherSubNode.getEdges(key).contains(mapping.get(currentSubNode))) {
 								fail = true; // missing incoming edge
@@ -239,33 +204,11 @@ match:			for (int j = 0; j < i; ++j) {
 		}
 		// now I'm trying to find 'loosely matched candidates':
 		Graph subGraph = subGraphInitial.clone();
-		ArrayList<ArrayList<Node>> couldMatch2 = new ArrayList<ArrayList<Node>>();
-		for (int i = 0; i < subGraph.getNodes().size(); ++i) {
-			Node subNode = subGraph.getNodes().get(i);
-			couldMatch2.add(new ArrayList<Node>());
-nodeMatch:	for (int j = 0; j < baseGraph.getNodes().size(); ++j) {
-				Node node = baseGraph.getNodes().get(j);
-				// check existence of outgoing edges and their count:
-				for (String key: subNode.getEdges().keySet()) {
-					int currentSubNodeEdgeCount = subNode.getEdges(key).size();
-					int currentNodeEdgeCount = (node.getEdges(key) == null ? 0 : node.getEdges(key).size());
-					if (currentNodeEdgeCount < currentSubNodeEdgeCount) {
-						continue nodeMatch;
-					}
-				}
-				// check attributes:
-				for (String key: subNode.getAttributes().keySet()) {
-					if (!subNode.getAttribute(key).equals(node.getAttribute(key))) {
-						continue nodeMatch;
-					}
-				}
-				couldMatch2.get(couldMatch2.size() - 1).add(node);
-			}
-			if (couldMatch2.get(couldMatch2.size() - 1).size() == 0) {
-				return null; // no mapping for this node => fail
-			}
+		ArrayList<ArrayList<Node>> couldMatch2 = findCandidates(new FrozenGraph(subGraph), new FrozenGraph(baseGraph), false);
+		if (couldMatch2 == null) {
+			return null; // no mapping for a node => fail
 		}
-		couldMatch2 = removeImpossibleCandidates(couldMatch2);
+		couldMatch2 = GraphEngine.removeImpossibleCandidates(couldMatch2);
 		if (couldMatch2 == null) {
 			// after removing 'impossible' candidates, there's no match anymore => fail
 			return null;
@@ -352,7 +295,7 @@ match:			for (int j = 0; j < i; ++j) {
 						fail = true; // found duplicate!
 						break match;
 					}
-					for (String key: currentSubNode.getEdges().keySet()) {
+					for (int key: currentSubNode.getEdgeSymbols()) {
 						if (currentSubNode.getEdges(key).contains(otherSubNode)) {
 							if (!mapping.get(currentSubNode).getEdges(key).contains(mapping.get(otherSubNode))) {
 								fail = true; // missing outgoing edge
@@ -360,7 +303,7 @@ match:			for (int j = 0; j < i; ++j) {
 							}
 						}
 					}
-					for (String key: otherSubNode.getEdges().keySet()) {
+					for (int key: otherSubNode.getEdgeSymbols()) {
 						if (otherSubNode.getEdges(key).contains(currentSubNode)) {
 							if (!mapping.get(otherSubNode).getEdges(key).contains(mapping.get(currentSubNode))) {
 								fail = true; // missing incoming edge
@@ -396,37 +339,6 @@ match:			for (int j = 0; j < i; ++j) {
 		return null; // nothing left to check => fail
 	}
 	
-	private ArrayList<ArrayList<Node>> removeImpossibleCandidates(ArrayList<ArrayList<Node>> couldMatch) {
-		ArrayList<ArrayList<Node>> cantMatch = new ArrayList<ArrayList<Node>>();
-		for (int i = 0; i < couldMatch.size(); ++i) {
-			cantMatch.add(new ArrayList<Node>());
-		}
-		// go through all candidates:
-		for (int i = 0; i < couldMatch.size(); ++i) {
-			if (couldMatch.get(i).size() == 1) {
-				// one node has only one candidate, all other nodes can't have this candidate
-				for (int j = 0; j < couldMatch.size(); ++j) {
-					if (i != j) {
-						// 'tell' all other nodes, they can't have this candidate:
-						cantMatch.get(j).add(couldMatch.get(i).get(0));
-					}
-				}
-			}
-		}
-		// go through all candidatzes again:
-		for (int i = 0; i < couldMatch.size(); ++i) {
-			// remove all impossible candidates:
-			for (int j = 0; j < cantMatch.get(i).size(); ++j) {
-				couldMatch.get(i).remove(cantMatch.get(i).get(j));
-			}
-			// if one node has no candidates anymore, return null
-			if (couldMatch.get(i).size() < 1) {
-				return null;
-			}
-		}
-		return couldMatch;
-	}
-
 	@Override
 	public Graph normalized(Graph graph) {
 		return GraphEngine.getNormalizationFallback().normalized(graph);
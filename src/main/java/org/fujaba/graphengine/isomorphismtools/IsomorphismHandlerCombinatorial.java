@@ -5,6 +5,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 
 import org.fujaba.graphengine.GraphEngine;
+import org.fujaba.graphengine.graph.FrozenGraph;
 import org.fujaba.graphengine.graph.Graph;
 import org.fujaba.graphengine.graph.Node;
 
@@ -23,31 +24,9 @@ public class IsomorphismHandlerCombinatorial extends IsomorphismHandler {
 		if (subGraph.getNodes().size() > baseGraph.getNodes().size()) {
 			return null;
 		}
-		ArrayList<ArrayList<Node>> couldMatch = new ArrayList<ArrayList<Node>>();
-		for (int i = 0; i < subGraph.getNodes().size(); ++i) {
-			Node subNode = subGraph.getNodes().get(i);
-			couldMatch.add(new ArrayList<Node>());
-nodeMatch:	for (int j = 0; j < baseGraph.getNodes().size(); ++j) {
-				Node node = baseGraph.getNodes().get(j);
-				// check existence of outgoing edges and their count:
-				for (String key: subNode.getEdges().keySet()) {
-					int currentSubNodeEdgeCount = subNode.getEdges(key).size();
-					int currentNodeEdgeCount = (node.getEdges(key) == null ? 0 : node.getEdges(key).size());
-					if (currentNodeEdgeCount < currentSubNodeEdgeCount) {
-						continue nodeMatch;
-					}
-				}
-				// check attributes:
-				for (String key: subNode.getAttributes().keySet()) {
-					if (!subNode.getAttribute(key).equals(node.getAttribute(key))) {
-						continue nodeMatch;
-					}
-				}
-				couldMatch.get(couldMatch.size() - 1).add(node);
-			}
-			if (couldMatch.get(couldMatch.size() - 1).size() == 0) {
-				return null; // no mapping for this node => fail
-			}
+		ArrayList<ArrayList<Node>> couldMatch = findCandidates(new FrozenGraph(subGraph), new FrozenGraph(baseGraph), false);
+		if (couldMatch == null) {
+			return null; // no mapping for a node => fail
 		}
 		// now going through all valid combinations of those loosely fitted candidates to find a match:
 		ArrayList<Integer> currentTry = new ArrayList<Integer>();
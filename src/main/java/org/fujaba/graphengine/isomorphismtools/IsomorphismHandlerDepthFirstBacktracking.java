@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 
 import org.fujaba.graphengine.GraphEngine;
+import org.fujaba.graphengine.graph.FrozenGraph;
 import org.fujaba.graphengine.graph.Graph;
 import org.fujaba.graphengine.graph.Node;
 
@@ -29,47 +30,11 @@ public class IsomorphismHandlerDepthFirstBacktracking extends IsomorphismHandler
 			return true;
 		}
 		ArrayList<Node> sortedNodes = getDepthFirstSortedNodeList(a);
-		ArrayList<ArrayList<Node>> couldMatch = new ArrayList<ArrayList<Node>>();
-		for (int i = 0; i < sortedNodes.size(); ++i) {
-			Node aNode = sortedNodes.get(i);
-			couldMatch.add(new ArrayList<Node>());
-nodeMatch:	for (int j = 0; j < b.getNodes().size(); ++j) {
-				Node bNode = b.getNodes().get(j);
-				// check existence of outgoing edges and their count:
-				for (String key: aNode.getEdges().keySet()) {
-					int currentSubNodeEdgeCount = aNode.getEdges(key).size();
-					int currentNodeEdgeCount = (bNode.getEdges(key) == null ? 0 : bNode.getEdges(key).size());
-					if (currentNodeEdgeCount != currentSubNodeEdgeCount) {
-						continue nodeMatch;
-					}
-				}
-				// check existence of outgoing edges and their count (oder way around):
-				for (String key: bNode.getEdges().keySet()) {
-					int currentSubNodeEdgeCount = bNode.getEdges(key).size();
-					int currentNodeEdgeCount = (aNode.getEdges(key) == null ? 0 : aNode.getEdges(key).size());
-					if (currentNodeEdgeCount != currentSubNodeEdgeCount) {
-						continue nodeMatch;
-					}
-				}
-				// check attributes:
-				for (String key: aNode.getAttributes().keySet()) {
-					if (!aNode.getAttribute(key).equals(bNode.getAttribute(key))) {
-						continue nodeMatch;
-					}
-				}
-				// check attributes (other way around):
-				for (String key: bNode.getAttributes().keySet()) {
-					if (!bNode.getAttribute(key).equals(aNode.getAttribute(key))) {
-						continue nodeMatch;
-					}
-				}
-				couldMatch.get(couldMatch.size() - 1).add(bNode);
-			}
-			if (couldMatch.get(couldMatch.size() - 1).size() == 0) {
-				return false; // no mapping for this node => fail
-			}
+		ArrayList<ArrayList<Node>> couldMatch = findCandidates(new FrozenGraph(new Graph().addNode(sortedNodes.toArray(new Node[0]))), new FrozenGraph(b), true);
+		if (couldMatch == null) {
+			return false; // no mapping for a node => fail
 		}
-		couldMatch = removeImpossibleCandidates(couldMatch);
+		couldMatch = GraphEngine.removeImpossibleCandidates(couldMatch);
 		if (couldMatch == null) {
 			return false;
 		}
@@ -116,7 +81,7 @@ match:			for (int j = 0; j < i; ++j) {
 						fail = true; // found duplicate!
 						break match;
 					}
-					for (String key: currentSubNode.getEdges().keySet()) {
+					for (int key: currentSubNode.getEdgeSymbols()) {
 						if (currentSubNode.getEdges(key).contains(otherSubNode)) {
 							if (!mapping.get(currentSubNode).getEdges(key).contains(mapping.get(otherSubNode))) {
 								fail = true; // missing outgoing edge
@@ -124,7 +89,7 @@ match:			for (int j = 0; j < i; ++j) {
 							}
 						}
 					}
-					for (String key: mapping.get(currentSubNode).getEdges().keySet()) { // other way
+					for (int key: mapping.get(currentSubNode).getEdgeSymbols()) { // other way
 						if (mapping.get(currentSubNode).getEdges(key).contains(otherSubNode)) {
 							if (currentSubNode.getEdges(key) == null || !currentSubNode.getEdges(key).contains(mapping.get(otherSubNode))) {
 								fail = true; // missing outgoing edge
@@ -132,7 +97,7 @@ match:			for (int j = 0; j < i; ++j) {
 							}
 						}
 					}
-					for (String key: otherSubNode.getEdges().keySet()) {
+					for (int key: otherSubNode.getEdgeSymbols()) {
 						if (otherSubNode.getEdges(key).contains(currentSubNode)) {
 							if (!mapping.get(otherSubNode).getEdges(key).contains(mapping.get(currentSubNode))) {
 								fail = true; // missing incoming edge
@@ -140,7 +105,7 @@ match:			for (int j = 0; j < i; ++j) {
 							}
 						}
 					}
-					for (String key: mapping.get(otherSubNode).getEdges().keySet()) { // other way
+					for (int key: mapping.get(otherSubNode).getEdgeSymbols()) { // other way
 						if (mapping.get(otherSubNode).getEdges(key).contains(currentSubNode)) {
 							if (otherSubNode.getEdges(key) == null || !otherSubNode.getEdges(key).contains(mapping.get(currentSubNode))) {
 								fail = true; // missing incoming edge
@@ -190,33 +155,11 @@ match:			for (int j = 0; j < i; ++j) {
 			return null;
 		}
 		ArrayList<Node> sortedNodes = getDepthFirstSortedNodeList(subGraph);
-		ArrayList<ArrayList<Node>> couldMatch = new ArrayList<ArrayList<Node>>();
-		for (int i = 0; i < sortedNodes.size(); ++i) {
-			Node subNode = sortedNodes.get(i);
-			couldMatch.add(new ArrayList<Node>());
-nodeMatch:	for (int j = 0; j < baseGraph.getNodes().size(); ++j) {
-				Node node = baseGraph.getNodes().get(j);
-				// check existence of outgoing edges and their count:
-				for (String key: subNode.getEdges().keySet()) {
-					int currentSubNodeEdgeCount = subNode.getEdges(key).size();
-					int currentNodeEdgeCount = (node.getEdges(key) == null ? 0 : node.getEdges(key).size());
-					if (currentNodeEdgeCount < currentSubNodeEdgeCount) {
-						continue nodeMatch;
-					}
-				}
-				// check attributes:
-				for (String key: subNode.getAttributes().keySet()) {
-					if (!subNode.getAttribute(key).equals(node.getAttribute(key))) {
-						continue nodeMatch;
-					}
-				}
-				couldMatch.get(couldMatch.size() - 1).add(node);
-			}
-			if (couldMatch.get(couldMatch.size() - 1).size() == 0) {
-				return null; // no mapping for this node => fail
-			}
+		ArrayList<ArrayList<Node>> couldMatch = findCandidates(new FrozenGraph(new Graph().addNode(sortedNodes.toArray(new Node[0]))), new FrozenGraph(baseGraph), false);
+		if (couldMatch == null) {
+			return null; // no mapping for a node => fail
 		}
-		couldMatch = removeImpossibleCandidates(couldMatch);
+		couldMatch = GraphEngine.removeImpossibleCandidates(couldMatch);
 		if (couldMatch == null) {
 			return null;
 		}
@@ -263,7 +206,7 @@ match:			for (int j = 0; j < i; ++j) {
 						fail = true; // found duplicate!
 						break match;
 					}
-					for (String key: currentSubNode.getEdges().keySet()) {
+					for (int key: currentSubNode.getEdgeSymbols()) {
 						if (currentSubNode.getEdges(key).contains(otherSubNode)) {
 							if (!mapping.get(currentSubNode).getEdges(key).contains(mapping.get(otherSubNode))) {
 								fail = true; // missing outgoing edge
@@ -271,7 +214,7 @@ match:			for (int j = 0; j < i; ++j) {
 							}
 						}
 					}
-					for (String key: otherSubNode.getEdges().keySet()) {
+					for (int key: otherSubNode.getEdgeSymbols()) {
 						if (otherSubNode.getEdges(key).contains(currentSubNode)) {
 							if (!mapping.get(otherSubNode).getEdges(key).contains(mapping.get(currentSubNode))) {
 								fail = true; // missing incoming edge
@@ -307,37 +250,6 @@ match:			for (int j = 0; j < i; ++j) {
 		return null; // nothing left to check => fail
 	}
 	
-	private ArrayList<ArrayList<Node>> removeImpossibleCandidates(ArrayList<ArrayList<Node>> couldMatch) {
-		ArrayList<ArrayList<Node>> cantMatch = new ArrayList<ArrayList<Node>>();
-		for (int i = 0; i < couldMatch.size(); ++i) {
-			cantMatch.add(new ArrayList<Node>());
-		}
-		// go through all candidates:
-		for (int i = 0; i < couldMatch.size(); ++i) {
-			if (couldMatch.get(i).size() == 1) {
-				// one node has only one candidate, all other nodes can't have this candidate
-				for (int j = 0; j < couldMatch.size(); ++j) {
-					if (i != j) {
-						// 'tell' all other nodes, they can't have this candidate:
-						cantMatch.get(j).add(couldMatch.get(i).get(0));
-					}
-				}
-			}
-		}
-		// go through all candidatzes again:
-		for (int i = 0; i < couldMatch.size(); ++i) {
-			// remove all impossible candidates:
-			for (int j = 0; j < cantMatch.get(i).size(); ++j) {
-				couldMatch.get(i).remove(cantMatch.get(i).get(j));
-			}
-			// if one node has no candidates anymore, return null
-			if (couldMatch.get(i).size() < 1) {
-				return null;
-			}
-		}
-		return couldMatch;
-	}
-
 	@Override
 	public Graph normalized(Graph graph) {
 		return GraphEngine.getNormalizationFallback().normalized(graph);
@@ -348,4 +260,4 @@ match:			for (int j = 0; j < i; ++j) {
 		return "'depth-first backtracking'-based isomorphism handler";
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
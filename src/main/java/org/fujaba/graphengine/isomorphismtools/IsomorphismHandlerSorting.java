@@ -32,12 +32,9 @@ public class IsomorphismHandlerSorting extends IsomorphismHandler {
 			for (String key: node.getEdges().keySet()) {
 				ArrayList<Node> targets = node.getEdges(key);
 				ArrayList<Node> sortedTargetNodes = new ArrayList<Node>();
-targetMatch:	for (Node nSorted: g.getNodes()) {
-					for (Node nTarget: targets) {
-						if (nSorted == nTarget) {
-							sortedTargetNodes.add(nSorted);
-							continue targetMatch;
-						}
+				for (Node nSorted: g.getNodes()) {
+					if (targets.contains(nSorted)) {
+						sortedTargetNodes.add(nSorted);
 					}
 				}
 				targets.clear();
@@ -1,6 +1,7 @@
 package org.fujaba.graphengine.isomorphismtools.sort;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import org.fujaba.graphengine.GraphEngine;
 import org.fujaba.graphengine.graph.Graph;
@@ -37,6 +38,7 @@ public class NodeSortTree implements Comparable<NodeSortTree> {
 		ArrayList<Node> openNextLevelNodes = new ArrayList<Node>();
 		ArrayList<NodeSortTreeNode> closed = new ArrayList<NodeSortTreeNode>();
 		ArrayList<Node> closedNodes = new ArrayList<Node>();
+		HashMap<Node, Integer> positions = GraphEngine.positionsOf(connectedGraph);
 		open.add(rootNodeSortTreeNode);
 //		System.out.println(); // TODO: remove debug
 //		System.out.println(connectedGraph); // TODO: remove debug
@@ -63,17 +65,22 @@ public class NodeSortTree implements Comparable<NodeSortTree> {
 					}
 				}
 			}
-			for (Node ingoingNode: connectedGraph.getNodes()) {
-				for (String edgeName: ingoingNode.getEdges().keySet()) {
-					if (ingoingNode.getEdges(edgeName).contains(current.getNode())
+			// the incoming edges are looked up in the reverse index (keeping the order of the graph's nodes):
+			ArrayList<Node> ingoingNodes = new ArrayList<Node>();
+			for (String edgeName: currentNode.getIncomingEdges().keySet()) {
+				for (Node ingoingNode: currentNode.getIncomingEdges(edgeName)) {
+					if (positions.containsKey(ingoingNode) && !ingoingNodes.contains(ingoingNode)
 							&& !openNodes.contains(ingoingNode) && !closedNodes.contains(ingoingNode) && !succNodes.contains(ingoingNode)) {
-						succ.add(new NodeSortTreeNode(current, ingoingNode));
-						succNodes.add(ingoingNode);
-//						System.out.println("ingoing add"); // TODO: remove debug
-						break;
+						ingoingNodes.add(ingoingNode);
 					}
 				}
 			}
+			GraphEngine.sortByPosition(ingoingNodes, positions);
+			for (Node ingoingNode: ingoingNodes) {
+				succ.add(new NodeSortTreeNode(current, ingoingNode));
+				succNodes.add(ingoingNode);
+//				System.out.println("ingoing add"); // TODO: remove debug
+			}
 //			System.out.println("succ: " + succNodes); // TODO: remove debug
 			openNextLevel.addAll(0, succ); // add at the beginning for breadth-first search
 			openNextLevelNodes.addAll(0, succNodes); // add at the beginning for breadth-first search
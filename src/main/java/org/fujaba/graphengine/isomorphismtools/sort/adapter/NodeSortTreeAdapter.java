@@ -26,7 +26,7 @@ public class NodeSortTreeAdapter extends TypeAdapter<NodeSortTree> {
 		Node node = nodeSortTreeNode.getNode();
 		out.name("id").value(idManager.getId(node));
 		out.name("attributs").beginObject();
-		ArrayList<String> keys = new ArrayList<String>(node.getAttributes().keySet());
+		ArrayList<String> keys = new ArrayList<String>(node.getAttributeKeys());
 		Collections.sort(keys);
 		for (String key: keys) {
 			Object value = node.getAttribute(key);
@@ -1,5 +1,7 @@
 package org.fujaba.graphengine.pattern;
 
+import org.fujaba.graphengine.SymbolTable;
+
 /**
  * The PatternEdge is a node of the PatternGraph.
  * 
@@ -17,6 +19,10 @@ public class PatternEdge extends PatternElement {
 	 * the name of this PatternEdge
 	 */
 	private String name;
+	/**
+	 * the symbol id of the name of this PatternEdge (see SymbolTable), resolved when it's needed first
+	 */
+	private int symbol = -1;
 	/**
 	 * the source of this PatternEdge
 	 */
@@ -31,8 +37,15 @@ public class PatternEdge extends PatternElement {
 	}
 	public PatternEdge setName(String name) {
 		this.name = name;
+		this.symbol = -1;
 		return this;
 	}
+	public int getSymbol() {
+		if (symbol < 0 && name != null) {
+			symbol = SymbolTable.getId(name);
+		}
+		return symbol;
+	}
 	public PatternNode getSource() {
 		return source;
 	}
@@ -2,6 +2,7 @@ package org.fujaba.graphengine.pattern;
 
 import java.util.ArrayList;
 
+import org.fujaba.graphengine.CompiledPattern;
 import org.fujaba.graphengine.GraphEngine;
 
 /**
@@ -25,6 +26,10 @@ public class PatternGraph {
 	 * the PatternNode contained in this PatternGraph (not in sub-PatternGraphs)
 	 */
 	private String name = "unnamed pattern";
+	/**
+	 * the plan of this pattern (see CompiledPattern.of), which is only used, as long as the pattern wasn't changed
+	 */
+	private transient volatile CompiledPattern compiledPattern;
 	
 //	public ArrayList<PatternGraph> getSubPatternGraphs() {
 //		return subPatternGraphs;
@@ -46,14 +51,28 @@ public class PatternGraph {
 	}
 	public PatternGraph setPatternNodes(ArrayList<PatternNode> patternNodes) {
 		this.patternNodes = patternNodes;
+		this.compiledPattern = null;
 		return this;
 	}
 	public PatternGraph addPatternNode(PatternNode... patternNodes) {
 		for (PatternNode patternNode: patternNodes) {
 			this.patternNodes.add(patternNode);
 		}
+		this.compiledPattern = null;
 		return this;
 	}
+	/**
+	 * @return the plan, that was compiled for this pattern (or null), see CompiledPattern.of
+	 */
+	public CompiledPattern getCompiledPattern() {
+		return compiledPattern;
+	}
+	/**
+	 * @param compiledPattern the plan, that was compiled for this pattern
+	 */
+	public void setCompiledPattern(CompiledPattern compiledPattern) {
+		this.compiledPattern = compiledPattern;
+	}
 	public String getName() {
 		return name;
 	}
@@ -1,7 +1,10 @@
 package org.fujaba.graphengine.stateelimination;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 
 import javax.xml.stream.XMLEventReader;
@@ -14,7 +17,9 @@ import javax.xml.stream.events.XMLEvent;
 
 import org.fujaba.graphengine.IdManager;
 import org.fujaba.graphengine.graph.Graph;
+import org.fujaba.graphengine.graph.GraphTransaction;
 import org.fujaba.graphengine.graph.Node;
+import org.fujaba.graphengine.graph.OffHeapGraph;
 
 /**
  * 
@@ -26,11 +31,75 @@ import org.fujaba.graphengine.graph.Node;
  *
  */
 public class TTCStateCaseGraphLoader {
+    /**
+     * receives the states and transitions, while they're read.
+     */
+    private interface Sink {
+    	/**
+    	 * @return the new state (as it's passed to addTransition)
+    	 */
+    	Object addState(boolean initial, boolean isFinal);
+    	void addTransition(Object source, String label, Object target);
+    }
     public static Graph load(String path) {
     	return load(path, false);
     }
     public static Graph load(String path, boolean loadProbabilities) {
 	   Graph graph = new Graph();
+	   // the nodes and edges are collected and added at once:
+	   final GraphTransaction transaction = new GraphTransaction(graph);
+	   read(path, loadProbabilities, new Sink() {
+		   @Override
+		   public Object addState(boolean initial, boolean isFinal) {
+			   Node node = new Node();
+			   if (initial) {
+				   node.setAttribute("initial", true); // set attribute for initial state
+			   }
+			   if (isFinal) {
+				   node.setAttribute("final", true); // set attribute for final state
+			   }
+			   transaction.addNode(node);
+			   return node;
+		   }
+		   @Override
+		   public void addTransition(Object source, String label, Object target) {
+			   transaction.addEdge((Node)source, label, (Node)target);
+		   }
+	   });
+	   return transaction.commit();
+    }
+    /**
+     * loads the states and transitions like load, but streams them straight into an OffHeapGraph
+     * (so there's no Node on the heap, the ids of the nodes are in the order of the states).
+     * 
+     * @param path the path of the XMI file
+     * @param loadProbabilities true to append the probabilities to the labels (like load does)
+     * @param file the file to store the graph in, or null to store it in a direct buffer
+     * @return the graph
+     * @throws IOException if the graph can't be written to the file
+     */
+    public static OffHeapGraph loadOffHeap(String path, boolean loadProbabilities, File file) throws IOException {
+	   final OffHeapGraph.Builder builder = new OffHeapGraph.Builder();
+	   read(path, loadProbabilities, new Sink() {
+		   @Override
+		   public Object addState(boolean initial, boolean isFinal) {
+			   int id = builder.addNode();
+			   if (initial) {
+				   builder.setAttribute(id, "initial", true);
+			   }
+			   if (isFinal) {
+				   builder.setAttribute(id, "final", true);
+			   }
+			   return id;
+		   }
+		   @Override
+		   public void addTransition(Object source, String label, Object target) {
+			   builder.addEdge((Integer)source, label, (Integer)target);
+		   }
+	   });
+	   return file == null ? builder.build() : builder.write(file);
+    }
+    private static void read(String path, boolean loadProbabilities, Sink sink) {
        try {
            XMLInputFactory factory = XMLInputFactory.newInstance();
            XMLEventReader eventReader =
@@ -43,7 +112,8 @@ public class TTCStateCaseGraphLoader {
         		   StartElement startElement = event.asStartElement();
                    String qName = startElement.getName().getLocalPart();
                    if (qName.equalsIgnoreCase("states")) {
-                	   Node node = new Node();
+                	   boolean initial = false, isFinal = false;
+                	   ArrayList<Long> ids = new ArrayList<Long>();
                 	   @SuppressWarnings("unchecked")
 					   Iterator<Attribute> attributes = startElement.getAttributes();
                 	   while (attributes.hasNext()) {
@@ -57,21 +127,24 @@ public class TTCStateCaseGraphLoader {
                 			    * but there's always just one and it has no id...
                 			    * though still it is references as id == 0. so I'll just assume it to be that way.
                 			    */
-                			   idManager.tellId(new Long(0), node);
+                			   ids.add(new Long(0));
                 			   
-                			   node.setAttribute("initial", true); // set attribute for initial state
+                			   initial = true;
                 		   } else if (attributeName.equalsIgnoreCase("id")) {
                 			   // telling the idManager that this node has that id:
-                			   idManager.tellId(Long.parseLong(attributeValue), node);
+                			   ids.add(Long.parseLong(attributeValue));
                 		   } else if (attributeName.equalsIgnoreCase("outgoing")) {
                 			   // shouldn't matter right here
                 		   } else if (attributeName.equalsIgnoreCase("ingoing")) {
                 			   // shouldn't matter right here
                 		   } else if (attributeName.equalsIgnoreCase("isFinal")) {
-                			   node.setAttribute("final", true); // set attribute for final state
+                			   isFinal = true;
                 		   }
                 	   }
-                	   graph.addNode(node);
+                	   Object state = sink.addState(initial, isFinal);
+                	   for (Long id: ids) {
+                		   idManager.tellId(id, state);
+                	   }
                    } else if (qName.equalsIgnoreCase("transitions")) {
                 	   @SuppressWarnings("unchecked")
 					   Iterator<Attribute> attributes = startElement.getAttributes();
@@ -100,9 +173,9 @@ public class TTCStateCaseGraphLoader {
 	            		   }
                 	   }
                 	   if (loadProbabilities) {
-                    	   ((Node)idManager.getObject(sourceId)).addEdge(label + "[" + probability + "]", ((Node)idManager.getObject(targetId)));
+                    	   sink.addTransition(idManager.getObject(sourceId), label + "[" + probability + "]", idManager.getObject(targetId));
                 	   } else {
-                    	   ((Node)idManager.getObject(sourceId)).addEdge(label, ((Node)idManager.getObject(targetId)));
+                    	   sink.addTransition(idManager.getObject(sourceId), label, idManager.getObject(targetId));
                 	   }
                    }		        
                    break;
@@ -119,6 +192,5 @@ public class TTCStateCaseGraphLoader {
         } catch (XMLStreamException e) {
             e.printStackTrace();
         }
-        return graph;
     }
 }
\ No newline at end of file
@@ -0,0 +1,59 @@
+package org.fujaba.graphengine.benchmarks;
+
+import org.fujaba.graphengine.CompiledExpression;
+import org.fujaba.graphengine.PatternEngine;
+import org.fujaba.graphengine.graph.Graph;
+import org.fujaba.graphengine.graph.Node;
+import org.fujaba.graphengine.pattern.PatternGraph;
+import org.fujaba.graphengine.pattern.PatternNode;
+
+/**
+ * Compares the compiled attribute match expressions with the expression library.
+ * Not a unit test: run it by hand (it only prints the measured times).
+ */
+public class ExpressionBenchmark {
+
+	public static void main(String[] args) {
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		// many nodes, whose attribute match expression can't be looked up in the graph's indexes:
+		Graph graph = new Graph();
+		for (int i = 0; i < nodes; ++i) {
+			graph.addNode(new Node().setAttribute("type", "Cargo").setAttribute("count", i % 100).setAttribute("existant", i % 3 != 0));
+		}
+		String expression = "#{count} >= 20 && #{count} < 30 && #{existant} == 1.0";
+		PatternGraph pattern = new PatternGraph("some cargo");
+		pattern.addPatternNode(new PatternNode(expression));
+		CompiledExpression compiled = CompiledExpression.of(expression);
+
+		for (int round = 0; round < 2; ++round) { // the first round is the warm up
+			long begin = System.nanoTime();
+			int byLibrary = 0;
+			for (Node node: graph.getNodes()) {
+				if (PatternEngine.evaluate(PatternEngine.buildNodeEvaluator(node), expression)) {
+					++byLibrary;
+				}
+			}
+			double libraryDuration = (System.nanoTime() - begin) / 1e6;
+
+			begin = System.nanoTime();
+			int byCompiled = 0;
+			for (Node node: graph.getNodes()) {
+				if (compiled.evaluate(node)) {
+					++byCompiled;
+				}
+			}
+			double compiledDuration = (System.nanoTime() - begin) / 1e6;
+
+			begin = System.nanoTime();
+			int matches = PatternEngine.matchPattern(graph, pattern, false).size();
+			double matchDuration = (System.nanoTime() - begin) / 1e6;
+
+			if (round > 0) {
+				System.out.println("expression library: " + libraryDuration + "ms (" + byLibrary + " nodes)");
+				System.out.println("compiled expressions: " + compiledDuration + "ms (" + byCompiled + " nodes)");
+				System.out.println("matchPattern: " + matchDuration + "ms (" + matches + " matches)");
+			}
+		}
+	}
+
+}
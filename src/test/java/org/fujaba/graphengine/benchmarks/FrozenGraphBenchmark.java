@@ -0,0 +1,64 @@
+package org.fujaba.graphengine.benchmarks;
+
+import org.fujaba.graphengine.graph.FrozenGraph;
+import org.fujaba.graphengine.graph.Graph;
+import org.fujaba.graphengine.graph.Node;
+import org.fujaba.graphengine.stateelimination.TTCStateCaseGraphLoader;
+
+/**
+ * Compares the memory footprint and the edge traversal time of graphs and their frozen snapshots.
+ * Not a unit test: run it by hand (it only prints the measured values).
+ */
+public class FrozenGraphBenchmark {
+
+	public static final String taskMainPath = "src/main/resources/ExperimentalData/testdata/emf/task-main/";
+
+	public static void main(String[] args) {
+		String[] fileNames = args.length > 0 ? args : new String[] {"leader3_3.xmi", "leader4_3.xmi", "leader3_6.xmi"};
+		for (String fileName: fileNames) {
+			long before = usedMemory();
+			Graph g = TTCStateCaseGraphLoader.load(taskMainPath + fileName);
+			long graphMemory = usedMemory() - before;
+			before = usedMemory();
+			FrozenGraph frozen = new FrozenGraph(g);
+			long frozenMemory = usedMemory() - before;
+			
+			long beginTime = System.nanoTime();
+			long graphEdges = 0;
+			for (int i = 0; i < 100; ++i) {
+				for (Node node: g.getNodes()) {
+					for (String key: node.getEdges().keySet()) {
+						for (@SuppressWarnings("unused") Node target: node.getEdges(key)) {
+							++graphEdges;
+						}
+					}
+				}
+			}
+			long graphTime = System.nanoTime() - beginTime;
+			
+			beginTime = System.nanoTime();
+			long frozenEdges = 0;
+			for (int i = 0; i < 100; ++i) {
+				for (int id = 0; id < frozen.size(); ++id) {
+					for (int index = frozen.getOutBegin(id); index < frozen.getOutEnd(id); ++index) {
+						frozenEdges += frozen.getOutTarget(index) >= 0 ? 1 : 0;
+					}
+				}
+			}
+			long frozenTime = System.nanoTime() - beginTime;
+			
+			System.out.println(fileName + ": " + frozen.size() + " nodes, " + frozen.getEdgeCount() + " edges (" + graphEdges / 100 + "/" + frozenEdges / 100 + " traversed)");
+			System.out.println("graph:  ~" + graphMemory / 1024 + " KiB, traversal " + (graphTime / 1e6) + " ms");
+			System.out.println("frozen: ~" + frozenMemory / 1024 + " KiB, traversal " + (frozenTime / 1e6) + " ms\n");
+		}
+	}
+	
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; ++i) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
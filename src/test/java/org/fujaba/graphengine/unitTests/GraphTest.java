@@ -1,12 +1,24 @@
 package org.fujaba.graphengine.unitTests;
 
+import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.fujaba.graphengine.GraphEngine;
+import org.fujaba.graphengine.IdManager;
+import org.fujaba.graphengine.SymbolTable;
+import org.fujaba.graphengine.graph.AttributeColumn;
+import org.fujaba.graphengine.graph.AttributeType;
+import org.fujaba.graphengine.graph.AdjacencyList;
+import org.fujaba.graphengine.graph.FrozenGraph;
 import org.fujaba.graphengine.graph.Graph;
+import org.fujaba.graphengine.graph.GraphTransaction;
 import org.fujaba.graphengine.graph.Node;
+import org.fujaba.graphengine.graph.OffHeapGraph;
 import org.fujaba.graphengine.isomorphismtools.IsomorphismHandler;
 import org.fujaba.graphengine.isomorphismtools.IsomorphismHandlerCombinatorial;
 import org.junit.Assert;
@@ -489,7 +501,298 @@ public class GraphTest {
 		// ok, after splitting, the third splitted part is the original graph, that was added 3 times
 	}
 
-	/* 
+	@Test
+	public void testIncomingEdges() {
+		Graph graph = getFerrymansGraph();
+		Node wolf = graph.getNodes().get(0), goat = graph.getNodes().get(1), north = graph.getNodes().get(4), south = graph.getNodes().get(5);
+		// every outgoing edge is known to its target as incoming edge:
+		Assert.assertEquals(4, north.getIncomingEdges("at").size());
+		Assert.assertTrue(goat.getIncomingEdges("eats").contains(wolf));
+		Assert.assertTrue(south.getIncomingEdges("opposite").contains(north));
+		// removing an edge removes it from the reverse index, too:
+		wolf.removeEdge("at", north);
+		Assert.assertEquals(3, north.getIncomingEdges("at").size());
+		Assert.assertFalse(north.getIncomingEdges("at").contains(wolf));
+		// removing a node removes all of its edges (in both directions):
+		graph.removeNode(goat);
+		Assert.assertNull(wolf.getEdges("eats"));
+		Assert.assertNull(goat.getIncomingEdges("eats"));
+		Assert.assertEquals(2, north.getIncomingEdges("at").size());
+		// the clone has its own reverse index:
+		Graph clone = graph.clone();
+		Assert.assertEquals(2, clone.getNodes().get(3).getIncomingEdges("at").size());
+		Assert.assertFalse(clone.getNodes().get(3).getIncomingEdges("at").contains(graph.getNodes().get(1)));
+	}
+
+	@Test
+	public void testEdgeSymbols() {
+		Graph graph = getFerrymansGraph();
+		Node wolf = graph.getNodes().get(0), goat = graph.getNodes().get(1), north = graph.getNodes().get(4);
+		int at = SymbolTable.getId("at"), eats = SymbolTable.getId("eats");
+		// symbols are global and stable:
+		Assert.assertEquals(at, SymbolTable.getId(new String("at")));
+		Assert.assertEquals("at", SymbolTable.getName(at));
+		// looking up edges by symbol yields the same lists as looking them up by label:
+		Assert.assertSame(wolf.getEdges("at"), wolf.getEdges(at));
+		Assert.assertSame(wolf.getEdges("eats"), wolf.getEdges(eats));
+		Assert.assertTrue(wolf.getEdges(eats).contains(goat));
+		Assert.assertNull(north.getEdges(eats));
+		// removing the last edge of a label removes its symbol:
+		wolf.removeEdge("eats", goat);
+		Assert.assertNull(wolf.getEdges(eats));
+		Assert.assertEquals(wolf.getEdges().size(), wolf.getEdgeSymbols().length);
+		wolf.addEdge("eats", goat);
+		Assert.assertSame(wolf.getEdges("eats"), wolf.getEdges(eats));
+		// symbols can be added and looked up by multiple threads at once:
+		final AtomicInteger failures = new AtomicInteger();
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; ++t) {
+			final int offset = 50 * t;
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 200; ++i) {
+						String name = "symbol " + (i + offset) % 200;
+						if (!name.equals(SymbolTable.getName(SymbolTable.getId(name))) || !"at".equals(SymbolTable.getName(at))) {
+							failures.incrementAndGet();
+						}
+					}
+				}
+			}));
+		}
+		for (Thread thread: threads) {
+			thread.start();
+		}
+		for (Thread thread: threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Assert.fail();
+			}
+		}
+		Assert.assertEquals(0, failures.get());
+		Assert.assertEquals("symbol 199", SymbolTable.getName(SymbolTable.findId("symbol 199")));
+	}
+
+	@Test
+	public void testAddEdges() {
+		Node hub = new Node();
+		ArrayList<Node> targets = new ArrayList<Node>();
+		for (int i = 0; i < 1000; ++i) {
+			targets.add(new Node().setAttribute("i", i));
+		}
+		hub.addEdges("to", targets);
+		// adding existing edges again doesn't duplicate them:
+		hub.addEdges("to", targets.subList(0, 10));
+		hub.addEdge("to", targets.get(500));
+		Assert.assertEquals(targets, hub.getEdges("to"));
+		Assert.assertTrue(targets.get(999).getIncomingEdges("to").contains(hub));
+		// the membership is kept consistent while the targets are reordered:
+		Collections.shuffle(hub.getEdges("to"));
+		for (Node target: targets) {
+			Assert.assertTrue(hub.getEdges("to").contains(target));
+		}
+		hub.removeEdge("to", targets.get(0));
+		Assert.assertFalse(hub.getEdges("to").contains(targets.get(0)));
+		Assert.assertEquals(999, hub.getEdges("to").size());
+		hub.removeEdgesTo(targets.toArray(new Node[0]));
+		Assert.assertNull(hub.getEdges("to"));
+		// removing many nodes at once keeps the order and the membership:
+		AdjacencyList list = new AdjacencyList();
+		list.addAll(targets);
+		Assert.assertTrue(list.removeAll(targets.subList(0, 500)));
+		Assert.assertTrue(list.retainAll(targets.subList(0, 750)));
+		Assert.assertFalse(list.retainAll(targets));
+		Assert.assertEquals(targets.subList(500, 750), list);
+		Assert.assertFalse(list.contains(targets.get(100)));
+		Assert.assertFalse(list.contains(targets.get(800)));
+		Assert.assertEquals(100, list.indexOf(targets.get(600)));
+	}
+
+	@Test
+	public void testCloneSharesAttributesUntilChanged() {
+		Graph graph = getFerrymansGraph();
+		HashMap<Node, Node> clones = new HashMap<Node, Node>();
+		Graph clone = graph.clone(clones);
+		Node wolf = graph.getNodes().get(0), wolfClone = clones.get(wolf);
+		Assert.assertSame(wolfClone, clone.getNodes().get(0));
+		Assert.assertTrue(wolf.sharesAttributesWith(wolfClone));
+		// just reading them (like for a visualization) doesn't copy them:
+		Assert.assertTrue(GraphEngine.getGsonForSigmaJs().toJson(graph).contains("Wolf"));
+		Assert.assertTrue(wolf.sharesAttributesWith(wolfClone));
+		// changing the clone's attributes doesn't change the original's attributes:
+		wolfClone.setAttribute("species", "dog");
+		Assert.assertFalse(wolf.sharesAttributesWith(wolfClone));
+		Assert.assertEquals("Wolf", wolf.getAttribute("species"));
+		Assert.assertEquals("dog", wolfClone.getAttribute("species"));
+		// and the other way around:
+		Node goat = graph.getNodes().get(1);
+		goat.removeAttribute("species");
+		Assert.assertNull(goat.getAttribute("species"));
+		Assert.assertEquals("Goat", clones.get(goat).getAttribute("species"));
+		// changing the map of attributes directly doesn't change the clone's attributes either:
+		Node cabbage = graph.getNodes().get(2);
+		cabbage.getAttributes().put("species", "Kale");
+		Assert.assertEquals("Cabbage", clones.get(cabbage).getAttribute("species"));
+		// the edges are cloned, too:
+		Assert.assertTrue(wolfClone.getEdges("eats").contains(clones.get(goat)));
+		Assert.assertTrue(clones.get(goat).getIncomingEdges("eats").contains(wolfClone));
+		Assert.assertTrue(GraphEngine.isIsomorphTo(graph.clone(), graph));
+	}
+
+	@Test
+	public void testIndexOf() {
+		Graph graph = getFerrymansGraph();
+		Node wolf = graph.getNodes().get(0), south = graph.getNodes().get(5), other = new Node();
+		Assert.assertEquals(0, graph.indexOf(wolf));
+		Assert.assertEquals(5, graph.indexOf(south));
+		Assert.assertEquals(-1, graph.indexOf(other));
+		// the indices follow the changes of the list:
+		graph.removeNode(wolf);
+		Assert.assertEquals(-1, graph.indexOf(wolf));
+		Assert.assertEquals(4, graph.indexOf(south));
+		Collections.swap(graph.getNodes(), 0, 4);
+		Assert.assertEquals(0, graph.indexOf(south));
+		graph.addNode(other);
+		Assert.assertEquals(5, graph.indexOf(other));
+		// and a node can be part of multiple graphs:
+		Graph part = new Graph().addNode(other, south);
+		Assert.assertEquals(0, part.indexOf(other));
+		Assert.assertEquals(5, graph.indexOf(other));
+		Assert.assertEquals(1, part.indexOf(south));
+		Assert.assertEquals(0, graph.indexOf(south));
+		// each graph keeps its own indices:
+		Assert.assertEquals(0, part.indexOf(other));
+		Assert.assertEquals(5, graph.indexOf(other));
+		part.getNodes().remove(other);
+		Assert.assertEquals(0, part.indexOf(south));
+		Assert.assertEquals(0, graph.indexOf(south));
+		Assert.assertEquals(5, graph.indexOf(other));
+		IdManager idManager = new IdManager();
+		idManager.tellId(3L, wolf).tellId(1000000L, south).tellId(-1L, other);
+		Assert.assertSame(wolf, idManager.getObject(3));
+		Assert.assertSame(south, idManager.getObject(1000000));
+		Assert.assertSame(other, idManager.getObject(-1));
+		Assert.assertNull(idManager.getObject(4));
+		Assert.assertEquals(0, idManager.getId(new Node()));
+	}
+
+	@Test
+	public void testGraphTransaction() {
+		Graph graph = getFerrymansGraph();
+		Graph expected = getFerrymansGraph();
+		Node wolf = graph.getNodes().get(0), goat = graph.getNodes().get(1), north = graph.getNodes().get(4), boat = new Node();
+		GraphTransaction transaction = new GraphTransaction(graph);
+		transaction.addNode(boat).setAttribute(boat, "type", "Boat").addEdge(boat, "at", north).removeNode(goat).removeAttribute(wolf, "species");
+		Assert.assertEquals(6, graph.getNodes().size());
+		transaction.commit();
+		Assert.assertEquals(6, graph.getNodes().size());
+		Assert.assertSame(boat, graph.getNodes().get(5));
+		Assert.assertEquals(-1, graph.indexOf(goat));
+		Assert.assertNull(wolf.getEdges("eats"));
+		Assert.assertNull(wolf.getAttribute("species"));
+		Assert.assertTrue(north.getIncomingEdges("at").contains(boat));
+		// a failing commit is rolled back completely:
+		String serialization = graph.toString();
+		transaction.setAttribute(north, "name", "up").removeAttribute(boat, "type").removeEdge(boat, "at", north);
+		transaction.removeNode(wolf).addEdge(north, "opposite", (Node)null);
+		try {
+			transaction.commit();
+			Assert.fail();
+		} catch (NullPointerException e) {
+		}
+		Assert.assertEquals(serialization, graph.toString());
+		Assert.assertTrue(north.getIncomingEdges("at").contains(wolf));
+		Assert.assertFalse(GraphEngine.isIsomorphTo(expected, graph));
+	}
+
+	@Test
+	public void testOffHeapGraph() throws IOException {
+		Graph graph = getFerrymansGraph();
+		graph.addNode(new Node().setAttribute("count", 3).setAttribute("weight", 1.5).setAttribute("big", 5000000000L).setAttribute("flag", false));
+		FrozenGraph frozenGraph = new FrozenGraph(graph);
+		File file = File.createTempFile("graph", ".bin");
+		file.deleteOnExit();
+		OffHeapGraph.write(frozenGraph, file);
+		for (OffHeapGraph offHeapGraph: new OffHeapGraph[] {OffHeapGraph.of(frozenGraph), OffHeapGraph.open(file)}) {
+			Assert.assertEquals(frozenGraph.size(), offHeapGraph.size());
+			Assert.assertEquals(frozenGraph.getEdgeCount(), offHeapGraph.getEdgeCount());
+			int eats = offHeapGraph.getLabelId("eats");
+			Assert.assertTrue(offHeapGraph.hasEdge(0, eats, 1));
+			Assert.assertFalse(offHeapGraph.hasEdge(1, eats, 0));
+			Assert.assertEquals(1, offHeapGraph.getInDegree(1, eats));
+			Assert.assertEquals("Wolf", offHeapGraph.getAttribute(0, "species"));
+			Assert.assertEquals(3, offHeapGraph.getAttribute(6, "count"));
+			Assert.assertEquals(1.5, offHeapGraph.getAttribute(6, "weight"));
+			Assert.assertEquals(5000000000L, offHeapGraph.getAttribute(6, "big"));
+			Assert.assertEquals(false, offHeapGraph.getAttribute(6, "flag"));
+			Assert.assertNull(offHeapGraph.getAttribute(6, "species"));
+			Assert.assertEquals(graph.toString(), offHeapGraph.toGraph().toString());
+			// the parts of the graph can be found without building the (heap) graph:
+			Assert.assertFalse(GraphEngine.isConnected(offHeapGraph));
+			ArrayList<int[]> parts = GraphEngine.split(offHeapGraph);
+			Assert.assertEquals(GraphEngine.split(graph).size(), parts.size());
+			Assert.assertArrayEquals(new int[] {6}, parts.get(1));
+			Assert.assertTrue(GraphEngine.isConnected(offHeapGraph.toGraph(parts.get(0))));
+		}
+		// the same graph, streamed into the buffer without a Graph in between:
+		OffHeapGraph.Builder builder = new OffHeapGraph.Builder();
+		for (Node node: graph.getNodes()) {
+			int id = builder.addNode();
+			for (String key: node.getAttributeKeys()) {
+				builder.setAttribute(id, key, "replaced").setAttribute(id, key, node.getAttribute(key));
+			}
+		}
+		for (Node node: graph.getNodes()) {
+			for (String label: node.getEdges().keySet()) {
+				for (Node target: node.getEdges(label)) {
+					builder.addEdge(graph.indexOf(node), label, graph.indexOf(target)).addEdge(graph.indexOf(node), label, graph.indexOf(target));
+				}
+			}
+		}
+		for (OffHeapGraph offHeapGraph: new OffHeapGraph[] {builder.build(), builder.write(file)}) {
+			Assert.assertEquals(frozenGraph.getEdgeCount(), offHeapGraph.getEdgeCount());
+			Assert.assertEquals(1, offHeapGraph.getInDegree(1, offHeapGraph.getLabelId("eats")));
+			Assert.assertEquals(5000000000L, offHeapGraph.getAttribute(6, "big"));
+			Assert.assertEquals(graph.toString(), offHeapGraph.toGraph().toString());
+		}
+	}
+
+	@Test
+	public void testTypedAttributeColumns() {
+		Graph graph = new Graph();
+		Node a = new Node(), b = new Node(), c = new Node();
+		graph.addNode(a).addNode(b).addNode(c);
+		a.setAttribute("count", 1).setAttribute("weight", 2.5).setAttribute("mixed", 1).setAttribute("flag", true);
+		b.setAttribute("count", 2).setAttribute("weight", 2.5).setAttribute("mixed", "1");
+		c.setAttribute("count", 1).setAttribute("mixed", 1L).setAttribute("flag", true);
+		FrozenGraph frozen = new FrozenGraph(graph);
+		AttributeColumn count = frozen.getAttributeColumn(frozen.getAttributeKeyId("count"));
+		AttributeColumn weight = frozen.getAttributeColumn(frozen.getAttributeKeyId("weight"));
+		AttributeColumn mixed = frozen.getAttributeColumn(frozen.getAttributeKeyId("mixed"));
+		AttributeColumn flag = frozen.getAttributeColumn(frozen.getAttributeKeyId("flag"));
+		Assert.assertEquals(AttributeType.INTEGER, count.getType());
+		Assert.assertEquals(AttributeType.DOUBLE, weight.getType());
+		Assert.assertEquals(AttributeType.OBJECT, mixed.getType());
+		Assert.assertEquals(AttributeType.BOOLEAN, flag.getType());
+		// the values are kept with their types:
+		Assert.assertEquals(2, count.getInt(1));
+		Assert.assertEquals(1L, frozen.getAttribute(2, "mixed"));
+		Assert.assertEquals("1", frozen.getAttribute(1, "mixed"));
+		Assert.assertNull(frozen.getAttribute(2, "weight"));
+		// they're compared like their boxed values:
+		Assert.assertTrue(count.valueEquals(0, count, 2));
+		Assert.assertFalse(count.valueEquals(0, count, 1));
+		Assert.assertTrue(weight.valueEquals(0, weight, 1));
+		Assert.assertFalse(weight.valueEquals(0, weight, 2));
+		Assert.assertFalse(mixed.valueEquals(0, mixed, 1));
+		Assert.assertFalse(mixed.valueEquals(0, mixed, 2));
+		Assert.assertTrue(flag.valueEquals(0, flag, 2));
+		Assert.assertFalse(flag.valueEquals(0, flag, 1));
+		Assert.assertTrue(flag.valueEquals(1, null, 0));
+	}
+
+	/*
 	 * A: 				 B:	__
 	 * (1)--(2) 	vs   (1)  (2)
 	 *    \/                ¯¯
@@ -3,12 +3,29 @@ package org.fujaba.graphengine.unitTests;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
+import org.fujaba.graphengine.AllDifferent;
+import org.fujaba.graphengine.CandidateSeeds;
+import org.fujaba.graphengine.CompiledPattern;
 import org.fujaba.graphengine.GraphEngine;
+import org.fujaba.graphengine.IncrementalMatcher;
 import org.fujaba.graphengine.Match;
 import org.fujaba.graphengine.PatternEngine;
+import org.fujaba.graphengine.ReachabilityStates;
+import org.fujaba.graphengine.SearchPlan;
+import org.fujaba.graphengine.algorithm.Algorithm;
+import org.fujaba.graphengine.graph.FrozenGraph;
 import org.fujaba.graphengine.graph.Graph;
 import org.fujaba.graphengine.graph.Node;
+import org.fujaba.graphengine.graph.OffHeapGraph;
 import org.fujaba.graphengine.isomorphismtools.IsomorphismHandlerCSPLowHeuristics;
 import org.fujaba.graphengine.isomorphismtools.IsomorphismHandlerSorting;
 import org.fujaba.graphengine.pattern.PatternAttribute;
@@ -73,6 +90,57 @@ public class PatternTest {
 		Assert.assertTrue(!GraphEngine.isIsomorphTo(ferrymansGraph, cabbageTransported));
 	}
 	
+	@Test
+	public void testApplyingMatchesInPlace() {
+		Graph graph = new Graph();
+		Node from = new Node().setAttribute("name", "from"), to = new Node().setAttribute("name", "to");
+		graph.addNode(from, to);
+		from.addEdge("road", to);
+		// copy the edge's label to a new node in between:
+		PatternGraph pattern = new PatternGraph("split the edge");
+		PatternNode source = new PatternNode(), target = new PatternNode(), between = new PatternNode().setAction("+");
+		source.addPatternEdge("-", "#{label}", target);
+		source.addPatternEdge("+", "#{label}", between);
+		between.addPatternEdge("+", "#{label}", target);
+		pattern.addPatternNode(source, target, between);
+
+		Match match = PatternEngine.matchPattern(graph, pattern, true).get(0);
+		Assert.assertEquals("'road'", match.getEdgeMatch().get("label"));
+		Graph result = PatternEngine.applyMatch(match, true);
+		Assert.assertSame(graph, result);
+		Assert.assertEquals(3, graph.getNodes().size());
+		// the created node is part of the match:
+		Node created = match.getNodeMatch().get(between);
+		Assert.assertNotNull(created);
+		Assert.assertEquals(Arrays.asList(created), from.getEdges("road"));
+		Assert.assertEquals(Arrays.asList(to), created.getEdges("road"));
+		Assert.assertSame(from, match.getNodeMatch().get(source));
+	}
+	
+	@Test
+	public void testMatchingMultiplePatterns() {
+		ArrayList<PatternGraph> rules = new ArrayList<PatternGraph>();
+		rules.add(getEatingRule());
+		rules.add(getTranportRule());
+		rules.add(getEmptyTranportRule());
+		rules.add(getTranportRule()); // the same conditions as another rule
+		FrozenGraph frozenGraph = new FrozenGraph(getFerrymansGraph());
+		// the candidates are shared by the rules, but the matches are found for each rule on its own:
+		ArrayList<ArrayList<Match>> matches = PatternEngine.matchPatterns(frozenGraph, rules, false);
+		Assert.assertEquals(rules.size(), matches.size());
+		for (int i = 0; i < rules.size(); ++i) {
+			ArrayList<Match> expected = PatternEngine.matchPattern(frozenGraph, rules.get(i), false);
+			Assert.assertEquals(expected.size(), matches.get(i).size());
+			for (int j = 0; j < expected.size(); ++j) {
+				Assert.assertSame(rules.get(i), matches.get(i).get(j).getPattern());
+				Assert.assertEquals(expected.get(j).getNodeMatch(), matches.get(i).get(j).getNodeMatch());
+			}
+		}
+		Assert.assertEquals(0, matches.get(0).size());
+		Assert.assertEquals(3, matches.get(1).size());
+		Assert.assertEquals(3, matches.get(3).size());
+	}
+	
 	@Test
 	public void testSolvingFerrymansProblem() {
 		PatternGraph eatingRule = getEatingRule();
@@ -169,6 +237,522 @@ public class PatternTest {
 //	    new GraphDumper(rg).dumpGraph("test.html");
 	}
 	
+	@Test
+	public void testReachabilityGraphWithDeltaStates() {
+		ArrayList<ArrayList<PatternGraph>> patterns = new ArrayList<ArrayList<PatternGraph>>();
+		ArrayList<PatternGraph> priorityLevel = new ArrayList<PatternGraph>();
+		priorityLevel.add(getCorrectTranportRule());
+		priorityLevel.add(getCorrectEmptyTranportRule());
+		patterns.add(priorityLevel);
+		
+		Graph rg = PatternEngine.calculateReachabilityGraph(getFerrymansGraph(), patterns);
+		ReachabilityStates states = new ReachabilityStates(3);
+		Graph deltaRg = PatternEngine.calculateReachabilityGraph(getFerrymansGraph(), patterns, states);
+		// the same states are found in the same order, but most of them are just stored as deltas:
+		Assert.assertEquals(rg.getNodes().size(), deltaRg.getNodes().size());
+		Assert.assertEquals(rg.getNodes().size(), states.size());
+		Assert.assertTrue(states.getSnapshotCount() < states.size());
+		for (int i = 0; i < rg.getNodes().size(); ++i) {
+			Assert.assertEquals(rg.getNodes().get(i).getAttribute("graph"), states.getGraph(deltaRg.getNodes().get(i)).toString());
+			// and the same transitions between them:
+			for (String label: rg.getNodes().get(i).getEdges().keySet()) {
+				ArrayList<Node> targets = rg.getNodes().get(i).getEdges(label);
+				ArrayList<Node> deltaTargets = deltaRg.getNodes().get(i).getEdges(label);
+				Assert.assertEquals(targets.size(), deltaTargets.size());
+				for (int j = 0; j < targets.size(); ++j) {
+					Assert.assertEquals(rg.indexOf(targets.get(j)), deltaRg.indexOf(deltaTargets.get(j)));
+				}
+			}
+		}
+		// a state with an edge to a node outside of its graph is stored as a snapshot:
+		Graph parent = getFerrymansGraph();
+		HashMap<Node, Node> clones = new HashMap<Node, Node>();
+		Graph child = parent.clone(clones);
+		child.getNodes().get(0).addEdge("eats", new Node().setAttribute("type", "Cargo"));
+		HashMap<Node, Node> otherClones = new HashMap<Node, Node>();
+		Graph otherChild = parent.clone(otherClones);
+		otherChild.getNodes().get(0).removeEdge("eats", otherChild.getNodes().get(1));
+		states = new ReachabilityStates();
+		int parentIndex = states.add(parent);
+		int childIndex = states.add(child, parentIndex, parent, clones);
+		int otherChildIndex = states.add(otherChild, parentIndex, parent, otherClones);
+		Assert.assertEquals(3, states.size());
+		Assert.assertEquals(2, states.getSnapshotCount());
+		Assert.assertEquals(child.toString(), states.getGraph(childIndex).toString());
+		Assert.assertEquals(otherChild.toString(), states.getGraph(otherChildIndex).toString());
+	}
+	
+	@Test
+	public void testCandidateSeeds() {
+		CandidateSeeds seeds = CandidateSeeds.of("#{type} == 'Cargo' && #{species} == 'Wolf' && !(#{used})");
+		Assert.assertEquals("!(#{used})", seeds.getResidualExpression());
+		FrozenGraph frozenGraph = new FrozenGraph(getFerrymansGraph());
+		int[] seeded = seeds.seed(frozenGraph);
+		Assert.assertEquals(1, seeded.length);
+		Assert.assertEquals("Wolf", frozenGraph.getAttribute(seeded[0], "species"));
+		Assert.assertEquals(2, CandidateSeeds.of("'Bank' == #{type}").seed(frozenGraph).length);
+		// disjunctions aren't split:
+		seeds = CandidateSeeds.of("#{type} == 'Bank' || #{type} == 'Ferry'");
+		Assert.assertNull(seeds.seed(frozenGraph));
+		Assert.assertEquals("#{type} == 'Bank' || #{type} == 'Ferry'", seeds.getResidualExpression());
+	}
+	
+	@Test
+	public void testSeedingNumberComparisons() {
+		Graph graph = new Graph();
+		for (int i = 0; i < 10; ++i) {
+			graph.addNode(new Node().setAttribute("count", i));
+		}
+		graph.addNode(new Node().setAttribute("count", 4.5), new Node().setAttribute("count", "4"), new Node());
+		FrozenGraph frozenGraph = new FrozenGraph(graph);
+		CandidateSeeds seeds = CandidateSeeds.of("#{count} >= 3 && 6 > #{count}");
+		Assert.assertEquals("#{count} >= 3 && 6 > #{count}", seeds.getResidualExpression());
+		// a snapshot, that is matched only once, isn't sorted (only the nodes with the attribute are looked up):
+		Assert.assertEquals(12, seeds.seed(frozenGraph).length);
+		// the numbers are looked up in the sorted index, the other values still need to be checked:
+		frozenGraph.setReused(true);
+		Assert.assertArrayEquals(new int[] {3, 4, 5, 10, 11}, seeds.seed(frozenGraph));
+		Assert.assertArrayEquals(new int[] {4, 11}, CandidateSeeds.of("#{count} == 4").seed(frozenGraph));
+		// a missing attribute is read as 0.0, so it can't be looked up, if 0.0 fulfills the comparison:
+		Assert.assertNull(CandidateSeeds.of("#{count} < 3").seed(frozenGraph));
+		// the same for the attributes of pattern nodes:
+		PatternGraph pattern = new PatternGraph("between");
+		PatternNode node = new PatternNode("#{count} > 2");
+		node.addPatternAttribute(new PatternAttribute().setName("count").setValue("#{count} <= 4.5"));
+		pattern.addPatternNode(node);
+		ArrayList<Match> matches = PatternEngine.matchPattern(graph, pattern, false);
+		Assert.assertEquals(3, matches.size());
+		for (Match match: matches) {
+			double count = ((Number)match.getNodeMatch().get(node).getAttribute("count")).doubleValue();
+			Assert.assertTrue(count > 2 && count <= 4.5);
+		}
+	}
+	
+	@Test
+	public void testRemovingImpossibleCandidates() {
+		Node[] nodes = new Node[4];
+		for (int i = 0; i < nodes.length; ++i) {
+			nodes[i] = new Node();
+		}
+		// the first two nodes need the first two candidates for themselves:
+		ArrayList<ArrayList<Node>> couldMatch = new ArrayList<ArrayList<Node>>();
+		couldMatch.add(new ArrayList<Node>(Arrays.asList(nodes[0], nodes[1])));
+		couldMatch.add(new ArrayList<Node>(Arrays.asList(nodes[1], nodes[0])));
+		couldMatch.add(new ArrayList<Node>(Arrays.asList(nodes[3], nodes[0], nodes[2], nodes[1])));
+		couldMatch = GraphEngine.removeImpossibleCandidates(couldMatch);
+		Assert.assertEquals(Arrays.asList(nodes[0], nodes[1]), couldMatch.get(0));
+		Assert.assertEquals(Arrays.asList(nodes[1], nodes[0]), couldMatch.get(1));
+		Assert.assertEquals(Arrays.asList(nodes[3], nodes[2]), couldMatch.get(2));
+		// three nodes can't share two candidates:
+		couldMatch.get(2).clear();
+		couldMatch.get(2).add(nodes[1]);
+		couldMatch.get(2).add(nodes[0]);
+		Assert.assertNull(GraphEngine.removeImpossibleCandidates(couldMatch));
+		// the same on dense ids:
+		BitSet[] domains = new BitSet[] {new BitSet(), new BitSet(), new BitSet()};
+		domains[0].set(0, 2);
+		domains[1].set(0, 2);
+		domains[2].set(0, 4);
+		Assert.assertTrue(AllDifferent.propagate(domains));
+		Assert.assertEquals(2, domains[2].nextSetBit(0));
+		domains[2].clear(2, 4);
+		domains[2].set(1);
+		Assert.assertFalse(AllDifferent.propagate(domains));
+	}
+	
+	@Test
+	public void testCompiledPattern() {
+		Graph graph = getFerrymansGraph();
+		PatternGraph pattern = new PatternGraph("eating");
+		PatternNode eater = new PatternNode("#{type} == 'Cargo'");
+		PatternNode eaten = new PatternNode("#{type} == 'Cargo'");
+		eater.addPatternEdge("eats", eaten);
+		pattern.addPatternNode(eater, eaten);
+		CompiledPattern compiled = CompiledPattern.of(pattern);
+		Assert.assertSame(compiled, CompiledPattern.of(pattern));
+		// the plan is kept by the pattern itself (so it doesn't outlive it):
+		Assert.assertSame(compiled, pattern.getCompiledPattern());
+		Assert.assertEquals(1, compiled.getNodeMatchLists().size());
+		Assert.assertEquals(2, PatternEngine.matchPattern(graph, pattern, false).size());
+		Assert.assertEquals(2, PatternEngine.matchPattern(graph, compiled, false).size());
+		// changing the pattern compiles it again:
+		PatternNode food = new PatternNode().setAction("!=");
+		eaten.addPatternEdge("eats", food);
+		pattern.addPatternNode(food);
+		Assert.assertNotSame(compiled, CompiledPattern.of(pattern));
+		Assert.assertEquals(2, CompiledPattern.of(pattern).getNodeMatchLists().size());
+		ArrayList<Match> matches = PatternEngine.matchPattern(graph, pattern, false);
+		Assert.assertEquals(1, matches.size());
+		Assert.assertEquals("Cabbage", matches.get(0).getNodeMatch().get(eaten).getAttribute("species"));
+		compiled = CompiledPattern.of(pattern);
+		eaten.getPatternEdges().get(0).setAction("!=");
+		Assert.assertNotSame(compiled, CompiledPattern.of(pattern));
+	}
+	
+	@Test
+	public void testSearchPlan() {
+		Graph graph = getFerrymansGraph();
+		PatternGraph pattern = new PatternGraph("at the same bank");
+		PatternNode cargo = new PatternNode("#{type} == 'Cargo'");
+		PatternNode bank = new PatternNode("#{type} == 'Bank'");
+		PatternNode ferry = new PatternNode("#{type} == 'Ferry'");
+		cargo.addPatternEdge("at", bank);
+		ferry.addPatternEdge("at", bank);
+		pattern.addPatternNode(cargo, bank, ferry);
+		ArrayList<Match> matches = PatternEngine.matchPattern(graph, pattern, false);
+		Assert.assertEquals(3, matches.size());
+		// the matches are in the order of the pattern, even though the search starts with the ferry:
+		Assert.assertEquals("Wolf", matches.get(0).getNodeMatch().get(cargo).getAttribute("species"));
+		Assert.assertEquals("Cabbage", matches.get(2).getNodeMatch().get(cargo).getAttribute("species"));
+		SearchPlan plan = PatternEngine.planSearch(graph, pattern);
+		Assert.assertEquals(Arrays.asList(ferry, bank, cargo), plan.getOrder());
+		Assert.assertArrayEquals(new int[] {1, 2, 3}, plan.getSeeded());
+		Assert.assertArrayEquals(new int[] {1, 2, 3}, plan.getCandidates());
+		// the estimated versus actual partial matches after each step:
+		Assert.assertArrayEquals(new double[] {1.0, 2.0, 4.0}, plan.getEstimates(), 0.0);
+		Assert.assertArrayEquals(new long[] {1, 1, 3}, plan.getActual());
+		Assert.assertEquals(3, plan.getMatchCount());
+		Assert.assertEquals(plan.toString(), PatternEngine.explain(graph, pattern));
+	}
+	
+	@Test
+	public void testMatchingAlongEdges() {
+		// a chain of nodes, where most candidates aren't neighbours of each other:
+		Graph graph = new Graph();
+		Node previous = null;
+		for (int i = 0; i < 200; ++i) {
+			Node node = new Node().setAttribute("index", i);
+			graph.addNode(node);
+			if (previous != null) {
+				node.addEdge("previous", previous);
+				previous.addEdge("next", node);
+			}
+			previous = node;
+		}
+		PatternGraph pattern = new PatternGraph("three in a row");
+		PatternNode first = new PatternNode(), second = new PatternNode(), third = new PatternNode();
+		first.addPatternEdge("next", second);
+		third.addPatternEdge("previous", second);
+		pattern.addPatternNode(first, second, third);
+		ArrayList<Match> matches = PatternEngine.matchPattern(graph, pattern, false);
+		Assert.assertEquals(198, matches.size());
+		for (int i = 0; i < matches.size(); ++i) {
+			Assert.assertEquals(i, matches.get(i).getNodeMatch().get(first).getAttribute("index"));
+			Assert.assertEquals(i + 2, matches.get(i).getNodeMatch().get(third).getAttribute("index"));
+		}
+		Assert.assertEquals(0, PatternEngine.matchPattern(graph, pattern, true).get(0).getNodeMatch().get(first).getAttribute("index"));
+	}
+	
+	@Test
+	public void testForwardChecking() {
+		// a ring of nodes, where each node has edges to the next three nodes:
+		Node[] nodes = new Node[20];
+		Graph graph = getRing(nodes, 1, 2, 3);
+		// d has to follow both a and b, so it's checked as soon as b is matched (before c is matched):
+		PatternGraph pattern = new PatternGraph("a common successor");
+		PatternNode a = new PatternNode("#{index} == 0"), b = new PatternNode(), c = new PatternNode("#{index} % 10 == 5"), d = new PatternNode();
+		a.addPatternEdge("next", b).addPatternEdge("next", d);
+		b.addPatternEdge("next", c).addPatternEdge("next", d);
+		pattern.addPatternNode(a, b, c, d);
+
+		SearchPlan plan = PatternEngine.planSearch(graph, pattern);
+		Assert.assertEquals(Arrays.asList(a, b, c, d), plan.getOrder());
+		// b = 3 has no common successor with a, so it's dropped before c is tried (otherwise two partial matches would reach c):
+		Assert.assertArrayEquals(new long[] {1, 3, 1, 1}, plan.getActual());
+		Assert.assertEquals(1, plan.getMatchCount());
+		Match match = PatternEngine.matchPattern(graph, pattern, true).get(0);
+		Assert.assertEquals(2, match.getNodeMatch().get(b).getAttribute("index"));
+		Assert.assertEquals(5, match.getNodeMatch().get(c).getAttribute("index"));
+		Assert.assertEquals(3, match.getNodeMatch().get(d).getAttribute("index"));
+	}
+
+	@Test
+	public void testParallelMatching() {
+		// a ring of nodes with shortcuts, random colors and random further edges:
+		Node[] nodes = new Node[300];
+		Graph graph = getRing(nodes, 1, 2, 7);
+		Random random = new Random(17);
+		for (Node node: nodes) {
+			node.setAttribute("color", random.nextInt(3)).addEdge(random.nextBoolean() ? "next" : "back", nodes[random.nextInt(nodes.length)]);
+		}
+		PatternGraph pattern = new PatternGraph("two steps without a way back, but not to a node before the first one");
+		PatternNode first = new PatternNode("#{index} >= 100"), second = new PatternNode("#{color} != 1"), third = new PatternNode();
+		PatternNode before = new PatternNode("#{index} < 10").setAction("!=");
+		first.addPatternEdge("next", second);
+		second.addPatternEdge("next", third).addPatternEdge("!=", "back", first);
+		third.addPatternEdge("next", before);
+		pattern.addPatternNode(first, second, third, before);
+		// the search of a pattern with an edge variable keeps its order:
+		PatternGraph labels = new PatternGraph("any edge over two steps");
+		PatternNode from = new PatternNode("#{color} == 0"), over = new PatternNode(), to = new PatternNode();
+		from.addPatternEdge("next", over).addPatternEdge("#{label}", to);
+		over.addPatternEdge("next", to);
+		labels.addPatternNode(from, over, to);
+
+		for (PatternGraph matched: new PatternGraph[] {pattern, labels}) {
+			ArrayList<Match> sequential = PatternEngine.matchPattern(graph, matched, false);
+			Match sequentialSingle = PatternEngine.matchPattern(graph, matched, true).get(0);
+			ArrayList<Match> parallel;
+			Match parallelSingle;
+			PatternEngine.setMatchingPool(new ForkJoinPool(4));
+			try {
+				parallel = PatternEngine.matchPattern(graph, matched, false);
+				parallelSingle = PatternEngine.matchPattern(graph, matched, true).get(0);
+			} finally {
+				PatternEngine.setMatchingPool(null);
+			}
+			// the same matches in the same order:
+			Assert.assertTrue(sequential.size() > 100);
+			Assert.assertEquals(sequential.size(), parallel.size());
+			for (int i = 0; i < sequential.size(); ++i) {
+				Assert.assertEquals(sequential.get(i).getNodeMatch(), parallel.get(i).getNodeMatch());
+				Assert.assertEquals(sequential.get(i).getEdgeMatch(), parallel.get(i).getEdgeMatch());
+			}
+			// and the same single match:
+			Assert.assertEquals(sequentialSingle.getNodeMatch(), parallelSingle.getNodeMatch());
+		}
+	}
+
+	@Test
+	public void testNegativeNodesAlongEdges() {
+		// a ring of nodes, that count how often their edges are looked at, where every fourth node has a shortcut over its next node:
+		Node[] nodes = new Node[30];
+		final int[] lookedAt = new int[nodes.length];
+		for (int i = 0; i < nodes.length; ++i) {
+			final int index = i;
+			nodes[i] = new Node() {
+				@Override
+				public ArrayList<Node> getEdges(int symbol) {
+					++lookedAt[index];
+					return super.getEdges(symbol);
+				}
+			};
+		}
+		Graph graph = getRing(nodes, 1);
+		for (int i = 0; i < nodes.length; i += 4) {
+			nodes[i].addEdge("next", nodes[(i + 2) % nodes.length]);
+		}
+		PatternGraph pattern = new PatternGraph("no shortcut");
+		PatternNode node = new PatternNode();
+		PatternNode over = new PatternNode().setAction("!="), to = new PatternNode().setAction("!=");
+		node.addPatternEdge("next", over).addPatternEdge("next", to);
+		over.addPatternEdge("next", to);
+		pattern.addPatternNode(node, over, to);
+
+		ArrayList<Match> matches = PatternEngine.matchPattern(graph, pattern, false);
+		Assert.assertEquals(22, matches.size());
+		for (Match match: matches) {
+			Assert.assertNotEquals(0, (Integer) match.getNodeMatch().get(node).getAttribute("index") % 4);
+		}
+		// the edge between the negative nodes needs to exist as well:
+		nodes[5].removeEdge("next", nodes[6]);
+		Assert.assertEquals(23, PatternEngine.matchPattern(graph, pattern, false).size());
+
+		// only the neighbours of the matched node are tried for a negative node (not all of its even candidates up to node 8):
+		PatternGraph noEvenPredecessor = new PatternGraph("no even predecessor");
+		PatternNode target = new PatternNode("#{index} == 10"), predecessor = new PatternNode("#{index} % 2 == 0").setAction("!=");
+		predecessor.addPatternEdge("next", target);
+		noEvenPredecessor.addPatternNode(target, predecessor);
+		FrozenGraph frozenGraph = new FrozenGraph(graph);
+		Arrays.fill(lookedAt, 0);
+		Assert.assertEquals(0, PatternEngine.matchPattern(frozenGraph, noEvenPredecessor, false).size());
+		for (int i = 0; i < nodes.length; ++i) {
+			Assert.assertEquals(i == 8 ? 1 : 0, lookedAt[i]);
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void testLazyMatching() {
+		Graph graph = getRing(new Node[100], 1, 3);
+		PatternGraph pattern = new PatternGraph("two steps from an even node");
+		PatternNode first = new PatternNode("#{index} % 2 == 0"), second = new PatternNode(), third = new PatternNode();
+		first.addPatternEdge("next", second);
+		second.addPatternEdge("next", third);
+		pattern.addPatternNode(first, second, third);
+
+		// the iterator finds the same matches in the same order:
+		ArrayList<Match> matches = PatternEngine.matchPattern(graph, pattern, false);
+		Iterator<Match> iterator = PatternEngine.iterateMatches(graph, pattern);
+		for (Match match: matches) {
+			Assert.assertTrue(iterator.hasNext());
+			Assert.assertEquals(match.getNodeMatch(), iterator.next().getNodeMatch());
+		}
+		Assert.assertFalse(iterator.hasNext());
+		// the stream stops after the requested matches:
+		List<Match> firstMatches = PatternEngine.streamMatches(graph, pattern).limit(5).collect(Collectors.toList());
+		Assert.assertEquals(5, firstMatches.size());
+		for (int i = 0; i < firstMatches.size(); ++i) {
+			Assert.assertEquals(matches.get(i).getNodeMatch(), firstMatches.get(i).getNodeMatch());
+		}
+		Assert.assertEquals(PatternEngine.matchPattern(graph, pattern, true).get(0).getNodeMatch(), firstMatches.get(0).getNodeMatch());
+		// no matches at all:
+		first.setAttributeMatchExpression("#{index} < 0");
+		Assert.assertFalse(PatternEngine.iterateMatches(graph, pattern).hasNext());
+		// four nodes without edges have about 94 million matches, which are only searched as far as they're requested:
+		PatternGraph anyNodes = new PatternGraph("any four nodes");
+		PatternNode[] any = new PatternNode[4];
+		for (int i = 0; i < any.length; ++i) {
+			any[i] = new PatternNode();
+			anyNodes.addPatternNode(any[i]);
+		}
+		Iterator<Match> anyIterator = PatternEngine.iterateMatches(graph, anyNodes);
+		for (int last = 3; last < 8; ++last) {
+			Match match = anyIterator.next();
+			for (int i = 0; i < any.length; ++i) {
+				Assert.assertEquals(i < 3 ? i : last, match.getNodeMatch().get(any[i]).getAttribute("index"));
+			}
+		}
+		Assert.assertTrue(anyIterator.hasNext());
+		// after the 97 matches of nodes 0, 1, 2 and another one, the third pattern node is counted up:
+		Match next = PatternEngine.streamMatches(graph, anyNodes).skip(97).findFirst().get();
+		Assert.assertEquals(3, next.getNodeMatch().get(any[2]).getAttribute("index"));
+		Assert.assertEquals(2, next.getNodeMatch().get(any[3]).getAttribute("index"));
+	}
+
+	@Test
+	public void testMatchingByIds() {
+		// a ring of nodes with some shortcuts, stored outside of the heap:
+		Graph graph = new Graph();
+		Node[] nodes = new Node[60];
+		for (int i = 0; i < nodes.length; ++i) {
+			nodes[i] = new Node().setAttribute("index", i).setAttribute("color", i % 3 == 0 ? "red" : "blue");
+			graph.addNode(nodes[i]);
+		}
+		for (int i = 0; i < nodes.length; ++i) {
+			nodes[i].addEdge("next", nodes[(i + 1) % nodes.length]);
+			if (i % 4 == 0) {
+				nodes[i].addEdge("skip", nodes[(i + 2) % nodes.length]);
+			}
+		}
+		OffHeapGraph offHeapGraph = OffHeapGraph.of(new FrozenGraph(graph));
+		PatternGraph pattern = new PatternGraph("two steps from a red node without a shortcut, that no blue node skips to");
+		PatternNode first = new PatternNode("#{color} == 'red'"), second = new PatternNode(), third = new PatternNode("#{index} > 5");
+		PatternNode skipping = new PatternNode("#{color} == 'blue'").setAction("!=");
+		PatternNode created = new PatternNode().setAction("+");
+		first.addPatternEdge("next", second).addPatternEdge("!=", "skip", second);
+		second.addPatternEdge("next", third);
+		skipping.addPatternEdge("skip", first);
+		pattern.addPatternNode(first, second, third, skipping, created);
+
+		// the same matches in the same order, as the ids of the matched nodes:
+		ArrayList<Match> expected = PatternEngine.matchPattern(graph, pattern, false);
+		ArrayList<int[]> actual = PatternEngine.matchPattern(offHeapGraph, pattern, false);
+		Assert.assertTrue(expected.size() > 5);
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); ++i) {
+			for (int j = 0; j < 3; ++j) {
+				Assert.assertEquals(graph.indexOf(expected.get(i).getNodeMatch().get(pattern.getPatternNodes().get(j))), actual.get(i)[j]);
+			}
+			Assert.assertEquals(-1, actual.get(i)[3]);
+			Assert.assertEquals(-1, actual.get(i)[4]);
+		}
+		Assert.assertArrayEquals(actual.get(0), PatternEngine.matchPattern(offHeapGraph, pattern, true).get(0));
+		// an edge label, that isn't part of the graph:
+		third.addPatternEdge("missing", first);
+		Assert.assertEquals(0, PatternEngine.matchPattern(offHeapGraph, pattern, false).size());
+		// edge variables can't be matched by ids:
+		third.getPatternEdges().clear();
+		third.addPatternEdge("#{label}", first);
+		try {
+			PatternEngine.matchPattern(offHeapGraph, pattern, false);
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+
+	@Test
+	public void testIncrementalMatching() {
+		// a ring of nodes with shortcuts and a token, that is passed on to the next node, unless that one's next node was visited:
+		Node[] nodes = new Node[40];
+		Graph graph = getRing(nodes, 1);
+		for (int i = 0; i < nodes.length; ++i) {
+			nodes[i].setAttribute("token", i % 13 == 0 ? 1 : 0);
+			if (i % 3 == 0) {
+				nodes[i].addEdge("next", nodes[(i + 5) % nodes.length]);
+			}
+		}
+		PatternGraph pattern = new PatternGraph("pass the token");
+		PatternNode holder = new PatternNode("#{token} == 1").setPatternAttribute("+", "token", 2);
+		PatternNode receiver = new PatternNode("#{token} == 0").setPatternAttribute("+", "token", 1);
+		PatternNode visited = new PatternNode("#{token} == 2").setAction("!=");
+		holder.addPatternEdge("next", receiver);
+		receiver.addPatternEdge("next", visited);
+		pattern.addPatternNode(holder, receiver, visited);
+		Graph original = graph.clone();
+
+		// the matcher knows the same matches as a new search after each change:
+		IncrementalMatcher matcher = new IncrementalMatcher(graph);
+		int applied = 0;
+		Match match;
+		while ((match = matcher.getMatch(pattern)) != null) {
+			assertSameMatches(PatternEngine.matchPattern(graph, pattern, false), matcher.getMatches(pattern));
+			Assert.assertEquals(PatternEngine.matchPattern(graph, pattern, true).get(0).getNodeMatch(), match.getNodeMatch());
+			PatternEngine.applyMatch(match, true);
+			++applied;
+		}
+		matcher.close();
+		Assert.assertTrue(applied > 3);
+		Assert.assertEquals(0, PatternEngine.matchPattern(graph, pattern, false).size());
+
+		// changes made directly (without a transaction) are noticed, too:
+		Graph changed = original.clone();
+		matcher = new IncrementalMatcher(changed);
+		int count = matcher.getMatches(pattern).size();
+		// a changed attribute (node 2 gets a token to pass on to node 3):
+		Node node = changed.getNodes().get(2);
+		node.setAttribute("token", 1);
+		assertSameMatches(PatternEngine.matchPattern(changed, pattern, false), matcher.getMatches(pattern));
+		Assert.assertEquals(count + 1, matcher.getMatches(pattern).size());
+		// an added node and edge:
+		Node added = new Node().setAttribute("token", 0);
+		changed.addNode(added);
+		node.addEdge("next", added);
+		assertSameMatches(PatternEngine.matchPattern(changed, pattern, false), matcher.getMatches(pattern));
+		Assert.assertEquals(count + 2, matcher.getMatches(pattern).size());
+		// a removed edge and a removed node:
+		node.removeEdge("next", added);
+		assertSameMatches(PatternEngine.matchPattern(changed, pattern, false), matcher.getMatches(pattern));
+		Assert.assertEquals(count + 1, matcher.getMatches(pattern).size());
+		changed.removeNode(node);
+		assertSameMatches(PatternEngine.matchPattern(changed, pattern, false), matcher.getMatches(pattern));
+		Assert.assertEquals(count, matcher.getMatches(pattern).size());
+		// a visited node (the one with index 6), so the node before it can't receive the token anymore:
+		changed.getNodes().get(5).setAttribute("token", 2);
+		assertSameMatches(PatternEngine.matchPattern(changed, pattern, false), matcher.getMatches(pattern));
+		Assert.assertEquals(count - 1, matcher.getMatches(pattern).size());
+		// only the changes of the matcher's graph are counted for it:
+		long modifications = changed.getModificationCount();
+		Graph other = original.clone();
+		other.getNodes().get(0).setAttribute("token", 2);
+		new Graph().addNode(new Node().addEdge("next", other.getNodes().get(1)));
+		Assert.assertEquals(modifications, changed.getModificationCount());
+		new Graph().addNode(changed.getNodes().get(0)).getNodes().get(0).setAttribute("token", 0);
+		Assert.assertTrue(changed.getModificationCount() > modifications);
+		matcher.close();
+
+		// applying a match, that creates a node, doesn't change the matches handed out later:
+		Graph growing = new Graph().addNode(new Node().setAttribute("type", "seed"));
+		PatternGraph growth = new PatternGraph("grow");
+		PatternNode seed = new PatternNode("#{type} == 'seed'");
+		PatternNode grown = new PatternNode().setAction("+");
+		growth.addPatternNode(seed, grown);
+		matcher = new IncrementalMatcher(growing);
+		for (int step = 0; step < 3; ++step) {
+			match = matcher.getMatch(growth);
+			Assert.assertEquals(PatternEngine.matchPattern(growing, growth, true).get(0).getNodeMatch(), match.getNodeMatch());
+			Assert.assertNull(match.getNodeMatch().get(grown));
+			PatternEngine.applyMatch(match, true);
+			Assert.assertNotNull(match.getNodeMatch().get(grown));
+		}
+		matcher.close();
+		Assert.assertEquals(4, growing.getNodes().size());
+
+		// an algorithm processed incrementally has the same result:
+		Algorithm algorithm = new Algorithm("pass all tokens").addAlgorithmStep(pattern, true);
+		Assert.assertEquals(algorithm.process(original).getOutput().toString(), algorithm.processIncrementally(original).getOutput().toString());
+		Assert.assertEquals(graph.toString(), algorithm.processIncrementally(original).getOutput().toString());
+	}
+	
 	@Test
 	public void testNegativePatternVariantsWithDifferentIsomorphismCheckApproaches() {
 
@@ -550,4 +1134,39 @@ public class PatternTest {
 		return ferrymansGraph;
 	}
 	
+	/**
+	 * Method to check, that two lists of matches map the pattern nodes to the same nodes in the same order.
+	 * @param expected the expected matches.
+	 * @param actual the actual matches.
+	 */
+	private void assertSameMatches(ArrayList<Match> expected, ArrayList<Match> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); ++i) {
+			Assert.assertEquals(expected.get(i).getNodeMatch(), actual.get(i).getNodeMatch());
+		}
+	}
+	
+	/**
+	 * Method to obtain a ring of nodes as a graph:
+	 * each node has its position as attribute "index" and edges "next" to the nodes at the given distances after it.
+	 * @param nodes the nodes of the ring (missing ones are created).
+	 * @param distances the distances of the "next" edges.
+	 * @return the ring of nodes as a graph.
+	 */
+	private Graph getRing(Node[] nodes, int... distances) {
+		Graph ring = new Graph();
+		for (int i = 0; i < nodes.length; ++i) {
+			if (nodes[i] == null) {
+				nodes[i] = new Node();
+			}
+			ring.addNode(nodes[i].setAttribute("index", i));
+		}
+		for (int i = 0; i < nodes.length; ++i) {
+			for (int distance: distances) {
+				nodes[i].addEdge("next", nodes[(i + distance) % nodes.length]);
+			}
+		}
+		return ring;
+	}
+	
 }
\ No newline at end of file
@@ -1,9 +1,15 @@
 package org.fujaba.graphengine.unitTests;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.regex.Pattern;
 
 import org.fujaba.graphengine.algorithm.Algorithm;
+import org.fujaba.graphengine.graph.FrozenGraph;
 import org.fujaba.graphengine.graph.Graph;
+import org.fujaba.graphengine.graph.Node;
+import org.fujaba.graphengine.graph.OffHeapGraph;
 import org.fujaba.graphengine.pattern.PatternAttribute;
 import org.fujaba.graphengine.pattern.PatternGraph;
 import org.fujaba.graphengine.pattern.PatternNode;
@@ -362,6 +368,70 @@ public class TestTTCStateCase {
 		Assert.assertEquals(335, g.getNodes().size());
 	}
 	
+	@Test
+	public void testFrozenGraphWithTTCStateCaseData() throws IOException {
+		/*
+		 * the frozen snapshot holds exactly the edges and attributes of the loaded graph:
+		 */
+		for (String fileName: new String[] {"leader3_3.xmi", "leader4_3.xmi"}) {
+			Graph g = TTCStateCaseGraphLoader.load(taskMainPath + fileName);
+			FrozenGraph frozen = new FrozenGraph(g);
+			Assert.assertEquals(g.getNodes().size(), frozen.size());
+			int[] inDegrees = new int[frozen.size()];
+			int edges = 0;
+			for (int id = 0; id < frozen.size(); ++id) {
+				Node node = frozen.getNode(id);
+				Assert.assertEquals(id, frozen.getId(node));
+				for (String label: node.getEdges().keySet()) {
+					int labelId = frozen.getLabelId(label);
+					ArrayList<Integer> expected = new ArrayList<Integer>();
+					for (Node target: node.getEdges(label)) {
+						expected.add(frozen.getId(target));
+						++inDegrees[frozen.getId(target)];
+					}
+					Collections.sort(expected);
+					ArrayList<Integer> actual = new ArrayList<Integer>();
+					for (int index = frozen.getOutBegin(id, labelId); index < frozen.getOutEnd(id, labelId); ++index) {
+						Assert.assertEquals(labelId, frozen.getOutLabel(index));
+						actual.add(frozen.getOutTarget(index));
+					}
+					Assert.assertEquals(expected, actual);
+					edges += expected.size();
+				}
+				for (String key: node.getAttributeKeys()) {
+					Assert.assertEquals(node.getAttribute(key), frozen.getAttribute(id, key));
+				}
+				Assert.assertEquals(node.getAttributeKeys().size(), frozen.getAttributeEnd(id) - frozen.getAttributeBegin(id));
+			}
+			Assert.assertEquals(edges, frozen.getEdgeCount());
+			for (int id = 0; id < frozen.size(); ++id) {
+				Assert.assertEquals(inDegrees[id], frozen.getInEnd(id) - frozen.getInBegin(id));
+				for (int index = frozen.getInBegin(id); index < frozen.getInEnd(id); ++index) {
+					Assert.assertTrue(frozen.hasEdge(frozen.getInSource(index), frozen.getInLabel(index), id));
+				}
+			}
+			// streamed straight into a buffer, it's the same graph (but the labels may have other ids):
+			OffHeapGraph offHeap = TTCStateCaseGraphLoader.loadOffHeap(taskMainPath + fileName, false, null);
+			Assert.assertEquals(frozen.size(), offHeap.size());
+			Assert.assertEquals(frozen.getEdgeCount(), offHeap.getEdgeCount());
+			for (int id = 0; id < frozen.size(); ++id) {
+				Node node = frozen.getNode(id);
+				for (String label: node.getEdges().keySet()) {
+					int labelId = offHeap.getLabelId(label);
+					Assert.assertEquals(node.getEdges(label).size(), offHeap.getOutDegree(id, labelId));
+					for (Node target: node.getEdges(label)) {
+						Assert.assertTrue(offHeap.hasEdge(id, labelId, frozen.getId(target)));
+					}
+				}
+				Assert.assertEquals(inDegrees[id], offHeap.getInDegree(id));
+				Assert.assertEquals(frozen.getAttributeEnd(id) - frozen.getAttributeBegin(id), offHeap.getAttributeEnd(id) - offHeap.getAttributeBegin(id));
+				for (String key: node.getAttributeKeys()) {
+					Assert.assertEquals(node.getAttribute(key), offHeap.getAttribute(id, key));
+				}
+			}
+		}
+	}
+	
 //	@Test
 //	public void testSomeIsolatedGTR() {
 //		
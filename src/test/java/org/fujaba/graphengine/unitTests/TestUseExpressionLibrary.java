@@ -1,9 +1,15 @@
 package org.fujaba.graphengine.unitTests;
 
+import java.util.ArrayList;
+
 import org.junit.Test;
+import org.fujaba.graphengine.CompiledExpression;
+import org.fujaba.graphengine.Match;
 import org.fujaba.graphengine.PatternEngine;
 import org.fujaba.graphengine.graph.Graph;
 import org.fujaba.graphengine.graph.Node;
+import org.fujaba.graphengine.pattern.PatternGraph;
+import org.fujaba.graphengine.pattern.PatternNode;
 import org.junit.Assert;
 
 import net.sourceforge.jeval.EvaluationException;
@@ -75,6 +81,61 @@ public class TestUseExpressionLibrary {
 		Assert.assertTrue(PatternEngine.evaluate(n, "#{type} == 'Product' && #{netPrice} * (1 + #{tax}) * #{amount} > 100"));
 		Assert.assertTrue(PatternEngine.evaluate(n, "#{type} == 'Product' && indexOf(#{name}, 'Raspberry Pi', 0) != -1"));
 	}
+
+	@Test
+	public void testCompiledExpression() {
+		Graph graph = getAdjustedFerrymansGraph();
+		String[] expressions = {
+				"#{type} == 'Cargo' && #{species} == 'Wolf' && (#{count} < 5 || #{count} > 1000) && #{existant} == 1.0",
+				"#{side} < 'south' || !#{existant}",
+				"#{missing} == 0 && -#{count} * 2 + 10 % 4 <= 0",
+				"length(#{type}) == 4 && round(#{count} / 2) == 1",
+				"#{species} + 's' == 'Goats'",
+				"#{type} == 1", // comparing a String to a number is an error
+				"#{type} ==" // not a valid expression
+		};
+		for (String expression: expressions) {
+			for (Node node: graph.getNodes()) {
+				boolean byLibrary = PatternEngine.evaluate(PatternEngine.buildNodeEvaluator(node), expression);
+				Assert.assertEquals(expression, byLibrary, CompiledExpression.of(expression).evaluate(node));
+			}
+		}
+		Assert.assertTrue(CompiledExpression.of(expressions[0]).isCompiled());
+		Assert.assertFalse(CompiledExpression.of(expressions[6]).isCompiled());
+	}
+
+	@Test
+	public void testUnresolvedVariables() {
+		Node n = new Node().setAttribute("count", -3);
+		Evaluator evaluator = PatternEngine.getNodeEvaluator(n);
+		int variables = evaluator.getVariables().size();
+		Assert.assertTrue(PatternEngine.evaluate(evaluator, "#{missing} == 0 && #{count} < #{other}"));
+		Assert.assertFalse(PatternEngine.evaluate(evaluator, "abs(-#{count}) == 3")); // an error, that isn't about a variable
+		// the shared evaluator isn't changed:
+		Assert.assertEquals(variables, evaluator.getVariables().size());
+	}
+
+	@Test
+	public void testCompiledExpressionInPattern() {
+		// a pattern node with a compiled expression matches the same nodes as the expression library (including booleans compared to numbers):
+		Graph graph = new Graph();
+		for (int i = 0; i < 300; ++i) {
+			graph.addNode(new Node().setAttribute("type", "Cargo").setAttribute("count", i % 100).setAttribute("existant", i % 3 != 0));
+		}
+		String expression = "#{count} >= 20 && #{count} < 30 && #{existant} == 1.0";
+		Assert.assertTrue(CompiledExpression.of(expression).isCompiled());
+		PatternGraph pattern = new PatternGraph("some cargo");
+		pattern.addPatternNode(new PatternNode(expression));
+		ArrayList<Match> matches = PatternEngine.matchPattern(graph, pattern, false);
+		int byLibrary = 0;
+		for (Node node: graph.getNodes()) {
+			if (PatternEngine.evaluate(PatternEngine.buildNodeEvaluator(node), expression)) {
+				++byLibrary;
+			}
+		}
+		Assert.assertEquals(20, byLibrary);
+		Assert.assertEquals(byLibrary, matches.size());
+	}
 	
 	/**
 	 * Method to obtain an adjusted initial situation of the ferryman's problem as a graph.